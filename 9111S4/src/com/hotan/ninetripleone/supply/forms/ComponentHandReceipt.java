@@ -1,27 +1,42 @@
 package com.hotan.ninetripleone.supply.forms;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.logging.Logger;
 
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 
-import org.apache.poi.hssf.usermodel.HSSFCell;
+import org.apache.poi.hssf.eventusermodel.HSSFEventFactory;
+import org.apache.poi.hssf.eventusermodel.HSSFRequest;
+import org.apache.poi.hssf.eventusermodel.HSSFUserException;
 import org.apache.poi.hssf.usermodel.HSSFSheet;
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
-
+import org.apache.poi.poifs.filesystem.DirectoryNode;
+import org.apache.poi.poifs.filesystem.NPOIFSFileSystem;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+
+import com.hotan.ninetripleone.supply.forms.ComponentHandReceiptListener.SheetHandler;
+import com.hotan.ninetripleone.supply.forms.HeaderSchema.Spaces;
+import com.hotan.ninetripleone.supply.model.ComponentCatalog;
+import com.hotan.ninetripleone.supply.model.ComponentLoader;
 import com.hotan.ninetripleone.supply.model.EndItem;
-import com.hotan.ninetripleone.supply.model.EndItemBasicIssueComponent;
-import com.hotan.ninetripleone.supply.model.EndItemComponent;
 import com.hotan.ninetripleone.supply.model.EndItemGroup;
+import com.hotan.ninetripleone.supply.model.EndItemGroupIndex;
 import com.hotan.ninetripleone.supply.model.Operator;
 import com.hotan.ninetripleone.supply.model.Rank;
+import com.hotan.ninetripleone.supply.util.Flow;
 import com.hotan.ninetripleone.supply.util.FormatException;
-import com.hotan.ninetripleone.supply.util.POIUtil;
+import com.hotan.ninetripleone.supply.util.POILoader;
 import com.hotan.ninetripleone.supply.util.POIUtil.IndexPair;
+import com.hotan.ninetripleone.supply.util.WorkbookSource;
 
 /**
  * A Document composing of all the Unit level Sub Component hand receipt for
@@ -37,26 +52,93 @@ public class ComponentHandReceipt {
     private static final IndexPair UICDESC_LOCATION = IndexPair.valueOf(2,0);
     private static final IndexPair FROM_LOCATION = IndexPair.valueOf(3,0);
     private static final IndexPair TO_LOCATION = IndexPair.valueOf(3,6);
+    private static final IndexPair TEAM_LOCATION = IndexPair.valueOf(4,6);
     private static final IndexPair NSN_LOCATION = IndexPair.valueOf(5, 0);
     private static final IndexPair LIN_LOCATION = IndexPair.valueOf(6, 0);
     private static final IndexPair SN_LOCATION = IndexPair.valueOf(7, 0);
     private static final IndexPair NAME_LOCATION = IndexPair.valueOf(5, 2);
     private static final IndexPair PUBNUM_LOCATION = IndexPair.valueOf(6, 2);
     private static final IndexPair PUBDATE_LOCATION = IndexPair.valueOf(6, 6);
-    private static final IndexPair COMPONENT_START_LOCATION = IndexPair.valueOf(13, 2);
 
-    // Component labels within ComponentHandReceipt
-    private static final String COIE_LABEL = "COMPONENTS OF END ITEM (COEI)";
-    private static final String BII_LABEL = "BASIC ISSUE ITEMS (BII)";
+    /**
+     * Fields of the header of the first sheet.
+     */
+    private enum HeaderField { UIC, DESC, TEAM, FROM_NAME, FROM_RANK, TO_NAME, TO_RANK }
+
+    /**
+     * Fields that describe the EndItem of every sheet.
+     */
+    private enum EndItemField { NSN, LIN, SERIAL_NUMBER, NAME, PUB_NUM, PUB_DATE }
+
+    private static final HeaderSchema.Plan<HeaderField> HEADER = HeaderSchema
+            .of(ComponentHandReceipt.class, HeaderField.class)
+            .field(HeaderField.UIC, UICDESC_LOCATION, "UIC/DESC:", '/', 0, Spaces.KEEP)
+            .field(HeaderField.DESC, UICDESC_LOCATION, "UIC/DESC:", '/', 1, Spaces.KEEP)
+            .optional(HeaderField.TEAM, TEAM_LOCATION, "SHR NUMBER:", Spaces.TRIM)
+            .field(HeaderField.FROM_NAME, FROM_LOCATION, "FROM:", '/', 0, Spaces.KEEP)
+            .field(HeaderField.FROM_RANK, FROM_LOCATION, "FROM:", '/', 1, Spaces.KEEP)
+            .field(HeaderField.TO_NAME, TO_LOCATION, "TO:", '/', 0, Spaces.KEEP)
+            .field(HeaderField.TO_RANK, TO_LOCATION, "TO:", '/', 1, Spaces.KEEP)
+            .compile();
+
+    private static final HeaderSchema.Plan<EndItemField> END_ITEM = HeaderSchema
+            .of(ComponentHandReceipt.class, EndItemField.class)
+            .field(EndItemField.NSN, NSN_LOCATION, "END ITEM NSN:", Spaces.REMOVE)
+            .field(EndItemField.LIN, LIN_LOCATION, "LIN:", Spaces.REMOVE)
+            .field(EndItemField.SERIAL_NUMBER, SN_LOCATION, "SERIAL NO:", Spaces.REMOVE)
+            .field(EndItemField.NAME, NAME_LOCATION, "ITEM DESC:", Spaces.TRIM)
+            .field(EndItemField.PUB_NUM, PUBNUM_LOCATION, "PUB NUM:", Spaces.REMOVE)
+            .field(EndItemField.PUB_DATE, PUBDATE_LOCATION, "PUB DATE:", Spaces.REMOVE)
+            .compile();
+
+    /**
+     * Last row of the header fields of every sheet.
+     */
+    private static final int LAST_HEADER_ROW = 7;
+
+    /**
+     * Most sheets a single fork join task extracts without splitting.
+     */
+    private static final int SHEETS_PER_TASK = 4;
 
     private final HSSFWorkbook mWorkbook;
 
+    /**
+     * File to reopen for a detached hand receipt, null otherwise.
+     */
+    private final WorkbookSource mSource;
+
     private final ObservableList<EndItemGroup> mGroups;
 
-    private final Map<EndItem, HSSFSheet> mMap;
+    private final EndItemGroupIndex mIndex;
+
+    /**
+     * Index of the sheet each EndItem was found on.
+     */
+    private final SheetLocator mSheets;
+
+    /**
+     * Cache of an incremental parse, null otherwise.
+     */
+    private final ComponentSheetCache mCache;
+
+    /**
+     * EndItems of the sheets the cache did not have.
+     */
+    private final List<EndItem> mChanged;
+
+    /**
+     * Component lists shared by the EndItems of the same NSN.
+     */
+    private final ComponentCatalog mCatalog;
+
+    /**
+     * Whether the component tables are only parsed when they are asked for.
+     */
+    private final boolean mLazy;
 
     private final Operator mFromIndiv, mToIndiv;
-    private final String UIC, DESC;
+    private final String UIC, DESC, mTeam;
 
     /**
      * Creates a Component Hand Receipt from an Excel Workbook.
@@ -65,31 +147,531 @@ public class ComponentHandReceipt {
      * @throws FormatException Could not interpret the XLS file as Component Hand receipt.
      */
     public ComponentHandReceipt(HSSFWorkbook wb) throws FormatException {
-        if (wb == null) 
-            throw new NullPointerException(getClass().getSimpleName() + "() Workbook cannot be null");
-        mWorkbook = wb;
-        mGroups = FXCollections.observableArrayList();
-        mMap = new HashMap<EndItem, HSSFSheet>();
+        this(wb, null, null, false);
+    }
 
-        HSSFSheet sheetOne = wb.getSheetAt(0);
-        if (sheetOne == null)
-            throw new FormatException(getClass().getSimpleName() + "() Workbook has no sheets");
-        
-        mFromIndiv = getFrom(sheetOne);
-        mToIndiv = getTo(sheetOne);
-        UIC = getUIC(sheetOne);
-        DESC = getDESC(sheetOne);
-
-        // Iterate through all the sheets and build
-        int size = mWorkbook.getNumberOfSheets();
-        for (int i = 0; i < size; ++i) {
-            HSSFSheet sheet = mWorkbook.getSheetAt(i);
+    /**
+     * Creates a Component Hand Receipt from an Excel Workbook.
+     * 
+     * @param wb Workbook to use.
+     * @param source File the workbook was loaded from if the workbook should 
+     *          be released once built, null to keep the workbook
+     * @param pool Pool to extract the EndItems of the sheets on, null to 
+     *          extract them one at a time on this thread
+     * @param lazy Whether to read only the header of the sheets and parse
+     *          the component tables when they are asked for
+     * @throws FormatException Could not interpret the XLS file as Component Hand receipt.
+     */
+    private ComponentHandReceipt(HSSFWorkbook wb, WorkbookSource source, ForkJoinPool pool, boolean lazy) 
+            throws FormatException {
+        this(firstSheet(wb, lazy), source == null ? wb : null, source, null, lazy);
+        if (pool != null) {
+            processSheets(wb, pool);
+            return;
+        }
+
+        // Iterate through the remaining sheets and build
+        int size = wb.getNumberOfSheets();
+        for (int i = 1; i < size; ++i) {
+            HSSFSheet sheet = wb.getSheetAt(i);
             if (sheet == null) {
-                LOG.warning("Found null sheet for workbook " + mWorkbook + " at index " + i);
+                LOG.warning("Found null sheet for workbook " + wb + " at index " + i);
                 continue;
             }
-            processSheet(sheet);
+            processSheet(lazy ? SheetBuffer.of(sheet, LAST_HEADER_ROW) : SheetBuffer.of(sheet), i);
+        }
+    }
+
+    /**
+     * Creates a Component Hand Receipt from the first sheet of a workbook.
+     * <br>The remaining sheets are added through {@link #processSheet(SheetBuffer, int)}.
+     * 
+     * @param sheetOne First sheet of the workbook
+     * @param wb Workbook to keep for {@link #getSheet(EndItem)}, or null
+     * @param source File to reopen for {@link #getSheet(EndItem)}, or null
+     * @param cache Cache of the EndItems of previously parsed sheets, or null
+     * @param lazy Whether the sheets only have their header, with the component
+     *          tables parsed when they are asked for
+     * @throws FormatException Could not interpret the sheet as Component Hand receipt.
+     */
+    private ComponentHandReceipt(SheetBuffer sheetOne, HSSFWorkbook wb, WorkbookSource source,
+            ComponentSheetCache cache, boolean lazy) throws FormatException {
+        mWorkbook = wb;
+        mSource = source;
+        mCache = cache;
+        mLazy = lazy;
+        mChanged = new ArrayList<EndItem>();
+        mCatalog = new ComponentCatalog();
+        mGroups = FXCollections.observableArrayList();
+        mIndex = new EndItemGroupIndex();
+        mSheets = new SheetLocator();
+        
+        HeaderSchema.Values<HeaderField> header = HEADER.extract(sheetOne);
+        mFromIndiv = toOperator(header.get(HeaderField.FROM_NAME), header.get(HeaderField.FROM_RANK));
+        mToIndiv = toOperator(header.get(HeaderField.TO_NAME), header.get(HeaderField.TO_RANK));
+        UIC = header.get(HeaderField.UIC);
+        DESC = header.get(HeaderField.DESC);
+        String team = header.get(HeaderField.TEAM);
+        mTeam = team == null || team.isEmpty() ? null : team;
+        processSheet(sheetOne, 0);
+    }
+
+    /**
+     * Creates a Component Hand Receipt from values that were already parsed,
+     * for example by a previous parse of the same file.
+     * 
+     * @param uic UIC of the unit
+     * @param desc Description of the unit
+     * @param team SHR number of the team, or null
+     * @param from Operator the hand receipt is from
+     * @param to Operator the hand receipt is to
+     * @param items EndItems in sheet order
+     * @param sheets 0-based index of the sheet of every EndItem
+     * @param source File to reopen for {@link #getSheet(EndItem)}, or null
+     */
+    ComponentHandReceipt(String uic, String desc, String team, Operator from, Operator to,
+            List<EndItem> items, int[] sheets, WorkbookSource source) {
+        mWorkbook = null;
+        mSource = source;
+        mCache = null;
+        mLazy = false;
+        mChanged = new ArrayList<EndItem>();
+        mCatalog = new ComponentCatalog();
+        mGroups = FXCollections.observableArrayList();
+        mIndex = new EndItemGroupIndex();
+        mSheets = new SheetLocator();
+        mFromIndiv = from;
+        mToIndiv = to;
+        UIC = uic;
+        DESC = desc;
+        mTeam = team;
+        for (int i = 0; i < items.size(); ++i) {
+            addEndItem(items.get(i), sheets[i]);
+        }
+    }
+
+    private static SheetBuffer firstSheet(HSSFWorkbook wb, boolean lazy) throws FormatException {
+        if (wb == null) 
+            throw new NullPointerException(ComponentHandReceipt.class.getSimpleName() 
+                    + "() Workbook cannot be null");
+        if (wb.getNumberOfSheets() == 0)
+            throw new FormatException(ComponentHandReceipt.class.getSimpleName() + "() Workbook has no sheets");
+        return lazy ? SheetBuffer.of(wb.getSheetAt(0), LAST_HEADER_ROW) : SheetBuffer.of(wb.getSheetAt(0));
+    }
+
+    /**
+     * Creates a Component Hand Receipt from a XLS file without holding on to
+     * the workbook or its sheets once the hand receipt is built.
+     * <br>{@link #getSheet(EndItem)} reopens the file when it is called.
+     * 
+     * @param file XLS file of the hand receipt
+     * @return Detached Component Hand Receipt
+     * @throws IOException Unable to read the file
+     * @throws FormatException Could not interpret the XLS file as Component Hand receipt.
+     */
+    public static ComponentHandReceipt detached(File file) throws IOException, FormatException {
+        return detached(POILoader.getXLSWorkbook(file), file);
+    }
+
+    /**
+     * Creates a Component Hand Receipt from a workbook already read from a 
+     * XLS file, without holding on to the workbook once the hand receipt is built.
+     * 
+     * @param wb Workbook read from the file
+     * @param file XLS file to reopen for {@link #getSheet(EndItem)}
+     * @return Detached Component Hand Receipt
+     * @throws FormatException Could not interpret the XLS file as Component Hand receipt.
+     */
+    public static ComponentHandReceipt detached(HSSFWorkbook wb, File file) throws FormatException {
+        return new ComponentHandReceipt(wb, new WorkbookSource(file), null, false);
+    }
+
+    /**
+     * Creates a Component Hand Receipt that only reads the header of every 
+     * sheet, the NSN, LIN, serial number and name of its EndItem.
+     * <br>The COEI and BII tables of a sheet are parsed the first time
+     * {@link EndItem#getCOEI()} or {@link EndItem#getBII()} of its EndItem is
+     * called, so building the hand receipt is bound by the headers alone.
+     * 
+     * @param wb Workbook to use, kept to parse the component tables from
+     * @return Component Hand Receipt with lazily loaded components
+     * @throws FormatException Could not interpret the XLS file as Component Hand receipt.
+     */
+    public static ComponentHandReceipt lazy(HSSFWorkbook wb) throws FormatException {
+        return new ComponentHandReceipt(wb, null, null, true);
+    }
+
+    /**
+     * Creates a detached Component Hand Receipt that only reads the header
+     * of every sheet, see {@link #lazy(HSSFWorkbook)}.
+     * <br>The file is reopened to parse the component tables when they are
+     * asked for.
+     * 
+     * @param file XLS file of the hand receipt
+     * @return Detached Component Hand Receipt with lazily loaded components
+     * @throws IOException Unable to read the file
+     * @throws FormatException Could not interpret the XLS file as Component Hand receipt.
+     */
+    public static ComponentHandReceipt lazy(File file) throws IOException, FormatException {
+        return new ComponentHandReceipt(POILoader.getXLSWorkbook(file), new WorkbookSource(file), null, true);
+    }
+
+    /**
+     * Creates a Component Hand Receipt, extracting the EndItems of the sheets
+     * on a shared fork join pool with one thread per available processor.
+     * 
+     * @param wb Workbook to use.
+     * @return Component Hand Receipt with the same groups as {@link #ComponentHandReceipt(HSSFWorkbook)}
+     * @throws FormatException Could not interpret the XLS file as Component Hand receipt.
+     * @see #parallel(HSSFWorkbook, ForkJoinPool)
+     */
+    public static ComponentHandReceipt parallel(HSSFWorkbook wb) throws FormatException {
+        return parallel(wb, SharedPool.POOL);
+    }
+
+    /**
+     * Creates a Component Hand Receipt, extracting the EndItems of the sheets
+     * on the fork join pool.
+     * <br>Every sheet is read independently, the EndItems are then added to
+     * their groups in sheet order, so the groups are the same as when the 
+     * sheets are parsed one at a time.
+     * 
+     * @param wb Workbook to use.
+     * @param pool Pool to extract the EndItems on
+     * @return Component Hand Receipt with the same groups as {@link #ComponentHandReceipt(HSSFWorkbook)}
+     * @throws FormatException Could not interpret the XLS file as Component Hand receipt.
+     */
+    public static ComponentHandReceipt parallel(HSSFWorkbook wb, ForkJoinPool pool) throws FormatException {
+        if (pool == null)
+            throw new NullPointerException(ComponentHandReceipt.class.getSimpleName() 
+                    + ".parallel() Null ForkJoinPool");
+        return new ComponentHandReceipt(wb, null, pool, false);
+    }
+
+    /**
+     * Creates a Component Hand Receipt by streaming the sheets of a XLSX file 
+     * one at a time with a SAX parser, instead of loading the XSSFWorkbook.
+     * <br>{@link #getSheet(EndItem)} is not available for XLSX hand receipts.
+     * 
+     * @param file XLSX file of the hand receipt
+     * @return Component Hand Receipt of the file
+     * @throws IOException Unable to read the file
+     * @throws FormatException Could not interpret the XLSX file as Component Hand receipt.
+     */
+    public static ComponentHandReceipt fromXLSX(File file) throws IOException, FormatException {
+        XLSXSheetReader reader = XLSXSheetReader.open(file);
+        try {
+            if (!reader.hasNextSheet())
+                throw new FormatException(ComponentHandReceipt.class.getSimpleName() + " Workbook has no sheets");
+            ComponentHandReceipt hr = new ComponentHandReceipt(reader.nextSheet(), null, null, null, false);
+            for (int i = 1; reader.hasNextSheet(); ++i) {
+                hr.processSheet(reader.nextSheet(), i);
+            }
+            return hr;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Creates a Component Hand Receipt by streaming the BIFF records of an XLS
+     * file, one sheet at a time.
+     * <br>No usermodel workbook is built, {@link #getSheet(EndItem)} is not 
+     * available for the hand receipt.
+     * 
+     * @param in Input stream of the XLS file, closing it is left to the caller
+     * @return Component Hand Receipt of the stream
+     * @throws IOException Unable to read the stream
+     * @throws FormatException Could not interpret the XLS file as Component Hand receipt.
+     */
+    public static ComponentHandReceipt fromEventStream(InputStream in) throws IOException, FormatException {
+        if (in == null)
+            throw new NullPointerException("ComponentHandReceipt.fromEventStream(), Null InputStream");
+        return fromEventStream(new POIFSFileSystem(in).getRoot());
+    }
+
+    /**
+     * Creates a Component Hand Receipt by streaming the BIFF records of an XLS
+     * file, see {@link #fromEventStream(InputStream)}.
+     * <br>The file is read in place instead of being copied into memory, 
+     * and is closed before returning.
+     * 
+     * @param file XLS file of the hand receipt
+     * @return Component Hand Receipt of the file
+     * @throws IOException Unable to read the file
+     * @throws FormatException Could not interpret the XLS file as Component Hand receipt.
+     */
+    public static ComponentHandReceipt fromEventStream(File file) throws IOException, FormatException {
+        if (file == null)
+            throw new NullPointerException("ComponentHandReceipt.fromEventStream(), Null file");
+        NPOIFSFileSystem fs = new NPOIFSFileSystem(file, true);
+        try {
+            return fromEventStream(fs.getRoot());
+        } finally {
+            fs.close();
+        }
+    }
+
+    private static ComponentHandReceipt fromEventStream(DirectoryNode root) throws IOException, FormatException {
+        final ComponentHandReceipt[] hr = new ComponentHandReceipt[1];
+        process(root, new SheetHandler() {
+
+            @Override
+            public boolean onSheet(SheetBuffer sheet, int index) throws FormatException {
+                if (hr[0] == null) {
+                    hr[0] = new ComponentHandReceipt(sheet, null, null, null, false);
+                } else {
+                    hr[0].processSheet(sheet, index);
+                }
+                return true;
+            }
+        });
+        if (hr[0] == null)
+            throw new FormatException(ComponentHandReceipt.class.getSimpleName() + " Workbook has no sheets");
+        return hr[0];
+    }
+
+    /**
+     * Creates a Component Hand Receipt with the backend configured for 
+     * Component hand receipts, see {@link SpreadsheetBackend#configured(FormType)}.
+     * 
+     * @param file XLS file of the hand receipt
+     * @return Component Hand Receipt of the file
+     * @throws IOException Unable to read the file
+     * @throws FormatException Could not interpret the XLS file as Component Hand receipt.
+     */
+    public static ComponentHandReceipt read(File file) throws IOException, FormatException {
+        return read(file, SpreadsheetBackend.configured(FormType.COMPONENT).getReader());
+    }
+
+    /**
+     * Creates a Component Hand Receipt from the sheets handed over by the reader,
+     * one sheet at a time.
+     * <br>{@link #getSheet(EndItem)} is not available for the hand receipt.
+     * 
+     * @param file XLS file of the hand receipt
+     * @param reader Reader of the file
+     * @return Component Hand Receipt of the file
+     * @throws IOException Unable to read the file
+     * @throws FormatException Could not interpret the XLS file as Component Hand receipt.
+     */
+    public static ComponentHandReceipt read(File file, SpreadsheetReader reader) throws IOException, FormatException {
+        if (file == null)
+            throw new NullPointerException("ComponentHandReceipt.read(), Null file");
+        if (reader == null)
+            throw new NullPointerException("ComponentHandReceipt.read(), Null reader");
+        final ComponentHandReceipt[] hr = new ComponentHandReceipt[1];
+        reader.read(file, new SpreadsheetReader.RowHandler() {
+
+            private SheetBuffer mSheet;
+
+            @Override
+            public void startSheet(int index, String name) {
+                mSheet = new SheetBuffer(name);
+            }
+
+            @Override
+            public void onRow(SpreadsheetReader.Row row) {
+                for (int col = 0; col <= row.getLastColumn(); ++col) {
+                    String value = row.getString(col);
+                    if (value != null) mSheet.setCell(row.getRowNum(), col, value);
+                }
+            }
+
+            @Override
+            public boolean endSheet(int index) throws FormatException {
+                if (hr[0] == null) {
+                    hr[0] = new ComponentHandReceipt(mSheet, null, null, null, false);
+                } else {
+                    hr[0].processSheet(mSheet, index);
+                }
+                mSheet = null;
+                return true;
+            }
+        });
+        if (hr[0] == null)
+            throw new FormatException(ComponentHandReceipt.class.getSimpleName() + " Workbook has no sheets");
+        return hr[0];
+    }
+
+    /**
+     * Streams the EndItem of every sheet of a XLS file to the callback as 
+     * soon as the sheet is read, without building a Component Hand Receipt.
+     * <br>The file is read in place and only the cells of the sheet being
+     * read are held in memory, besides the shared strings of the workbook.
+     * 
+     * @param file XLS file of a Component Hand Receipt
+     * @param callback Callback to hand each EndItem to, in sheet order
+     * @return Number of sheets read
+     * @throws IOException Unable to read the file
+     * @throws FormatException A sheet could not be interpreted as an end item.
+     */
+    public static int stream(File file, EndItemCallback callback) throws IOException, FormatException {
+        if (file == null)
+            throw new NullPointerException("ComponentHandReceipt.stream(), Null file");
+        NPOIFSFileSystem fs = new NPOIFSFileSystem(file, true);
+        try {
+            return stream(fs.getRoot(), callback);
+        } finally {
+            fs.close();
+        }
+    }
+
+    /**
+     * Streams the EndItem of every sheet of a XLS stream to the callback as 
+     * soon as the sheet is read, without building a Component Hand Receipt.
+     * 
+     * @param in Input stream of the XLS file, closing it is left to the caller
+     * @param callback Callback to hand each EndItem to, in sheet order
+     * @return Number of sheets read
+     * @throws IOException Unable to read the stream
+     * @throws FormatException A sheet could not be interpreted as an end item.
+     */
+    public static int stream(InputStream in, EndItemCallback callback) throws IOException, FormatException {
+        if (in == null)
+            throw new NullPointerException("ComponentHandReceipt.stream(), Null InputStream");
+        return stream(new POIFSFileSystem(in).getRoot(), callback);
+    }
+
+    /**
+     * Creates a publisher of the EndItems of a XLS file, see 
+     * {@link #publisher(File, Executor)}.
+     * 
+     * @param file XLS file of a Component Hand Receipt
+     * @return Publisher of the EndItems of the file, in sheet order
+     */
+    public static Flow.Publisher<EndItem> publisher(File file) {
+        return publisher(file, null);
+    }
+
+    /**
+     * Creates a publisher of the EndItems of a XLS file.
+     * <br>The file is streamed like {@link #stream(File, EndItemCallback)} for
+     * every subscriber.  Streaming waits while the subscriber has no demand,
+     * so a slow subscriber holds back the parsing instead of the EndItems 
+     * piling up.
+     * 
+     * @param file XLS file of a Component Hand Receipt
+     * @param executor Executor to stream on, null for a daemon thread of its own
+     * @return Publisher of the EndItems of the file, in sheet order
+     */
+    public static Flow.Publisher<EndItem> publisher(File file, Executor executor) {
+        return new ReceiptPublisher<EndItem>(file, executor) {
+
+            @Override
+            protected void produce(final Emitter<EndItem> emitter) throws IOException, FormatException {
+                stream(mFile, new EndItemCallback() {
+
+                    @Override
+                    public boolean onEndItem(EndItem item, int sheetIndex) {
+                        return emitter.emit(item);
+                    }
+                });
+            }
+        };
+    }
+
+    private static int stream(DirectoryNode root, final EndItemCallback callback) 
+            throws IOException, FormatException {
+        if (callback == null)
+            throw new NullPointerException("ComponentHandReceipt.stream(), Null callback");
+        return process(root, new SheetHandler() {
+
+            @Override
+            public boolean onSheet(SheetBuffer sheet, int index) throws FormatException {
+                return callback.onEndItem(parseSheet(sheet), index);
+            }
+        }).getSheetCount();
+    }
+
+    private static ComponentHandReceiptListener process(DirectoryNode root, SheetHandler handler) 
+            throws IOException, FormatException {
+        ComponentHandReceiptListener listener = new ComponentHandReceiptListener(handler);
+        HSSFRequest request = new HSSFRequest();
+        request.addListenerForAllRecords(listener);
+        try {
+            new HSSFEventFactory().abortableProcessWorkbookEvents(request, root);
+        } catch (HSSFUserException e) {
+            throw new IOException("Unable to process Component hand receipt", e);
+        }
+        if (listener.getError() != null) throw listener.getError();
+        return listener;
+    }
+
+    /**
+     * Creates a detached Component Hand Receipt from a XLS file, reusing the
+     * EndItems of the sheets that did not change since the file was last 
+     * parsed this way.
+     * <br>The sheets are streamed with the HSSF event API and fingerprinted
+     * from their cells.  EndItems are cached by fingerprint in a file next to
+     * the XLS file, which is rewritten after every parse.
+     * {@link #getChangedItems()} lists the EndItems of the sheets that had to
+     * be parsed.
+     * 
+     * @param file XLS file of the hand receipt
+     * @return Detached Component Hand Receipt
+     * @throws IOException Unable to read the file
+     * @throws FormatException Could not interpret the XLS file as Component Hand receipt.
+     */
+    public static ComponentHandReceipt incremental(File file) throws IOException, FormatException {
+        if (file == null)
+            throw new NullPointerException("ComponentHandReceipt.incremental(), Null file");
+
+        final ComponentSheetCache cache = ComponentSheetCache.load(file);
+        final WorkbookSource source = new WorkbookSource(file);
+        final ComponentHandReceipt[] hr = new ComponentHandReceipt[1];
+        NPOIFSFileSystem fs = new NPOIFSFileSystem(file, true);
+        try {
+            process(fs.getRoot(), new SheetHandler() {
+
+                @Override
+                public boolean onSheet(SheetBuffer sheet, int index) throws FormatException {
+                    if (hr[0] == null) {
+                        hr[0] = new ComponentHandReceipt(sheet, null, source, cache, false);
+                    } else {
+                        hr[0].processSheet(sheet, index);
+                    }
+                    return true;
+                }
+            });
+        } finally {
+            fs.close();
         }
+        if (hr[0] == null)
+            throw new FormatException(ComponentHandReceipt.class.getSimpleName() + " Workbook has no sheets");
+
+        try {
+            cache.save();
+        } catch (IOException e) {
+            LOG.warning("Unable to save " + cache.getFile() + " " + e);
+        }
+        LOG.info("Parsed " + hr[0].mChanged.size() + " changed sheets of " + file);
+        return hr[0];
+    }
+
+    /**
+     * Returns the EndItems of the sheets that changed since the last 
+     * incremental parse of the file.
+     * 
+     * @return EndItems parsed by {@link #incremental(File)} instead of taken
+     *          from its cache, empty for hand receipts not parsed incrementally
+     */
+    public List<EndItem> getChangedItems() {
+        return Collections.unmodifiableList(mChanged);
+    }
+
+    /**
+     * @return Catalog of the component lists shared by the EndItems of this hand receipt
+     */
+    public ComponentCatalog getCatalog() {
+        return mCatalog;
+    }
+
+    /**
+     * @return Whether the workbook is released and only reopened on demand
+     */
+    public boolean isDetached() {
+        return mSource != null;
     }
 
     public String getUIC() {
@@ -99,6 +681,13 @@ public class ComponentHandReceipt {
     public String getDESC() {
         return DESC;
     }
+
+    /**
+     * @return Team of the SHR NUMBER cell, or null if the sheet has none
+     */
+    public String getTeam() {
+        return mTeam;
+    }
     
     /**
      * Adds EndItem group to this hand receipt
@@ -109,6 +698,7 @@ public class ComponentHandReceipt {
         if (group == null) return;
         if (hasGroup(group.getNSN(), group.getLIN())) return;
         mGroups.add(group);
+        mIndex.add(group);
     }
 
     /**
@@ -153,22 +743,43 @@ public class ComponentHandReceipt {
      * @return EndItemGroup that represents the the nsn and lin inputted, or null if non are found.
      */
     public EndItemGroup getGroup(String nsn, String lin) {
-        if (nsn == null || lin == null) return null;
-        for (EndItemGroup group: mGroups) {
-            if (group.getNSN().equals(nsn) && group.getLIN().equals(lin)) {
-                return group;
-            }
-        }
-        return null;
+        return mIndex.get(nsn, lin);
     }
     
     /**
      * Returns the corresponding sheet for the EndItem
+     * <br>A detached hand receipt reopens its file.
+     * 
      * @param item Processed item.
-     * @return Sheet that represents item.
+     * @return Sheet that represents item, or null if there is none or 
+     *          the hand receipt was streamed.
      */
     public HSSFSheet getSheet(EndItem item) {
-        return mMap.get(item);
+        int index = getSheetIndex(item);
+        if (index == -1) return null;
+        return getSheetAt(index);
+    }
+
+    /**
+     * @param item Processed item
+     * @return 0-based index of the sheet of the item, or -1 if it has none
+     */
+    int getSheetIndex(EndItem item) {
+        return item == null ? -1 : mSheets.get(item.getKey());
+    }
+
+    private HSSFSheet getSheetAt(int index) {
+        HSSFWorkbook wb = mWorkbook;
+        if (wb == null && mSource == null) return null;
+        if (wb == null) {
+            try {
+                wb = mSource.getWorkbook();
+            } catch (IOException e) {
+                LOG.warning("Unable to reopen " + mSource + " " + e);
+                return null;
+            }
+        }
+        return wb.getSheetAt(index);
     }
 
     /////////////////////////////////////////////////////////////////////
@@ -179,16 +790,81 @@ public class ComponentHandReceipt {
      * This sheet represents a single end item.
      * 
      * @param sheet Sheet to develop.
+     * @param index Index of the sheet within the workbook
      * @throws FormatException 
      */
-    private void processSheet(HSSFSheet sheet) throws FormatException {
-        String nsn = getNSN(sheet);
-        String lin = getLIN(sheet);
-        String serialNum = getSerialNumber(sheet);
+    private void processSheet(SheetBuffer sheet, int index) throws FormatException {
+        if (mLazy) {
+            EndItem item = parseHeader(sheet);
+            item.setComponentLoader(new SheetComponents(index));
+            addEndItem(item, index);
+            return;
+        }
+        if (mCache == null) {
+            addEndItem(parseSheet(sheet), index);
+            return;
+        }
+
+        // Only sheets whose cells changed since the last parse are parsed again
+        String fingerprint = sheet.getFingerprint();
+        EndItem item = mCache.get(fingerprint);
+        if (item == null) {
+            item = parseSheet(sheet);
+            mChanged.add(item);
+        }
+        mCache.put(fingerprint, item);
+        addEndItem(item, index);
+    }
+
+    /**
+     * Extracts the EndItems of every sheet after the first on the pool, then
+     * adds them in sheet order.
+     * 
+     * @param wb Workbook of the sheets
+     * @param pool Pool to extract the EndItems on
+     * @throws FormatException The first sheet that could not be interpreted
+     */
+    private void processSheets(HSSFWorkbook wb, ForkJoinPool pool) throws FormatException {
+        int size = wb.getNumberOfSheets();
+        EndItem[] items = new EndItem[size];
+        FormatException[] errors = new FormatException[size];
+        pool.invoke(new SheetTask(wb, 1, size, items, errors));
+        for (int i = 1; i < size; ++i) {
+            if (errors[i] != null) throw errors[i];
+            if (items[i] != null) addEndItem(items[i], i);
+        }
+    }
+
+    /**
+     * Extracts the EndItem a sheet represents.
+     * <br>Only reads the sheet, so sheets can be extracted concurrently.
+     * 
+     * @param sheet Sheet to develop.
+     * @return EndItem of the sheet with its COEI and BII
+     * @throws FormatException 
+     */
+    private static EndItem parseSheet(SheetBuffer sheet) throws FormatException {
+        EndItem item = parseHeader(sheet);
+        addComponents(item, ComponentTableScanner.scan(sheet));
+        return item;
+    }
+
+    /**
+     * Creates the EndItem of a sheet without its COEI and BII.
+     * 
+     * @param sheet Sheet with at least the header rows
+     * @return EndItem of the sheet
+     * @throws FormatException 
+     */
+    private static EndItem parseHeader(SheetBuffer sheet) throws FormatException {
+        HeaderSchema.Values<EndItemField> fields = END_ITEM.extract(sheet);
+        String nsn = fields.get(EndItemField.NSN);
+        String lin = fields.get(EndItemField.LIN);
+        String serialNum = fields.get(EndItemField.SERIAL_NUMBER);
         serialNum = serialNum.isEmpty() ? null: serialNum;
-        String name = getName(sheet);
-        String pubDate = getPublicationDate(sheet);
-        String pubNum = getPublicationNumber(sheet);
+        String name = fields.get(EndItemField.NAME);
+        String pubDate = fields.get(EndItemField.PUB_DATE);
+        String pubNum = fields.get(EndItemField.PUB_NUM);
 
         // Create the EndItem with the unique features from other End Items.
         EndItem item = new EndItem(name, lin, nsn);
@@ -197,23 +873,40 @@ public class ComponentHandReceipt {
         item.setPubDate(pubDate);
         item.setPubNum(pubNum);
         item.setSn(serialNum);
-        
-        List<EndItemComponent> comps = getCOEIs(sheet);
-        for (EndItemComponent comp: comps) {
-            item.addCOEI(comp);
+        return item;
+    }
+
+    private static void addComponents(EndItem item, ComponentTableScanner tables) {
+        item.addComponents(tables.getCOEIs(), tables.getBIIs());
+    }
+
+    /**
+     * Parses the component tables of a sheet when its EndItem first asks for them.
+     */
+    private class SheetComponents implements ComponentLoader {
+
+        private final int mIndex;
+
+        SheetComponents(int index) {
+            mIndex = index;
         }
-        
-        List<EndItemBasicIssueComponent> biiComps = getBII(sheet);
-        for (EndItemBasicIssueComponent comp: biiComps) {
-            item.addBII(comp);
+
+        @Override
+        public void load(EndItem item) {
+            HSSFSheet sheet = getSheetAt(mIndex);
+            if (sheet == null) {
+                LOG.warning("Unable to load the components of " + item + " from sheet " + mIndex);
+                return;
+            }
+            addComponents(item, ComponentTableScanner.scan(sheet));
+            item.intern(mCatalog);
         }
-        
-        mMap.put(item, sheet);
-        addEndItem(item);
     }
 
-    private void addEndItem(EndItem item) {
+    private void addEndItem(EndItem item, int index) {
         if (item == null) return;
+        mSheets.put(item.getKey(), index);
+        item.intern(mCatalog);
 
         // Check if there isn't already the group within this component hand receipt
         EndItemGroup group = getGroup(item.getNSN(), item.getLin());
@@ -225,215 +918,81 @@ public class ComponentHandReceipt {
     }
 
     /**
-     * Attempts to find all the Components of this enditem on the sheet.
+     * Receives the EndItems of a Component Hand Receipt as their sheets are read.
      * 
-     * @return list of components
+     * @see ComponentHandReceipt#stream(File, EndItemCallback)
      */
-    private static List<EndItemComponent> getCOEIs(HSSFSheet  sheet) {
-        final List<EndItemComponent> components = new ArrayList<EndItemComponent>();
-
-        findAccountableComponents(sheet, COIE_LABEL, COMPONENT_START_LOCATION, new AccountableComponentFound() {
-            
-            @Override
-            public void onFound(String name, String nsn, int authQty) {
-                components.add(new EndItemComponent(name, nsn, authQty));
-            }
-        });
-        
-        return components;
-    }
-    
-    private static List<EndItemBasicIssueComponent> getBII(HSSFSheet sheet) {
-        final List<EndItemBasicIssueComponent> components = new ArrayList<EndItemBasicIssueComponent>();
-        int maxRow = sheet.getLastRowNum();
-        
-        HSSFCell label = POIUtil.getCell(sheet, COMPONENT_START_LOCATION);
-        if (!POIUtil.hasStringValue(label)) {
-            return components;
-        }
-        
-        // Attempt to find the cell with the appropiate label
-        for (int row = COMPONENT_START_LOCATION.row; row <= maxRow; ++row) {
-            
-            // Try to 
-            findAccountableComponents(sheet, BII_LABEL,  IndexPair.valueOf(row, COMPONENT_START_LOCATION.col), new AccountableComponentFound() {
-                
-                @Override
-                public void onFound(String name, String nsn, int authQty) {
-                    components.add(new EndItemBasicIssueComponent(name, nsn, authQty));
-                }
-            });
-            
-        }
-        
-        // If we could not find the start cell the just return an empty list.
-        return components;
+    public interface EndItemCallback {
+
+        /**
+         * @param item EndItem of the sheet with its COEI and BII
+         * @param sheetIndex 0-based index of the sheet
+         * @return Whether to keep reading the following sheets
+         */
+        public boolean onEndItem(EndItem item, int sheetIndex);
     }
 
-    private static void findAccountableComponents(HSSFSheet sheet, String label, IndexPair startLoc, AccountableComponentFound listener) {
-        HSSFCell labelCell = POIUtil.getCell(sheet, startLoc);
-        if (!POIUtil.hasStringValue(labelCell)) {
-            return;
-        }
-        
-        // If the label of the cell does not eaual the defined COIE label
-        String cellValue = labelCell.getStringCellValue();
-        if (label.equals(cellValue.trim())) {
-            
-            // Iterate through all the following rows to 
-            // get all the components.
-            IndexPair index = startLoc.indexOnBottom();
-            HSSFCell nextCell = POIUtil.getCell(sheet, index);
-            
-            // All valid rows are placed below 
-            while (POIUtil.hasStringValue(nextCell)) {
-                
-                // Extract the name of the row.
-                String name = nextCell.getStringCellValue();
-                String nsn = POIUtil.getCell(sheet, index.indexOnLeft().indexOnLeft()).getStringCellValue();
-                String authQtyStr = POIUtil.getCell(sheet, IndexPair.valueOf(index.row, 7)).getStringCellValue();
-                int authQty = 0;
-                try {
-                    authQty = Integer.valueOf(authQtyStr);
-                } catch (NumberFormatException e) {
-                    LOG.warning("Unable to extract quantity for component " + name);
-                }
-                listener.onFound(name, nsn, authQty);
-                
-                // Iterate through the 
-                index = index.indexOnBottom();
-                nextCell = POIUtil.getCell(sheet, index);
-            }
-        }
-    }
-    
-    private interface AccountableComponentFound {
-        
-        public void onFound(String name, String nsn, int authQty);
-        
-    }
-    
     /**
-     * Extract the UIC from the sheet
-     * 
-     * @param sheet
-     * @return
-     * @throws FormatException 
+     * Extracts the EndItems of a range of sheets, splitting the range in half
+     * until it is small enough.
      */
-    private static String getUIC(HSSFSheet sheet) throws FormatException {
-        HSSFCell cell = POIUtil.getCell(sheet, UICDESC_LOCATION);
-        if (cell == null) {
-            throw new FormatException(ComponentHandReceipt.class.getSimpleName() + " Unable to find cell for UIC");
-        }
-        String val = cell.getStringCellValue().trim();
-        val = val.replace("UIC/DESC: ", "");
-        val = val.split("/")[0];
-        return val;
-    }
+    private static class SheetTask extends RecursiveAction {
 
-    private static String getDESC(HSSFSheet sheet) throws FormatException {
-        HSSFCell cell = POIUtil.getCell(sheet, UICDESC_LOCATION);
-        if (cell == null) {
-            throw new FormatException(ComponentHandReceipt.class.getSimpleName() + " Unable to find cell for DESC");
-        }
-        String val = cell.getStringCellValue().trim();
-        val = val.replace("UIC/DESC: ", "");
-        val = val.split("/")[1];
-        return val;
-    }
+        private static final long serialVersionUID = 1L;
 
-    private static Operator getFrom(HSSFSheet sheet) throws FormatException {
-        HSSFCell cell = POIUtil.getCell(sheet, FROM_LOCATION);
-        if (cell == null) {
-            throw new FormatException(ComponentHandReceipt.class.getSimpleName() 
-                    + " Unable to find cell that describes who subcomponent is signed from");
-        }
-        String val = cell.getStringCellValue().trim();
-        String[] details = val.replace("FROM: ", "").split("/");
-        String rank = details[1];
-        String[] fullName = details[0].split(", ");
-        String firstName = fullName[1];
-        String lastName = fullName[0];
-        return new Operator(firstName, lastName, Rank.valueOf(rank));
-    }
-
-    private static Operator getTo(HSSFSheet sheet) throws FormatException {
-        HSSFCell cell = POIUtil.getCell(sheet, TO_LOCATION);
-        if (cell == null) {
-            throw new FormatException(ComponentHandReceipt.class.getSimpleName() 
-                    + " Unable to find cell that describes who subcomponent is to");
-        }
-        String val = cell.getStringCellValue().trim();
-        String[] details = val.replace("TO: ", "").split("/");
-        String rank = details[1];
-        String[] fullName = details[0].split(", ");
-        String firstName = fullName[1];
-        String lastName = fullName[0];
-        return new Operator(firstName, lastName, Rank.valueOf(rank));
-    }
-
-    private static String getNSN(HSSFSheet sheet) throws FormatException {
-        HSSFCell cell = POIUtil.getCell(sheet, NSN_LOCATION);
-        if (cell == null) {
-            throw new FormatException(ComponentHandReceipt.class.getSimpleName() 
-                    + " Unable to find cell represents the NSN");
-        }
-        String val = cell.getStringCellValue().trim();
-        return val.replace("END ITEM NSN:", "").replace(" ", "");
-    }
+        private final HSSFWorkbook mWorkbook;
+        private final int mStart, mEnd;
+        private final EndItem[] mItems;
+        private final FormatException[] mErrors;
 
-    private static String getLIN(HSSFSheet sheet) throws FormatException {
-        HSSFCell cell = POIUtil.getCell(sheet, LIN_LOCATION);
-        if (cell == null) {
-            throw new FormatException(ComponentHandReceipt.class.getSimpleName() 
-                    + " Unable to find cell that represents the LIN");
+        SheetTask(HSSFWorkbook wb, int start, int end, EndItem[] items, FormatException[] errors) {
+            mWorkbook = wb;
+            mStart = start;
+            mEnd = end;
+            mItems = items;
+            mErrors = errors;
         }
-        String val = cell.getStringCellValue().trim();
-        return val.replace("LIN:", "").replace(" ", "");
-    }
 
-    private static String getSerialNumber(HSSFSheet sheet) throws FormatException {
-        HSSFCell cell = POIUtil.getCell(sheet, SN_LOCATION);
-        if (cell == null) {
-            throw new FormatException(ComponentHandReceipt.class.getSimpleName() 
-                    + " Unable to find cell that describes who subcomponent is to");
+        @Override
+        protected void compute() {
+            if (mEnd - mStart > SHEETS_PER_TASK) {
+                int mid = (mStart + mEnd) >>> 1;
+                invokeAll(new SheetTask(mWorkbook, mStart, mid, mItems, mErrors), 
+                        new SheetTask(mWorkbook, mid, mEnd, mItems, mErrors));
+                return;
+            }
+            for (int i = mStart; i < mEnd; ++i) {
+                HSSFSheet sheet = mWorkbook.getSheetAt(i);
+                if (sheet == null) {
+                    LOG.warning("Found null sheet for workbook " + mWorkbook + " at index " + i);
+                    continue;
+                }
+                try {
+                    mItems[i] = parseSheet(SheetBuffer.of(sheet));
+                } catch (FormatException e) {
+                    mErrors[i] = e;
+                }
+            }
         }
-        String val = cell.getStringCellValue().trim();
-        return val.replace("SERIAL NO:", "").replace(" ", "");
     }
 
-    private static String getName(HSSFSheet sheet) throws FormatException {
-        HSSFCell cell = POIUtil.getCell(sheet, NAME_LOCATION);
-        if (cell == null) {
-            throw new FormatException(ComponentHandReceipt.class.getSimpleName() 
-                    + " Unable to find cell that describes who subcomponent is to");
-        }
-        String val = cell.getStringCellValue().trim();
-        String name = val.replace("ITEM DESC:", "").trim();
-        
-        return name;
-    }
+    /**
+     * Pool shared by {@link ComponentHandReceipt#parallel(HSSFWorkbook)}, 
+     * created the first time it is used.
+     */
+    private static class SharedPool {
 
-    private static String getPublicationNumber(HSSFSheet sheet) throws FormatException {
-        HSSFCell cell = POIUtil.getCell(sheet, PUBNUM_LOCATION);
-        if (cell == null) {
-            throw new FormatException(ComponentHandReceipt.class.getSimpleName() 
-                    + " Unable to find cell that describes who subcomponent is to");
-        }
-        String val = cell.getStringCellValue().trim();
-        return val.replace("PUB NUM:", "").replace(" ", "");
+        static final ForkJoinPool POOL = new ForkJoinPool();
     }
-
-    private static String getPublicationDate(HSSFSheet sheet) throws FormatException {
-        HSSFCell cell = POIUtil.getCell(sheet, PUBDATE_LOCATION);
-        if (cell == null) {
+    
+    /**
+     * Creates the operator of a "LAST, FIRST" name and a rank.
+     */
+    private static Operator toOperator(String name, String rank) throws FormatException {
+        String[] fullName = name.split(", ");
+        if (fullName.length < 2) 
             throw new FormatException(ComponentHandReceipt.class.getSimpleName() 
-                    + " Unable to find cell that describes who subcomponent is to");
-        }
-        String val = cell.getStringCellValue().trim();
-        return val.replace("PUB DATE:", "").replace(" ", "");
+                    + " Unable to find first and last name in " + name);
+        return new Operator(fullName[1], fullName[0], Rank.valueOf(rank));
     }
-
-
-
 }
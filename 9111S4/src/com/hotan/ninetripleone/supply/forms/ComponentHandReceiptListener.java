@@ -0,0 +1,136 @@
+package com.hotan.ninetripleone.supply.forms;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.poi.hssf.eventusermodel.AbortableHSSFListener;
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.BlankRecord;
+import org.apache.poi.hssf.record.BoundSheetRecord;
+import org.apache.poi.hssf.record.EOFRecord;
+import org.apache.poi.hssf.record.LabelRecord;
+import org.apache.poi.hssf.record.LabelSSTRecord;
+import org.apache.poi.hssf.record.NumberRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.SSTRecord;
+
+import com.hotan.ninetripleone.supply.util.FormatException;
+
+/**
+ * HSSF event listener that buffers the cells of one sheet of a Component
+ * hand receipt at a time and hands every sheet to a {@link SheetHandler} as
+ * soon as its last record is read.
+ * <br>Only String, blank and number cells are buffered, formula results are
+ * not.
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+class ComponentHandReceiptListener extends AbortableHSSFListener {
+
+    /**
+     * Receives the sheets of the workbook in order.
+     */
+    interface SheetHandler {
+
+        /**
+         * @param sheet Cells of the sheet
+         * @param index 0-based index of the sheet
+         * @return Whether to keep reading the following sheets
+         * @throws FormatException The sheet can not be interpreted
+         */
+        boolean onSheet(SheetBuffer sheet, int index) throws FormatException;
+    }
+
+    private final SheetHandler mHandler;
+
+    private final List<String> mSheetNames;
+
+    private SSTRecord mStrings;
+
+    /**
+     * Index of the worksheet whose records are being read, -1 for the workbook globals.
+     */
+    private int mSheetIndex;
+
+    private SheetBuffer mSheet;
+
+    private FormatException mError;
+
+    ComponentHandReceiptListener(SheetHandler handler) {
+        mHandler = handler;
+        mSheetNames = new ArrayList<String>();
+        mSheetIndex = -1;
+    }
+
+    @Override
+    public short abortableProcessRecord(Record record) {
+        switch (record.getSid()) {
+        case BoundSheetRecord.sid:
+            mSheetNames.add(((BoundSheetRecord) record).getSheetname());
+            break;
+        case BOFRecord.sid:
+            if (((BOFRecord) record).getType() == BOFRecord.TYPE_WORKSHEET) {
+                mSheetIndex++;
+                mSheet = new SheetBuffer(mSheetIndex < mSheetNames.size() ? mSheetNames.get(mSheetIndex) : null);
+            }
+            break;
+        case SSTRecord.sid:
+            mStrings = (SSTRecord) record;
+            break;
+        case LabelSSTRecord.sid:
+            LabelSSTRecord sst = (LabelSSTRecord) record;
+            onCell(sst.getRow(), sst.getColumn(), mStrings.getString(sst.getSSTIndex()).getString());
+            break;
+        case LabelRecord.sid:
+            LabelRecord label = (LabelRecord) record;
+            onCell(label.getRow(), label.getColumn(), label.getValue());
+            break;
+        case BlankRecord.sid:
+            BlankRecord blank = (BlankRecord) record;
+            onCell(blank.getRow(), blank.getColumn(), "");
+            break;
+        case NumberRecord.sid:
+            NumberRecord number = (NumberRecord) record;
+            onCell(number.getRow(), number.getColumn(), format(number.getValue()));
+            break;
+        case EOFRecord.sid:
+            if (mSheet != null) {
+                SheetBuffer sheet = mSheet;
+                mSheet = null;
+                try {
+                    if (!mHandler.onSheet(sheet, mSheetIndex)) return 1;
+                } catch (FormatException e) {
+                    mError = e;
+                    return 1;
+                }
+            }
+            break;
+        default:
+            break;
+        }
+        return 0;
+    }
+
+    private void onCell(int row, int col, String value) {
+        if (mSheet != null) mSheet.setCell(row, col, value);
+    }
+
+    private static String format(double value) {
+        if (value == Math.rint(value) && !Double.isInfinite(value)) return Long.toString((long) value);
+        return Double.toString(value);
+    }
+
+    /**
+     * @return Number of sheets handed to the handler so far
+     */
+    int getSheetCount() {
+        return mSheetIndex + 1;
+    }
+
+    /**
+     * @return Exception that stopped the reading, or null if none did
+     */
+    FormatException getError() {
+        return mError;
+    }
+}
@@ -0,0 +1,291 @@
+package com.hotan.ninetripleone.supply.forms;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import com.hotan.ninetripleone.supply.model.AccountableComponent;
+import com.hotan.ninetripleone.supply.model.EndItem;
+import com.hotan.ninetripleone.supply.model.EndItemBasicIssueComponent;
+import com.hotan.ninetripleone.supply.model.EndItemComponent;
+
+/**
+ * EndItems parsed from the sheets of a Component hand receipt by the
+ * fingerprint of their sheet, persisted next to the workbook.
+ * <br>The entries of the previous parse are read when the cache is loaded,
+ * the entries of the current parse are the only ones saved, so sheets that
+ * were removed from the workbook drop out of the cache.
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+class ComponentSheetCache {
+
+    private static final Logger LOG = Logger.getLogger(ComponentSheetCache.class.getSimpleName());
+
+    /**
+     * Suffix added to the name of the workbook for the cache file.
+     */
+    static final String SUFFIX = ".sheets";
+
+    private static final int MAGIC = 0x39313131;
+    private static final int VERSION = 1;
+
+    private final File mFile;
+
+    /**
+     * Entries of the previous parse.
+     */
+    private final Map<String, Entry> mPrevious;
+
+    /**
+     * Entries of the current parse in sheet order.
+     */
+    private final Map<String, Entry> mCurrent;
+
+    private ComponentSheetCache(File file, Map<String, Entry> previous) {
+        mFile = file;
+        mPrevious = previous;
+        mCurrent = new LinkedHashMap<String, Entry>();
+    }
+
+    /**
+     * @param workbook XLS file of a Component hand receipt
+     * @return File the cache of the workbook is saved in
+     */
+    static File fileOf(File workbook) {
+        return new File(workbook.getPath() + SUFFIX);
+    }
+
+    /**
+     * Loads the cache saved next to the workbook.
+     * <br>A missing or unreadable cache file gives an empty cache.
+     *
+     * @param workbook XLS file of a Component hand receipt
+     * @return Cache of the workbook
+     */
+    static ComponentSheetCache load(File workbook) {
+        File file = fileOf(workbook);
+        Map<String, Entry> entries = new HashMap<String, Entry>();
+        if (file.isFile()) {
+            try {
+                read(file, entries);
+            } catch (IOException e) {
+                LOG.warning("Ignoring unreadable sheet cache " + file + ": " + e);
+                entries.clear();
+            }
+        }
+        return new ComponentSheetCache(file, entries);
+    }
+
+    /**
+     * Returns a new EndItem with the values parsed from a sheet with the
+     * fingerprint by the previous parse.
+     *
+     * @param fingerprint Fingerprint of the sheet
+     * @return EndItem of the sheet, or null if the sheet was not parsed before
+     */
+    EndItem get(String fingerprint) {
+        Entry entry = mPrevious.get(fingerprint);
+        return entry == null ? null : entry.toEndItem();
+    }
+
+    /**
+     * Records the EndItem of a sheet of the current parse.
+     *
+     * @param fingerprint Fingerprint of the sheet
+     * @param item EndItem parsed from the sheet
+     */
+    void put(String fingerprint, EndItem item) {
+        mCurrent.put(fingerprint, new Entry(item));
+    }
+
+    /**
+     * Saves the entries of the current parse, replacing the cache file.
+     *
+     * @throws IOException Unable to write the cache file
+     */
+    void save() throws IOException {
+        File tmp = new File(mFile.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(mCurrent.size());
+            for (Map.Entry<String, Entry> entry: mCurrent.entrySet()) {
+                out.writeUTF(entry.getKey());
+                entry.getValue().write(out);
+            }
+        } finally {
+            out.close();
+        }
+        if (mFile.exists() && !mFile.delete() || !tmp.renameTo(mFile))
+            throw new IOException("Unable to replace " + mFile);
+    }
+
+    private static void read(File file, Map<String, Entry> entries) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                throw new IOException("Not a version " + VERSION + " sheet cache");
+            int size = in.readInt();
+            for (int i = 0; i < size; ++i) {
+                entries.put(in.readUTF(), Entry.read(in));
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    File getFile() {
+        return mFile;
+    }
+
+    /**
+     * Writes the values of the EndItem and its COEI and BII.
+     *
+     * @param out Stream to write to
+     * @param item EndItem to write
+     * @throws IOException Unable to write to the stream
+     */
+    static void writeEndItem(DataOutputStream out, EndItem item) throws IOException {
+        new Entry(item).write(out);
+    }
+
+    /**
+     * Reads an EndItem written by {@link #writeEndItem(DataOutputStream, EndItem)}.
+     *
+     * @param in Stream to read from
+     * @return New EndItem with the values read
+     * @throws IOException Unable to read the stream
+     */
+    static EndItem readEndItem(DataInputStream in) throws IOException {
+        return Entry.read(in).toEndItem();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + " " + mFile + " previous: " + mPrevious.size()
+                + " current: " + mCurrent.size();
+    }
+
+    /**
+     * Values parsed from a single sheet.
+     */
+    private static class Entry {
+
+        private final String name, lin, nsn, sn, pubDate, pubNum;
+        private final List<Component> coeis, biis;
+
+        private Entry(String name, String lin, String nsn, String sn, String pubDate, String pubNum,
+                List<Component> coeis, List<Component> biis) {
+            this.name = name;
+            this.lin = lin;
+            this.nsn = nsn;
+            this.sn = sn;
+            this.pubDate = pubDate;
+            this.pubNum = pubNum;
+            this.coeis = coeis;
+            this.biis = biis;
+        }
+
+        Entry(EndItem item) {
+            this(item.getName(), item.getLin(), item.getNSN(), item.getSn(), item.getPubDate(),
+                    item.getPubNum(), Component.of(item.getCOEI()), Component.of(item.getBII()));
+        }
+
+        EndItem toEndItem() {
+            EndItem item = new EndItem(name, lin, nsn);
+            item.setPubDate(pubDate);
+            item.setPubNum(pubNum);
+            item.setSn(sn);
+            List<EndItemComponent> coei = new ArrayList<EndItemComponent>(coeis.size());
+            for (Component comp: coeis) {
+                coei.add(new EndItemComponent(comp.name, comp.nsn, comp.authQty));
+            }
+            List<EndItemBasicIssueComponent> bii = new ArrayList<EndItemBasicIssueComponent>(biis.size());
+            for (Component comp: biis) {
+                bii.add(new EndItemBasicIssueComponent(comp.name, comp.nsn, comp.authQty));
+            }
+            item.addComponents(coei, bii);
+            return item;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            writeString(out, name);
+            writeString(out, lin);
+            writeString(out, nsn);
+            writeString(out, sn);
+            writeString(out, pubDate);
+            writeString(out, pubNum);
+            Component.write(out, coeis);
+            Component.write(out, biis);
+        }
+
+        static Entry read(DataInputStream in) throws IOException {
+            return new Entry(readString(in), readString(in), readString(in), readString(in),
+                    readString(in), readString(in), Component.read(in), Component.read(in));
+        }
+    }
+
+    /**
+     * Values of a COEI or BII.
+     */
+    private static class Component {
+
+        private final String name, nsn;
+        private final int authQty;
+
+        private Component(String name, String nsn, int authQty) {
+            this.name = name;
+            this.nsn = nsn;
+            this.authQty = authQty;
+        }
+
+        static List<Component> of(List<? extends AccountableComponent> comps) {
+            List<Component> list = new ArrayList<Component>(comps.size());
+            for (AccountableComponent comp: comps) {
+                list.add(new Component(comp.getName(), comp.getNSN(), comp.getAuthQty()));
+            }
+            return list;
+        }
+
+        static void write(DataOutputStream out, List<Component> comps) throws IOException {
+            out.writeInt(comps.size());
+            for (Component comp: comps) {
+                writeString(out, comp.name);
+                writeString(out, comp.nsn);
+                out.writeInt(comp.authQty);
+            }
+        }
+
+        static List<Component> read(DataInputStream in) throws IOException {
+            int size = in.readInt();
+            if (size < 0) throw new IOException("Negative number of components " + size);
+            List<Component> comps = new ArrayList<Component>(Math.min(size, 1024));
+            for (int i = 0; i < size; ++i) {
+                comps.add(new Component(readString(in), readString(in), in.readInt()));
+            }
+            return comps;
+        }
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) out.writeUTF(value);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,193 @@
+package com.hotan.ninetripleone.supply.forms;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.apache.poi.hssf.usermodel.HSSFCell;
+import org.apache.poi.hssf.usermodel.HSSFRow;
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.ss.usermodel.DataFormatter;
+
+import com.hotan.ninetripleone.supply.model.EndItemBasicIssueComponent;
+import com.hotan.ninetripleone.supply.model.EndItemComponent;
+
+/**
+ * Reads the COEI and BII tables of a single Component hand receipt sheet in
+ * one pass from the top of the tables to the last row.
+ * <br>The COEI table starts at the label in the first table row, the BII
+ * table at a label in any later row.  Each table runs until the first row
+ * without an item description.
+ * <br>Every cell is read at most once, {@link #getCellReads()} counts the reads.
+ * A usermodel sheet is read in place, only the cells the tables need are read.
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+public class ComponentTableScanner {
+
+    private static final Logger LOG = Logger.getLogger(ComponentTableScanner.class.getSimpleName());
+
+    // Component labels within ComponentHandReceipt
+    private static final String COEI_LABEL = "COMPONENTS OF END ITEM (COEI)";
+    private static final String BII_LABEL = "BASIC ISSUE ITEMS (BII)";
+
+    /**
+     * First row of the tables.
+     */
+    static final int FIRST_ROW = 13;
+
+    // Columns of the tables
+    private static final int NSN_COL = 0;
+    private static final int NAME_COL = 2;
+    private static final int AUTH_QTY_COL = 7;
+
+    private enum Table {NONE, COEI, BII}
+
+    /**
+     * Cells of the sheet being scanned.
+     */
+    private interface Cells {
+
+        /**
+         * @return null if no cell exists, or the value of the cell
+         */
+        String get(int row, int col);
+
+        /**
+         * @return 0-based index of the last row with cells
+         */
+        int getLastRowNum();
+    }
+
+    private final List<EndItemComponent> mCOEIs;
+    private final List<EndItemBasicIssueComponent> mBIIs;
+
+    private int mReads;
+
+    private ComponentTableScanner() {
+        mCOEIs = new ArrayList<EndItemComponent>();
+        mBIIs = new ArrayList<EndItemBasicIssueComponent>();
+    }
+
+    /**
+     * Reads the COEI and BII tables of the sheet.
+     *
+     * @param sheet Sheet of a single end item
+     * @return Scanner holding the components of the sheet
+     */
+    public static ComponentTableScanner scan(final HSSFSheet sheet) {
+        if (sheet == null)
+            throw new NullPointerException(ComponentTableScanner.class.getSimpleName() + ".scan() Null sheet");
+        final DataFormatter formatter = new DataFormatter();
+        return scan(new Cells() {
+
+            @Override
+            public String get(int row, int col) {
+                HSSFRow cells = sheet.getRow(row);
+                HSSFCell cell = cells == null ? null : cells.getCell(col);
+                return cell == null ? null : SheetBuffer.getValue(cell, formatter);
+            }
+
+            @Override
+            public int getLastRowNum() {
+                return sheet.getLastRowNum();
+            }
+        });
+    }
+
+    static ComponentTableScanner scan(final SheetBuffer sheet) {
+        return scan(new Cells() {
+
+            @Override
+            public String get(int row, int col) {
+                return sheet.getString(row, col);
+            }
+
+            @Override
+            public int getLastRowNum() {
+                return sheet.getLastRowNum();
+            }
+        });
+    }
+
+    private static ComponentTableScanner scan(Cells sheet) {
+        ComponentTableScanner scanner = new ComponentTableScanner();
+        scanner.read(sheet);
+        return scanner;
+    }
+
+    private void read(Cells sheet) {
+        // A sheet without a first table label has no components
+        String label = read(sheet, FIRST_ROW, NAME_COL);
+        if (isBlank(label)) return;
+        Table table = label.trim().equals(COEI_LABEL) ? Table.COEI : tableOf(label);
+
+        int lastRow = sheet.getLastRowNum();
+        for (int row = FIRST_ROW + 1; row <= lastRow; ++row) {
+            String name = read(sheet, row, NAME_COL);
+            if (isBlank(name)) {
+                table = Table.NONE;
+            } else if (tableOf(name) == Table.BII) {
+                table = Table.BII;
+            } else if (table != Table.NONE) {
+                String nsn = read(sheet, row, NSN_COL);
+                int authQty = getQuantity(read(sheet, row, AUTH_QTY_COL), name);
+                if (table == Table.COEI) {
+                    mCOEIs.add(new EndItemComponent(name, nsn, authQty));
+                } else {
+                    mBIIs.add(new EndItemBasicIssueComponent(name, nsn, authQty));
+                }
+            }
+        }
+    }
+
+    private String read(Cells sheet, int row, int col) {
+        mReads++;
+        return sheet.get(row, col);
+    }
+
+    private static Table tableOf(String label) {
+        return label.trim().equals(BII_LABEL) ? Table.BII : Table.NONE;
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.trim().isEmpty();
+    }
+
+    private static int getQuantity(String value, String name) {
+        try {
+            return Integer.valueOf(value);
+        } catch (NumberFormatException e) {
+            LOG.warning("Unable to extract quantity for component " + name);
+            return 0;
+        }
+    }
+
+    /**
+     * @return Components of end item in sheet order
+     */
+    public List<EndItemComponent> getCOEIs() {
+        return Collections.unmodifiableList(mCOEIs);
+    }
+
+    /**
+     * @return Basic issue items in sheet order
+     */
+    public List<EndItemBasicIssueComponent> getBIIs() {
+        return Collections.unmodifiableList(mBIIs);
+    }
+
+    /**
+     * @return Number of cells read from the sheet
+     */
+    public int getCellReads() {
+        return mReads;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + " COEI: " + mCOEIs.size() + " BII: " + mBIIs.size()
+                + " reads: " + mReads;
+    }
+}
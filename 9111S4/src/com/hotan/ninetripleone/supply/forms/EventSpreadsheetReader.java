@@ -0,0 +1,155 @@
+package com.hotan.ninetripleone.supply.forms;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.poi.hssf.eventusermodel.AbortableHSSFListener;
+import org.apache.poi.hssf.eventusermodel.HSSFEventFactory;
+import org.apache.poi.hssf.eventusermodel.HSSFRequest;
+import org.apache.poi.hssf.eventusermodel.HSSFUserException;
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.BlankRecord;
+import org.apache.poi.hssf.record.BoundSheetRecord;
+import org.apache.poi.hssf.record.EOFRecord;
+import org.apache.poi.hssf.record.LabelRecord;
+import org.apache.poi.hssf.record.LabelSSTRecord;
+import org.apache.poi.hssf.record.MulBlankRecord;
+import org.apache.poi.hssf.record.MulRKRecord;
+import org.apache.poi.hssf.record.NumberRecord;
+import org.apache.poi.hssf.record.RKRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.SSTRecord;
+import org.apache.poi.poifs.filesystem.NPOIFSFileSystem;
+
+import com.hotan.ninetripleone.supply.util.FormatException;
+
+/**
+ * Streams the BIFF records of the file with the HSSF event API, without
+ * building a HSSFWorkbook.
+ * <br>The file is read in place, and reading is aborted as soon as the
+ * handler stops it.
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+class EventSpreadsheetReader implements SpreadsheetReader {
+
+    @Override
+    public void read(File file, RowHandler handler) throws IOException, FormatException {
+        Listener listener = new Listener(handler);
+        HSSFRequest request = new HSSFRequest();
+        request.addListenerForAllRecords(listener);
+        NPOIFSFileSystem fs = new NPOIFSFileSystem(file, true);
+        try {
+            new HSSFEventFactory().abortableProcessWorkbookEvents(request, fs.getRoot());
+        } catch (HSSFUserException e) {
+            throw new IOException("Unable to read " + file, e);
+        } finally {
+            fs.close();
+        }
+        if (listener.mError != null) throw listener.mError;
+    }
+
+    /**
+     * Listener that hands the cells of every sheet to the handler one row at a time.
+     */
+    private static class Listener extends AbortableHSSFListener {
+
+        private final RowHandler mHandler;
+
+        private final RowBuffer mRow = new RowBuffer();
+
+        private final List<String> mSheetNames = new ArrayList<String>();
+
+        private SSTRecord mStrings;
+
+        /**
+         * Index of the worksheet whose records are being read, -1 for the workbook globals.
+         */
+        private int mSheetIndex = -1;
+
+        private boolean mInSheet;
+
+        private FormatException mError;
+
+        Listener(RowHandler handler) {
+            mHandler = handler;
+        }
+
+        @Override
+        public short abortableProcessRecord(Record record) {
+            try {
+                return process(record) ? 0 : (short) 1;
+            } catch (FormatException e) {
+                mError = e;
+                return 1;
+            }
+        }
+
+        private boolean process(Record record) throws FormatException {
+            switch (record.getSid()) {
+            case BoundSheetRecord.sid:
+                mSheetNames.add(((BoundSheetRecord) record).getSheetname());
+                break;
+            case BOFRecord.sid:
+                if (((BOFRecord) record).getType() == BOFRecord.TYPE_WORKSHEET) {
+                    mSheetIndex++;
+                    mInSheet = true;
+                    mHandler.startSheet(mSheetIndex,
+                            mSheetIndex < mSheetNames.size() ? mSheetNames.get(mSheetIndex) : null);
+                }
+                break;
+            case SSTRecord.sid:
+                mStrings = (SSTRecord) record;
+                break;
+            case LabelSSTRecord.sid:
+                LabelSSTRecord sst = (LabelSSTRecord) record;
+                onCell(sst.getRow(), sst.getColumn(), mStrings.getString(sst.getSSTIndex()).getString());
+                break;
+            case LabelRecord.sid:
+                LabelRecord label = (LabelRecord) record;
+                onCell(label.getRow(), label.getColumn(), label.getValue());
+                break;
+            case BlankRecord.sid:
+                BlankRecord blank = (BlankRecord) record;
+                onCell(blank.getRow(), blank.getColumn(), "");
+                break;
+            case MulBlankRecord.sid:
+                MulBlankRecord blanks = (MulBlankRecord) record;
+                for (int i = 0; i < blanks.getNumColumns(); ++i) {
+                    onCell(blanks.getRow(), blanks.getFirstColumn() + i, "");
+                }
+                break;
+            case NumberRecord.sid:
+                NumberRecord number = (NumberRecord) record;
+                onCell(number.getRow(), number.getColumn(), RowBuffer.format(number.getValue()));
+                break;
+            case RKRecord.sid:
+                RKRecord rk = (RKRecord) record;
+                onCell(rk.getRow(), rk.getColumn(), RowBuffer.format(rk.getRKNumber()));
+                break;
+            case MulRKRecord.sid:
+                MulRKRecord rks = (MulRKRecord) record;
+                for (int i = 0; i < rks.getNumColumns(); ++i) {
+                    onCell(rks.getRow(), rks.getFirstColumn() + i, RowBuffer.format(rks.getRKNumberAt(i)));
+                }
+                break;
+            case EOFRecord.sid:
+                if (mInSheet) {
+                    mInSheet = false;
+                    mRow.flush(mHandler);
+                    return mHandler.endSheet(mSheetIndex);
+                }
+                break;
+            default:
+                break;
+            }
+            return true;
+        }
+
+        private void onCell(int row, int col, String value) throws FormatException {
+            if (mInSheet) mRow.setCell(mHandler, row, col, value);
+        }
+    }
+}
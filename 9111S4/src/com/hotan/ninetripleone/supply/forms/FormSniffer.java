@@ -0,0 +1,166 @@
+package com.hotan.ninetripleone.supply.forms;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.poi.hssf.eventusermodel.AbortableHSSFListener;
+import org.apache.poi.hssf.eventusermodel.HSSFEventFactory;
+import org.apache.poi.hssf.eventusermodel.HSSFRequest;
+import org.apache.poi.hssf.eventusermodel.HSSFUserException;
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.EOFRecord;
+import org.apache.poi.hssf.record.LabelRecord;
+import org.apache.poi.hssf.record.LabelSSTRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.SSTRecord;
+import org.apache.poi.poifs.filesystem.DirectoryNode;
+import org.apache.poi.poifs.filesystem.NPOIFSFileSystem;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+
+/**
+ * Tells which form a XLS file holds without building a HSSFWorkbook.
+ * <br>The labels of the first rows of the first sheet are read with the HSSF
+ * event API, and reading stops as soon as a label identifies the form, so
+ * only the workbook globals and the first few records of the first sheet
+ * are ever parsed.
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+public class FormSniffer {
+
+    /**
+     * Last row of the first sheet searched for labels.
+     */
+    static final int MAX_ROW = UnitHRLayout.MAX_HEADING_ROW;
+
+    // Titles that identify a form on their own
+    private static final String UNIT_TITLE = "UNIT LEVEL HAND RECEIPT";
+    private static final String COMPONENT_TITLE = "COMPONENT SUB-HAND RECEIPT";
+    private static final String DA_2404_TITLE = "EQUIPMENT INSPECTION AND MAINTENANCE WORKSHEET";
+
+    // Header labels of a Component hand receipt
+    private static final String UICDESC_LABEL = "UIC/DESC:";
+    private static final String END_ITEM_NSN_LABEL = "END ITEM NSN:";
+
+    private FormSniffer() {}
+
+    /**
+     * Returns the form the XLS file holds.
+     * <br>The file is read in place, not copied into memory.
+     *
+     * @param file XLS file
+     * @return Form of the file, {@link FormType#UNKNOWN} if no label matched
+     * @throws IOException Unable to read the file as a XLS file
+     */
+    public static FormType sniff(File file) throws IOException {
+        if (file == null)
+            throw new NullPointerException("FormSniffer.sniff(), Null file");
+        NPOIFSFileSystem fs = new NPOIFSFileSystem(file, true);
+        try {
+            return sniff(fs.getRoot());
+        } finally {
+            fs.close();
+        }
+    }
+
+    /**
+     * Returns the form the XLS stream holds.
+     *
+     * @param in Stream of a XLS file, not closed
+     * @return Form of the stream, {@link FormType#UNKNOWN} if no label matched
+     * @throws IOException Unable to read the stream as a XLS file
+     */
+    public static FormType sniff(InputStream in) throws IOException {
+        if (in == null)
+            throw new NullPointerException("FormSniffer.sniff(), Null InputStream");
+        return sniff(new POIFSFileSystem(in).getRoot());
+    }
+
+    private static FormType sniff(DirectoryNode root) throws IOException {
+        Listener listener = new Listener();
+        HSSFRequest request = new HSSFRequest();
+        request.addListener(listener, BOFRecord.sid);
+        request.addListener(listener, EOFRecord.sid);
+        request.addListener(listener, SSTRecord.sid);
+        request.addListener(listener, LabelSSTRecord.sid);
+        request.addListener(listener, LabelRecord.sid);
+        try {
+            new HSSFEventFactory().abortableProcessWorkbookEvents(request, root);
+        } catch (HSSFUserException e) {
+            throw new IOException("Unable to sniff workbook", e);
+        }
+        return listener.mType;
+    }
+
+    /**
+     * Returns the form identified by the label of a cell.
+     *
+     * @param text Text of a cell
+     * @return Form the label belongs to, null if it is not a title
+     */
+    static FormType ofTitle(String text) {
+        if (text.contains(UNIT_TITLE)) return FormType.UNIT;
+        if (text.contains(COMPONENT_TITLE)) return FormType.COMPONENT;
+        if (text.contains(DA_2404_TITLE)) return FormType.DA_2404;
+        return null;
+    }
+
+    /**
+     * Listener that aborts once the form is known, or once the cells of the
+     * first sheet pass {@link FormSniffer#MAX_ROW}.
+     */
+    private static class Listener extends AbortableHSSFListener {
+
+        private FormType mType = FormType.UNKNOWN;
+
+        private SSTRecord mStrings;
+
+        /**
+         * Index of the worksheet whose records are being read, -1 for the workbook globals.
+         */
+        private int mSheetIndex = -1;
+
+        private boolean mUicDesc, mEndItemNsn;
+
+        @Override
+        public short abortableProcessRecord(Record record) {
+            switch (record.getSid()) {
+            case BOFRecord.sid:
+                if (((BOFRecord) record).getType() == BOFRecord.TYPE_WORKSHEET && ++mSheetIndex > 0)
+                    return 1;
+                return 0;
+            case SSTRecord.sid:
+                mStrings = (SSTRecord) record;
+                return 0;
+            case LabelSSTRecord.sid:
+                LabelSSTRecord sst = (LabelSSTRecord) record;
+                return onCell(sst.getRow(), mStrings.getString(sst.getSSTIndex()).getString());
+            case LabelRecord.sid:
+                LabelRecord label = (LabelRecord) record;
+                return onCell(label.getRow(), label.getValue());
+            case EOFRecord.sid:
+                return (short) (mSheetIndex == 0 ? 1 : 0);
+            default:
+                return 0;
+            }
+        }
+
+        private short onCell(int row, String text) {
+            if (mSheetIndex != 0) return 0;
+            if (row > MAX_ROW) return 1;
+
+            FormType type = ofTitle(text);
+            if (type == null) {
+                String label = text.trim();
+                mUicDesc |= label.startsWith(UICDESC_LABEL);
+                mEndItemNsn |= label.startsWith(END_ITEM_NSN_LABEL);
+                // Only a Component hand receipt has both without a title
+                if (mUicDesc && mEndItemNsn) type = FormType.COMPONENT;
+            }
+            if (type == null) return 0;
+            mType = type;
+            return 1;
+        }
+    }
+}
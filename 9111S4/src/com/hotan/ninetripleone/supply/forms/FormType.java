@@ -0,0 +1,30 @@
+package com.hotan.ninetripleone.supply.forms;
+
+/**
+ * Kind of form a workbook holds.
+ *
+ * @see FormSniffer
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+public enum FormType {
+
+    /**
+     * Unit level hand receipt, parsed by {@link UnitLevelHandReceipt}.
+     */
+    UNIT,
+
+    /**
+     * Component sub-hand receipt, parsed by {@link ComponentHandReceipt}.
+     */
+    COMPONENT,
+
+    /**
+     * DA 2404 Equipment Inspection and Maintenance Worksheet.
+     */
+    DA_2404,
+
+    /**
+     * None of the forms above.
+     */
+    UNKNOWN
+}
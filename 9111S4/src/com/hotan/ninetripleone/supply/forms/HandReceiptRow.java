@@ -0,0 +1,240 @@
+package com.hotan.ninetripleone.supply.forms;
+
+import java.util.Arrays;
+
+import org.apache.poi.hssf.usermodel.HSSFCell;
+import org.apache.poi.hssf.usermodel.HSSFRow;
+
+import com.hotan.ninetripleone.supply.model.SerialNumberSet;
+
+/**
+ * A row of a Unit level hand receipt that has been labeled by a single
+ * forward scan of the sheet.
+ * <br>The same instance is reused for every row of a scan, cell values are
+ * read at most once per row and kept in a buffer until the next row.
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+public class HandReceiptRow {
+
+    /**
+     * What a row of the hand receipt represents.
+     */
+    public enum Type {
+        /**
+         * First line of an end item with its LIN, NSN, name and quantity.
+         */
+        HEADER,
+        /**
+         * Line of serial numbers directly below a header or another serial line.
+         */
+        SERIAL,
+        /**
+         * Anything else.
+         */
+        OTHER
+    }
+
+    /**
+     * Number of leading cells of a row that are used.
+     */
+    static final int NUM_COLUMNS = UnitHRLayout.MAX_COLUMNS;
+
+    private final String[] mCells;
+    private final boolean[] mRead;
+    private HSSFRow mSource;
+
+    /**
+     * Layout of the sheet, null until the column heading row is found.
+     */
+    private UnitHRLayout mLayout;
+
+    private int mRowNum;
+    private Type mType;
+
+    /**
+     * Row number of the last HEADER or SERIAL row.
+     */
+    private int mLastLabeled;
+    private Type mLastLabeledType;
+
+    HandReceiptRow() {
+        mCells = new String[NUM_COLUMNS];
+        mRead = new boolean[NUM_COLUMNS];
+        mRowNum = -1;
+        mLastLabeled = -1;
+    }
+
+    /**
+     * Moves this buffer to the next row.
+     *
+     * @param rowNum 0-based index of the row
+     * @param source Row to lazily read cells from, or null if the cells
+     *          will be set through {@link #setCell(int, String)}
+     */
+    void reset(int rowNum, HSSFRow source) {
+        mRowNum = rowNum;
+        mSource = source;
+        mType = null;
+        Arrays.fill(mCells, null);
+        Arrays.fill(mRead, source == null);
+    }
+
+    /**
+     * Sets the value of a cell of the current row.
+     *
+     * @param col 0-based column of the cell
+     * @param value Value of the cell
+     */
+    void setCell(int col, String value) {
+        if (col < NUM_COLUMNS) {
+            mCells[col] = value;
+        }
+    }
+
+    /**
+     * Sets the layout used to label the following rows.
+     *
+     * @param layout Layout of the sheet
+     */
+    void setLayout(UnitHRLayout layout) {
+        mLayout = layout;
+    }
+
+    /**
+     * @return Layout of the sheet, or null if it is not known yet
+     */
+    public UnitHRLayout getLayout() {
+        return mLayout;
+    }
+
+    /**
+     * Returns the values of the cells of the current row.
+     *
+     * @return Copy of the cell values, null for missing cells
+     */
+    String[] getCells() {
+        String[] cells = new String[NUM_COLUMNS];
+        for (int col = 0; col < NUM_COLUMNS; ++col) {
+            String value = getCell(col);
+            cells[col] = value.isEmpty() ? null : value;
+        }
+        return cells;
+    }
+
+    /**
+     * Labels the current row.  Must be called once per row in ascending row order.
+     * <br>Every row is OTHER until the layout is set.
+     *
+     * @return Type of the current row
+     */
+    Type classify() {
+        if (mLayout == null || mRowNum < mLayout.getFirstRow()) {
+            mType = Type.OTHER;
+        } else if (isEndItemHeader(getLIN(), getNSN(), getName())) {
+            mType = Type.HEADER;
+        } else if (mRowNum == mLastLabeled + 1 && hasSerialNumber()) {
+            mType = Type.SERIAL;
+        } else {
+            mType = Type.OTHER;
+        }
+        if (mType != Type.OTHER) {
+            mLastLabeled = mRowNum;
+            mLastLabeledType = mType;
+        }
+        return mType;
+    }
+
+    /**
+     * The first row under a header is only serial numbers if the LIN column
+     * has a value, the following rows may have them in any serial column.
+     */
+    private boolean hasSerialNumber() {
+        if (!getCell(mLayout.getSerialCol(0)).isEmpty()) return true;
+        if (mLastLabeledType == Type.HEADER) return false;
+        for (int i = 1; i < mLayout.getNumSerialCols(); ++i) {
+            if (!getCell(mLayout.getSerialCol(i)).isEmpty()) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Judges whether the LIN, NSN and name cell values of a row
+     * belong to an end Item header.
+     *
+     * @param lin Value of the LIN cell
+     * @param nsn Value of the NSN cell
+     * @param name Value of the Nomenclature cell
+     * @return true if it is header false otherwise.
+     */
+    static boolean isEndItemHeader(String lin, String nsn, String name) {
+        if (lin == null || lin.length() != 6) return false;
+        if (nsn == null || nsn.length() != 13) return false;
+        if (name == null || name.isEmpty()) return false;
+        return true;
+    }
+
+    public Type getType() {
+        return mType;
+    }
+
+    public int getRowNum() {
+        return mRowNum;
+    }
+
+    /**
+     * Returns the String value of a cell of this row.
+     *
+     * @param col 0-based column of the cell
+     * @return Value of the cell, empty if there is no cell
+     */
+    public String getCell(int col) {
+        if (col >= NUM_COLUMNS) return "";
+        if (!mRead[col]) {
+            HSSFCell cell = mSource.getCell(col);
+            mCells[col] = cell == null ? null : cell.getStringCellValue();
+            mRead[col] = true;
+        }
+        return mCells[col] == null ? "" : mCells[col];
+    }
+
+    public String getLIN() {
+        return getCell(layout().getLINCol());
+    }
+
+    public String getNSN() {
+        return getCell(layout().getNSNCol());
+    }
+
+    public String getName() {
+        return getCell(layout().getNameCol());
+    }
+
+    /**
+     * @return Quantity of the end item on a HEADER row
+     */
+    public int getQty() {
+        return Integer.valueOf(getCell(layout().getQtyCol()));
+    }
+
+    /**
+     * Adds the serial numbers of a SERIAL row to the set.
+     *
+     * @param serials Set to add the non empty serial numbers to
+     */
+    public void getSerialNumbers(SerialNumberSet serials) {
+        for (int i = 0; i < layout().getNumSerialCols(); ++i) {
+            String serial = getCell(layout().getSerialCol(i));
+            if (!serial.isEmpty()) serials.add(serial);
+        }
+    }
+
+    private UnitHRLayout layout() {
+        return mLayout == null ? UnitHRLayout.DEFAULT : mLayout;
+    }
+
+    @Override
+    public String toString() {
+        return "HandReceiptRow " + mRowNum + " " + mType;
+    }
+}
@@ -0,0 +1,74 @@
+package com.hotan.ninetripleone.supply.forms;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+
+/**
+ * Single forward scan over the rows of a Unit level hand receipt sheet
+ * that labels every row once.
+ * <br>Every call to {@link #next()} returns the same {@link HandReceiptRow}
+ * moved to the next existing row.
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+public class HandReceiptRowIterator implements Iterator<HandReceiptRow> {
+
+    private final HSSFSheet mSheet;
+    private final HandReceiptRow mRow;
+    private final int mLastRow;
+    private int mNextRow;
+
+    /**
+     * Scans the sheet starting at the first row that can hold an end item,
+     * with the layout detected for the sheet.
+     *
+     * @param sheet Sheet to scan
+     */
+    public HandReceiptRowIterator(HSSFSheet sheet) {
+        this(sheet, sheet == null ? null : UnitHRLayout.of(sheet));
+    }
+
+    /**
+     * Scans the sheet starting at the first row that can hold an end item.
+     *
+     * @param sheet Sheet to scan
+     * @param layout Layout of the sheet
+     */
+    public HandReceiptRowIterator(HSSFSheet sheet, UnitHRLayout layout) {
+        if (sheet == null)
+            throw new NullPointerException(getClass().getSimpleName() + "() Null sheet");
+        if (layout == null)
+            throw new NullPointerException(getClass().getSimpleName() + "() Null layout");
+        mSheet = sheet;
+        mRow = new HandReceiptRow();
+        mRow.setLayout(layout);
+        mLastRow = sheet.getLastRowNum();
+        mNextRow = layout.getFirstRow();
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (mNextRow <= mLastRow && mSheet.getRow(mNextRow) == null) {
+            ++mNextRow;
+        }
+        return mNextRow <= mLastRow;
+    }
+
+    @Override
+    public HandReceiptRow next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        mRow.reset(mNextRow, mSheet.getRow(mNextRow));
+        mRow.classify();
+        ++mNextRow;
+        return mRow;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " is read only");
+    }
+
+}
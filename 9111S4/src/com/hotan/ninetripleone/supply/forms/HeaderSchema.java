@@ -0,0 +1,324 @@
+package com.hotan.ninetripleone.supply.forms;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import com.hotan.ninetripleone.supply.util.FormatException;
+import com.hotan.ninetripleone.supply.util.POIUtil.IndexPair;
+
+/**
+ * Declares where every header field of a form is and how its value is cut
+ * out of the text of its cell.
+ * <br>A field is the text of its cell after the prefix, or one part of it
+ * between splitter characters.  The schema is compiled once into a
+ * {@link Plan} that reads every cell once per sheet and cuts every field out
+ * of the characters of the cell, so no intermediate Strings are built.
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ * @param <F> Enum of the fields
+ */
+class HeaderSchema<F extends Enum<F>> {
+
+    /**
+     * What is done with the spaces of a value.
+     */
+    enum Spaces {
+        /** Value is kept as is. */
+        KEEP,
+        /** Leading and trailing whitespace is removed. */
+        TRIM,
+        /** Every space is removed. */
+        REMOVE
+    }
+
+    private final String mOwner;
+
+    private final Class<F> mFieldType;
+
+    private final Map<F, Field<F>> mFields;
+
+    private HeaderSchema(Class<?> owner, Class<F> fieldType) {
+        mOwner = owner.getSimpleName();
+        mFieldType = fieldType;
+        mFields = new EnumMap<F, Field<F>>(fieldType);
+    }
+
+    /**
+     * @param owner Form the schema belongs to, named in the FormatExceptions
+     * @param fieldType Enum of the fields
+     * @return Empty schema
+     */
+    static <F extends Enum<F>> HeaderSchema<F> of(Class<?> owner, Class<F> fieldType) {
+        return new HeaderSchema<F>(owner, fieldType);
+    }
+
+    /**
+     * Declares a field that is the whole text of its cell after the prefix.
+     *
+     * @param field Field to declare
+     * @param cell Cell of the field
+     * @param prefix Label in front of the value
+     * @param spaces What to do with the spaces of the value
+     * @return This schema
+     */
+    HeaderSchema<F> field(F field, IndexPair cell, String prefix, Spaces spaces) {
+        return add(new Field<F>(field, cell, prefix, (char) 0, 0, spaces, true));
+    }
+
+    /**
+     * Declares a field that is one part of the text of its cell after the prefix.
+     *
+     * @param field Field to declare
+     * @param cell Cell of the field
+     * @param prefix Label in front of the value
+     * @param splitter Character between the parts of the text
+     * @param part 0-based index of the part that is the value
+     * @param spaces What to do with the spaces of the value
+     * @return This schema
+     */
+    HeaderSchema<F> field(F field, IndexPair cell, String prefix, char splitter, int part, Spaces spaces) {
+        return add(new Field<F>(field, cell, prefix, splitter, part, spaces, true));
+    }
+
+    /**
+     * Declares a field that is the whole text of its cell after the prefix,
+     * or null when the cell does not exist.
+     *
+     * @param field Field to declare
+     * @param cell Cell of the field
+     * @param prefix Label in front of the value
+     * @param spaces What to do with the spaces of the value
+     * @return This schema
+     */
+    HeaderSchema<F> optional(F field, IndexPair cell, String prefix, Spaces spaces) {
+        return add(new Field<F>(field, cell, prefix, (char) 0, 0, spaces, false));
+    }
+
+    /**
+     * Declares a field that is one part of the text of its cell after the
+     * prefix, or null when the cell does not exist.
+     *
+     * @param field Field to declare
+     * @param cell Cell of the field
+     * @param prefix Label in front of the value
+     * @param splitter Character between the parts of the text
+     * @param part 0-based index of the part that is the value
+     * @param spaces What to do with the spaces of the value
+     * @return This schema
+     */
+    HeaderSchema<F> optional(F field, IndexPair cell, String prefix, char splitter, int part, Spaces spaces) {
+        return add(new Field<F>(field, cell, prefix, splitter, part, spaces, false));
+    }
+
+    private HeaderSchema<F> add(Field<F> field) {
+        if (mFields.containsKey(field.mField))
+            throw new IllegalArgumentException(getClass().getSimpleName() + " " + field.mField
+                    + " declared twice");
+        mFields.put(field.mField, field);
+        return this;
+    }
+
+    /**
+     * Groups the fields by their cell.
+     *
+     * @return Plan that extracts the fields of the schema
+     */
+    Plan<F> compile() {
+        for (F field: mFieldType.getEnumConstants()) {
+            if (!mFields.containsKey(field))
+                throw new IllegalStateException(getClass().getSimpleName() + " " + field + " not declared");
+        }
+
+        // Read the cells in the order they are stored
+        List<IndexPair> cells = new ArrayList<IndexPair>();
+        for (Field<F> field: mFields.values()) {
+            if (!cells.contains(field.mCell)) cells.add(field.mCell);
+        }
+        IndexPair[] order = cells.toArray(new IndexPair[cells.size()]);
+        Arrays.sort(order, new Comparator<IndexPair>() {
+
+            @Override
+            public int compare(IndexPair a, IndexPair b) {
+                return a.row != b.row ? Integer.compare(a.row, b.row) : Integer.compare(a.col, b.col);
+            }
+        });
+
+        @SuppressWarnings({"rawtypes", "unchecked"})
+        Field<F>[][] fieldsOfCell = new Field[order.length][];
+        for (int i = 0; i < order.length; ++i) {
+            List<Field<F>> fields = new ArrayList<Field<F>>();
+            for (Field<F> field: mFields.values()) {
+                if (field.mCell.equals(order[i])) fields.add(field);
+            }
+            @SuppressWarnings({"rawtypes", "unchecked"})
+            Field<F>[] array = fields.toArray(new Field[fields.size()]);
+            fieldsOfCell[i] = array;
+        }
+        return new Plan<F>(mOwner, order, fieldsOfCell, mFields.size());
+    }
+
+    /**
+     * Compiled schema.
+     *
+     * @param <F> Enum of the fields
+     */
+    static class Plan<F extends Enum<F>> {
+
+        private final String mOwner;
+
+        private final IndexPair[] mCells;
+
+        /**
+         * Fields of every cell of {@link #mCells}.
+         */
+        private final Field<F>[][] mFields;
+
+        private final int mSize;
+
+        private Plan(String owner, IndexPair[] cells, Field<F>[][] fields, int size) {
+            mOwner = owner;
+            mCells = cells;
+            mFields = fields;
+            mSize = size;
+        }
+
+        /**
+         * Extracts every field of the schema from the sheet.
+         *
+         * @param sheet Sheet to extract the fields from
+         * @return Values of the fields
+         * @throws FormatException A required cell does not exist or does not have the part of a field
+         */
+        Values<F> extract(SheetBuffer sheet) throws FormatException {
+            String[] values = new String[mSize];
+            for (int i = 0; i < mCells.length; ++i) {
+                String cell = sheet.getString(mCells[i]);
+                for (Field<F> field: mFields[i]) {
+                    values[field.mField.ordinal()] = field.extract(mOwner, cell);
+                }
+            }
+            return new Values<F>(values);
+        }
+    }
+
+    /**
+     * Values extracted by a {@link Plan}.
+     *
+     * @param <F> Enum of the fields
+     */
+    static class Values<F extends Enum<F>> {
+
+        private final String[] mValues;
+
+        private Values(String[] values) {
+            mValues = values;
+        }
+
+        /**
+         * @param field Field of the schema
+         * @return Value of the field, null for an optional field without a cell
+         */
+        String get(F field) {
+            return mValues[field.ordinal()];
+        }
+    }
+
+    /**
+     * Declaration of a single field.
+     */
+    private static class Field<F extends Enum<F>> {
+
+        private final F mField;
+        private final IndexPair mCell;
+        private final String mPrefix;
+        private final char mSplitter;
+        private final int mPart;
+        private final Spaces mSpaces;
+        private final boolean mRequired;
+
+        Field(F field, IndexPair cell, String prefix, char splitter, int part, Spaces spaces,
+                boolean required) {
+            if (field == null || cell == null || spaces == null)
+                throw new NullPointerException("HeaderSchema.Field() Null field, cell or spaces");
+            if (part < 0)
+                throw new IllegalArgumentException("HeaderSchema.Field() Negative part " + part);
+            mField = field;
+            mCell = cell;
+            // Whitespace around the prefix is skipped anyway
+            mPrefix = prefix == null ? "" : prefix.trim();
+            mSplitter = splitter;
+            mPart = part;
+            mSpaces = spaces;
+            mRequired = required;
+        }
+
+        String extract(String owner, String cell) throws FormatException {
+            if (cell == null) {
+                if (!mRequired) return null;
+                throw new FormatException(owner + " Unable to find cell for " + mField);
+            }
+
+            int start = skipSpaces(cell, 0, cell.length());
+            int end = trimEnd(cell, start, cell.length());
+            if (cell.startsWith(mPrefix, start))
+                start = skipSpaces(cell, start + mPrefix.length(), end);
+
+            if (mSplitter != 0) {
+                for (int i = 0; i < mPart; ++i) {
+                    int at = cell.indexOf(mSplitter, start);
+                    if (at < 0 || at >= end)
+                        throw new FormatException(owner + " No part " + mPart + " of " + mField
+                                + " in \"" + cell + "\"");
+                    start = at + 1;
+                }
+                int at = cell.indexOf(mSplitter, start);
+                if (at >= 0 && at < end) end = at;
+            }
+
+            switch (mSpaces) {
+            case TRIM:
+                start = skipSpaces(cell, start, end);
+                end = trimEnd(cell, start, end);
+                return cell.substring(start, end);
+            case REMOVE:
+                return removeSpaces(cell, start, end);
+            default:
+                return cell.substring(start, end);
+            }
+        }
+
+        private static int skipSpaces(String s, int start, int end) {
+            while (start < end && s.charAt(start) <= ' ') start++;
+            return start;
+        }
+
+        private static int trimEnd(String s, int start, int end) {
+            while (end > start && s.charAt(end - 1) <= ' ') end--;
+            return end;
+        }
+
+        private static String removeSpaces(String s, int start, int end) {
+            int spaces = 0;
+            for (int i = start; i < end; ++i) {
+                if (s.charAt(i) == ' ') spaces++;
+            }
+            if (spaces == 0) return s.substring(start, end);
+            char[] chars = new char[end - start - spaces];
+            int n = 0;
+            for (int i = start; i < end; ++i) {
+                char c = s.charAt(i);
+                if (c != ' ') chars[n++] = c;
+            }
+            return new String(chars);
+        }
+
+        @Override
+        public String toString() {
+            return mField + " " + mCell + " \"" + mPrefix + "\"";
+        }
+    }
+}
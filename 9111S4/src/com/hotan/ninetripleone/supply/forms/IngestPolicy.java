@@ -0,0 +1,339 @@
+package com.hotan.ninetripleone.supply.forms;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import org.apache.poi.hssf.eventusermodel.AbortableHSSFListener;
+import org.apache.poi.hssf.eventusermodel.HSSFEventFactory;
+import org.apache.poi.hssf.eventusermodel.HSSFRequest;
+import org.apache.poi.hssf.eventusermodel.HSSFUserException;
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.BoundSheetRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.SSTRecord;
+import org.apache.poi.poifs.filesystem.DocumentEntry;
+import org.apache.poi.poifs.filesystem.NPOIFSFileSystem;
+
+import com.hotan.ninetripleone.supply.util.FormatException;
+import com.hotan.ninetripleone.supply.util.POILoader;
+
+/**
+ * Chooses how to parse a XLS hand receipt from the heap it is expected to take.
+ * <br>A HSSFWorkbook takes many times the size of its file.  Before a file
+ * is loaded the records of its workbook globals are read with the HSSF event
+ * API: the sheets and their offsets, and the count of shared strings.  The
+ * cells are estimated from the bytes of the sheets, and the heap of the 
+ * workbook from the counts.  The estimate is then compared with the heap
+ * budget of the policy:
+ * <ul>
+ * <li>{@link Mode#USERMODEL} if the workbook fits in half of the budget,
+ * so it can be kept with the hand receipt</li>
+ * <li>{@link Mode#DETACHED} if it fits in the budget, so it can be built
+ * but is released once the hand receipt is parsed</li>
+ * <li>{@link Mode#EVENT} otherwise, the file is streamed and no workbook
+ * is ever built</li>
+ * </ul>
+ * Every decision is logged with the estimate, and every load with the heap
+ * its thread allocated, so the estimator can be tuned.
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+public class IngestPolicy {
+
+    private static final Logger LOG = Logger.getLogger(IngestPolicy.class.getSimpleName());
+
+    // Heap per unit of a HSSFWorkbook, measured on the sample receipts with POI 3.9
+    static final long BYTES_PER_FILE_BYTE = 2;
+    static final long BYTES_PER_CELL = 300;
+    static final long BYTES_PER_STRING = 400;
+    static final long BYTES_PER_SHEET = 8 * 1024;
+    static final long BYTES_PER_WORKBOOK = 1024 * 1024;
+
+    // Bytes of sheet records per cell, 22.6 to 23.3 on the sample receipts
+    static final long SHEET_BYTES_PER_CELL = 22;
+
+    private static final String WORKBOOK = "Workbook";
+
+    /**
+     * How a hand receipt is parsed.
+     */
+    public enum Mode {
+
+        /**
+         * Build the HSSFWorkbook and keep it with the hand receipt.
+         */
+        USERMODEL,
+
+        /**
+         * Build the HSSFWorkbook and release it once the hand receipt is parsed.
+         */
+        DETACHED,
+
+        /**
+         * Stream the records of the file without building a HSSFWorkbook.
+         */
+        EVENT
+    }
+
+    private final long mHeapBudget;
+
+    /**
+     * @param heapBudget Heap in bytes a single hand receipt may take while it is loaded
+     */
+    public IngestPolicy(long heapBudget) {
+        if (heapBudget <= 0)
+            throw new IllegalArgumentException(getClass().getSimpleName()
+                    + "() Heap budget must be positive, found " + heapBudget);
+        mHeapBudget = heapBudget;
+    }
+
+    /**
+     * Creates a policy with a share of the maximum heap of the JVM as its budget.
+     *
+     * @param share Share of the maximum heap, between 0 and 1
+     * @return Policy with the budget
+     */
+    public static IngestPolicy ofMaxHeap(double share) {
+        if (share <= 0 || share > 1)
+            throw new IllegalArgumentException(IngestPolicy.class.getSimpleName()
+                    + ".ofMaxHeap() Share must be in (0, 1], found " + share);
+        return new IngestPolicy((long) (Runtime.getRuntime().maxMemory() * share));
+    }
+
+    public long getHeapBudget() {
+        return mHeapBudget;
+    }
+
+    /**
+     * Counts the sheets and strings of the file and estimates the heap of its workbook.
+     * <br>The file is read in place, and only up to the first sheet.
+     *
+     * @param file XLS file
+     * @return Estimate of the file
+     * @throws IOException Unable to read the file as a XLS file
+     */
+    public static Estimate estimate(File file) throws IOException {
+        if (file == null)
+            throw new NullPointerException(IngestPolicy.class.getSimpleName() + ".estimate() Null file");
+        GlobalsListener listener = new GlobalsListener();
+        HSSFRequest request = new HSSFRequest();
+        request.addListener(listener, BoundSheetRecord.sid);
+        request.addListener(listener, SSTRecord.sid);
+        request.addListener(listener, BOFRecord.sid);
+        NPOIFSFileSystem fs = new NPOIFSFileSystem(file, true);
+        long sheetBytes;
+        try {
+            new HSSFEventFactory().abortableProcessWorkbookEvents(request, fs.getRoot());
+            DocumentEntry workbook = (DocumentEntry) fs.getRoot().getEntry(WORKBOOK);
+            sheetBytes = listener.mFirstSheet < 0 ? 0 : workbook.getSize() - listener.mFirstSheet;
+        } catch (HSSFUserException e) {
+            throw new IOException("Unable to estimate " + file, e);
+        } finally {
+            fs.close();
+        }
+        return new Estimate(file, file.length(), (int) (sheetBytes / SHEET_BYTES_PER_CELL),
+                listener.mStrings, listener.mSheets);
+    }
+
+    /**
+     * Returns how to parse a file with the estimate.
+     *
+     * @param estimate Estimate of the file
+     * @return Mode that keeps the file within the budget
+     */
+    public Mode choose(Estimate estimate) {
+        long heap = estimate.getHeapBytes();
+        if (heap <= mHeapBudget / 2) return Mode.USERMODEL;
+        if (heap <= mHeapBudget) return Mode.DETACHED;
+        return Mode.EVENT;
+    }
+
+    /**
+     * Estimates the file and logs the mode chosen for it.
+     *
+     * @param file XLS file
+     * @return Mode to parse the file with
+     * @throws IOException Unable to read the file as a XLS file
+     */
+    public Mode choose(File file) throws IOException {
+        Estimate estimate = estimate(file);
+        Mode mode = choose(estimate);
+        LOG.info("Ingesting " + estimate + " with a budget of " + mHeapBudget + " bytes as " + mode);
+        return mode;
+    }
+
+    /**
+     * Parses a Unit level hand receipt in the mode chosen for the file.
+     *
+     * @param file XLS file of the hand receipt
+     * @return Unit level hand receipt of the file
+     * @throws IOException Unable to read the file
+     */
+    public UnitLevelHandReceipt loadUnit(File file) throws IOException {
+        Mode mode = choose(file);
+        Allocation allocation = new Allocation();
+        UnitLevelHandReceipt hr;
+        switch (mode) {
+        case USERMODEL:
+            hr = new UnitLevelHandReceipt(POILoader.getXLSWorkbook(file));
+            break;
+        case DETACHED:
+            hr = UnitLevelHandReceipt.detached(file);
+            break;
+        default:
+            hr = UnitLevelHandReceipt.fromEventStream(file);
+        }
+        allocation.log(file, mode);
+        return hr;
+    }
+
+    /**
+     * Parses a Component hand receipt in the mode chosen for the file.
+     *
+     * @param file XLS file of the hand receipt
+     * @return Component hand receipt of the file
+     * @throws IOException Unable to read the file
+     * @throws FormatException Could not interpret the XLS file as Component Hand receipt.
+     */
+    public ComponentHandReceipt loadComponent(File file) throws IOException, FormatException {
+        Mode mode = choose(file);
+        Allocation allocation = new Allocation();
+        ComponentHandReceipt hr;
+        switch (mode) {
+        case USERMODEL:
+            hr = new ComponentHandReceipt(POILoader.getXLSWorkbook(file));
+            break;
+        case DETACHED:
+            hr = ComponentHandReceipt.detached(file);
+            break;
+        default:
+            hr = ComponentHandReceipt.fromEventStream(file);
+        }
+        allocation.log(file, mode);
+        return hr;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + " " + mHeapBudget + " bytes";
+    }
+
+    /**
+     * Counts of a XLS file and the heap its workbook is expected to take.
+     * <br>The cells are estimated from the bytes of the sheets.
+     */
+    public static class Estimate {
+
+        private final File mFile;
+
+        private final long mBytes;
+
+        private final int mCells, mStrings, mSheets;
+
+        Estimate(File file, long bytes, int cells, int strings, int sheets) {
+            mFile = file;
+            mBytes = bytes;
+            mCells = cells;
+            mStrings = strings;
+            mSheets = sheets;
+        }
+
+        public File getFile() {
+            return mFile;
+        }
+
+        public long getBytes() {
+            return mBytes;
+        }
+
+        public int getCells() {
+            return mCells;
+        }
+
+        public int getStrings() {
+            return mStrings;
+        }
+
+        public int getSheets() {
+            return mSheets;
+        }
+
+        /**
+         * @return Estimated heap in bytes taken while the workbook of the file is built
+         */
+        public long getHeapBytes() {
+            return BYTES_PER_WORKBOOK + mBytes * BYTES_PER_FILE_BYTE + mCells * BYTES_PER_CELL
+                    + mStrings * BYTES_PER_STRING + mSheets * BYTES_PER_SHEET;
+        }
+
+        @Override
+        public String toString() {
+            return mFile.getName() + " (" + mBytes + " bytes, " + mSheets + " sheets, "
+                    + mCells + " cells, " + mStrings + " strings) estimated at " + getHeapBytes() + " bytes";
+        }
+    }
+
+    /**
+     * Reads the workbook globals and aborts at the first sheet.
+     */
+    private static class GlobalsListener extends AbortableHSSFListener {
+
+        private int mSheets, mStrings;
+
+        /**
+         * Offset of the first sheet in the workbook stream, -1 without sheets.
+         */
+        private long mFirstSheet = -1;
+
+        @Override
+        public short abortableProcessRecord(Record record) {
+            switch (record.getSid()) {
+            case BoundSheetRecord.sid:
+                if (mSheets++ == 0) mFirstSheet = ((BoundSheetRecord) record).getPositionOfBof();
+                return 0;
+            case SSTRecord.sid:
+                mStrings = ((SSTRecord) record).getNumUniqueStrings();
+                return 0;
+            case BOFRecord.sid:
+                return (short) (((BOFRecord) record).getType() == BOFRecord.TYPE_WORKBOOK ? 0 : 1);
+            default:
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Heap allocated by the thread of a load.
+     * <br>Only the loading thread is measured, so loads on other threads
+     * do not add to it, and no state of the JVM is reset.
+     */
+    private static class Allocation {
+
+        private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+        private final long mStart = System.nanoTime();
+
+        private final long mAllocatedBefore = allocated();
+
+        void log(File file, Mode mode) {
+            long allocated = allocated();
+            LOG.info("Ingested " + file.getName() + " as " + mode + " in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - mStart) + "ms, allocated "
+                    + (allocated < 0 || mAllocatedBefore < 0 ? "unknown" : (allocated - mAllocatedBefore) + " bytes"));
+        }
+
+        /**
+         * @return Bytes allocated by the current thread, -1 if the JVM does not tell
+         */
+        private static long allocated() {
+            if (!(THREADS instanceof com.sun.management.ThreadMXBean)) return -1;
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+            if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled()) return -1;
+            return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.hotan.ninetripleone.supply.forms;
+
+import java.io.File;
+import java.io.IOException;
+
+import jxl.Cell;
+import jxl.CellType;
+import jxl.NumberCell;
+import jxl.Sheet;
+import jxl.Workbook;
+import jxl.WorkbookSettings;
+import jxl.biff.EmptyCell;
+import jxl.read.biff.BiffException;
+
+import com.hotan.ninetripleone.supply.util.FormatException;
+
+/**
+ * Reads the file with JExcelApi, the library behind the JXL templates.
+ * <br>Drawings, names and cell validation are not read, and JExcelApi is
+ * kept from calling the garbage collector after every workbook.
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+class JXLSpreadsheetReader implements SpreadsheetReader {
+
+    @Override
+    public void read(File file, RowHandler handler) throws IOException, FormatException {
+        WorkbookSettings settings = new WorkbookSettings();
+        settings.setGCDisabled(true);
+        settings.setDrawingsDisabled(true);
+        settings.setNamesDisabled(true);
+        settings.setCellValidationDisabled(true);
+        settings.setSuppressWarnings(true);
+        Workbook wb;
+        try {
+            wb = Workbook.getWorkbook(file, settings);
+        } catch (BiffException e) {
+            throw new IOException("Unable to read " + file, e);
+        }
+        try {
+            RowBuffer buffer = new RowBuffer();
+            for (int i = 0; i < wb.getNumberOfSheets(); ++i) {
+                Sheet sheet = wb.getSheet(i);
+                handler.startSheet(i, sheet.getName());
+                for (int r = 0; r < sheet.getRows(); ++r) {
+                    for (Cell cell: sheet.getRow(r)) {
+                        String value = getValue(cell);
+                        if (value != null) buffer.setCell(handler, r, cell.getColumn(), value);
+                    }
+                }
+                buffer.flush(handler);
+                if (!handler.endSheet(i)) return;
+            }
+        } finally {
+            wb.close();
+        }
+    }
+
+    private static String getValue(Cell cell) {
+        CellType type = cell.getType();
+        if (type == CellType.LABEL) return cell.getContents();
+        if (type == CellType.NUMBER) return RowBuffer.format(((NumberCell) cell).getValue());
+        // Cells missing from a row are filled in with EmptyCell, only blank records are cells
+        if (type == CellType.EMPTY && !(cell instanceof EmptyCell)) return "";
+        return null;
+    }
+}
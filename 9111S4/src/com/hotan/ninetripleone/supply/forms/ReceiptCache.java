@@ -0,0 +1,586 @@
+package com.hotan.ninetripleone.supply.forms;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import com.hotan.ninetripleone.supply.model.EndItem;
+import com.hotan.ninetripleone.supply.model.EndItemGroup;
+import com.hotan.ninetripleone.supply.model.Operator;
+import com.hotan.ninetripleone.supply.model.Rank;
+import com.hotan.ninetripleone.supply.model.SerialNumberSet;
+import com.hotan.ninetripleone.supply.util.FormatException;
+import com.hotan.ninetripleone.supply.util.WorkbookSource;
+
+/**
+ * Parsed hand receipts by the SHA-256 of their XLS file, saved in a
+ * directory with one file per hand receipt.
+ * <br>A hand receipt whose file was parsed before is read back from its
+ * entry without POI.  Otherwise the file is parsed detached and its
+ * entry saved.  Once the entries take more than the maximum size the least
+ * recently used ones are deleted.
+ * <br>The hash of every file loaded is remembered with its size and last
+ * modified time, so a file that neither changed size nor was modified since
+ * is not read again to find its entry.  A hit reads nothing but the entry,
+ * the hand receipts from the cache are detached and only reopen the sheets
+ * and workbook of the XLS file when they are asked for.
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+public class ReceiptCache {
+
+    private static final Logger LOG = Logger.getLogger(ReceiptCache.class.getSimpleName());
+
+    /**
+     * Suffix of the entry files.
+     */
+    public static final String SUFFIX = ".hr";
+
+    private static final int MAGIC = 0x39313131;
+    private static final int VERSION = 1;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Number of files whose hash is remembered.
+     */
+    static final int MAX_STAMPS = 256;
+
+    private final File mDir;
+
+    private final long mMaxBytes;
+
+    /**
+     * Size of the entries by hash, least recently used first.
+     */
+    private final LinkedHashMap<String, Long> mEntries;
+
+    private long mSize;
+
+    private final AtomicInteger mHits, mMisses;
+
+    /**
+     * Hashes of the files loaded by their absolute path, least recently used first.
+     */
+    private final Map<String, Stamp> mStamps = new LinkedHashMap<String, Stamp>(16, 0.75f, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Stamp> eldest) {
+            return size() > MAX_STAMPS;
+        }
+    };
+
+    /**
+     * Creates a cache of the entries in the directory, ordered from the
+     * least to the most recently modified.
+     *
+     * @param dir Directory of the entries, created when the first entry is saved
+     * @param maxBytes Most bytes the entries may take
+     */
+    public ReceiptCache(File dir, long maxBytes) {
+        if (dir == null)
+            throw new NullPointerException(getClass().getSimpleName() + "() Null directory");
+        if (maxBytes <= 0)
+            throw new IllegalArgumentException(getClass().getSimpleName() + "() Illegal size " + maxBytes);
+        mDir = dir;
+        mMaxBytes = maxBytes;
+        mEntries = new LinkedHashMap<String, Long>(16, 0.75f, true);
+        mHits = new AtomicInteger();
+        mMisses = new AtomicInteger();
+
+        File[] files = dir.listFiles(new FileFilter() {
+
+            @Override
+            public boolean accept(File file) {
+                return file.isFile() && file.getName().endsWith(SUFFIX);
+            }
+        });
+        if (files == null) return;
+        Arrays.sort(files, new Comparator<File>() {
+
+            @Override
+            public int compare(File f1, File f2) {
+                int cmp = Long.compare(f1.lastModified(), f2.lastModified());
+                return cmp != 0 ? cmp : f1.getName().compareTo(f2.getName());
+            }
+        });
+        for (File file: files) {
+            String name = file.getName();
+            mEntries.put(name.substring(0, name.length() - SUFFIX.length()), file.length());
+            mSize += file.length();
+        }
+    }
+
+    /**
+     * Returns the Unit level hand receipt of the file, from its entry if
+     * the file was parsed before.
+     *
+     * @param file XLS file of a Unit level hand receipt
+     * @return Detached Unit level hand receipt of the file
+     * @throws IOException Unable to read the file
+     * @throws FormatException Could not interpret the file as Unit level hand receipt
+     */
+    public UnitLevelHandReceipt loadUnit(File file) throws IOException, FormatException {
+        if (file == null)
+            throw new NullPointerException(getClass().getSimpleName() + ".loadUnit() Null file");
+        String hash = hashOf(file);
+        DataInputStream in = open(hash, FormType.UNIT);
+        if (in != null) {
+            try {
+                UnitLevelHandReceipt hr = readUnit(in, file);
+                mHits.incrementAndGet();
+                return hr;
+            } catch (IOException e) {
+                drop(hash, e);
+            } finally {
+                in.close();
+            }
+        }
+
+        mMisses.incrementAndGet();
+        UnitLevelHandReceipt hr = UnitLevelHandReceipt.detached(file);
+        try {
+            DataOutputStream out = create(hash, FormType.UNIT);
+            try {
+                writeUnit(out, hr);
+            } finally {
+                out.close();
+            }
+            save(hash);
+        } catch (IOException e) {
+            LOG.warning("Unable to save the entry of " + file + " " + e);
+            tmpOf(hash).delete();
+        }
+        return hr;
+    }
+
+    /**
+     * Returns the Component hand receipt of the file, from its entry if
+     * the file was parsed before.
+     *
+     * @param file XLS file of a Component hand receipt
+     * @return Detached Component hand receipt of the file
+     * @throws IOException Unable to read the file
+     * @throws FormatException Could not interpret the file as Component hand receipt
+     */
+    public ComponentHandReceipt loadComponent(File file) throws IOException, FormatException {
+        if (file == null)
+            throw new NullPointerException(getClass().getSimpleName() + ".loadComponent() Null file");
+        String hash = hashOf(file);
+        DataInputStream in = open(hash, FormType.COMPONENT);
+        if (in != null) {
+            try {
+                ComponentHandReceipt hr = readComponent(in, file);
+                mHits.incrementAndGet();
+                return hr;
+            } catch (IOException e) {
+                drop(hash, e);
+            } finally {
+                in.close();
+            }
+        }
+
+        mMisses.incrementAndGet();
+        ComponentHandReceipt hr = ComponentHandReceipt.detached(file);
+        try {
+            DataOutputStream out = create(hash, FormType.COMPONENT);
+            try {
+                writeComponent(out, hr);
+            } finally {
+                out.close();
+            }
+            save(hash);
+        } catch (IOException e) {
+            LOG.warning("Unable to save the entry of " + file + " " + e);
+            tmpOf(hash).delete();
+        }
+        return hr;
+    }
+
+    /**
+     * Returns the SHA-256 of the content of the file.
+     *
+     * @param file File to hash
+     * @return SHA-256 of the file in lower case hexadecimal
+     * @throws IOException Unable to read the file
+     */
+    public static String hash(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        byte[] buffer = new byte[BUFFER_SIZE];
+        InputStream in = new FileInputStream(file);
+        try {
+            for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+                digest.update(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b: digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Returns the hash of the file, only reading the file if its size or last
+     * modified time changed since it was last hashed.
+     *
+     * @param file File to hash
+     * @return SHA-256 of the file in lower case hexadecimal
+     * @throws IOException Unable to read the file
+     */
+    private String hashOf(File file) throws IOException {
+        String path = file.getAbsolutePath();
+        long length = file.length(), modified = file.lastModified();
+        synchronized (mStamps) {
+            Stamp stamp = mStamps.get(path);
+            if (stamp != null && stamp.mLength == length && stamp.mModified == modified) return stamp.mHash;
+        }
+        String hash = hash(file);
+        synchronized (mStamps) {
+            mStamps.put(path, new Stamp(length, modified, hash));
+        }
+        return hash;
+    }
+
+    /**
+     * Deletes all the entries.
+     */
+    public synchronized void clear() {
+        for (String hash: mEntries.keySet()) {
+            fileOf(hash).delete();
+        }
+        mEntries.clear();
+        mSize = 0;
+    }
+
+    /**
+     * @param file XLS file
+     * @return Whether the cache has an entry for the content of the file
+     * @throws IOException Unable to read the file
+     */
+    public boolean contains(File file) throws IOException {
+        String hash = hashOf(file);
+        synchronized (this) {
+            return mEntries.containsKey(hash);
+        }
+    }
+
+    /**
+     * @return Number of entries
+     */
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * @return Bytes taken by the entries
+     */
+    public synchronized long getSize() {
+        return mSize;
+    }
+
+    public long getMaxSize() {
+        return mMaxBytes;
+    }
+
+    public File getDirectory() {
+        return mDir;
+    }
+
+    /**
+     * @return Number of hand receipts read from their entry
+     */
+    public int getHits() {
+        return mHits.get();
+    }
+
+    /**
+     * @return Number of hand receipts parsed from their file
+     */
+    public int getMisses() {
+        return mMisses.get();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + " " + mDir + " entries: " + size() + " bytes: " + getSize()
+                + " hits: " + getHits() + " misses: " + getMisses();
+    }
+
+    File fileOf(String hash) {
+        return new File(mDir, hash + SUFFIX);
+    }
+
+    /**
+     * Opens the entry of the hash, marking it as the most recently used.
+     *
+     * @return Stream positioned after the header, or null if there is no entry
+     *          of the type
+     */
+    private DataInputStream open(String hash, FormType type) {
+        synchronized (this) {
+            if (mEntries.get(hash) == null) return null;
+        }
+        File file = fileOf(hash);
+        file.setLastModified(System.currentTimeMillis());
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                throw new IOException("Not a version " + VERSION + " receipt cache entry");
+            String entryType = in.readUTF();
+            if (!type.name().equals(entryType)) {
+                // The same file can not be both kinds of hand receipt
+                in.close();
+                LOG.warning("Entry " + file + " is a " + entryType + " hand receipt, not " + type);
+                return null;
+            }
+            return in;
+        } catch (IOException e) {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                    // Already failed
+                }
+            }
+            drop(hash, e);
+            return null;
+        }
+    }
+
+    /**
+     * Creates the temporary file of the entry of the hash and writes its header.
+     */
+    private DataOutputStream create(String hash, FormType type) throws IOException {
+        if (!mDir.isDirectory() && !mDir.mkdirs())
+            throw new IOException("Unable to create " + mDir);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(tmpOf(hash)), BUFFER_SIZE));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(type.name());
+        return out;
+    }
+
+    /**
+     * Replaces the entry of the hash with its temporary file, then deletes
+     * the least recently used entries until the entries fit.
+     */
+    private synchronized void save(String hash) throws IOException {
+        File tmp = tmpOf(hash);
+        File file = fileOf(hash);
+        if (file.exists() && !file.delete() || !tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Unable to replace " + file);
+        }
+        Long previous = mEntries.put(hash, file.length());
+        mSize += file.length() - (previous == null ? 0 : previous);
+
+        Iterator<Map.Entry<String, Long>> eldest = mEntries.entrySet().iterator();
+        while (mSize > mMaxBytes && eldest.hasNext()) {
+            Map.Entry<String, Long> entry = eldest.next();
+            if (!fileOf(entry.getKey()).delete()) {
+                LOG.warning("Unable to evict " + fileOf(entry.getKey()));
+                continue;
+            }
+            mSize -= entry.getValue();
+            eldest.remove();
+        }
+    }
+
+    private synchronized void drop(String hash, IOException cause) {
+        LOG.warning("Dropping unreadable entry " + fileOf(hash) + ": " + cause);
+        Long size = mEntries.remove(hash);
+        if (size != null) mSize -= size;
+        fileOf(hash).delete();
+    }
+
+    private File tmpOf(String hash) {
+        return new File(mDir, hash + SUFFIX + "." + Thread.currentThread().getId() + ".tmp");
+    }
+
+    /**
+     * Hash of a file with the size and last modified time it had when hashed.
+     */
+    private static class Stamp {
+
+        private final long mLength, mModified;
+
+        private final String mHash;
+
+        Stamp(long length, long modified, String hash) {
+            mLength = length;
+            mModified = modified;
+            mHash = hash;
+        }
+    }
+
+    /////////////////////////////////////////////////////////////////////
+    ////// Entry format
+    /////////////////////////////////////////////////////////////////////
+
+    private static void writeUnit(DataOutputStream out, UnitLevelHandReceipt hr) throws IOException {
+        out.writeLong(hr.getDatePrepared().getTime());
+        ComponentSheetCache.writeString(out, hr.getUIC());
+        ComponentSheetCache.writeString(out, hr.getDESC());
+        ComponentSheetCache.writeString(out, hr.getTeam());
+        writeOperator(out, hr.getWhoFrom());
+        writeOperator(out, hr.getWhoTo());
+        hr.getLayout().write(out);
+
+        List<EndItemGroup> groups = hr.getGroups();
+        out.writeInt(groups.size());
+        for (EndItemGroup group: groups) {
+            ComponentSheetCache.writeString(out, group.getName());
+            ComponentSheetCache.writeString(out, group.getLIN());
+            ComponentSheetCache.writeString(out, group.getNSN());
+            Iterable<String> serials = group.getSerialized() ? group.getSerialNumbers() : null;
+            out.writeBoolean(serials != null);
+            if (serials == null) {
+                out.writeInt(group.size());
+                continue;
+            }
+            List<String> list = new ArrayList<String>();
+            for (String serial: serials) {
+                list.add(serial);
+            }
+            out.writeInt(list.size());
+            for (String serial: list) {
+                out.writeUTF(serial);
+            }
+        }
+    }
+
+    private static UnitLevelHandReceipt readUnit(DataInputStream in, File file) throws IOException {
+        Date date = new Date(in.readLong());
+        String uic = ComponentSheetCache.readString(in);
+        String desc = ComponentSheetCache.readString(in);
+        String team = ComponentSheetCache.readString(in);
+        Operator from = readOperator(in);
+        Operator to = readOperator(in);
+        UnitHRLayout layout = UnitHRLayout.read(in);
+
+        int numGroups = readSize(in);
+        List<EndItemGroup> groups = new ArrayList<EndItemGroup>(Math.min(numGroups, 1024));
+        for (int i = 0; i < numGroups; ++i) {
+            String name = ComponentSheetCache.readString(in);
+            String lin = ComponentSheetCache.readString(in);
+            String nsn = ComponentSheetCache.readString(in);
+            SerialNumberSet serials = null;
+            boolean serialized = in.readBoolean();
+            int qty = readSize(in);
+            if (serialized) {
+                serials = new SerialNumberSet();
+                for (int j = 0; j < qty; ++j) {
+                    serials.add(in.readUTF());
+                }
+            }
+            groups.add(UnitLevelHandReceipt.createGroup(name, lin, nsn, qty, serials));
+        }
+        return new UnitLevelHandReceipt(date, uic, desc, team, from, to, groups, layout,
+                new WorkbookSource(file));
+    }
+
+    private static void writeComponent(DataOutputStream out, ComponentHandReceipt hr) throws IOException {
+        ComponentSheetCache.writeString(out, hr.getUIC());
+        ComponentSheetCache.writeString(out, hr.getDESC());
+        ComponentSheetCache.writeString(out, hr.getTeam());
+        writeOperator(out, hr.getWhoFrom());
+        writeOperator(out, hr.getWhoTo());
+
+        // Written in sheet order so the groups are rebuilt in the same order
+        List<EndItem> items = new ArrayList<EndItem>();
+        for (EndItemGroup group: hr.getGroups()) {
+            items.addAll(group.getItems());
+        }
+        final int[] sheets = new int[items.size()];
+        Integer[] order = new Integer[items.size()];
+        for (int i = 0; i < order.length; ++i) {
+            sheets[i] = hr.getSheetIndex(items.get(i));
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+
+            @Override
+            public int compare(Integer i1, Integer i2) {
+                return Integer.compare(sheets[i1], sheets[i2]);
+            }
+        });
+        out.writeInt(order.length);
+        for (int i: order) {
+            out.writeInt(sheets[i]);
+            ComponentSheetCache.writeEndItem(out, items.get(i));
+        }
+    }
+
+    private static ComponentHandReceipt readComponent(DataInputStream in, File file) throws IOException {
+        String uic = ComponentSheetCache.readString(in);
+        String desc = ComponentSheetCache.readString(in);
+        String team = ComponentSheetCache.readString(in);
+        Operator from = readOperator(in);
+        Operator to = readOperator(in);
+
+        int numItems = readSize(in);
+        List<EndItem> items = new ArrayList<EndItem>(Math.min(numItems, 1024));
+        int[] sheets = new int[Math.min(numItems, 1024)];
+        for (int i = 0; i < numItems; ++i) {
+            if (i == sheets.length) sheets = Arrays.copyOf(sheets, 2 * sheets.length);
+            sheets[i] = in.readInt();
+            items.add(ComponentSheetCache.readEndItem(in));
+        }
+        return new ComponentHandReceipt(uic, desc, team, from, to, items, sheets, new WorkbookSource(file));
+    }
+
+    private static void writeOperator(DataOutputStream out, Operator operator) throws IOException {
+        out.writeBoolean(operator != null);
+        if (operator == null) return;
+        out.writeUTF(operator.getFirstName());
+        out.writeUTF(operator.getLastName());
+        out.writeUTF(operator.getRank().name());
+    }
+
+    private static Operator readOperator(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) return null;
+        String first = in.readUTF(), last = in.readUTF(), rank = in.readUTF();
+        try {
+            return new Operator(first, last, Rank.valueOf(rank));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Unknown rank " + rank, e);
+        }
+    }
+
+    private static int readSize(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        if (size < 0) throw new IOException("Negative size " + size);
+        return size;
+    }
+}
@@ -0,0 +1,161 @@
+package com.hotan.ninetripleone.supply.forms;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.logging.Logger;
+
+import com.hotan.ninetripleone.supply.util.BackgroundExecutor;
+import com.hotan.ninetripleone.supply.util.Flow;
+import com.hotan.ninetripleone.supply.util.FormatException;
+
+/**
+ * Publisher that parses a hand receipt file for every subscriber and hands
+ * the items to the subscriber as they are parsed.
+ * <br>The file is parsed on a thread of the executor, which waits whenever
+ * the subscriber has no outstanding demand, so parsing never gets ahead of
+ * the subscriber by more than the subscriber requested.
+ * <br>The events of a XLS file are pushed by POI, so parsing can only pause
+ * by holding its thread.  By default every subscription parses on a thread
+ * of {@link BackgroundExecutor#getPublishers()}, never on the bounded shared
+ * pool, so an idle subscriber cannot hold up the loading of other files.
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ * @param <T> Type of the items
+ */
+abstract class ReceiptPublisher<T> implements Flow.Publisher<T> {
+
+    private static final Logger LOG = Logger.getLogger(ReceiptPublisher.class.getSimpleName());
+
+    protected final File mFile;
+
+    private final Executor mExecutor;
+
+    /**
+     * @param file File to parse
+     * @param executor Executor to parse on, null for {@link BackgroundExecutor#getPublishers()}
+     */
+    protected ReceiptPublisher(File file, Executor executor) {
+        if (file == null)
+            throw new NullPointerException(getClass().getSimpleName() + "() Null file");
+        mFile = file;
+        mExecutor = executor == null ? BackgroundExecutor.getPublishers() : executor;
+    }
+
+    @Override
+    public void subscribe(final Flow.Subscriber<? super T> subscriber) {
+        if (subscriber == null)
+            throw new NullPointerException(getClass().getSimpleName() + ".subscribe() Null subscriber");
+        final Emitter<T> emitter = new Emitter<T>(subscriber);
+        subscriber.onSubscribe(emitter);
+        mExecutor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    produce(emitter);
+                } catch (IOException | FormatException | RuntimeException e) {
+                    emitter.fail(e);
+                }
+                emitter.finish();
+            }
+        });
+    }
+
+    /**
+     * Parses the file and emits its items in order.
+     * <br>Parsing should stop as soon as {@link Emitter#emit(Object)} returns false.
+     *
+     * @param emitter Emitter of the subscriber
+     * @throws IOException Unable to read the file
+     * @throws FormatException The file could not be interpreted
+     */
+    protected abstract void produce(Emitter<T> emitter) throws IOException, FormatException;
+
+    /**
+     * Subscription that hands items to its subscriber as long as there is demand.
+     *
+     * @param <T> Type of the items
+     */
+    static class Emitter<T> implements Flow.Subscription {
+
+        private final Flow.Subscriber<? super T> mSubscriber;
+
+        private long mDemand;
+
+        private boolean mCancelled;
+
+        private Throwable mError;
+
+        Emitter(Flow.Subscriber<? super T> subscriber) {
+            mSubscriber = subscriber;
+        }
+
+        @Override
+        public synchronized void request(long n) {
+            if (n <= 0) {
+                if (mError == null)
+                    mError = new IllegalArgumentException("Non positive request " + n);
+            } else {
+                mDemand = mDemand + n < 0 ? Long.MAX_VALUE : mDemand + n;
+            }
+            notifyAll();
+        }
+
+        @Override
+        public synchronized void cancel() {
+            mCancelled = true;
+            notifyAll();
+        }
+
+        /**
+         * Hands the item to the subscriber once it requested it.
+         * <br>Blocks the parsing thread while there is no demand.
+         *
+         * @param item Item to hand over
+         * @return Whether to keep parsing
+         */
+        boolean emit(T item) {
+            synchronized (this) {
+                while (mDemand == 0 && !mCancelled && mError == null) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        mCancelled = true;
+                    }
+                }
+                if (mCancelled || mError != null) return false;
+                mDemand--;
+            }
+            mSubscriber.onNext(item);
+            return isActive();
+        }
+
+        private synchronized boolean isActive() {
+            return !mCancelled && mError == null;
+        }
+
+        synchronized void fail(Throwable error) {
+            if (mError == null) mError = error;
+        }
+
+        /**
+         * Signals the end of the items to the subscriber unless it cancelled.
+         */
+        void finish() {
+            Throwable error;
+            synchronized (this) {
+                if (mCancelled) return;
+                mCancelled = true;
+                error = mError;
+            }
+            if (error == null) {
+                mSubscriber.onComplete();
+            } else {
+                LOG.warning("Publishing failed " + error);
+                mSubscriber.onError(error);
+            }
+        }
+    }
+}
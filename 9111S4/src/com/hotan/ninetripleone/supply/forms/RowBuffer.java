@@ -0,0 +1,81 @@
+package com.hotan.ninetripleone.supply.forms;
+
+import java.util.Arrays;
+
+import com.hotan.ninetripleone.supply.util.FormatException;
+
+/**
+ * Row of a {@link SpreadsheetReader} that is refilled for every row of a
+ * sheet, and that hands itself to the handler once the row is complete.
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+class RowBuffer implements SpreadsheetReader.Row {
+
+    private String[] mCells = new String[16];
+
+    private int mRowNum = -1;
+
+    private int mLastColumn = -1;
+
+    /**
+     * Sets a cell of the current row, handing the previous row to the
+     * handler first if the cell starts a new row.
+     *
+     * @param handler Handler of the rows
+     * @param row 0-based row of the cell
+     * @param col 0-based column of the cell
+     * @param value Value of the cell
+     * @throws FormatException The handler could not interpret the previous row
+     */
+    void setCell(SpreadsheetReader.RowHandler handler, int row, int col, String value) throws FormatException {
+        if (row != mRowNum) {
+            flush(handler);
+            mRowNum = row;
+        }
+        if (col >= mCells.length)
+            mCells = Arrays.copyOf(mCells, Math.max(col + 1, 2 * mCells.length));
+        mCells[col] = value;
+        mLastColumn = Math.max(mLastColumn, col);
+    }
+
+    /**
+     * Hands the current row to the handler, if it has any cells.
+     *
+     * @param handler Handler of the rows
+     * @throws FormatException The handler could not interpret the row
+     */
+    void flush(SpreadsheetReader.RowHandler handler) throws FormatException {
+        if (mLastColumn == -1) return;
+        handler.onRow(this);
+        Arrays.fill(mCells, 0, mLastColumn + 1, null);
+        mLastColumn = -1;
+        mRowNum = -1;
+    }
+
+    @Override
+    public int getRowNum() {
+        return mRowNum;
+    }
+
+    @Override
+    public int getLastColumn() {
+        return mLastColumn;
+    }
+
+    @Override
+    public String getString(int col) {
+        return col >= 0 && col <= mLastColumn ? mCells[col] : null;
+    }
+
+    /**
+     * Formats a number the way the backends hand number cells over.
+     *
+     * @param value Value of a number cell
+     * @return Whole numbers without a fraction, others as Double.toString
+     */
+    static String format(double value) {
+        if (value == Math.rint(value) && !Double.isInfinite(value)) return Long.toString((long) value);
+        return Double.toString(value);
+    }
+}
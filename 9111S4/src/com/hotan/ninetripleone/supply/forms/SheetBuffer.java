@@ -0,0 +1,196 @@
+package com.hotan.ninetripleone.supply.forms;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.Row;
+
+import com.hotan.ninetripleone.supply.util.POIUtil.IndexPair;
+
+/**
+ * String values of the cells of a single sheet.
+ * <br>Lets the form parsers read a sheet the same way whether it was
+ * loaded by the usermodel or streamed from a file.
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+class SheetBuffer {
+
+    private final String mName;
+
+    /**
+     * Cell values by row then column, null for missing rows and cells.
+     */
+    private final List<String[]> mRows;
+
+    SheetBuffer(String name) {
+        this(name, new ArrayList<String[]>());
+    }
+
+    private SheetBuffer(String name, List<String[]> rows) {
+        mName = name;
+        mRows = rows;
+    }
+
+    /**
+     * Wraps rows of cell values that were already read, without copying them.
+     *
+     * @param name Name of the sheet
+     * @param rows Cell values by row then column, null for missing rows and cells
+     * @return Buffer of the rows
+     */
+    static SheetBuffer of(String name, List<String[]> rows) {
+        return new SheetBuffer(name, rows);
+    }
+
+    /**
+     * Copies the values of all the cells of the sheet.
+     * <br>Cells that do not hold a String are formatted as they are displayed.
+     *
+     * @param sheet Sheet to copy
+     * @return Buffer of the sheet
+     */
+    static SheetBuffer of(HSSFSheet sheet) {
+        return of(sheet, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Copies the values of the cells of the top rows of the sheet.
+     *
+     * @param sheet Sheet to copy
+     * @param lastRow 0-based index of the last row to copy
+     * @return Buffer of the rows of the sheet
+     */
+    static SheetBuffer of(HSSFSheet sheet, int lastRow) {
+        SheetBuffer buffer = new SheetBuffer(sheet.getSheetName());
+        DataFormatter formatter = new DataFormatter();
+        for (Row row: sheet) {
+            if (row.getRowNum() > lastRow) break;
+            for (Cell cell: row) {
+                buffer.setCell(row.getRowNum(), cell.getColumnIndex(), getValue(cell, formatter));
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * @param cell Cell of a sheet
+     * @param formatter Formatter of the values that are not Strings
+     * @return Value of the cell as it is copied into a buffer
+     */
+    static String getValue(Cell cell, DataFormatter formatter) {
+        switch (cell.getCellType()) {
+        case Cell.CELL_TYPE_STRING:
+            return cell.getStringCellValue();
+        case Cell.CELL_TYPE_BLANK:
+            return "";
+        case Cell.CELL_TYPE_FORMULA:
+            if (cell.getCachedFormulaResultType() == Cell.CELL_TYPE_STRING)
+                return cell.getStringCellValue();
+            return formatter.formatCellValue(cell);
+        default:
+            return formatter.formatCellValue(cell);
+        }
+    }
+
+    /**
+     * Sets the value of a cell.
+     *
+     * @param row 0-based row of the cell
+     * @param col 0-based column of the cell
+     * @param value Value of the cell
+     */
+    void setCell(int row, int col, String value) {
+        while (mRows.size() <= row) {
+            mRows.add(null);
+        }
+        String[] cells = mRows.get(row);
+        if (cells == null || cells.length <= col) {
+            cells = cells == null ? new String[col + 1] : Arrays.copyOf(cells, col + 1);
+            mRows.set(row, cells);
+        }
+        cells[col] = value;
+    }
+
+    String getName() {
+        return mName;
+    }
+
+    /**
+     * @return 0-based index of the last row with cells
+     */
+    int getLastRowNum() {
+        return mRows.size() - 1;
+    }
+
+    /**
+     * Returns the value of a cell.
+     *
+     * @param row 0-based row of the cell
+     * @param col 0-based column of the cell
+     * @return null if no cell exists, or the value of the cell
+     */
+    String getString(int row, int col) {
+        if (row < 0 || row >= mRows.size()) return null;
+        String[] cells = mRows.get(row);
+        if (cells == null || col < 0 || col >= cells.length) return null;
+        return cells[col];
+    }
+
+    String getString(IndexPair index) {
+        return getString(index.row, index.col);
+    }
+
+    /**
+     * Checks if there is a non blank String value at the index.
+     *
+     * @param index Index of the cell
+     * @return Whether there is a String value in the cell.
+     */
+    boolean hasStringValue(IndexPair index) {
+        String val = getString(index);
+        return val != null && !val.trim().isEmpty();
+    }
+
+    /**
+     * Returns a digest of the position and value of every cell, so two sheets
+     * with the same fingerprint parse the same.
+     *
+     * @return SHA-1 of the cells in hex
+     */
+    String getFingerprint() {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e);
+        }
+        for (int row = 0; row < mRows.size(); ++row) {
+            String[] cells = mRows.get(row);
+            if (cells == null) continue;
+            for (int col = 0; col < cells.length; ++col) {
+                if (cells[col] == null) continue;
+                digest.update((row + "," + col + "=").getBytes(StandardCharsets.UTF_8));
+                digest.update(cells[col].getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b: digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + " " + mName;
+    }
+}
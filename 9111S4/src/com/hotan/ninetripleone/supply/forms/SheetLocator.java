@@ -0,0 +1,91 @@
+package com.hotan.ninetripleone.supply.forms;
+
+/**
+ * Sheet index of every EndItem of a hand receipt, by {@link com.hotan.ninetripleone.supply.model.EndItem#getKey()}.
+ * <br>Keys and sheet indices are kept in two int arrays with open addressing,
+ * so no boxed Integers, map entries or references to the EndItems are held.
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+class SheetLocator {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * Keys of the slots, 0 for empty slots.
+     */
+    private int[] mKeys;
+
+    private int[] mSheets;
+
+    private int mSize;
+
+    SheetLocator() {
+        mKeys = new int[INITIAL_CAPACITY];
+        mSheets = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Sets the sheet of the key.
+     *
+     * @param key Positive key of an EndItem
+     * @param sheet 0-based index of the sheet
+     */
+    void put(int key, int sheet) {
+        if (key <= 0)
+            throw new IllegalArgumentException(getClass().getSimpleName() + ".put() Illegal key " + key);
+        // Keep at most half the slots full
+        if (2 * (mSize + 1) > mKeys.length) grow();
+        int slot = slot(mKeys, key);
+        if (mKeys[slot] == 0) {
+            mKeys[slot] = key;
+            mSize++;
+        }
+        mSheets[slot] = sheet;
+    }
+
+    /**
+     * @param key Key of an EndItem
+     * @return 0-based index of the sheet of the key, or -1 if it has none
+     */
+    int get(int key) {
+        if (key <= 0) return -1;
+        int slot = slot(mKeys, key);
+        return mKeys[slot] == key ? mSheets[slot] : -1;
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    /**
+     * Returns the slot that holds the key, or the empty slot it belongs in.
+     */
+    private static int slot(int[] keys, int key) {
+        int mask = keys.length - 1;
+        // Keys are mostly sequential, spread them over the table
+        int slot = ((key * 0x9E3779B9) >>> 1) & mask;
+        while (keys[slot] != 0 && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        int[] keys = mKeys;
+        int[] sheets = mSheets;
+        mKeys = new int[keys.length * 2];
+        mSheets = new int[keys.length * 2];
+        for (int i = 0; i < keys.length; ++i) {
+            if (keys[i] == 0) continue;
+            int slot = slot(mKeys, keys[i]);
+            mKeys[slot] = keys[i];
+            mSheets[slot] = sheets[i];
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + " size: " + mSize + " capacity: " + mKeys.length;
+    }
+}
@@ -0,0 +1,72 @@
+package com.hotan.ninetripleone.supply.forms;
+
+import java.util.Locale;
+import java.util.logging.Logger;
+
+/**
+ * Libraries a {@link SpreadsheetReader} can be backed by.
+ * <br>The backend of a form is configured with the system property
+ * <b>ninetripleone.reader.&lt;form&gt;</b>, for example
+ * <b>-Dninetripleone.reader.component=JXL</b>, falling back to
+ * <b>ninetripleone.reader</b> and then to {@link #EVENT}.
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+public enum SpreadsheetBackend {
+
+    /**
+     * POI usermodel, builds the whole HSSFWorkbook before reading it.
+     */
+    USERMODEL,
+
+    /**
+     * POI event API, streams the records of the file.
+     */
+    EVENT,
+
+    /**
+     * JExcelApi.
+     */
+    JXL;
+
+    private static final Logger LOG = Logger.getLogger(SpreadsheetBackend.class.getSimpleName());
+
+    /**
+     * System property of the backend of every form.
+     */
+    public static final String PROPERTY = "ninetripleone.reader";
+
+    /**
+     * @return Reader backed by this library
+     */
+    public SpreadsheetReader getReader() {
+        switch (this) {
+        case USERMODEL:
+            return new UserModelSpreadsheetReader();
+        case JXL:
+            return new JXLSpreadsheetReader();
+        default:
+            return new EventSpreadsheetReader();
+        }
+    }
+
+    /**
+     * Returns the backend configured for the form.
+     *
+     * @param type Type of the form to read
+     * @return Configured backend, {@link #EVENT} if none is configured
+     */
+    public static SpreadsheetBackend configured(FormType type) {
+        if (type == null)
+            throw new NullPointerException("SpreadsheetBackend.configured() Null type");
+        String value = System.getProperty(PROPERTY + "." + type.name().toLowerCase(Locale.US),
+                System.getProperty(PROPERTY));
+        if (value == null) return EVENT;
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.US));
+        } catch (IllegalArgumentException e) {
+            LOG.warning("Unknown spreadsheet backend " + value + " for " + type + ", using " + EVENT);
+            return EVENT;
+        }
+    }
+}
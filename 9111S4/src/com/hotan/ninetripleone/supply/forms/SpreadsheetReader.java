@@ -0,0 +1,86 @@
+package com.hotan.ninetripleone.supply.forms;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.hotan.ninetripleone.supply.util.FormatException;
+
+/**
+ * Read-only access to the sheets, rows and string cells of a XLS file, the
+ * only parts of a workbook the hand receipt parsers read.
+ * <br>The sheets are handed to a {@link RowHandler} in order, and the rows
+ * of every sheet in row order.  Every backend hands over the same cells:
+ * String cells with their text, blank cells as empty Strings and number
+ * cells formatted without a fraction when they are whole.  Other cells are
+ * skipped.
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ * @see SpreadsheetBackend
+ */
+public interface SpreadsheetReader {
+
+    /**
+     * Reads the file, handing every sheet to the handler until the handler
+     * stops the reading or the last sheet ends.
+     *
+     * @param file XLS file to read
+     * @param handler Handler of the sheets and rows
+     * @throws IOException Unable to read the file
+     * @throws FormatException The handler could not interpret a sheet
+     */
+    void read(File file, RowHandler handler) throws IOException, FormatException;
+
+    /**
+     * Receives the rows of the sheets of a workbook.
+     */
+    interface RowHandler {
+
+        /**
+         * Called before the rows of a sheet.
+         *
+         * @param index 0-based index of the sheet
+         * @param name Name of the sheet
+         * @throws FormatException The sheet can not be interpreted
+         */
+        void startSheet(int index, String name) throws FormatException;
+
+        /**
+         * Called for every row of the sheet with at least one cell.
+         *
+         * @param row Row, only valid during the call
+         * @throws FormatException The row can not be interpreted
+         */
+        void onRow(Row row) throws FormatException;
+
+        /**
+         * Called after the last row of a sheet.
+         *
+         * @param index 0-based index of the sheet
+         * @return Whether to read the following sheets
+         * @throws FormatException The sheet can not be interpreted
+         */
+        boolean endSheet(int index) throws FormatException;
+    }
+
+    /**
+     * Row of string cells.
+     */
+    interface Row {
+
+        /**
+         * @return 0-based index of the row
+         */
+        int getRowNum();
+
+        /**
+         * @return 0-based index of the last column with a cell, -1 if none has
+         */
+        int getLastColumn();
+
+        /**
+         * @param col 0-based column of the cell
+         * @return Value of the cell, null if there is no cell
+         */
+        String getString(int col);
+    }
+}
@@ -0,0 +1,420 @@
+package com.hotan.ninetripleone.supply.forms;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Logger;
+
+import org.apache.poi.hssf.usermodel.HSSFCell;
+import org.apache.poi.hssf.usermodel.HSSFRow;
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+
+import com.hotan.ninetripleone.supply.forms.HeaderSchema.Spaces;
+import com.hotan.ninetripleone.supply.util.POIUtil.IndexPair;
+
+/**
+ * Where the cells of a Unit level hand receipt are.
+ * <br>Different versions of the hand receipt software shift the columns and
+ * header rows, so the layout is detected from the labels of the column heading
+ * row ("LIN", "NSN", "ITEM NOMEN", "QTY") and the header cells above it.
+ * <br>The last {@link #MAX_CACHED} layouts used are cached by the text of
+ * the heading row, so repeat files from the same system skip the detection.
+ * <br>Every layout compiles the {@link HeaderSchema} of its header cells once.
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+public class UnitHRLayout {
+
+    private static final Logger LOG = Logger.getLogger(UnitHRLayout.class.getSimpleName());
+
+    /**
+     * Number of leading cells of a row that can be part of the layout.
+     */
+    static final int MAX_COLUMNS = 24;
+
+    /**
+     * Last row the column heading row can be on.
+     */
+    static final int MAX_HEADING_ROW = 20;
+
+    // Labels of the column heading row
+    private static final String LIN_LABEL = "LIN";
+    private static final String NSN_LABEL = "NSN";
+    private static final String NAME_LABEL = "ITEM NOMEN";
+    private static final String UI_LABEL = "UI";
+    private static final String QTY_LABEL = "QTY";
+
+    // Labels the header cells start with
+    private static final String DATE_LABEL = "DATE PREPARED";
+    private static final String FROM_LABEL = "FROM:";
+    private static final String UICDESC_LABEL = "UIC/DESC:";
+    private static final String TO_LABEL = "TO:";
+
+    /**
+     * Fields of the header cells.
+     */
+    enum HeaderField { DATE, UIC, DESC, TEAM, FROM_NAME, FROM_RANK, TO_NAME, TO_RANK }
+
+    /**
+     * Layout of 9111_UNIT_HR.xls.
+     */
+    public static final UnitHRLayout DEFAULT = new UnitHRLayout(null, 6, 0, 2, 4, 9, new int[] {0, 4, 5},
+            IndexPair.valueOf(0, 0), IndexPair.valueOf(2, 5), IndexPair.valueOf(3, 0), IndexPair.valueOf(3, 5));
+
+    /**
+     * Number of layouts kept in the cache.
+     */
+    static final int MAX_CACHED = 16;
+
+    /**
+     * Detected layouts by the fingerprint of their heading row, least recently used first.
+     */
+    private static final Map<String, UnitHRLayout> CACHE = new LinkedHashMap<String, UnitHRLayout>(16, 0.75f, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, UnitHRLayout> eldest) {
+            return size() > MAX_CACHED;
+        }
+    };
+
+    private final String mFingerprint;
+    private final int mHeadingRow;
+    private final int mLinCol, mNsnCol, mNameCol, mQtyCol;
+    private final int[] mSerialCols;
+    private final IndexPair mDate, mFrom, mUicDesc, mTo;
+    private final HeaderSchema.Plan<HeaderField> mHeader;
+
+    private UnitHRLayout(String fingerprint, int headingRow, int linCol, int nsnCol, int nameCol, int qtyCol,
+            int[] serialCols, IndexPair date, IndexPair from, IndexPair uicDesc, IndexPair to) {
+        mFingerprint = fingerprint;
+        mHeadingRow = headingRow;
+        mLinCol = linCol;
+        mNsnCol = nsnCol;
+        mNameCol = nameCol;
+        mQtyCol = qtyCol;
+        mSerialCols = serialCols;
+        mDate = date;
+        mFrom = from;
+        mUicDesc = uicDesc;
+        mTo = to;
+        mHeader = HeaderSchema.of(UnitLevelHandReceipt.class, HeaderField.class)
+                .optional(HeaderField.DATE, date, DATE_LABEL + ":", ' ', 0, Spaces.KEEP)
+                .field(HeaderField.UIC, uicDesc, UICDESC_LABEL, '/', 0, Spaces.KEEP)
+                .field(HeaderField.DESC, uicDesc, UICDESC_LABEL, '/', 1, Spaces.KEEP)
+                .field(HeaderField.FROM_NAME, from, FROM_LABEL, '/', 1, Spaces.KEEP)
+                .field(HeaderField.FROM_RANK, from, FROM_LABEL, '/', 2, Spaces.KEEP)
+                .field(HeaderField.TEAM, to, TO_LABEL, '/', 0, Spaces.KEEP)
+                .field(HeaderField.TO_NAME, to, TO_LABEL, '/', 1, Spaces.KEEP)
+                .field(HeaderField.TO_RANK, to, TO_LABEL, '/', 2, Spaces.KEEP)
+                .compile();
+    }
+
+    /**
+     * Returns the layout of the sheet.
+     * <br>The rows cached layouts have their heading row on are checked 
+     * first, each once, and the sheet is only searched for its heading row 
+     * when none of them match.
+     *
+     * @param sheet First sheet of a Unit level hand receipt
+     * @return Layout of the sheet, {@link #DEFAULT} if it has no heading row
+     */
+    public static UnitHRLayout of(HSSFSheet sheet) {
+        Set<Integer> headingRows = new TreeSet<Integer>();
+        synchronized (CACHE) {
+            for (UnitHRLayout known: CACHE.values()) {
+                headingRows.add(known.mHeadingRow);
+            }
+        }
+        for (int headingRow: headingRows) {
+            String[] cells = readRow(sheet, headingRow);
+            if (cells == null) continue;
+            UnitHRLayout known = getCached(fingerprint(headingRow, cells));
+            if (known != null) return known;
+        }
+
+        List<String[]> rows = new ArrayList<String[]>();
+        int last = Math.min(sheet.getLastRowNum(), MAX_HEADING_ROW);
+        for (int i = 0; i <= last; ++i) {
+            String[] cells = readRow(sheet, i);
+            rows.add(cells);
+            if (cells != null && isHeadingRow(cells)) return resolve(rows);
+        }
+        LOG.warning("No column heading row found in " + sheet.getSheetName() + ", using the default layout");
+        return DEFAULT;
+    }
+
+    private static String[] readRow(HSSFSheet sheet, int rowNum) {
+        HSSFRow row = sheet.getRow(rowNum);
+        if (row == null) return null;
+        String[] cells = new String[MAX_COLUMNS];
+        for (int col = 0; col < MAX_COLUMNS; ++col) {
+            HSSFCell cell = row.getCell(col);
+            if (cell != null && cell.getCellType() == HSSFCell.CELL_TYPE_STRING)
+                cells[col] = cell.getStringCellValue();
+        }
+        return cells;
+    }
+
+    /**
+     * Checks whether the cells are the column heading row of a Unit level hand receipt.
+     *
+     * @param cells Cell values of a row, null for missing cells
+     * @return Whether the row has a LIN and a NSN column label
+     */
+    static boolean isHeadingRow(String[] cells) {
+        return indexOf(cells, LIN_LABEL) != -1 && indexOf(cells, NSN_LABEL) != -1;
+    }
+
+    /**
+     * Returns the layout of the rows at the top of a sheet, detecting it only
+     * if no layout with the same heading row is cached.
+     *
+     * @param rows Cell values of the rows from the first row to the heading row,
+     *          null for missing rows
+     * @return Layout of the rows
+     */
+    static UnitHRLayout resolve(List<String[]> rows) {
+        int headingRow = rows.size() - 1;
+        String fingerprint = fingerprint(headingRow, rows.get(headingRow));
+        UnitHRLayout layout = getCached(fingerprint);
+        return layout != null ? layout : cache(detect(fingerprint, rows));
+    }
+
+    private static UnitHRLayout getCached(String fingerprint) {
+        synchronized (CACHE) {
+            return CACHE.get(fingerprint);
+        }
+    }
+
+    /**
+     * Caches the layout unless one with the same heading row already is.
+     *
+     * @param layout Layout to cache
+     * @return Cached layout of the heading row
+     */
+    private static UnitHRLayout cache(UnitHRLayout layout) {
+        synchronized (CACHE) {
+            UnitHRLayout cached = CACHE.get(layout.mFingerprint);
+            if (cached != null) return cached;
+            CACHE.put(layout.mFingerprint, layout);
+            return layout;
+        }
+    }
+
+    private static String fingerprint(int headingRow, String[] cells) {
+        StringBuilder text = new StringBuilder().append(headingRow);
+        for (int col = 0; col < cells.length; ++col) {
+            if (cells[col] == null || cells[col].trim().isEmpty()) continue;
+            text.append('|').append(col).append('=').append(cells[col].trim());
+        }
+        return text.toString();
+    }
+
+    private static UnitHRLayout detect(String fingerprint, List<String[]> rows) {
+        int headingRow = rows.size() - 1;
+        String[] heading = rows.get(headingRow);
+        int linCol = indexOf(heading, LIN_LABEL);
+        int nsnCol = indexOf(heading, NSN_LABEL);
+        int nameCol = orDefault(indexOf(heading, NAME_LABEL), DEFAULT.mNameCol, NAME_LABEL);
+        int qtyCol = orDefault(indexOf(heading, QTY_LABEL), DEFAULT.mQtyCol, QTY_LABEL);
+        int uiCol = indexOf(heading, UI_LABEL);
+
+        // Serial numbers are listed under the LIN, name and unit of issue columns
+        int[] serialCols = {linCol, nameCol, uiCol == -1 ? nameCol + 1 : uiCol};
+
+        IndexPair date = orDefault(find(rows, DATE_LABEL), DEFAULT.mDate, DATE_LABEL);
+        IndexPair from = orDefault(find(rows, FROM_LABEL), DEFAULT.mFrom, FROM_LABEL);
+        IndexPair uicDesc = orDefault(find(rows, UICDESC_LABEL), DEFAULT.mUicDesc, UICDESC_LABEL);
+        IndexPair to = orDefault(find(rows, TO_LABEL), DEFAULT.mTo, TO_LABEL);
+        LOG.info("Detected Unit HR layout for heading row " + fingerprint);
+        return new UnitHRLayout(fingerprint, headingRow, linCol, nsnCol, nameCol, qtyCol, serialCols,
+                date, from, uicDesc, to);
+    }
+
+    private static int indexOf(String[] cells, String label) {
+        for (int col = 0; col < cells.length; ++col) {
+            if (cells[col] != null && cells[col].trim().equals(label)) return col;
+        }
+        return -1;
+    }
+
+    private static IndexPair find(List<String[]> rows, String label) {
+        for (int row = 0; row < rows.size(); ++row) {
+            String[] cells = rows.get(row);
+            if (cells == null) continue;
+            for (int col = 0; col < cells.length; ++col) {
+                if (cells[col] != null && cells[col].trim().startsWith(label))
+                    return IndexPair.valueOf(row, col);
+            }
+        }
+        return null;
+    }
+
+    private static int orDefault(int col, int defaultCol, String label) {
+        if (col != -1) return col;
+        LOG.warning("No " + label + " column label, using column " + defaultCol);
+        return defaultCol;
+    }
+
+    private static IndexPair orDefault(IndexPair index, IndexPair defaultIndex, String label) {
+        if (index != null) return index;
+        LOG.warning("No " + label + " cell, using " + defaultIndex);
+        return defaultIndex;
+    }
+
+    /**
+     * Writes the columns and cells of this layout.
+     *
+     * @param out Stream to write to
+     * @throws IOException Unable to write to the stream
+     */
+    void write(DataOutputStream out) throws IOException {
+        out.writeBoolean(mFingerprint != null);
+        if (mFingerprint == null) return;
+        out.writeUTF(mFingerprint);
+        out.writeInt(mHeadingRow);
+        out.writeInt(mLinCol);
+        out.writeInt(mNsnCol);
+        out.writeInt(mNameCol);
+        out.writeInt(mQtyCol);
+        out.writeInt(mSerialCols.length);
+        for (int col: mSerialCols) {
+            out.writeInt(col);
+        }
+        for (IndexPair index: new IndexPair[] {mDate, mFrom, mUicDesc, mTo}) {
+            out.writeInt(index.row);
+            out.writeInt(index.col);
+        }
+    }
+
+    /**
+     * Reads a layout written by {@link #write(DataOutputStream)}.
+     * <br>A layout already detected with the same heading row is returned
+     * instead of a copy.
+     *
+     * @param in Stream to read from
+     * @return Layout read
+     * @throws IOException Unable to read the stream
+     */
+    static UnitHRLayout read(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) return DEFAULT;
+        String fingerprint = in.readUTF();
+        int headingRow = in.readInt();
+        int linCol = in.readInt(), nsnCol = in.readInt(), nameCol = in.readInt(), qtyCol = in.readInt();
+        int numSerialCols = in.readInt();
+        if (numSerialCols < 0 || numSerialCols > MAX_COLUMNS)
+            throw new IOException("Illegal number of serial number columns " + numSerialCols);
+        int[] serialCols = new int[numSerialCols];
+        for (int i = 0; i < numSerialCols; ++i) {
+            serialCols[i] = in.readInt();
+        }
+        IndexPair[] cells = new IndexPair[4];
+        for (int i = 0; i < cells.length; ++i) {
+            cells[i] = IndexPair.valueOf(in.readInt(), in.readInt());
+        }
+        UnitHRLayout layout = getCached(fingerprint);
+        if (layout != null) return layout;
+        return cache(new UnitHRLayout(fingerprint, headingRow, linCol, nsnCol, nameCol, qtyCol, serialCols,
+                cells[0], cells[1], cells[2], cells[3]));
+    }
+
+    /**
+     * Removes all the cached layouts.
+     */
+    public static void clearCache() {
+        synchronized (CACHE) {
+            CACHE.clear();
+        }
+    }
+
+    /**
+     * @return Number of layouts detected and cached
+     */
+    public static int getCacheSize() {
+        synchronized (CACHE) {
+            return CACHE.size();
+        }
+    }
+
+    /**
+     * @return 0-based index of the column heading row
+     */
+    public int getHeadingRow() {
+        return mHeadingRow;
+    }
+
+    /**
+     * @return 0-based index of the first row that can hold an end item
+     */
+    public int getFirstRow() {
+        return mHeadingRow + 1;
+    }
+
+    public int getLINCol() {
+        return mLinCol;
+    }
+
+    public int getNSNCol() {
+        return mNsnCol;
+    }
+
+    public int getNameCol() {
+        return mNameCol;
+    }
+
+    public int getQtyCol() {
+        return mQtyCol;
+    }
+
+    /**
+     * @return Columns serial numbers are listed in, starting with the LIN column
+     */
+    public int[] getSerialCols() {
+        return mSerialCols.clone();
+    }
+
+    int getSerialCol(int i) {
+        return mSerialCols[i];
+    }
+
+    int getNumSerialCols() {
+        return mSerialCols.length;
+    }
+
+    public IndexPair getDateCell() {
+        return mDate;
+    }
+
+    public IndexPair getFromCell() {
+        return mFrom;
+    }
+
+    public IndexPair getUICDESCCell() {
+        return mUicDesc;
+    }
+
+    public IndexPair getToCell() {
+        return mTo;
+    }
+
+    /**
+     * @return Plan that extracts the header fields from the rows above the heading row
+     */
+    HeaderSchema.Plan<HeaderField> getHeader() {
+        return mHeader;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + " heading row: " + mHeadingRow + " LIN: " + mLinCol
+                + " NSN: " + mNsnCol + " name: " + mNameCol + " QTY: " + mQtyCol;
+    }
+}
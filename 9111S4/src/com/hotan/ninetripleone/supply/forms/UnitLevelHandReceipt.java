@@ -1,30 +1,57 @@
 package com.hotan.ninetripleone.supply.forms;
 
-import java.util.ArrayList;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Executor;
 import java.util.logging.Logger;
 
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 
+import org.apache.poi.hssf.eventusermodel.HSSFEventFactory;
+import org.apache.poi.hssf.eventusermodel.HSSFRequest;
+import org.apache.poi.hssf.eventusermodel.HSSFUserException;
 import org.apache.poi.hssf.usermodel.HSSFCell;
 import org.apache.poi.hssf.usermodel.HSSFRow;
 import org.apache.poi.hssf.usermodel.HSSFSheet;
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.poifs.filesystem.DirectoryNode;
+import org.apache.poi.poifs.filesystem.NPOIFSFileSystem;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
 
+import com.hotan.ninetripleone.supply.forms.UnitHRLayout.HeaderField;
+import com.hotan.ninetripleone.supply.forms.UnitLevelHandReceiptBuilder.GroupHandler;
 import com.hotan.ninetripleone.supply.model.EndItem;
 import com.hotan.ninetripleone.supply.model.EndItemGroup;
+import com.hotan.ninetripleone.supply.model.EndItemGroupIndex;
 import com.hotan.ninetripleone.supply.model.Operator;
 import com.hotan.ninetripleone.supply.model.Rank;
+import com.hotan.ninetripleone.supply.model.SerialNumberSet;
+import com.hotan.ninetripleone.supply.util.Flow;
+import com.hotan.ninetripleone.supply.util.FormatException;
+import com.hotan.ninetripleone.supply.util.POILoader;
+import com.hotan.ninetripleone.supply.util.WorkbookSource;
 
 public class UnitLevelHandReceipt {
 
     private static final Logger LOG = Logger.getLogger(UnitLevelHandReceipt.class.getSimpleName());
 
+    private static final String TITLE = "UNIT LEVEL HAND RECEIPT";
+
     private final HSSFWorkbook mWorkbook;
 
+    /**
+     * File to reopen for a detached hand receipt, null otherwise.
+     */
+    private final WorkbookSource mSource;
+
     private final Date mDate;
     
     private final String UIC, DESC, mTeam;
@@ -33,39 +60,348 @@ public class UnitLevelHandReceipt {
 
     private final ObservableList<EndItemGroup> mGroups;
 
+    private final EndItemGroupIndex mIndex;
+
+    private final UnitHRLayout mLayout;
+
     /**
      * Creates a Unit level hand receipt from a XLS workbook.
      * 
      * @param wb Workbook to use to build this UnitLevelHandReceipt
      */
     public UnitLevelHandReceipt(HSSFWorkbook wb) {
+        this(wb, null);
+    }
+
+    /**
+     * Creates a Unit level hand receipt from a XLS workbook.
+     * 
+     * @param wb Workbook to use to build this UnitLevelHandReceipt
+     * @param source File the workbook was loaded from if the workbook should 
+     *          be released once built, null to keep the workbook
+     */
+    private UnitLevelHandReceipt(HSSFWorkbook wb, WorkbookSource source) {
         if (wb == null)
             throw new NullPointerException("UnitLevelHandReceipt(), Null Workbook");
-        mWorkbook = wb;
+        mWorkbook = source == null ? wb : null;
+        mSource = source;
         
         mGroups = FXCollections.observableArrayList();
+        mIndex = new EndItemGroupIndex();
 
-        HSSFSheet sheet = mWorkbook.getSheetAt(0);
-        int firstRow = 7;
-        int lastRow = sheet.getLastRowNum();
-        for (int i = firstRow; i <= lastRow; ++i) {
-
-            // For each row check if it is the header for an enditem
-            HSSFRow row = sheet.getRow(i);
-            if (row == null) continue;
-            // If the head is not white then consider it a header.
-            if (isEndItemHeader(row)) {
-                processRow(row);
-            }    
+        // Label every row once and build the groups as we go
+        HSSFSheet sheet = wb.getSheetAt(0);
+        mLayout = UnitHRLayout.of(sheet);
+        UnitLevelHandReceiptBuilder builder = new UnitLevelHandReceiptBuilder();
+        Iterator<HandReceiptRow> rows = new HandReceiptRowIterator(sheet, mLayout);
+        while (rows.hasNext()) {
+            builder.onRow(rows.next());
+        }
+        for (EndItemGroup group: builder.finish()) {
+            addGroup(group);
         }
         
-        // Find the Date.
-        mDate = findDate(mWorkbook);
-        UIC = findUIC(mWorkbook);
-        DESC = findDESC(mWorkbook);
-        mTeam = findTeam(mWorkbook);
-        mFromIndiv = findFrom(mWorkbook);
-        mToIndiv = findTo(mWorkbook);
+        // Cut the header fields out of the rows above the column headings
+        HeaderSchema.Values<HeaderField> header = extractHeader(mLayout, 
+                SheetBuffer.of(sheet, mLayout.getHeadingRow() - 1));
+        mDate = toDate(header.get(HeaderField.DATE));
+        UIC = header.get(HeaderField.UIC);
+        DESC = header.get(HeaderField.DESC);
+        mTeam = header.get(HeaderField.TEAM);
+        mFromIndiv = toOperator(header.get(HeaderField.FROM_NAME), header.get(HeaderField.FROM_RANK));
+        mToIndiv = toOperator(header.get(HeaderField.TO_NAME), header.get(HeaderField.TO_RANK));
+    }
+
+    /**
+     * Creates a Unit level hand receipt from the header rows and groups
+     * extracted by a streaming parser.  No workbook is retained.
+     * 
+     * @param headerRows Values of the rows above the column heading row
+     * @param groups Groups in the order they were found
+     * @param layout Layout the cells were found with
+     */
+    UnitLevelHandReceipt(SheetBuffer headerRows, List<EndItemGroup> groups, UnitHRLayout layout) {
+        this(extractHeader(layout, headerRows), groups, layout);
+    }
+
+    private UnitLevelHandReceipt(HeaderSchema.Values<HeaderField> header, List<EndItemGroup> groups, 
+            UnitHRLayout layout) {
+        this(toDate(header.get(HeaderField.DATE)), header.get(HeaderField.UIC), header.get(HeaderField.DESC),
+                header.get(HeaderField.TEAM),
+                toOperator(header.get(HeaderField.FROM_NAME), header.get(HeaderField.FROM_RANK)),
+                toOperator(header.get(HeaderField.TO_NAME), header.get(HeaderField.TO_RANK)), 
+                groups, layout, null);
+    }
+
+    /**
+     * Creates a Unit level hand receipt from values that were already parsed,
+     * for example by a previous parse of the same file.
+     * 
+     * @param date Date the hand receipt was prepared
+     * @param uic UIC of the unit
+     * @param desc Description of the unit
+     * @param team Team the hand receipt is to
+     * @param from Operator the hand receipt is from
+     * @param to Operator the hand receipt is to
+     * @param groups Groups in the order they were found
+     * @param layout Layout the cells were found with
+     * @param source File to reopen for {@link #getWorkbook()}, or null
+     */
+    UnitLevelHandReceipt(Date date, String uic, String desc, String team, Operator from, Operator to,
+            List<EndItemGroup> groups, UnitHRLayout layout, WorkbookSource source) {
+        mWorkbook = null;
+        mSource = source;
+        mLayout = layout;
+        mGroups = FXCollections.observableArrayList();
+        mIndex = new EndItemGroupIndex();
+        for (EndItemGroup group: groups) {
+            addGroup(group);
+        }
+
+        mDate = date;
+        UIC = uic;
+        DESC = desc;
+        mTeam = team;
+        mFromIndiv = from;
+        mToIndiv = to;
+    }
+
+    /**
+     * Creates a Unit level hand receipt by streaming the BIFF records of an XLS file.
+     * <br>Unlike {@link #UnitLevelHandReceipt(HSSFWorkbook)} no usermodel 
+     * workbook, sheet, row or cell objects are ever built.
+     * 
+     * @param in Input stream of the XLS file, closing it is left to the caller
+     * @return Unit level hand receipt found in the first sheet of the stream
+     * @throws IOException Unable to read the stream
+     */
+    public static UnitLevelHandReceipt fromEventStream(InputStream in) throws IOException {
+        if (in == null)
+            throw new NullPointerException("UnitLevelHandReceipt.fromEventStream(), Null InputStream");
+        return fromEventStream(new POIFSFileSystem(in).getRoot());
+    }
+
+    /**
+     * Creates a Unit level hand receipt by streaming the BIFF records of an 
+     * XLS file, see {@link #fromEventStream(InputStream)}.
+     * <br>The file is read in place instead of being copied into memory, 
+     * and is closed before returning.
+     * 
+     * @param file XLS file of the hand receipt
+     * @return Unit level hand receipt found in the first sheet of the file
+     * @throws IOException Unable to read the file
+     */
+    public static UnitLevelHandReceipt fromEventStream(File file) throws IOException {
+        if (file == null)
+            throw new NullPointerException("UnitLevelHandReceipt.fromEventStream(), Null file");
+        NPOIFSFileSystem fs = new NPOIFSFileSystem(file, true);
+        try {
+            return fromEventStream(fs.getRoot());
+        } finally {
+            fs.close();
+        }
+    }
+
+    private static UnitLevelHandReceipt fromEventStream(DirectoryNode root) throws IOException {
+        UnitLevelHandReceiptBuilder builder = new UnitLevelHandReceiptBuilder();
+        HSSFRequest request = new HSSFRequest();
+        request.addListenerForAllRecords(new UnitLevelHandReceiptListener(builder));
+        try {
+            new HSSFEventFactory().abortableProcessWorkbookEvents(request, root);
+        } catch (HSSFUserException e) {
+            throw new IOException("Unable to process Unit level hand receipt", e);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Creates a Unit level hand receipt with the backend configured for 
+     * Unit level hand receipts, see {@link SpreadsheetBackend#configured(FormType)}.
+     * 
+     * @param file XLS file of the hand receipt
+     * @return Unit level hand receipt found in the first sheet of the file
+     * @throws IOException Unable to read the file
+     * @throws FormatException The reader could not read the file
+     */
+    public static UnitLevelHandReceipt read(File file) throws IOException, FormatException {
+        return read(file, SpreadsheetBackend.configured(FormType.UNIT).getReader());
+    }
+
+    /**
+     * Creates a Unit level hand receipt from the rows of the first sheet 
+     * handed over by the reader.
+     * <br>Reading stops as soon as the first sheet ends.
+     * 
+     * @param file XLS file of the hand receipt
+     * @param reader Reader of the file
+     * @return Unit level hand receipt found in the first sheet of the file
+     * @throws IOException Unable to read the file
+     * @throws FormatException The reader could not read the file
+     */
+    public static UnitLevelHandReceipt read(File file, SpreadsheetReader reader) throws IOException, FormatException {
+        if (file == null)
+            throw new NullPointerException("UnitLevelHandReceipt.read(), Null file");
+        if (reader == null)
+            throw new NullPointerException("UnitLevelHandReceipt.read(), Null reader");
+        final UnitLevelHandReceiptBuilder builder = new UnitLevelHandReceiptBuilder();
+        reader.read(file, new SpreadsheetReader.RowHandler() {
+
+            private final HandReceiptRow mRow = new HandReceiptRow();
+
+            @Override
+            public void startSheet(int index, String name) {}
+
+            @Override
+            public void onRow(SpreadsheetReader.Row row) {
+                if (builder.isStopped()) return;
+                mRow.reset(row.getRowNum(), null);
+                for (int col = 0; col <= row.getLastColumn(); ++col) {
+                    String value = row.getString(col);
+                    if (value != null) mRow.setCell(col, value);
+                }
+                mRow.classify();
+                builder.onRow(mRow);
+            }
+
+            @Override
+            public boolean endSheet(int index) {
+                // Everything needed is on the first sheet.
+                return false;
+            }
+        });
+        return builder.build();
+    }
+
+    /**
+     * Creates a publisher of the groups of a XLS file, see 
+     * {@link #publisher(File, Executor)}.
+     * 
+     * @param file XLS file of a Unit level hand receipt
+     * @return Publisher of the groups of the file
+     */
+    public static Flow.Publisher<EndItemGroup> publisher(File file) {
+        return publisher(file, null);
+    }
+
+    /**
+     * Creates a publisher of the groups of a XLS file.
+     * <br>The first sheet is streamed with the HSSF event API for every 
+     * subscriber, and every group is handed over as soon as its last serial
+     * number is read.  Streaming waits while the subscriber has no demand.
+     * <br>A group split over pages is handed over once per page, the parts 
+     * can be put back together with {@link EndItemGroup#combine(EndItemGroup)}.
+     * 
+     * @param file XLS file of a Unit level hand receipt
+     * @param executor Executor to stream on, null for a daemon thread of its own
+     * @return Publisher of the groups of the file
+     */
+    public static Flow.Publisher<EndItemGroup> publisher(File file, Executor executor) {
+        return new ReceiptPublisher<EndItemGroup>(file, executor) {
+
+            @Override
+            protected void produce(final Emitter<EndItemGroup> emitter) throws IOException {
+                UnitLevelHandReceiptBuilder builder = new UnitLevelHandReceiptBuilder(new GroupHandler() {
+
+                    @Override
+                    public boolean onGroup(EndItemGroup group) {
+                        return emitter.emit(group);
+                    }
+                });
+                HSSFRequest request = new HSSFRequest();
+                request.addListenerForAllRecords(new UnitLevelHandReceiptListener(builder));
+                NPOIFSFileSystem fs = new NPOIFSFileSystem(mFile, true);
+                try {
+                    new HSSFEventFactory().abortableProcessWorkbookEvents(request, fs.getRoot());
+                } catch (HSSFUserException e) {
+                    throw new IOException("Unable to process Unit level hand receipt", e);
+                } finally {
+                    fs.close();
+                }
+                builder.finish();
+            }
+        };
+    }
+
+    /**
+     * Creates a Unit level hand receipt from a XLSX file.
+     * <br>The first sheet is streamed with a SAX parser so the XSSFWorkbook
+     * is never built. The hand receipt has no workbook.
+     * 
+     * @param file XLSX file of the hand receipt
+     * @return Unit level hand receipt of the file
+     * @throws IOException Unable to read the file
+     */
+    public static UnitLevelHandReceipt fromXLSX(File file) throws IOException {
+        UnitLevelHandReceiptBuilder builder = new UnitLevelHandReceiptBuilder();
+        XLSXSheetReader reader = XLSXSheetReader.open(file);
+        try {
+            if (!reader.hasNextSheet())
+                throw new IOException("No sheets in " + file);
+            reader.nextSheet(new UnitLevelHandReceiptXSSFHandler(builder));
+        } finally {
+            reader.close();
+        }
+        return builder.build();
+    }
+
+    /**
+     * Creates a Unit level hand receipt from a XLS file without holding on to
+     * the workbook once the hand receipt is built.
+     * <br>{@link #getWorkbook()} reopens the file when it is called.
+     * 
+     * @param file XLS file of the hand receipt
+     * @return Detached Unit level hand receipt
+     * @throws IOException Unable to read the file
+     */
+    public static UnitLevelHandReceipt detached(File file) throws IOException {
+        return detached(POILoader.getXLSWorkbook(file), file);
+    }
+
+    /**
+     * Creates a Unit level hand receipt from a workbook already read from a 
+     * XLS file, without holding on to the workbook once the hand receipt is built.
+     * 
+     * @param wb Workbook read from the file
+     * @param file XLS file to reopen for {@link #getWorkbook()}
+     * @return Detached Unit level hand receipt
+     */
+    public static UnitLevelHandReceipt detached(HSSFWorkbook wb, File file) {
+        return new UnitLevelHandReceipt(wb, new WorkbookSource(file));
+    }
+
+    /**
+     * Checks the title of the first sheet for "UNIT LEVEL HAND RECEIPT".
+     * 
+     * @param wb Workbook to check
+     * @return Whether the workbook is a Unit level hand receipt
+     */
+    public static boolean isUnitLevelHandReceipt(HSSFWorkbook wb) {
+        if (wb == null || wb.getNumberOfSheets() == 0) return false;
+        HSSFRow row = wb.getSheetAt(0).getRow(0);
+        if (row == null) return false;
+        HSSFCell cell = row.getCell(0);
+        return cell != null && cell.getCellType() == HSSFCell.CELL_TYPE_STRING
+                && cell.getStringCellValue().contains(TITLE);
+    }
+
+    /**
+     * Returns the workbook this hand receipt was built from.
+     * <br>A detached hand receipt reopens its file.
+     * 
+     * @return Workbook of this hand receipt, or null if it was streamed
+     * @throws IOException Unable to reopen the file
+     */
+    public HSSFWorkbook getWorkbook() throws IOException {
+        if (mWorkbook != null) return mWorkbook;
+        if (mSource != null) return mSource.getWorkbook();
+        return null;
+    }
+
+    /**
+     * @return Whether the workbook is released and only reopened on demand
+     */
+    public boolean isDetached() {
+        return mSource != null;
     }
 
     public Operator getWhoFrom() {
@@ -88,6 +424,13 @@ public class UnitLevelHandReceipt {
         return mTeam;
     }
     
+    /**
+     * @return Layout of the cells this hand receipt was read with
+     */
+    public UnitHRLayout getLayout() {
+        return mLayout;
+    }
+
     public Date getDatePrepared() {
         return mDate;
     }
@@ -101,9 +444,25 @@ public class UnitLevelHandReceipt {
         return FXCollections.unmodifiableObservableList(mGroups);
     }
     
+    /**
+     * Adds the group to this hand receipt.
+     * <br>If the hand receipt already has the same group, the two are combined.
+     * 
+     * @param group Group to add
+     */
     public void addGroup(EndItemGroup group) {
         if (group == null) return;
         
+        // Check if the hand receipt had an error and printed the same EndItemGroup
+        // on two seperate header lines.
+        EndItemGroup curGroup = mIndex.get(group);
+        if (curGroup != null) {
+            curGroup.combine(group);
+        } else {
+            // Update the list of groups.
+            mGroups.add(group);
+            mIndex.add(group);
+        }
     }
     
     /**
@@ -125,210 +484,98 @@ public class UnitLevelHandReceipt {
      * @return EndItemGroup that represents the the nsn and lin inputted, or null if non are found.
      */
     public EndItemGroup getGroup(String nsn, String lin) {
-        if (nsn == null || lin == null) return null;
-        for (EndItemGroup group: mGroups) {
-            if (group.getNSN().equals(nsn) && group.getLIN().equals(lin)) {
-                return group;
-            }
-        }
-        return null;
+        return mIndex.get(nsn, lin);
     }
     
     /**
-     * Process the end item for the row.
-     * <br>Extracts the META Data for the end item
-     * <br>If serial numbers exists, collect them all for the group.
+     * Returns a single forward scan over the rows of a Unit level hand receipt 
+     * sheet that labels every row as an end item header, serial numbers or other.
+     * <br>The same row instance is returned for every row of the scan.
+     * The layout of the sheet is detected, or taken from the layout cache.
      * 
-     * @param header Header of the end item.
+     * @param sheet Sheet to scan
+     * @return Iterator over the labeled rows
      */
-    private void processRow(HSSFRow header) {
-        String lin = header.getCell(0).getStringCellValue();
-        String nsn = header.getCell(2).getStringCellValue();
-        String nomenclature = header.getCell(4).getStringCellValue();
-        String qtyStr = header.getCell(9).getStringCellValue();
-        int qty = Integer.valueOf(qtyStr);
-
-        // Create a new EndItem group.
-        EndItemGroup group;
-
-        // Go to the next row
-        HSSFRow nextRow = header.getSheet().getRow(header.getRowNum() + 1);
-        
-        // If the item is serialized then there will be a serial number
-        // below the header
-        if (nextRow == null || nextRow.getCell(0) == null 
-                || nextRow.getCell(0).getStringCellValue() == null ||
-                        nextRow.getCell(0).getStringCellValue().isEmpty()) {
-            // Create 
-            group = new EndItemGroup(nomenclature, lin, nsn, false);
-            for (int i = 0; i < qty; ++i) {
-                group.add(new EndItem(nomenclature, lin, nsn));
-            }
-            
-        } else { // There are serial numbers
-            
-            // Create a group that are serialized.
-            group = new EndItemGroup(nomenclature, lin, nsn, true);
-            List<String> serials = new ArrayList<String>();
-            
-            // While the next row is not the header to the next end item,
-            // or the number of serial numbers matches the qty specified in the form.
-            while (serials.size() < qty && !isEndItemHeader(nextRow)) {
-                List<String> tmp = getSerialNumbers(nextRow);
-                serials.addAll(tmp);
-                nextRow = header.getSheet().getRow(nextRow.getRowNum() + 1);
-            }
-            
-            // Check the quantity matches the number of serial numbers
-            if (qty != serials.size()) {
-                LOG.warning("Number of serial numbers found " 
-            + serials.size() + " did not match defined quantity " + qty);
-            }
-            
-            // Add the serial numbered EndItem
-            for (String serial: serials) {
-                EndItem tmp = new EndItem(group.getName(), group.getLIN(), group.getNSN());
-                tmp.setSn(serial);
-                group.add(tmp);
-            }
-        }
-        
-        // Check if the hand receipt had an error and printed the same EndItemGroup
-        // on two seperate header lines.
-        int currGroupInd = mGroups.indexOf(group);
-        if (currGroupInd != -1) {
-            EndItemGroup curGroup = mGroups.get(currGroupInd);
-            curGroup.combine(group);
-        } else {
-            // Update the list of groups.
-            mGroups.add(group);
-        }
+    public static Iterator<HandReceiptRow> scanRows(HSSFSheet sheet) {
+        return new HandReceiptRowIterator(sheet);
     }
 
-    private static final int SERIAL_NUMBER_ROW_POSITION_1 = 0;
-    private static final int SERIAL_NUMBER_ROW_POSITION_2 = 4;
-    private static final int SERIAL_NUMBER_ROW_POSITION_3 = 5;
-    
     /**
-     * Extract all the serial numbers for a given HSSF row that
-     * is in the correct format.  
+     * Creates the group for a single end item header.
      * 
-     * @param row Row to find all the serial numbers
-     * @return List of String serial numbers
+     * @param nomenclature Name of the end item
+     * @param lin LIN of the end item
+     * @param nsn NSN of the end item
+     * @param qty Quantity defined on the header line
+     * @param serials Serial numbers found below the header, or null if the 
+     *          end item is not serialized
+     * @return Group populated with its EndItems
      */
-    private List<String> getSerialNumbers(HSSFRow row) {
-        List<String> serialNums = new ArrayList<String>();
-        if (isEndItemHeader(row)) return serialNums;
-        
-        // Extract the three serial number position
-        List<String> tmp = new ArrayList<String>();
-        tmp.add(row.getCell(SERIAL_NUMBER_ROW_POSITION_1).getStringCellValue());
-        tmp.add(row.getCell(SERIAL_NUMBER_ROW_POSITION_2).getStringCellValue());
-        tmp.add(row.getCell(SERIAL_NUMBER_ROW_POSITION_3).getStringCellValue());
+    static EndItemGroup createGroup(String nomenclature, String lin, String nsn, 
+            int qty, SerialNumberSet serials) {
+        if (serials == null) {
+            EndItemGroup group = new EndItemGroup(nomenclature, lin, nsn, false);
+            for (int i = 0; i < qty; ++i) {
+                group.add(new EndItem(nomenclature, lin, nsn));
+            }
+            return group;
+        } 
         
-        // Filter through the serial numbers
-        for (String tmpSerial: tmp) {
-            // If the serial number is empty or null ignore.
-            if (tmpSerial == null || tmpSerial.isEmpty()) continue;
-            serialNums.add(tmpSerial);
+        // Check the quantity matches the number of serial numbers
+        if (qty != serials.size()) {
+            LOG.warning("Number of serial numbers found " 
+                    + serials.size() + " did not match defined quantity " + qty);
         }
-        return serialNums;
+        
+        // The EndItems of the serial numbers are created when they are asked for
+        return new EndItemGroup(nomenclature, lin, nsn, serials);
     }
-    
+
     /**
-     * Based on the color background of the hand receipt judge whether
-     * or not the row represents an end Item header.
+     * Extracts the header fields of the layout.
      * 
-     * @param row Row to parse.
-     * @return true if it is header false otherwise.
+     * @param layout Layout of the hand receipt
+     * @param headerRows Values of the rows above the column heading row
+     * @return Values of the header fields
+     * @throws IllegalArgumentException A header cell is missing or incomplete
      */
-    private static boolean isEndItemHeader(HSSFRow row) {
-        // LIN Cell
-        HSSFCell linCell = row.getCell(0);
-        if (linCell == null) return false;
-        String cellVal = linCell.getStringCellValue();
-        if (cellVal == null || cellVal.length() != 6) return false;
-        
-        // NSN Cell
-        HSSFCell nsnCell = row.getCell(2);
-        if (nsnCell == null) return false;
-        String nsnVal = nsnCell.getStringCellValue();
-        if (nsnVal == null || nsnVal.length() != 13) return false;
-        
-        HSSFCell nameCell = row.getCell(4);
-        if (nameCell == null) return false;
-        String nameVal = nameCell.getStringCellValue();
-        if (nameVal == null || nameVal.isEmpty()) return false;
-        
-        return true;
+    private static HeaderSchema.Values<HeaderField> extractHeader(UnitHRLayout layout, SheetBuffer headerRows) {
+        try {
+            return layout.getHeader().extract(headerRows);
+        } catch (FormatException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
     }
 
     /**
-     * Returns the Date of the workbook.
-     * @param wb Workbook to find Date in
+     * Parses the Date from the value of the "DATE PREPARED" field, MM/dd/yy.
+     * @param value Value of the field
      * @return Date document was produced.
      */
-    private static Date findDate(HSSFWorkbook wb) {
-        HSSFSheet sheet = wb.getSheetAt(0);
-        HSSFRow row = sheet.getRow(0);
-        HSSFCell cell = row.getCell(0);
-
-        String value = cell.getStringCellValue();
-        value = value.replace("DATE PREPARED:", "");
-        value = value.replace("UNIT LEVEL HAND RECEIPT", "");
-        value = value.replace(" ", "");
-        String[] dateStr = value.split("/");
-
-        if (dateStr == null || dateStr.length != 3) {
-            LOG.warning("Unable to parse date");
+    private static Date toDate(String value) {
+        if (value == null) {
+            LOG.warning("Unable to find date");
             return new Date();
         }
-
-        Calendar cal = Calendar.getInstance();
-        cal.clear();
-        int month = Integer.parseInt(dateStr[0]) - 1;
-        int day = Integer.parseInt(dateStr[1]);
-        int year = Integer.parseInt(dateStr[2]) + 2000;
-        cal.set(year, month, day);
-        return cal.getTime();
-    }
-    
-    private static Operator findTo(HSSFWorkbook wb) {
-        String complete = wb.getSheetAt(0).getRow(3).getCell(5).getStringCellValue();
-        String val = complete.replace("TO: ", "").trim();
-        String[] details = val.split("/");
-        Rank rank = Rank.valueOf(details[2]);
-        String completeName = details[1];
-        String[] splitName = completeName.split(", ");
-        return new Operator(splitName[1], splitName[0], rank);
-    }
-
-    private static Operator findFrom(HSSFWorkbook wb) {
-        String complete = wb.getSheetAt(0).getRow(2).getCell(5).getStringCellValue();
-        String val = complete.replace("FROM: ", "").trim();
-        String[] details = val.split("/");
-        Rank rank = Rank.valueOf(details[2]);
-        String completeName = details[1];
-        String[] splitName = completeName.split(", ");
-        return new Operator(splitName[1], splitName[0], rank);
-    }
-
-    private static String findTeam(HSSFWorkbook wb) {
-        String complete = wb.getSheetAt(0).getRow(3).getCell(5).getStringCellValue();
-        String val = complete.replace("TO: ", "").trim();
-        return val.split("/")[0];
-    }
-
-    private static String findUIC(HSSFWorkbook wb) {
-        String complete = wb.getSheetAt(0).getRow(3).getCell(0).getStringCellValue();
-        String val = complete.replace("UIC/DESC: ", "").trim();
-        return val.split("/")[0];
+        SimpleDateFormat format = new SimpleDateFormat("MM/dd/yy");
+        Calendar century = Calendar.getInstance();
+        century.clear();
+        century.set(2000, Calendar.JANUARY, 1);
+        format.set2DigitYearStart(century.getTime());
+        Date date = format.parse(value, new ParsePosition(0));
+        if (date == null) {
+            LOG.warning("Unable to parse date " + value);
+            return new Date();
+        }
+        return date;
     }
     
-    private static String findDESC(HSSFWorkbook wb) {
-        String complete = wb.getSheetAt(0).getRow(3).getCell(0).getStringCellValue();
-        String val = complete.replace("UIC/DESC: ", "").trim();
-        return val.split("/")[1];
+    private static Operator toOperator(String name, String rank) {
+        String[] fullName = name.split(", ");
+        if (fullName.length < 2) 
+            throw new IllegalArgumentException(UnitLevelHandReceipt.class.getSimpleName() 
+                    + " Unable to find first and last name in " + name);
+        return new Operator(fullName[1], fullName[0], Rank.valueOf(rank));
     }
 
 }
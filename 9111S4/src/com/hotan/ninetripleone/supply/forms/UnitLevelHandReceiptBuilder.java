@@ -0,0 +1,176 @@
+package com.hotan.ninetripleone.supply.forms;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.hotan.ninetripleone.supply.model.EndItemGroup;
+import com.hotan.ninetripleone.supply.model.SerialNumberSet;
+
+/**
+ * Builds the groups of a UnitLevelHandReceipt from labeled rows that are handed
+ * to it one at a time in sheet order.  Only the current end item is buffered,
+ * so the rows can come straight from a record stream instead of a usermodel sheet.
+ * <br>Rows that were not labeled with a layout are buffered until the column
+ * heading row, which resolves the layout of the sheet.
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+class UnitLevelHandReceiptBuilder {
+
+    /**
+     * Receives the groups as soon as they are complete.
+     */
+    interface GroupHandler {
+
+        /**
+         * @param group Complete group
+         * @return Whether to keep building groups
+         */
+        boolean onGroup(EndItemGroup group);
+    }
+
+    /**
+     * Handler of the groups, null to collect the groups.
+     */
+    private final GroupHandler mHandler;
+
+    private boolean mStopped;
+
+    /**
+     * Rows above the column heading row, null until the layout is resolved.
+     */
+    private SheetBuffer mHeaderRows;
+
+    private UnitHRLayout mLayout;
+
+    /**
+     * Rows above the column heading row while the layout is not known.
+     */
+    private List<String[]> mPreamble;
+
+    private final List<EndItemGroup> mGroups;
+
+    // The end item header currently collecting serial numbers.
+    private String mLin, mNsn, mName;
+    private int mQty, mHeaderRow, mLastRow;
+    private SerialNumberSet mSerials;
+
+    UnitLevelHandReceiptBuilder() {
+        this(null);
+    }
+
+    /**
+     * @param handler Handler to hand the groups to instead of collecting them
+     */
+    UnitLevelHandReceiptBuilder(GroupHandler handler) {
+        mHandler = handler;
+        mGroups = new ArrayList<EndItemGroup>();
+        mPreamble = new ArrayList<String[]>();
+        mHeaderRow = -1;
+    }
+
+    /**
+     * Processes the next row of the sheet.
+     * <br>Rows must be given in ascending order, rows without cells can be skipped.
+     *
+     * @param row Labeled row
+     */
+    void onRow(HandReceiptRow row) {
+        if (mLayout == null) {
+            if (row.getLayout() == null) {
+                onPreambleRow(row);
+                return;
+            }
+            // Labeled by a scan that already knows the layout
+            mLayout = row.getLayout();
+        }
+        int rowNum = row.getRowNum();
+        if (rowNum < mLayout.getFirstRow()) return;
+
+        switch (row.getType()) {
+        case HEADER:
+            if (mHeaderRow != -1 && mSerials == null && rowNum == mLastRow + 1) {
+                // A value right under the header means the end item is serialized
+                mSerials = new SerialNumberSet();
+            }
+            finishGroup();
+            mLin = row.getLIN();
+            mNsn = row.getNSN();
+            mName = row.getName();
+            mQty = row.getQty();
+            mHeaderRow = mLastRow = rowNum;
+            break;
+        case SERIAL:
+            if (mHeaderRow == -1) break;
+            if (mSerials == null) {
+                mSerials = new SerialNumberSet();
+            }
+            if (mSerials.size() < mQty) {
+                row.getSerialNumbers(mSerials);
+                mLastRow = rowNum;
+            } else {
+                finishGroup();
+            }
+            break;
+        default:
+            finishGroup();
+            break;
+        }
+    }
+
+    /**
+     * Completes the last end item.
+     *
+     * @return Groups of all the rows processed in the order they were found
+     */
+    List<EndItemGroup> finish() {
+        finishGroup();
+        return mGroups;
+    }
+
+    /**
+     * Completes the last end item and creates the hand receipt from the
+     * header rows and end items processed.
+     *
+     * @return Unit level hand receipt of all the rows processed
+     */
+    UnitLevelHandReceipt build() {
+        return new UnitLevelHandReceipt(mHeaderRows == null ? new SheetBuffer(null) : mHeaderRows, finish(), 
+                mLayout == null ? UnitHRLayout.DEFAULT : mLayout);
+    }
+
+    private void onPreambleRow(HandReceiptRow row) {
+        if (mPreamble == null || row.getRowNum() > UnitHRLayout.MAX_HEADING_ROW) return;
+        while (mPreamble.size() < row.getRowNum()) {
+            mPreamble.add(null);
+        }
+        String[] cells = row.getCells();
+        mPreamble.add(cells);
+        if (!UnitHRLayout.isHeadingRow(cells)) return;
+
+        mLayout = UnitHRLayout.resolve(mPreamble);
+        mHeaderRows = SheetBuffer.of(null, mPreamble);
+        mPreamble = null;
+        row.setLayout(mLayout);
+    }
+
+    private void finishGroup() {
+        if (mHeaderRow == -1) return;
+        EndItemGroup group = UnitLevelHandReceipt.createGroup(mName, mLin, mNsn, mQty, mSerials);
+        mHeaderRow = -1;
+        mSerials = null;
+        if (mHandler == null) {
+            mGroups.add(group);
+        } else if (!mStopped) {
+            mStopped = !mHandler.onGroup(group);
+        }
+    }
+
+    /**
+     * @return Whether the handler asked to stop building groups
+     */
+    boolean isStopped() {
+        return mStopped;
+    }
+
+}
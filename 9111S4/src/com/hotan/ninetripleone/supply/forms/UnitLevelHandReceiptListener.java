@@ -0,0 +1,94 @@
+package com.hotan.ninetripleone.supply.forms;
+
+import org.apache.poi.hssf.eventusermodel.AbortableHSSFListener;
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.BlankRecord;
+import org.apache.poi.hssf.record.EOFRecord;
+import org.apache.poi.hssf.record.LabelRecord;
+import org.apache.poi.hssf.record.LabelSSTRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.SSTRecord;
+
+/**
+ * HSSF event listener that feeds the string cells of the first sheet of a
+ * Unit level hand receipt to a {@link UnitLevelHandReceiptBuilder}.
+ * <br>Processing is aborted as soon as the first sheet ends.
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+class UnitLevelHandReceiptListener extends AbortableHSSFListener {
+
+    private final UnitLevelHandReceiptBuilder mBuilder;
+
+    private final HandReceiptRow mRow;
+
+    private SSTRecord mStrings;
+
+    /**
+     * Index of the worksheet whose records are being read, -1 for the workbook globals.
+     */
+    private int mSheetIndex;
+
+    private int mRowNum;
+
+    UnitLevelHandReceiptListener(UnitLevelHandReceiptBuilder builder) {
+        mBuilder = builder;
+        mRow = new HandReceiptRow();
+        mSheetIndex = -1;
+        mRowNum = -1;
+    }
+
+    @Override
+    public short abortableProcessRecord(Record record) {
+        switch (record.getSid()) {
+        case BOFRecord.sid:
+            if (((BOFRecord) record).getType() == BOFRecord.TYPE_WORKSHEET) {
+                mSheetIndex++;
+            }
+            break;
+        case SSTRecord.sid:
+            mStrings = (SSTRecord) record;
+            break;
+        case LabelSSTRecord.sid:
+            LabelSSTRecord sst = (LabelSSTRecord) record;
+            onCell(sst.getRow(), sst.getColumn(), mStrings.getString(sst.getSSTIndex()).getString());
+            break;
+        case LabelRecord.sid:
+            LabelRecord label = (LabelRecord) record;
+            onCell(label.getRow(), label.getColumn(), label.getValue());
+            break;
+        case BlankRecord.sid:
+            BlankRecord blank = (BlankRecord) record;
+            onCell(blank.getRow(), blank.getColumn(), "");
+            break;
+        case EOFRecord.sid:
+            if (mSheetIndex == 0) {
+                flushRow();
+                // Everything needed is on the first sheet.
+                return 1;
+            }
+            break;
+        default:
+            break;
+        }
+        return (short) (mBuilder.isStopped() ? 1 : 0);
+    }
+
+    private void onCell(int row, int col, String value) {
+        if (mSheetIndex != 0) return;
+        if (row != mRowNum) {
+            flushRow();
+            mRowNum = row;
+            mRow.reset(row, null);
+        }
+        mRow.setCell(col, value);
+    }
+
+    private void flushRow() {
+        if (mRowNum == -1) return;
+        mRow.classify();
+        mBuilder.onRow(mRow);
+        mRowNum = -1;
+    }
+
+}
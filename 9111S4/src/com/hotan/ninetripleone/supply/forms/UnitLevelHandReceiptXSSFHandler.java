@@ -0,0 +1,37 @@
+package com.hotan.ninetripleone.supply.forms;
+
+/**
+ * SAX sheet handler that feeds the rows of the first sheet of a XLSX
+ * Unit level hand receipt to a {@link UnitLevelHandReceiptBuilder}.
+ * <br>XLSX counterpart of {@link UnitLevelHandReceiptListener}.
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+class UnitLevelHandReceiptXSSFHandler extends XLSXSheetReader.CellHandler {
+
+    private final UnitLevelHandReceiptBuilder mBuilder;
+
+    private final HandReceiptRow mRow;
+
+    UnitLevelHandReceiptXSSFHandler(UnitLevelHandReceiptBuilder builder) {
+        mBuilder = builder;
+        mRow = new HandReceiptRow();
+    }
+
+    @Override
+    public void startRow(int rowNum) {
+        mRow.reset(rowNum, null);
+    }
+
+    @Override
+    void cell(int row, int col, String value) {
+        mRow.setCell(col, value);
+    }
+
+    @Override
+    public void endRow() {
+        mRow.classify();
+        mBuilder.onRow(mRow);
+    }
+
+}
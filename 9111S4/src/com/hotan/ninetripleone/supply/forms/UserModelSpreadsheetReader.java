@@ -0,0 +1,56 @@
+package com.hotan.ninetripleone.supply.forms;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.poi.hssf.usermodel.HSSFCell;
+import org.apache.poi.hssf.usermodel.HSSFRow;
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Cell;
+
+import com.hotan.ninetripleone.supply.util.FormatException;
+import com.hotan.ninetripleone.supply.util.POILoader;
+
+/**
+ * Reads the whole file into a HSSFWorkbook and walks its sheets, rows and
+ * cells.
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+class UserModelSpreadsheetReader implements SpreadsheetReader {
+
+    @Override
+    public void read(File file, RowHandler handler) throws IOException, FormatException {
+        HSSFWorkbook wb = POILoader.getXLSWorkbook(file);
+        RowBuffer buffer = new RowBuffer();
+        for (int i = 0; i < wb.getNumberOfSheets(); ++i) {
+            HSSFSheet sheet = wb.getSheetAt(i);
+            handler.startSheet(i, sheet.getSheetName());
+            for (int r = sheet.getFirstRowNum(); r <= sheet.getLastRowNum(); ++r) {
+                HSSFRow row = sheet.getRow(r);
+                if (row == null) continue;
+                for (int c = Math.max(row.getFirstCellNum(), 0); c < row.getLastCellNum(); ++c) {
+                    HSSFCell cell = row.getCell(c);
+                    String value = cell == null ? null : getValue(cell);
+                    if (value != null) buffer.setCell(handler, r, c, value);
+                }
+            }
+            buffer.flush(handler);
+            if (!handler.endSheet(i)) return;
+        }
+    }
+
+    private static String getValue(Cell cell) {
+        switch (cell.getCellType()) {
+        case Cell.CELL_TYPE_STRING:
+            return cell.getStringCellValue();
+        case Cell.CELL_TYPE_BLANK:
+            return "";
+        case Cell.CELL_TYPE_NUMERIC:
+            return RowBuffer.format(cell.getNumericCellValue());
+        default:
+            return null;
+        }
+    }
+}
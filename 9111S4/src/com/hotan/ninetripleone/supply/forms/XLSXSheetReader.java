@@ -0,0 +1,151 @@
+package com.hotan.ninetripleone.supply.forms;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler.SheetContentsHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+/**
+ * Reads the sheets of a XLSX file one at a time with a SAX parser.
+ * <br>Only the shared strings table and the sheet being read are held in
+ * memory, the XSSFWorkbook DOM is never built.
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+class XLSXSheetReader {
+
+    private final OPCPackage mPackage;
+    private final ReadOnlySharedStringsTable mStrings;
+    private final StylesTable mStyles;
+    private final XSSFReader.SheetIterator mSheets;
+
+    private XLSXSheetReader(OPCPackage pkg) throws IOException {
+        mPackage = pkg;
+        try {
+            XSSFReader reader = new XSSFReader(pkg);
+            mStrings = new ReadOnlySharedStringsTable(pkg);
+            mStyles = reader.getStylesTable();
+            mSheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+        } catch (OpenXML4JException e) {
+            throw new IOException("Unable to read XLSX package", e);
+        } catch (SAXException e) {
+            throw new IOException("Unable to read shared strings", e);
+        }
+    }
+
+    /**
+     * Opens the XLSX file for reading.
+     *
+     * @param file XLSX file
+     * @return Reader positioned before the first sheet
+     * @throws IOException Unable to open the file
+     */
+    static XLSXSheetReader open(File file) throws IOException {
+        if (file == null)
+            throw new NullPointerException(XLSXSheetReader.class.getSimpleName() + ".open() Null file");
+        OPCPackage pkg;
+        try {
+            pkg = OPCPackage.open(file.getPath(), PackageAccess.READ);
+        } catch (OpenXML4JException e) {
+            throw new IOException("Unable to open " + file, e);
+        }
+        try {
+            return new XLSXSheetReader(pkg);
+        } catch (IOException e) {
+            pkg.revert();
+            throw e;
+        }
+    }
+
+    boolean hasNextSheet() {
+        return mSheets.hasNext();
+    }
+
+    /**
+     * Streams the cells of the next sheet to the handler.
+     *
+     * @param handler Handler of the rows and cells of the sheet
+     * @throws IOException Unable to read the sheet
+     */
+    void nextSheet(SheetContentsHandler handler) throws IOException {
+        parse(mSheets.next(), handler);
+    }
+
+    /**
+     * Reads the cells of the next sheet into a buffer.
+     *
+     * @return Buffer of the next sheet
+     * @throws IOException Unable to read the sheet
+     */
+    SheetBuffer nextSheet() throws IOException {
+        InputStream in = mSheets.next();
+        final SheetBuffer buffer = new SheetBuffer(mSheets.getSheetName());
+        parse(in, new CellHandler() {
+
+            @Override
+            void cell(int row, int col, String value) {
+                buffer.setCell(row, col, value);
+            }
+        });
+        return buffer;
+    }
+
+    private void parse(InputStream in, SheetContentsHandler handler) throws IOException {
+        try {
+            XMLReader parser = SAXParserFactory.newInstance().newSAXParser().getXMLReader();
+            parser.setContentHandler(new XSSFSheetXMLHandler(mStyles, mStrings, handler, false));
+            parser.parse(new InputSource(in));
+        } catch (ParserConfigurationException e) {
+            throw new IOException("Unable to create SAX parser", e);
+        } catch (SAXException e) {
+            throw new IOException("Unable to parse sheet", e);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Releases the file without saving anything.
+     */
+    void close() {
+        mPackage.revert();
+    }
+
+    /**
+     * Sheet handler that receives cells by their 0-based row and column.
+     */
+    abstract static class CellHandler implements SheetContentsHandler {
+
+        abstract void cell(int row, int col, String value);
+
+        @Override
+        public void startRow(int rowNum) {}
+
+        @Override
+        public void endRow() {}
+
+        @Override
+        public void cell(String cellReference, String formattedValue) {
+            CellReference ref = new CellReference(cellReference);
+            cell(ref.getRow(), ref.getCol(), formattedValue);
+        }
+
+        @Override
+        public void headerFooter(String text, boolean isHeader, String tagName) {}
+    }
+}
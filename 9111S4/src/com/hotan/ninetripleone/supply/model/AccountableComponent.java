@@ -6,9 +6,15 @@ import javafx.beans.property.ReadOnlyStringProperty;
 import javafx.beans.property.SimpleIntegerProperty;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
 
 /**
  * Represents an Accountable Component to an EndItem.
+ * <br>The components of an EndItem are views of components shared by every
+ * EndItem with the same list, see {@link ComponentCatalog}.  The on hand 
+ * quantity of a view is stored by its EndItem, which keeps one view per
+ * component.
  * 
  * @author Michael Hotan, michael.hotan@gmail.com
  */
@@ -19,6 +25,21 @@ public abstract class AccountableComponent {
     
     private IntegerProperty onHandQty;
     
+    /**
+     * Component this is a view of, this for a standalone component.
+     */
+    private final AccountableComponent mShared;
+    
+    /**
+     * EndItem that stores the on hand quantity of a view, null for a standalone component.
+     */
+    private volatile EndItem mOwner;
+    
+    /**
+     * Index of a view in the COEI or BII list of its EndItem.
+     */
+    private volatile int mIndex;
+    
     protected AccountableComponent(String name, String nsn) {
         this(name, nsn, 0);
     }
@@ -27,9 +48,70 @@ public abstract class AccountableComponent {
         this.name = new SimpleStringProperty(name);
         this.NSN = new SimpleStringProperty(nsn);
         this.authQty = new SimpleIntegerProperty(qty);
+        mShared = this;
+        mOwner = null;
+        mIndex = -1;
+    }
+    
+    /**
+     * Creates a view of a shared component whose on hand quantity is stored 
+     * by the EndItem.
+     * 
+     * @param shared Component shared by EndItems
+     * @param owner EndItem of the view
+     * @param index Index of the component in the list of the EndItem
+     */
+    AccountableComponent(AccountableComponent shared, EndItem owner, int index) {
+        this.name = shared.name;
+        this.NSN = shared.NSN;
+        this.authQty = shared.authQty;
+        mShared = shared;
+        mOwner = owner;
+        mIndex = index;
+    }
+    
+    /**
+     * @return Component this is a view of, or this component if it is not a view
+     */
+    AccountableComponent getShared() {
+        return mShared;
+    }
+    
+    /**
+     * @return Whether this component is the view of an EndItem
+     */
+    boolean isView() {
+        return mOwner != null;
+    }
+    
+    /**
+     * Makes this component the view at the index of the EndItem.
+     * <br>Called by the EndItem, which already stores the on hand quantity.
+     * 
+     * @param owner EndItem of the view
+     * @param index Index of the component in the list of the EndItem
+     */
+    void attach(EndItem owner, int index) {
+        mOwner = owner;
+        mIndex = index;
+    }
+    
+    /**
+     * Makes this view a standalone component that keeps its on hand quantity.
+     */
+    void detach() {
+        int qty = getOnHandQty();
+        mOwner = null;
+        mIndex = -1;
+        onHandQtyProperty().set(qty);
     }
     
     public void setOnHandQty(int qty) {
+        EndItem owner = mOwner;
+        if (onHandQty == null && owner != null) {
+            owner.setOnHandQty(this, mIndex, qty);
+            return;
+        }
         onHandQtyProperty().set(qty);
     }
    
@@ -46,12 +128,27 @@ public abstract class AccountableComponent {
     }
     
     public int getOnHandQty() {
-        return onHandQtyProperty().get();
+        if (onHandQty != null) return onHandQty.get();
+        EndItem owner = mOwner;
+        return owner == null ? 0 : owner.getOnHandQty(this, mIndex);
     }
     
     public IntegerProperty onHandQtyProperty() {
-        if (onHandQty == null) 
-            onHandQty = new SimpleIntegerProperty(0);
+        if (onHandQty == null) {
+            onHandQty = new SimpleIntegerProperty(getOnHandQty());
+            // Write the quantity through to the EndItem while this is a view
+            onHandQty.addListener(new ChangeListener<Number>() {
+
+                @Override
+                public void changed(ObservableValue<? extends Number> observable, 
+                        Number oldValue, Number newValue) {
+                    EndItem owner = mOwner;
+                    if (owner != null) {
+                        owner.setOnHandQty(AccountableComponent.this, mIndex, newValue.intValue());
+                    }
+                }
+            });
+        }
         return onHandQty;
     }
     
@@ -0,0 +1,122 @@
+package com.hotan.ninetripleone.supply.model;
+
+import java.io.File;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+
+import com.hotan.ninetripleone.supply.forms.ComponentHandReceipt;
+import com.hotan.ninetripleone.supply.forms.IngestPolicy;
+import com.hotan.ninetripleone.supply.forms.UnitLevelHandReceipt;
+import com.hotan.ninetripleone.supply.util.BackgroundExecutor;
+import com.hotan.ninetripleone.supply.util.ResultFuture;
+
+/**
+ * Loads hand receipts and PropertyBooks off the calling thread, so the
+ * JavaFX application thread never parses a file.
+ * <br>Every load runs on the executor of the loader and returns a future
+ * right away.  Callbacks of the futures run on the threads of the executor,
+ * a view should hand their results to the application thread with 
+ * Platform.runLater.
+ * <br>By default loads run on {@link BackgroundExecutor#getShared()}.  No
+ * task of that pool ever waits on another, publishers of hand receipts
+ * stream on {@link BackgroundExecutor#getPublishers()}, so loads always make
+ * progress and the PropertyBook is built as soon as both receipts are parsed.
+ * An executor given to a loader should not be handed to publishers either.
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+public class AsyncLoader {
+
+    private final Executor mExecutor;
+
+    /**
+     * Policy that chooses how each file is parsed, null to always detach.
+     */
+    private final IngestPolicy mPolicy;
+
+    /**
+     * Creates a loader that parses on {@link BackgroundExecutor#getShared()}.
+     */
+    public AsyncLoader() {
+        this(null, null);
+    }
+
+    /**
+     * @param executor Executor to parse on, null for {@link BackgroundExecutor#getShared()}
+     */
+    public AsyncLoader(Executor executor) {
+        this(executor, null);
+    }
+
+    /**
+     * @param executor Executor to parse on, null for {@link BackgroundExecutor#getShared()}
+     * @param policy Policy that chooses how each file is parsed, null to
+     *          parse every file detached
+     */
+    public AsyncLoader(Executor executor, IngestPolicy policy) {
+        mExecutor = executor == null ? BackgroundExecutor.getShared() : executor;
+        mPolicy = policy;
+    }
+
+    /**
+     * Parses a Unit level hand receipt on the executor.
+     *
+     * @param file XLS file of the hand receipt
+     * @return Future of the hand receipt, cancelling it interrupts the parse
+     */
+    public ResultFuture<UnitLevelHandReceipt> loadUnit(final File file) {
+        if (file == null)
+            throw new NullPointerException(getClass().getSimpleName() + ".loadUnit() Null file");
+        return ResultFuture.supplyAsync(new Callable<UnitLevelHandReceipt>() {
+
+            @Override
+            public UnitLevelHandReceipt call() throws Exception {
+                return mPolicy != null ? mPolicy.loadUnit(file) : UnitLevelHandReceipt.detached(file);
+            }
+        }, mExecutor);
+    }
+
+    /**
+     * Parses a Component hand receipt on the executor.
+     *
+     * @param file XLS file of the hand receipt
+     * @return Future of the hand receipt, cancelling it interrupts the parse
+     */
+    public ResultFuture<ComponentHandReceipt> loadComponent(final File file) {
+        if (file == null)
+            throw new NullPointerException(getClass().getSimpleName() + ".loadComponent() Null file");
+        return ResultFuture.supplyAsync(new Callable<ComponentHandReceipt>() {
+
+            @Override
+            public ComponentHandReceipt call() throws Exception {
+                return mPolicy != null ? mPolicy.loadComponent(file) : ComponentHandReceipt.detached(file);
+            }
+        }, mExecutor);
+    }
+
+    /**
+     * Parses both hand receipts at the same time and builds their
+     * PropertyBook on the executor as soon as both are parsed.
+     * <br>If either file fails to parse the PropertyBook fails right away
+     * and the other parse is cancelled.  Cancelling the PropertyBook
+     * cancels both parses.
+     *
+     * @param unitFile XLS file of the Unit level hand receipt
+     * @param compFile XLS file of the Component hand receipt
+     * @return Future of the PropertyBook
+     */
+    public ResultFuture<PropertyBook> loadPropertyBook(File unitFile, File compFile) {
+        return loadUnit(unitFile).thenCombine(loadComponent(compFile),
+                new ResultFuture.Combiner<UnitLevelHandReceipt, ComponentHandReceipt, PropertyBook>() {
+
+            @Override
+            public PropertyBook combine(UnitLevelHandReceipt unitHR, ComponentHandReceipt compHR) {
+                return new PropertyBook(unitHR, compHR);
+            }
+        }, mExecutor);
+    }
+
+    public Executor getExecutor() {
+        return mExecutor;
+    }
+}
@@ -0,0 +1,88 @@
+package com.hotan.ninetripleone.supply.model;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * One immutable copy of the COEI and BII lists of every end item NSN.
+ * <br>Every serialized copy of an end item has the same components, so
+ * {@link EndItem#intern(ComponentCatalog)} replaces the lists of an EndItem
+ * with the copy of its NSN and only the on hand quantities stay per EndItem.
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+public class ComponentCatalog {
+
+    private final ConcurrentMap<String, List<EndItemComponent>> mCOEIs;
+
+    private final ConcurrentMap<String, List<EndItemBasicIssueComponent>> mBIIs;
+
+    public ComponentCatalog() {
+        mCOEIs = new ConcurrentHashMap<String, List<EndItemComponent>>();
+        mBIIs = new ConcurrentHashMap<String, List<EndItemBasicIssueComponent>>();
+    }
+
+    /**
+     * Returns the COEI list of the NSN if it is equal to the list, otherwise
+     * the list.
+     *
+     * @param nsn NSN of the end item
+     * @param coeis Immutable COEI list of an EndItem with the NSN
+     * @return Immutable list equal to the list
+     */
+    List<EndItemComponent> internCOEI(String nsn, List<EndItemComponent> coeis) {
+        return intern(mCOEIs, nsn, coeis);
+    }
+
+    /**
+     * Returns the BII list of the NSN if it is equal to the list, otherwise
+     * the list.
+     *
+     * @param nsn NSN of the end item
+     * @param biis Immutable BII list of an EndItem with the NSN
+     * @return Immutable list equal to the list
+     */
+    List<EndItemBasicIssueComponent> internBII(String nsn, List<EndItemBasicIssueComponent> biis) {
+        return intern(mBIIs, nsn, biis);
+    }
+
+    private static <T> List<T> intern(ConcurrentMap<String, List<T>> lists, String nsn, List<T> list) {
+        if (list.isEmpty()) return Collections.emptyList();
+        List<T> existing = lists.putIfAbsent(nsn, list);
+        if (existing == null) return list;
+        // An end item listed with other components keeps its own list
+        return existing.equals(list) ? existing : list;
+    }
+
+    /**
+     * @return Number of NSNs with a COEI or BII list
+     */
+    public int size() {
+        int size = mCOEIs.size();
+        for (String nsn: mBIIs.keySet()) {
+            if (!mCOEIs.containsKey(nsn)) size++;
+        }
+        return size;
+    }
+
+    /**
+     * @return Number of components stored by this catalog
+     */
+    public int getComponentCount() {
+        int count = 0;
+        for (List<EndItemComponent> coeis: mCOEIs.values()) {
+            count += coeis.size();
+        }
+        for (List<EndItemBasicIssueComponent> biis: mBIIs.values()) {
+            count += biis.size();
+        }
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + " NSNs: " + size() + " components: " + getComponentCount();
+    }
+}
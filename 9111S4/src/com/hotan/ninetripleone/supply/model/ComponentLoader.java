@@ -0,0 +1,19 @@
+package com.hotan.ninetripleone.supply.model;
+
+/**
+ * Loads the COEI and BII of an EndItem the first time they are asked for.
+ * <br>Lets a hand receipt index only the header of every end item and leave
+ * the component tables until they are needed.
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ * @see EndItem#setComponentLoader(ComponentLoader)
+ */
+public interface ComponentLoader {
+
+    /**
+     * Adds the COEI and BII of the item with {@link EndItem#addComponents(java.util.List, java.util.List)}.
+     *
+     * @param item EndItem to load the components of
+     */
+    void load(EndItem item);
+}
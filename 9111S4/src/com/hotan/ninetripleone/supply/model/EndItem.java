@@ -1,5 +1,11 @@
 package com.hotan.ninetripleone.supply.model;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.ReadOnlyBooleanProperty;
 import javafx.beans.property.ReadOnlyBooleanWrapper;
@@ -16,13 +22,40 @@ import javafx.collections.ObservableList;
  * @author Michael Hotan, michael.hotan@gmail.com
  */
 public class EndItem {
+
+    /**
+     * Key of the next EndItem created.
+     */
+    private static final AtomicInteger NEXT_KEY = new AtomicInteger(1);
+
+    private final int mKey;
     
     private final StringProperty name, lin, nsn;
     private StringProperty sn, location, cL, pubNum, pubDate;
     private BooleanProperty hasSN;
     
-    private final ObservableList<EndItemComponent> mEndItemComps;
-    private final ObservableList<EndItemBasicIssueComponent> mEndItemBII;
+    /**
+     * Immutable component lists, shared with the EndItems of the same NSN 
+     * once interned.
+     */
+    private List<EndItemComponent> mEndItemComps;
+    private List<EndItemBasicIssueComponent> mEndItemBII;
+    
+    /**
+     * On hand quantities of the components by index, null while all are 0.
+     */
+    private int[] mCOEIOnHand, mBIIOnHand;
+    
+    /**
+     * Views of the components of this item by index, null until first asked for.
+     */
+    private List<EndItemComponent> mCOEIViews;
+    private List<EndItemBasicIssueComponent> mBIIViews;
+    
+    /**
+     * Loader of the components until they are first asked for, null once loaded.
+     */
+    private ComponentLoader mLoader;
     
     /**
      * Constructs a bare bones end item.
@@ -48,9 +81,10 @@ public class EndItem {
         this.name = new ReadOnlyStringWrapper(name);
         this.lin = new ReadOnlyStringWrapper(lin);
         this.nsn = new ReadOnlyStringWrapper(nsn);
+        mKey = NEXT_KEY.getAndIncrement();
         
-        mEndItemComps = FXCollections.observableArrayList();
-        mEndItemBII = FXCollections.observableArrayList();
+        mEndItemComps = Collections.emptyList();
+        mEndItemBII = Collections.emptyList();
         
         checkRep();
     }
@@ -76,14 +110,42 @@ public class EndItem {
         updateStringProp(location, item.location);
         updateStringProp(cL, item.cL);
         
-        if (mEndItemComps.isEmpty()) {
-            mEndItemComps.addAll(item.mEndItemComps);
+        // Components not loaded yet come from this item's own loader
+        if (mLoader != null) return;
+        if (mEndItemComps.isEmpty() && mEndItemBII.isEmpty() && item.mLoader != null) {
+            mLoader = item.mLoader;
+            return;
         }
-        if (mEndItemBII.isEmpty()) {
-            mEndItemBII.addAll(item.mEndItemBII);
+        item.loadComponents();
+        
+        // The lists are immutable so they are shared rather than copied
+        synchronized (this) {
+            if (mEndItemComps.isEmpty()) {
+                mEndItemComps = item.mEndItemComps;
+                mCOEIOnHand = item.mCOEIOnHand == null ? null : item.mCOEIOnHand.clone();
+                mCOEIViews = null;
+            }
+            if (mEndItemBII.isEmpty()) {
+                mEndItemBII = item.mEndItemBII;
+                mBIIOnHand = item.mBIIOnHand == null ? null : item.mBIIOnHand.clone();
+                mBIIViews = null;
+            }
         }
     }
     
+    /**
+     * Replaces the component lists of this item with the equal lists of the
+     * catalog, so all the EndItems of a NSN share one copy.
+     * 
+     * @param catalog Catalog of component lists
+     */
+    public synchronized void intern(ComponentCatalog catalog) {
+        // Interned by the loader once loaded
+        if (mLoader != null) return;
+        mEndItemComps = catalog.internCOEI(getNSN(), mEndItemComps);
+        mEndItemBII = catalog.internBII(getNSN(), mEndItemBII);
+    }
+    
     private static void updateStringProp(StringProperty destination, StringProperty source) {
         if (destination.isNotNull().get() && !destination.get().isEmpty()) return;
         if (source.isNull().get() || source.get().isEmpty()) return;
@@ -115,32 +177,240 @@ public class EndItem {
     }
     
     
-    public void addCOEI(EndItemComponent component) {
+    /**
+     * Adds a COEI to this item.
+     * <br>The component becomes the view of the COEI returned by 
+     * {@link #getCOEI()}, unless it is already a view of another item.
+     * 
+     * @param component COEI to add
+     */
+    public synchronized void addCOEI(EndItemComponent component) {
+        loadComponents();
         if (component == null || mEndItemComps.contains(component)) {
             return;
         }
-        mEndItemComps.add(component);
+        List<EndItemComponent> views = getCOEIViews();
+        int qty = component.getOnHandQty();
+        EndItemComponent shared = (EndItemComponent) component.getShared();
+        mEndItemComps = with(mEndItemComps, shared);
+        mCOEIOnHand = withQty(mCOEIOnHand, mEndItemComps.size(), qty);
+        int index = views.size();
+        if (component.isView()) {
+            views.add(new EndItemComponent(shared, this, index));
+        } else {
+            component.attach(this, index);
+            views.add(component);
+        }
     }
     
-    public void addBII(EndItemBasicIssueComponent component) {
+    /**
+     * Adds a BII to this item.
+     * <br>The component becomes the view of the BII returned by 
+     * {@link #getBII()}, unless it is already a view of another item.
+     * 
+     * @param component BII to add
+     */
+    public synchronized void addBII(EndItemBasicIssueComponent component) {
+        loadComponents();
         if (component == null || mEndItemBII.contains(component)) {
             return;
         }
-        mEndItemBII.add(component);
+        List<EndItemBasicIssueComponent> views = getBIIViews();
+        int qty = component.getOnHandQty();
+        EndItemBasicIssueComponent shared = (EndItemBasicIssueComponent) component.getShared();
+        mEndItemBII = with(mEndItemBII, shared);
+        mBIIOnHand = withQty(mBIIOnHand, mEndItemBII.size(), qty);
+        int index = views.size();
+        if (component.isView()) {
+            views.add(new EndItemBasicIssueComponent(shared, this, index));
+        } else {
+            component.attach(this, index);
+            views.add(component);
+        }
+    }
+    
+    /**
+     * Adds the COEI and BII read from a hand receipt.
+     * <br>Unlike {@link #addCOEI(EndItemComponent)} only the name, NSN and
+     * quantities of the components are kept, so the components can be 
+     * shared with the other items of the NSN.
+     * <br>Each list is copied once for all the components, not once per component.
+     * 
+     * @param coei COEI to add
+     * @param bii BII to add
+     */
+    public synchronized void addComponents(List<EndItemComponent> coei, 
+            List<EndItemBasicIssueComponent> bii) {
+        loadComponents();
+        List<EndItemComponent> comps = new ArrayList<EndItemComponent>(mEndItemComps.size() + coei.size());
+        comps.addAll(mEndItemComps);
+        int[] coeiOnHand = new int[comps.size() + coei.size()];
+        boolean coeiCounted = copyQty(mCOEIOnHand, coeiOnHand);
+        for (EndItemComponent component: coei) {
+            if (component == null || comps.contains(component)) continue;
+            coeiOnHand[comps.size()] = component.getOnHandQty();
+            coeiCounted |= coeiOnHand[comps.size()] != 0;
+            comps.add((EndItemComponent) component.getShared());
+        }
+        List<EndItemBasicIssueComponent> biis = new ArrayList<EndItemBasicIssueComponent>(mEndItemBII.size() + bii.size());
+        biis.addAll(mEndItemBII);
+        int[] biiOnHand = new int[biis.size() + bii.size()];
+        boolean biiCounted = copyQty(mBIIOnHand, biiOnHand);
+        for (EndItemBasicIssueComponent component: bii) {
+            if (component == null || biis.contains(component)) continue;
+            biiOnHand[biis.size()] = component.getOnHandQty();
+            biiCounted |= biiOnHand[biis.size()] != 0;
+            biis.add((EndItemBasicIssueComponent) component.getShared());
+        }
+        
+        mEndItemComps = Collections.unmodifiableList(comps);
+        mCOEIOnHand = coeiCounted ? Arrays.copyOf(coeiOnHand, comps.size()) : null;
+        mEndItemBII = Collections.unmodifiableList(biis);
+        mBIIOnHand = biiCounted ? Arrays.copyOf(biiOnHand, biis.size()) : null;
+        if (mCOEIViews != null) {
+            for (int i = mCOEIViews.size(); i < comps.size(); ++i) {
+                mCOEIViews.add(new EndItemComponent(comps.get(i), this, i));
+            }
+        }
+        if (mBIIViews != null) {
+            for (int i = mBIIViews.size(); i < biis.size(); ++i) {
+                mBIIViews.add(new EndItemBasicIssueComponent(biis.get(i), this, i));
+            }
+        }
+    }
+    
+    public synchronized void removeCOEI(EndItemComponent component) {
+        loadComponents();
+        int index = mEndItemComps.indexOf(component);
+        if (index < 0) return;
+        if (mCOEIViews != null) remove(mCOEIViews, index);
+        mEndItemComps = without(mEndItemComps, index);
+        mCOEIOnHand = withoutQty(mCOEIOnHand, index);
     }
     
-    public void removeCOEI(EndItemComponent component) {
-        mEndItemComps.remove(component);
+    public synchronized void removeBII(EndItemBasicIssueComponent component) {
+        loadComponents();
+        int index = mEndItemBII.indexOf(component);
+        if (index < 0) return;
+        if (mBIIViews != null) remove(mBIIViews, index);
+        mEndItemBII = without(mEndItemBII, index);
+        mBIIOnHand = withoutQty(mBIIOnHand, index);
     }
     
-    public void removeBII(EndItemBasicIssueComponent component) {
-        mEndItemBII.remove(component);
+    /**
+     * Detaches the view at the index, keeping its on hand quantity, and 
+     * moves the views after it down one index.
+     */
+    private void remove(List<? extends AccountableComponent> views, int index) {
+        views.remove(index).detach();
+        for (int i = index; i < views.size(); ++i) {
+            views.get(i).attach(this, i);
+        }
+    }
+    
+    /**
+     * Loads the COEI and BII of this item on first access instead of when 
+     * the item is built.
+     * 
+     * @param loader Loader of the components, null if they are loaded
+     */
+    public synchronized void setComponentLoader(ComponentLoader loader) {
+        mLoader = loader;
+    }
+    
+    /**
+     * @return Whether the COEI and BII of this item are loaded
+     */
+    public synchronized boolean isComponentsLoaded() {
+        return mLoader == null;
+    }
+    
+    private synchronized void loadComponents() {
+        if (mLoader == null) return;
+        ComponentLoader loader = mLoader;
+        mLoader = null;
+        loader.load(this);
+    }
+    
+    // The lists may be shared so they are copied on every change
+    
+    private static <T> List<T> with(List<T> list, T component) {
+        List<T> copy = new ArrayList<T>(list.size() + 1);
+        copy.addAll(list);
+        copy.add(component);
+        return Collections.unmodifiableList(copy);
+    }
+    
+    private static <T> List<T> without(List<T> list, int index) {
+        List<T> copy = new ArrayList<T>(list);
+        copy.remove(index);
+        return Collections.unmodifiableList(copy);
+    }
+    
+    private static int[] withQty(int[] quantities, int size, int qty) {
+        if (quantities == null && qty == 0) return null;
+        int[] copy = quantities == null ? new int[size] : Arrays.copyOf(quantities, size);
+        copy[size - 1] = qty;
+        return copy;
+    }
+    
+    /**
+     * Copies the quantities, if any, to the front of a larger array.
+     * 
+     * @return Whether there were quantities to copy
+     */
+    private static boolean copyQty(int[] quantities, int[] copy) {
+        if (quantities == null) return false;
+        System.arraycopy(quantities, 0, copy, 0, quantities.length);
+        return true;
+    }
+    
+    private static int[] withoutQty(int[] quantities, int index) {
+        if (quantities == null) return null;
+        int[] copy = new int[quantities.length - 1];
+        System.arraycopy(quantities, 0, copy, 0, index);
+        System.arraycopy(quantities, index + 1, copy, index, copy.length - index);
+        return copy;
+    }
+    
+    /**
+     * Sets the on hand quantity of a component view of this item.
+     */
+    synchronized void setOnHandQty(AccountableComponent component, int index, int qty) {
+        if (component instanceof EndItemBasicIssueComponent) {
+            if (index >= mEndItemBII.size()) return;
+            if (mBIIOnHand == null) mBIIOnHand = new int[mEndItemBII.size()];
+            mBIIOnHand[index] = qty;
+        } else {
+            if (index >= mEndItemComps.size()) return;
+            if (mCOEIOnHand == null) mCOEIOnHand = new int[mEndItemComps.size()];
+            mCOEIOnHand[index] = qty;
+        }
+    }
+    
+    /**
+     * Returns the on hand quantity of a component view of this item.
+     */
+    synchronized int getOnHandQty(AccountableComponent component, int index) {
+        int[] quantities = component instanceof EndItemBasicIssueComponent ? mBIIOnHand : mCOEIOnHand;
+        return quantities == null || index >= quantities.length ? 0 : quantities[index];
     }
     
     /////////////////////////////////////////////////
     //// Getters
     /////////////////////////////////////////////////
     
+    /**
+     * Returns the key of this EndItem instance.
+     * <br>Unlike {@link #equals(Object)} the key does not change when the
+     * serial number is changed, and no two EndItems share a key.
+     * 
+     * @return Positive key unique to this EndItem
+     */
+    public int getKey() {
+        return mKey;
+    }
+    
     public String getPubDate() {
         return pubDateProperty().get();
     }
@@ -177,12 +447,40 @@ public class EndItem {
         return CLProperty().get();
     }
     
-    public ObservableList<EndItemComponent> getCOEI() {
-        return FXCollections.observableArrayList(mEndItemComps);
+    /**
+     * @return Views of the COEI of this item, with the on hand quantities of this item
+     */
+    public synchronized ObservableList<EndItemComponent> getCOEI() {
+        loadComponents();
+        return FXCollections.observableArrayList(getCOEIViews());
     }
     
-    public ObservableList<EndItemBasicIssueComponent> getBII() {
-        return FXCollections.observableArrayList(mEndItemBII);
+    /**
+     * @return Views of the BII of this item, with the on hand quantities of this item
+     */
+    public synchronized ObservableList<EndItemBasicIssueComponent> getBII() {
+        loadComponents();
+        return FXCollections.observableArrayList(getBIIViews());
+    }
+    
+    private List<EndItemComponent> getCOEIViews() {
+        if (mCOEIViews == null) {
+            mCOEIViews = new ArrayList<EndItemComponent>(mEndItemComps.size());
+            for (int i = 0; i < mEndItemComps.size(); ++i) {
+                mCOEIViews.add(new EndItemComponent(mEndItemComps.get(i), this, i));
+            }
+        }
+        return mCOEIViews;
+    }
+    
+    private List<EndItemBasicIssueComponent> getBIIViews() {
+        if (mBIIViews == null) {
+            mBIIViews = new ArrayList<EndItemBasicIssueComponent>(mEndItemBII.size());
+            for (int i = 0; i < mEndItemBII.size(); ++i) {
+                mBIIViews.add(new EndItemBasicIssueComponent(mEndItemBII.get(i), this, i));
+            }
+        }
+        return mBIIViews;
     }
     
     /////////////////////////////////////////////////
@@ -217,7 +515,7 @@ public class EndItem {
     
     public StringProperty snProperty(){
         if (sn == null) 
-            sn = new SimpleStringProperty(null);
+            sn = new SimpleStringProperty(this, "sn", null);
         return sn;
     }
     
@@ -18,5 +18,10 @@ public class EndItemBasicIssueComponent extends AccountableComponent {
         // TODO Auto-generated constructor stub
     }
 
-    
+    /**
+     * Creates a view of a shared component for an EndItem.
+     */
+    EndItemBasicIssueComponent(EndItemBasicIssueComponent shared, EndItem owner, int index) {
+        super(shared, owner, index);
+    }
 }
@@ -9,4 +9,11 @@ public class EndItemComponent extends AccountableComponent {
     public EndItemComponent(String name, String nsn, int qty) {
         super(name, nsn, qty);
     }
+
+    /**
+     * Creates a view of a shared component for an EndItem.
+     */
+    EndItemComponent(EndItemComponent shared, EndItem owner, int index) {
+        super(shared, owner, index);
+    }
 }
@@ -1,15 +1,22 @@
 package com.hotan.ninetripleone.supply.model;
 
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.ReadOnlyProperty;
 import javafx.beans.property.ReadOnlyStringProperty;
 import javafx.beans.property.ReadOnlyStringWrapper;
 import javafx.beans.property.SimpleBooleanProperty;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 
@@ -23,6 +30,33 @@ public class EndItemGroup {
      */
     private final ObservableList<EndItem> mItems;
 
+    /**
+     * Serial numbers of a serialized group, including the ones no EndItem 
+     * has been created for yet.
+     */
+    private final SerialNumberSet mSerials;
+
+    /**
+     * EndItems of mItems by serial number, re-keyed when a serial number changes.
+     */
+    private final Map<String, EndItem> mBySerial;
+
+    /**
+     * Keeps mBySerial and mSerials in sync with the serial numbers of the EndItems.
+     */
+    private final ChangeListener<String> mSerialListener = new ChangeListener<String>() {
+
+        @Override
+        public void changed(ObservableValue<? extends String> observable, String oldValue, String newValue) {
+            onSerialChanged((EndItem) ((ReadOnlyProperty<?>) observable).getBean(), oldValue, newValue);
+        }
+    };
+
+    /**
+     * Number of serial numbers no EndItem has been created for.
+     */
+    private int mPending;
+
     /**
      * Returns whether this item includes serial numbers
      */
@@ -74,11 +108,31 @@ public class EndItemGroup {
     }
 
     public EndItemGroup(String name, String LIN, String NSN, boolean serialized) {
+        this(name, LIN, NSN, serialized, new SerialNumberSet());
+    }
+
+    /**
+     * Constructs a serialized group of the serial numbers.
+     * <br>The EndItem of a serial number is only created once it is asked for.
+     * 
+     * @param name Name to use
+     * @param LIN LIN to use
+     * @param NSN NSN to use
+     * @param serials Serial numbers of the group, owned by the group from now on
+     */
+    public EndItemGroup(String name, String LIN, String NSN, SerialNumberSet serials) {
+        this(name, LIN, NSN, true, serials);
+        mPending = serials.size();
+    }
+
+    private EndItemGroup(String name, String LIN, String NSN, boolean serialized, SerialNumberSet serials) {
         this.name = new ReadOnlyStringWrapper(name);
         lIN = new ReadOnlyStringWrapper(LIN);
         nSN = new ReadOnlyStringWrapper(NSN);
         this.serialized = new SimpleBooleanProperty(serialized);
         mItems = FXCollections.observableArrayList();
+        mSerials = serials;
+        mBySerial = new HashMap<String, EndItem>();
     }
 
     ///////////////////////////////////////////////////////////////////////////////////
@@ -105,18 +159,64 @@ public class EndItemGroup {
         return mosProperty().get();
     }
     
+    /**
+     * Returns all the EndItems of this group, creating the EndItems of 
+     * serial numbers that have none yet.
+     * 
+     * @return EndItems of this group
+     */
     public ObservableList<EndItem> getItems() {
+        if (mPending > 0) {
+            List<EndItem> created = new ArrayList<EndItem>(mPending);
+            for (String serial: mSerials) {
+                if (!mBySerial.containsKey(serial)) {
+                    EndItem item = createItem(serial);
+                    mBySerial.put(serial, item);
+                    item.snProperty().addListener(mSerialListener);
+                    created.add(item);
+                }
+            }
+            mPending = 0;
+            mItems.addAll(created);
+        }
         return mItems;
     }
+
+    /**
+     * Returns the EndItem with the serial number, only creating that EndItem if needed.
+     * 
+     * @param serial Serial number of the EndItem
+     * @return EndItem with the serial number, or null if this group has none
+     */
+    public EndItem getItem(String serial) {
+        EndItem item = mBySerial.get(serial);
+        if (item == null && mSerials.contains(serial)) {
+            item = createItem(serial);
+            mBySerial.put(serial, item);
+            item.snProperty().addListener(mSerialListener);
+            mPending--;
+            mItems.add(item);
+        }
+        return item;
+    }
+
+    /**
+     * @return Serial numbers of this group
+     */
+    public Iterable<String> getSerialNumbers() {
+        return mSerials;
+    }
     
     public int size() {
-        return mItems.size();
+        return mItems.size() + mPending;
     }
     
     /**
      * Combines argument group into this.
      * <br>If the LIN and NSN do not match then nothing is done.
      * <br>Otherwise all the end items will attempted to be added.
+     * <br>The EndItems of a serialized group move to this group, the 
+     * argument group no longer follows their serial numbers.
      * @param group Group to combine into
      */
     public void combine(EndItemGroup group) {
@@ -127,6 +227,22 @@ public class EndItemGroup {
         if (getName().isEmpty() && !group.getName().isEmpty()) 
             name.set(group.getName());
         
+        if (getSerialized()) {
+            // Carry serial numbers over without creating their EndItems
+            for (String serial: group.mSerials) {
+                EndItem item = group.mBySerial.get(serial);
+                if (item == null)
+                    addSerialNumber(serial);
+                else 
+                    add(item);
+            }
+            for (EndItem item: group.mItems) {
+                item.snProperty().removeListener(group.mSerialListener);
+                if (item.getSn() == null) add(item);
+            }
+            return;
+        }
+        
         List<EndItem> items = group.getItems();
         for (EndItem item: items) {
             add(item);
@@ -138,33 +254,52 @@ public class EndItemGroup {
     ///////////////////////////////////////////////////////////////////////////////////
     
     public boolean contains(EndItem item) {
+        if (item != null && item.getSn() != null && mSerials.contains(item.getSn()) 
+                && Objects.equals(item.getLin(), getLIN()) && Objects.equals(item.getNSN(), getNSN()))
+            return true;
         return mItems.contains(item);
     }
+
+    /**
+     * Adds a serial number to this serialized group without creating its EndItem.
+     * 
+     * @param serial Serial number to add
+     * @return Whether the serial number was not already in this group
+     */
+    public boolean addSerialNumber(String serial) {
+        if (!getSerialized())
+            throw new IllegalStateException("Serial number added to non serialized " + this);
+        if (!mSerials.add(serial)) return false;
+        mPending++;
+        return true;
+    }
     
     public void add(EndItem item) {
         if (item == null) {
             return;
         }
-        if (!(item.getLin().equals(getLIN()) 
-                && item.getNSN().equals(getNSN()))
+        if (!(Objects.equals(item.getLin(), getLIN()) 
+                && Objects.equals(item.getNSN(), getNSN()))
                 && item.getHasSN() == getSerialized()) {
             throw new IllegalArgumentException("Illegal EndItem added " + item);
         }
         
         // If we are serialized then just add the element
         if (getSerialized()) {
-            EndItem curItem = null;
-            
-            // Check if we have the serial number already
-            for (EndItem i: mItems) {
-                if (i.getSn().equals(item.getSn())) {
-                    curItem = i;
-                    break;
-                }
+            String serial = item.getSn();
+            if (serial == null) {
+                item.snProperty().addListener(mSerialListener);
+                mItems.add(item);
+                return;
             }
+            EndItem curItem = mBySerial.get(serial);
             
             // If we don't have the serial number then add it
             if (curItem == null) {
+                // The item becomes the EndItem of a pending serial number
+                if (!mSerials.add(serial)) mPending--;
+                mBySerial.put(serial, item);
+                item.snProperty().addListener(mSerialListener);
                 mItems.add(item);
             } else { // Combine the current EndItem to have the most up to date information
                 curItem.combine(item);
@@ -174,9 +309,46 @@ public class EndItemGroup {
         }
     }
     
+    /**
+     * Removes the EndItem instance from this group.
+     * <br>Non serialized EndItems equal each other, so the instance is 
+     * removed rather than the first equal EndItem.
+     * 
+     * @param item EndItem to remove
+     * @return Whether the EndItem was in this group
+     */
+    public boolean remove(EndItem item) {
+        for (int i = 0; i < mItems.size(); ++i) {
+            if (mItems.get(i) == item) {
+                mItems.remove(i);
+                item.snProperty().removeListener(mSerialListener);
+                if (item.getSn() != null && mBySerial.get(item.getSn()) == item) {
+                    mBySerial.remove(item.getSn());
+                    mSerials.remove(item.getSn());
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes the serial number and its EndItem from this group.
+     * 
+     * @param serial Serial number to remove
+     * @return Whether the serial number was in this group
+     */
+    public boolean removeSerialNumber(String serial) {
+        EndItem item = mBySerial.get(serial);
+        if (item != null) return remove(item);
+        if (!mSerials.remove(serial)) return false;
+        mPending--;
+        return true;
+    }
+    
     public void sortBy(ORDER_BY order) {
         if (order == null) return;
-        FXCollections.sort(mItems, order.getComparator());
+        FXCollections.sort(getItems(), order.getComparator());
     }
     
     public void setMos(MOS mos) {
@@ -216,6 +388,29 @@ public class EndItemGroup {
     ///////////////////////////////////////////////////////////////////////////////////
     /////// Private helpers
     ///////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Moves the EndItem to its new serial number.
+     * <br>An EndItem whose new serial number belongs to another EndItem of
+     * this group stays in the group without a serial number of its own.
+     */
+    private void onSerialChanged(EndItem item, String oldSerial, String newSerial) {
+        if (oldSerial != null && mBySerial.get(oldSerial) == item) {
+            mBySerial.remove(oldSerial);
+            mSerials.remove(oldSerial);
+        }
+        if (newSerial == null || mBySerial.containsKey(newSerial)) return;
+        
+        // The item becomes the EndItem of a pending serial number
+        if (!mSerials.add(newSerial)) mPending--;
+        mBySerial.put(newSerial, item);
+    }
+    
+    private EndItem createItem(String serial) {
+        EndItem item = new EndItem(getName(), getLIN(), getNSN());
+        item.setSn(serial);
+        return item;
+    }
     
     private static final Comparator<EndItem> NAME_COMPARATOR = new Comparator<EndItem>() {
 
@@ -270,8 +465,8 @@ public class EndItemGroup {
         if (o == null) return false;
         if (!o.getClass().equals(getClass())) return false;
         EndItemGroup item = (EndItemGroup) o;
-        return lINProperty().isEqualTo(item.lINProperty()).get()
-                && nSNProperty().isEqualTo(item.nSNProperty()).get()  && getSerialized() == item.getSerialized();
+        return Objects.equals(getLIN(), item.getLIN())
+                && Objects.equals(getNSN(), item.getNSN()) && getSerialized() == item.getSerialized();
     }
     
     @Override
@@ -0,0 +1,142 @@
+package com.hotan.ninetripleone.supply.model;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Hash index of EndItemGroups keyed on NSN, LIN and whether the group is serialized.
+ * <br>Owners keep the index in sync with their list of groups, the index
+ * uses the NSN and LIN the group had when it was added.
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+public class EndItemGroupIndex {
+
+    /**
+     * Groups by their exact key, and the first group added for an NSN and LIN
+     * by the key without serialization.
+     */
+    private final Map<Key, EndItemGroup> mGroups;
+
+    public EndItemGroupIndex() {
+        mGroups = new HashMap<Key, EndItemGroup>();
+    }
+
+    /**
+     * Adds the group to the index, replacing any group with the same key.
+     *
+     * @param group Group to add
+     */
+    public void add(EndItemGroup group) {
+        if (group == null) return;
+        mGroups.put(Key.of(group), group);
+        Key any = new Key(group.getNSN(), group.getLIN(), null);
+        if (!mGroups.containsKey(any)) {
+            mGroups.put(any, group);
+        }
+    }
+
+    /**
+     * Removes the group from the index.
+     *
+     * @param group Group to remove
+     */
+    public void remove(EndItemGroup group) {
+        if (group == null) return;
+        Key key = Key.of(group);
+        if (mGroups.get(key) != group) return;
+        mGroups.remove(key);
+
+        // Fall back to the group with the other serialization if there is one
+        Key any = new Key(group.getNSN(), group.getLIN(), null);
+        if (mGroups.get(any) == group) {
+            EndItemGroup other = mGroups.get(new Key(group.getNSN(), group.getLIN(), !group.getSerialized()));
+            if (other == null)
+                mGroups.remove(any);
+            else
+                mGroups.put(any, other);
+        }
+    }
+
+    /**
+     * Returns the indexed group equal to the argument group.
+     *
+     * @param group Group to find
+     * @return Group with the same NSN, LIN and serialization, or null if there is none
+     */
+    public EndItemGroup get(EndItemGroup group) {
+        if (group == null) return null;
+        return mGroups.get(Key.of(group));
+    }
+
+    /**
+     * Returns the indexed group with the NSN, LIN and serialization.
+     *
+     * @param nsn NSN to find.
+     * @param lin LIN to find.
+     * @param serialized Whether the group is serialized
+     * @return Group with the nsn, lin and serialization, or null if there is none
+     */
+    public EndItemGroup get(String nsn, String lin, boolean serialized) {
+        if (nsn == null || lin == null) return null;
+        return mGroups.get(new Key(nsn, lin, serialized));
+    }
+
+    /**
+     * Returns the first group added with the NSN and LIN.
+     *
+     * @param nsn NSN to find.
+     * @param lin LIN to find.
+     * @return Group with the nsn and lin, or null if there is none
+     */
+    public EndItemGroup get(String nsn, String lin) {
+        if (nsn == null || lin == null) return null;
+        return mGroups.get(new Key(nsn, lin, null));
+    }
+
+    public void clear() {
+        mGroups.clear();
+    }
+
+    /**
+     * NSN, LIN and serialization of a group.
+     * <br>Shared by the package to key groups the way they are compared.
+     */
+    static class Key {
+
+        private final String nsn, lin;
+
+        /**
+         * null matches either serialization.
+         */
+        private final Boolean serialized;
+
+        Key(String nsn, String lin, Boolean serialized) {
+            this.nsn = nsn;
+            this.lin = lin;
+            this.serialized = serialized;
+        }
+
+        /**
+         * @param group Group to key
+         * @return Key of the NSN, LIN and serialization the group has now
+         */
+        static Key of(EndItemGroup group) {
+            return new Key(group.getNSN(), group.getLIN(), group.getSerialized());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return Objects.equals(nsn, k.nsn) && Objects.equals(lin, k.lin) 
+                    && Objects.equals(serialized, k.serialized);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(nsn, lin, serialized);
+        }
+    }
+}
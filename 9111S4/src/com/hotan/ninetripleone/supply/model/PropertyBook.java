@@ -2,6 +2,7 @@ package com.hotan.ninetripleone.supply.model;
 
 import java.util.Date;
 import java.util.List;
+import java.util.Objects;
 import java.util.logging.Logger;
 
 import com.hotan.ninetripleone.supply.forms.ComponentHandReceipt;
@@ -21,12 +22,12 @@ public class PropertyBook {
     /**
      * Reference to who 
      */
-    private final Operator mSignee, mSigner;
+    private Operator mSignee, mSigner;
 
     /**
      * Date Prepared
      */
-    private final Date mDatePrepared;
+    private Date mDatePrepared;
 
     /**
      * UIC, DESC, and Team the property book belongs
@@ -38,6 +39,14 @@ public class PropertyBook {
      */
     private final ObservableList<EndItemGroup> mEndItemGroups;
 
+    private final EndItemGroupIndex mIndex;
+
+    /**
+     * Serial numbers and quantities of the Unit HR this PropertyBook was last
+     * built or updated from.
+     */
+    private UnitHRSnapshot mUnitHR;
+
     public PropertyBook(UnitLevelHandReceipt  unitHR, ComponentHandReceipt compHR) {
         if (unitHR == null) {
             throw new NullPointerException("Null Unit Hand Receipt");
@@ -54,33 +63,82 @@ public class PropertyBook {
         team = unitHR.getTeam();
 
         mEndItemGroups = FXCollections.observableArrayList();
+        mIndex = new EndItemGroupIndex();
 
         List<EndItemGroup> compGroups = compHR.getGroups();
         List<EndItemGroup> unitGroups = unitHR.getGroups();
+        mUnitHR = new UnitHRSnapshot(unitGroups);
+        EndItemGroupIndex unitIndex = new EndItemGroupIndex();
+        for (EndItemGroup group: unitGroups) {
+            unitIndex.add(group);
+        }
 
         // Iterate through all the Groups in the component list
         // Make sure the Unit Hand receipt contains the EndItemGroup
         // Before adding to the property book.
         for (EndItemGroup group: compGroups) {
-            if (unitGroups.contains(group))
+            if (unitIndex.get(group) != null) {
                 mEndItemGroups.add(group);
-            else
+                mIndex.add(group);
+            } else
                 LOG.warning("Component Hand Receipt has group that the Unit HR does not have \n Group: " + group);
         }
 
         // Now add all the groups from the Unit HR 
         // Make sure we update the EndItemGroup
         for (EndItemGroup group: unitGroups) {
-            int index = mEndItemGroups.indexOf(group);
-            if (index == -1) 
+            EndItemGroup curGroup = mIndex.get(group);
+            if (curGroup == null) {
                 mEndItemGroups.add(group);
-            else {
-                EndItemGroup curGroup = mEndItemGroups.get(index);
+                mIndex.add(group);
+            } else
                 curGroup.combine(group);
+        }
+    }
+
+    /**
+     * Updates this PropertyBook to a newer Unit level hand receipt of the same team.
+     * <br>Only the groups and EndItems that differ are added or removed, every
+     * other group and EndItem is kept along with the locations, on hand 
+     * quantities and MOS entered for them.
+     * 
+     * @param newer Newer Unit level hand receipt
+     * @return Delta that was applied
+     */
+    public PropertyBookDelta update(UnitLevelHandReceipt newer) {
+        if (newer == null) {
+            throw new NullPointerException("Null Unit Hand Receipt");
+        }
+        if (!Objects.equals(UIC, newer.getUIC()) || !Objects.equals(team, newer.getTeam())) {
+            throw new IllegalArgumentException("Unit Hand Receipt of " + newer.getUIC() + "/" 
+                    + newer.getTeam() + " does not belong to PropertyBook of " + UIC + "/" + team);
+        }
+
+        PropertyBookDelta delta = new PropertyBookDelta(this, newer);
+        for (EndItemGroup group: delta.getRemovedGroups()) {
+            mEndItemGroups.remove(group);
+            mIndex.remove(group);
+        }
+        for (EndItemGroup group: delta.getAddedGroups()) {
+            mEndItemGroups.add(group);
+            mIndex.add(group);
+        }
+        for (PropertyBookDelta.GroupChange change: delta.getChanges()) {
+            EndItemGroup group = change.getGroup();
+            for (EndItem item: change.getRemovedItems()) {
+                group.remove(item);
+            }
+            for (EndItem item: change.getAddedItems()) {
+                group.add(item);
             }
         }
-        
-        
+
+        mUnitHR = new UnitHRSnapshot(newer.getGroups());
+        mSignee = newer.getWhoFrom();
+        mSigner = newer.getWhoTo();
+        mDatePrepared = newer.getDatePrepared();
+        LOG.info("Updated PropertyBook of " + UIC + "/" + team + " " + delta);
+        return delta;
     }
 
     /**
@@ -102,13 +160,15 @@ public class PropertyBook {
      * @return EndItemGroup that represents the the nsn and lin inputted, or null if non are found.
      */
     public EndItemGroup getGroup(String nsn, String lin) {
-        if (nsn == null || lin == null) return null;
-        for (EndItemGroup group: mEndItemGroups) {
-            if (group.getNSN().equals(nsn) && group.getLIN().equals(lin)) {
-                return group;
-            }
-        }
-        return null;
+        return mIndex.get(nsn, lin);
+    }
+
+    EndItemGroupIndex getIndex() {
+        return mIndex;
+    }
+
+    UnitHRSnapshot getUnitHR() {
+        return mUnitHR;
     }
 
     /**
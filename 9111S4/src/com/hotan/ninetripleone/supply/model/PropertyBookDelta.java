@@ -0,0 +1,184 @@
+package com.hotan.ninetripleone.supply.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.hotan.ninetripleone.supply.forms.UnitLevelHandReceipt;
+
+/**
+ * Difference between the Unit level hand receipt a PropertyBook was last built
+ * or updated from and a newer Unit level hand receipt, applied to the groups of
+ * the PropertyBook.
+ * <br>Groups are matched by NSN, LIN and serialization, serialized EndItems by
+ * serial number and non serialized EndItems by quantity.  EndItems of added
+ * groups are not listed separately.
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+public class PropertyBookDelta {
+
+    private final List<EndItemGroup> mAdded, mRemoved;
+
+    private final List<GroupChange> mChanges;
+
+    /**
+     * Computes the delta without changing the PropertyBook.
+     *
+     * @param book PropertyBook to update
+     * @param newer Newer Unit level hand receipt
+     */
+    PropertyBookDelta(PropertyBook book, UnitLevelHandReceipt newer) {
+        mAdded = new ArrayList<EndItemGroup>();
+        mRemoved = new ArrayList<EndItemGroup>();
+        mChanges = new ArrayList<GroupChange>();
+
+        UnitHRSnapshot oldHR = book.getUnitHR();
+        EndItemGroupIndex newIndex = new EndItemGroupIndex();
+        for (EndItemGroup group: newer.getGroups()) {
+            newIndex.add(group);
+            EndItemGroup current = book.getIndex().get(group);
+            UnitHRSnapshot.Group old = oldHR.get(group);
+            if (current == null) {
+                mAdded.add(group);
+                continue;
+            }
+            if (old == null) continue;
+            GroupChange change = group.getSerialized()
+                    ? serialChange(current, old, group) : quantityChange(current, old, group);
+            if (change != null) mChanges.add(change);
+        }
+        for (UnitHRSnapshot.Group old: oldHR.getGroups()) {
+            EndItemGroup current = book.getIndex().get(old.getNSN(), old.getLIN(), old.getSerialized());
+            if (current != null && newIndex.get(old.getNSN(), old.getLIN(), old.getSerialized()) == null)
+                mRemoved.add(current);
+        }
+    }
+
+    private static GroupChange serialChange(EndItemGroup current, UnitHRSnapshot.Group old, EndItemGroup newer) {
+        // The Unit and Component hand receipts do not pad serial numbers the
+        // same, so serial numbers are compared without surrounding white space.
+        Set<String> removedSerials = new HashSet<String>(old.getSerialNumbers());
+        List<EndItem> added = new ArrayList<EndItem>();
+        Set<String> newSerials = new HashSet<String>();
+        for (String serial: newer.getSerialNumbers()) {
+            newSerials.add(serial.trim());
+            if (!removedSerials.contains(serial.trim())) added.add(newer.getItem(serial));
+        }
+        removedSerials.removeAll(newSerials);
+
+        // Only the EndItems of removed serial numbers are created
+        List<EndItem> removed = new ArrayList<EndItem>();
+        if (!removedSerials.isEmpty()) {
+            for (String serial: current.getSerialNumbers()) {
+                if (removedSerials.contains(serial.trim())) removed.add(current.getItem(serial));
+            }
+        }
+        if (added.isEmpty() && removed.isEmpty()) return null;
+        return new GroupChange(current, added, removed);
+    }
+
+    private static GroupChange quantityChange(EndItemGroup current, UnitHRSnapshot.Group old, EndItemGroup newer) {
+        int diff = newer.size() - old.size();
+        if (diff == 0) return null;
+        if (diff > 0) {
+            List<EndItem> newItems = newer.getItems();
+            return new GroupChange(current,
+                    new ArrayList<EndItem>(newItems.subList(newItems.size() - diff, newItems.size())),
+                    Collections.<EndItem>emptyList());
+        }
+
+        // Drop the last items no location was entered for before any others
+        List<EndItem> items = current.getItems();
+        Map<EndItem, Boolean> chosen = new IdentityHashMap<EndItem, Boolean>();
+        List<EndItem> removed = new ArrayList<EndItem>(-diff);
+        for (int pass = 0; pass < 2 && removed.size() < -diff; ++pass) {
+            for (int i = items.size() - 1; i >= 0 && removed.size() < -diff; --i) {
+                EndItem item = items.get(i);
+                if (chosen.containsKey(item)) continue;
+                String location = item.getLocation();
+                if (pass == 0 && location != null && !location.isEmpty()) continue;
+                chosen.put(item, Boolean.TRUE);
+                removed.add(item);
+            }
+        }
+        return new GroupChange(current, Collections.<EndItem>emptyList(), removed);
+    }
+
+    /**
+     * @return Groups only the newer hand receipt has
+     */
+    public List<EndItemGroup> getAddedGroups() {
+        return Collections.unmodifiableList(mAdded);
+    }
+
+    /**
+     * @return Groups only the PropertyBook has
+     */
+    public List<EndItemGroup> getRemovedGroups() {
+        return Collections.unmodifiableList(mRemoved);
+    }
+
+    /**
+     * @return Changes to the EndItems of groups both have
+     */
+    public List<GroupChange> getChanges() {
+        return Collections.unmodifiableList(mChanges);
+    }
+
+    public boolean isEmpty() {
+        return mAdded.isEmpty() && mRemoved.isEmpty() && mChanges.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + " added: " + mAdded.size() + " removed: " + mRemoved.size()
+                + " changed: " + mChanges.size();
+    }
+
+    /**
+     * EndItems added to and removed from a single group of the PropertyBook.
+     */
+    public static class GroupChange {
+
+        private final EndItemGroup mGroup;
+
+        private final List<EndItem> mAdded, mRemoved;
+
+        private GroupChange(EndItemGroup group, List<EndItem> added, List<EndItem> removed) {
+            mGroup = group;
+            mAdded = added;
+            mRemoved = removed;
+        }
+
+        /**
+         * @return Group of the PropertyBook that changes
+         */
+        public EndItemGroup getGroup() {
+            return mGroup;
+        }
+
+        /**
+         * @return EndItems of the newer hand receipt to add to the group
+         */
+        public List<EndItem> getAddedItems() {
+            return Collections.unmodifiableList(mAdded);
+        }
+
+        /**
+         * @return EndItems of the group to remove
+         */
+        public List<EndItem> getRemovedItems() {
+            return Collections.unmodifiableList(mRemoved);
+        }
+
+        @Override
+        public String toString() {
+            return mGroup + " added: " + mAdded.size() + " removed: " + mRemoved.size();
+        }
+    }
+}
@@ -0,0 +1,411 @@
+package com.hotan.ninetripleone.supply.model;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import com.hotan.ninetripleone.supply.forms.ComponentHandReceipt;
+import com.hotan.ninetripleone.supply.forms.FormSniffer;
+import com.hotan.ninetripleone.supply.forms.FormType;
+import com.hotan.ninetripleone.supply.forms.IngestPolicy;
+import com.hotan.ninetripleone.supply.forms.UnitLevelHandReceipt;
+import com.hotan.ninetripleone.supply.util.FormatException;
+
+/**
+ * Loads the PropertyBooks of every team from a directory of hand receipts.
+ * <br>Every XLS file in the directory is parsed on a fixed pool of threads,
+ * so no more than the pool size of files are open at once.  The form of each
+ * file is sniffed before it is parsed, DA 2404s are skipped.  Unit and
+ * Component hand receipts are paired by UIC and team and a PropertyBook is
+ * built for each pair.
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+public class PropertyBookLoader {
+
+    private static final Logger LOG = Logger.getLogger(PropertyBookLoader.class.getSimpleName());
+
+    private static final FileFilter XLS_FILTER = new FileFilter() {
+
+        @Override
+        public boolean accept(File file) {
+            return file.isFile() && file.getName().toLowerCase().endsWith(".xls");
+        }
+    };
+
+    private final int mMaxOpenFiles;
+
+    /**
+     * Whether the components of the Component hand receipts are parsed on demand.
+     */
+    private final boolean mLazyComponents;
+
+    /**
+     * Policy that chooses how each file is parsed, null to always detach.
+     */
+    private final IngestPolicy mPolicy;
+
+    /**
+     * Creates a loader that parses one file per available processor at a time.
+     */
+    public PropertyBookLoader() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param maxOpenFiles Maximum number of files parsed at the same time
+     */
+    public PropertyBookLoader(int maxOpenFiles) {
+        this(maxOpenFiles, false);
+    }
+
+    /**
+     * @param maxOpenFiles Maximum number of files parsed at the same time
+     * @param lazyComponents Whether to only read the headers of the Component
+     *          hand receipt sheets and parse the COEI and BII when they are
+     *          first asked for, see {@link ComponentHandReceipt#lazy(File)}
+     */
+    public PropertyBookLoader(int maxOpenFiles, boolean lazyComponents) {
+        this(maxOpenFiles, lazyComponents, null);
+    }
+
+    /**
+     * @param maxOpenFiles Maximum number of files parsed at the same time
+     * @param policy Policy that chooses how each file is parsed from its 
+     *          estimated heap, the budget applies to every open file
+     */
+    public PropertyBookLoader(int maxOpenFiles, IngestPolicy policy) {
+        this(maxOpenFiles, false, policy);
+        if (policy == null)
+            throw new NullPointerException(getClass().getSimpleName() + "() Null IngestPolicy");
+    }
+
+    private PropertyBookLoader(int maxOpenFiles, boolean lazyComponents, IngestPolicy policy) {
+        if (maxOpenFiles < 1)
+            throw new IllegalArgumentException(getClass().getSimpleName()
+                    + "() Maximum open files must be positive, found " + maxOpenFiles);
+        mMaxOpenFiles = maxOpenFiles;
+        mLazyComponents = lazyComponents;
+        mPolicy = policy;
+    }
+
+    public int getMaxOpenFiles() {
+        return mMaxOpenFiles;
+    }
+
+    public boolean isLazyComponents() {
+        return mLazyComponents;
+    }
+
+    /**
+     * @return Policy that chooses how each file is parsed, or null if every file is detached
+     */
+    public IngestPolicy getIngestPolicy() {
+        return mPolicy;
+    }
+
+    /**
+     * Parses every XLS file in the directory and builds a PropertyBook for
+     * every team that has both a Unit and a Component hand receipt.
+     * <br>Files that can not be parsed and teams missing a hand receipt are
+     * reported in the result instead of failing the whole load.
+     *
+     * @param dir Directory of the hand receipts
+     * @return Result of the load
+     * @throws IOException The directory can not be listed
+     * @throws InterruptedException Interrupted while waiting for the files to be parsed
+     */
+    public Result load(File dir) throws IOException, InterruptedException {
+        if (dir == null)
+            throw new NullPointerException(getClass().getSimpleName() + ".load() Null directory");
+        File[] files = dir.listFiles(XLS_FILTER);
+        if (files == null)
+            throw new IOException("Unable to list the files of " + dir);
+        Arrays.sort(files);
+
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(mMaxOpenFiles);
+        try {
+            List<Future<FileReport>> parsing = new ArrayList<Future<FileReport>>(files.length);
+            for (final File file: files) {
+                parsing.add(pool.submit(new Callable<FileReport>() {
+
+                    @Override
+                    public FileReport call() {
+                        return read(file, mLazyComponents, mPolicy);
+                    }
+                }));
+            }
+
+            // Collect the receipts of each team in file order
+            Result result = new Result();
+            Map<String, UnitLevelHandReceipt> unitHRs = new TreeMap<String, UnitLevelHandReceipt>();
+            Map<String, ComponentHandReceipt> compHRs = new TreeMap<String, ComponentHandReceipt>();
+            for (int i = 0; i < files.length; ++i) {
+                FileReport report = get(parsing.get(i), files[i]);
+                if (!report.isFailure() && report.getKey() != null) {
+                    if (report.mUnitHR != null && unitHRs.containsKey(report.getKey())
+                            || report.mCompHR != null && compHRs.containsKey(report.getKey())) {
+                        report = report.fail(new FormatException("Duplicate " + report.getType()
+                                + " hand receipt for " + report.getKey()));
+                    } else if (report.mUnitHR != null) {
+                        unitHRs.put(report.getKey(), report.mUnitHR);
+                    } else {
+                        compHRs.put(report.getKey(), report.mCompHR);
+                    }
+                }
+                if (report.isFailure())
+                    LOG.warning("Unable to load " + report.getFile() + ": " + report.getError());
+                result.mReports.add(report);
+            }
+
+            // Build the PropertyBook of every complete pair
+            Map<String, Future<PropertyBook>> building = new TreeMap<String, Future<PropertyBook>>();
+            for (Map.Entry<String, UnitLevelHandReceipt> entry: unitHRs.entrySet()) {
+                final UnitLevelHandReceipt unitHR = entry.getValue();
+                final ComponentHandReceipt compHR = compHRs.remove(entry.getKey());
+                if (compHR == null) {
+                    result.mTeamFailures.put(entry.getKey(),
+                            new FormatException("No Component hand receipt for " + entry.getKey()));
+                    continue;
+                }
+                building.put(entry.getKey(), pool.submit(new Callable<PropertyBook>() {
+
+                    @Override
+                    public PropertyBook call() {
+                        return new PropertyBook(unitHR, compHR);
+                    }
+                }));
+            }
+            for (String key: compHRs.keySet()) {
+                result.mTeamFailures.put(key, new FormatException("No Unit hand receipt for " + key));
+            }
+            for (Map.Entry<String, Future<PropertyBook>> entry: building.entrySet()) {
+                try {
+                    result.mBooks.put(entry.getKey(), entry.getValue().get());
+                } catch (ExecutionException e) {
+                    result.mTeamFailures.put(entry.getKey(), asException(e.getCause()));
+                }
+            }
+            for (Map.Entry<String, Exception> entry: result.mTeamFailures.entrySet()) {
+                LOG.warning("No PropertyBook for " + entry.getKey() + ": " + entry.getValue());
+            }
+
+            result.mMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            LOG.info("Loaded " + result.mBooks.size() + " PropertyBooks from " + files.length
+                    + " files in " + result.mMillis + "ms with " + mMaxOpenFiles + " threads");
+            return result;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static FileReport get(Future<FileReport> future, File file) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            return new FileReport(file, FormType.UNKNOWN, null, 0, asException(e.getCause()));
+        }
+    }
+
+    private static Exception asException(Throwable t) {
+        return t instanceof Exception ? (Exception) t : new ExecutionException(t);
+    }
+
+    /**
+     * Parses a single hand receipt file, catching any failure into the report.
+     * <br>The form of the file is sniffed first, so only hand receipts are
+     * loaded into a workbook.  Without a policy the receipts are detached so
+     * the workbook is released once parsed.
+     *
+     * @param file File to parse
+     * @param lazyComponents Whether to parse the COEI and BII on demand
+     * @param policy Policy that chooses how to parse the file, null to detach
+     * @return Report of the file, without a key if the file is a DA 2404
+     */
+    static FileReport read(File file, boolean lazyComponents, IngestPolicy policy) {
+        long start = System.nanoTime();
+        FormType type = FormType.UNKNOWN;
+        try {
+            type = FormSniffer.sniff(file);
+            FileReport report;
+            switch (type) {
+            case UNIT:
+                UnitLevelHandReceipt unitHR = policy != null 
+                        ? policy.loadUnit(file) : UnitLevelHandReceipt.detached(file);
+                report = new FileReport(file, type, key(unitHR.getUIC(), unitHR.getTeam()), elapsed(start), null);
+                report.mUnitHR = unitHR;
+                return report;
+            case COMPONENT:
+                ComponentHandReceipt compHR;
+                if (policy != null)
+                    compHR = policy.loadComponent(file);
+                else if (lazyComponents)
+                    compHR = ComponentHandReceipt.lazy(file);
+                else
+                    compHR = ComponentHandReceipt.detached(file);
+                report = new FileReport(file, type, key(compHR.getUIC(), compHR.getTeam()), elapsed(start), null);
+                report.mCompHR = compHR;
+                return report;
+            case DA_2404:
+                LOG.info("Skipping DA 2404 " + file);
+                return new FileReport(file, type, null, elapsed(start), null);
+            default:
+                throw new FormatException(file.getName() + " is not a hand receipt");
+            }
+        } catch (IOException | FormatException | RuntimeException e) {
+            return new FileReport(file, type, null, elapsed(start), e);
+        }
+    }
+
+    private static long elapsed(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    /**
+     * Returns the key hand receipts are paired by.
+     *
+     * @param uic UIC of the hand receipt
+     * @param team Team of the hand receipt
+     * @return Key of the team
+     */
+    public static String key(String uic, String team) {
+        return uic + "/" + team;
+    }
+
+    /**
+     * Outcome of parsing a single file.
+     */
+    public static class FileReport {
+
+        private final File mFile;
+        private final FormType mType;
+        private final String mKey;
+        private final long mMillis;
+        private final Exception mError;
+
+        private UnitLevelHandReceipt mUnitHR;
+        private ComponentHandReceipt mCompHR;
+
+        private FileReport(File file, FormType type, String key, long millis, Exception error) {
+            mFile = file;
+            mType = type;
+            mKey = key;
+            mMillis = millis;
+            mError = error;
+        }
+
+        private FileReport fail(Exception error) {
+            return new FileReport(mFile, mType, mKey, mMillis, error);
+        }
+
+        public File getFile() {
+            return mFile;
+        }
+
+        public FormType getType() {
+            return mType;
+        }
+
+        /**
+         * @return UIC and team of the hand receipt, or null if it could not be parsed
+         *          or is not a hand receipt
+         */
+        public String getKey() {
+            return mKey;
+        }
+
+        /**
+         * @return Time spent reading and parsing the file
+         */
+        public long getMillis() {
+            return mMillis;
+        }
+
+        /**
+         * @return Reason the file was not used, or null if it was
+         */
+        public Exception getError() {
+            return mError;
+        }
+
+        public boolean isFailure() {
+            return mError != null;
+        }
+
+        @Override
+        public String toString() {
+            return mFile.getName() + " " + mType + " " + mKey + " " + mMillis + "ms"
+                    + (mError == null ? "" : " " + mError);
+        }
+    }
+
+    /**
+     * Outcome of loading a directory.
+     */
+    public static class Result {
+
+        private final Map<String, PropertyBook> mBooks = new TreeMap<String, PropertyBook>();
+        private final Map<String, Exception> mTeamFailures = new TreeMap<String, Exception>();
+        private final List<FileReport> mReports = new ArrayList<FileReport>();
+        private long mMillis;
+
+        private Result() {}
+
+        /**
+         * @return PropertyBooks by {@link PropertyBookLoader#key(String, String)}
+         */
+        public Map<String, PropertyBook> getPropertyBooks() {
+            return Collections.unmodifiableMap(mBooks);
+        }
+
+        public PropertyBook getPropertyBook(String uic, String team) {
+            return mBooks.get(key(uic, team));
+        }
+
+        /**
+         * @return Reason each team without a PropertyBook has none
+         */
+        public Map<String, Exception> getTeamFailures() {
+            return Collections.unmodifiableMap(mTeamFailures);
+        }
+
+        /**
+         * @return Report of every file in the directory in file name order
+         */
+        public List<FileReport> getReports() {
+            return Collections.unmodifiableList(mReports);
+        }
+
+        /**
+         * @return Reports of the files that could not be used
+         */
+        public List<FileReport> getFailures() {
+            List<FileReport> failures = new ArrayList<FileReport>();
+            for (FileReport report: mReports) {
+                if (report.isFailure()) failures.add(report);
+            }
+            return failures;
+        }
+
+        /**
+         * @return Wall clock time of the whole load
+         */
+        public long getMillis() {
+            return mMillis;
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package com.hotan.ninetripleone.supply.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * Compact set of serial numbers.
+ * <br>Serial numbers are split into a prefix and a trailing number, and
+ * consecutive numbers with the same prefix and width are stored as a single
+ * run, so W123400 through W124399 take one run instead of a thousand Strings.
+ * <br>Iteration returns the serial numbers in the order they were added.
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+public class SerialNumberSet implements Iterable<String> {
+
+    /**
+     * Longest trailing number stored as a number, longer ones do not fit a long.
+     */
+    private static final int MAX_DIGITS = 18;
+
+    /**
+     * Runs in the order they were added.
+     */
+    private final List<Run> mRuns;
+
+    /**
+     * Runs of each prefix by their first number.
+     */
+    private final Map<Prefix, TreeMap<Long, Run>> mIndex;
+
+    private int mSize;
+
+    public SerialNumberSet() {
+        mRuns = new ArrayList<Run>();
+        mIndex = new HashMap<Prefix, TreeMap<Long, Run>>();
+    }
+
+    /**
+     * Adds the serial number to the set.
+     *
+     * @param serial Serial number to add
+     * @return Whether the serial number was not already in the set
+     */
+    public boolean add(String serial) {
+        if (serial == null)
+            throw new NullPointerException(getClass().getSimpleName() + ".add() Null serial number");
+        Prefix prefix = Prefix.of(serial);
+        long value = Prefix.valueOf(serial, prefix);
+        if (find(prefix, value) != null) return false;
+
+        // Extend the last run when the serial numbers are sequential
+        Run last = mRuns.isEmpty() ? null : mRuns.get(mRuns.size() - 1);
+        if (last != null && prefix.width > 0 && last.prefix.equals(prefix) && last.end + 1 == value) {
+            last.end = value;
+        } else {
+            Run run = new Run(prefix, value, value);
+            mRuns.add(run);
+            index(run);
+        }
+        mSize++;
+        return true;
+    }
+
+    /**
+     * @param serial Serial number to find
+     * @return Whether the serial number is in the set
+     */
+    public boolean contains(String serial) {
+        if (serial == null) return false;
+        Prefix prefix = Prefix.of(serial);
+        return find(prefix, Prefix.valueOf(serial, prefix)) != null;
+    }
+
+    /**
+     * Removes the serial number from the set, splitting its run if necessary.
+     *
+     * @param serial Serial number to remove
+     * @return Whether the serial number was in the set
+     */
+    public boolean remove(String serial) {
+        if (serial == null) return false;
+        Prefix prefix = Prefix.of(serial);
+        long value = Prefix.valueOf(serial, prefix);
+        Run run = find(prefix, value);
+        if (run == null) return false;
+
+        if (run.start == run.end) {
+            mRuns.remove(run);
+            unindex(run);
+        } else if (value == run.start) {
+            unindex(run);
+            run.start++;
+            index(run);
+        } else if (value == run.end) {
+            run.end--;
+        } else {
+            Run tail = new Run(prefix, value + 1, run.end);
+            run.end = value - 1;
+            mRuns.add(mRuns.indexOf(run) + 1, tail);
+            index(tail);
+        }
+        mSize--;
+        return true;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    /**
+     * @return Number of runs the serial numbers are stored in
+     */
+    public int getRunCount() {
+        return mRuns.size();
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<String>() {
+
+            private int mRun;
+            private long mNext = mRuns.isEmpty() ? 0 : mRuns.get(0).start;
+
+            @Override
+            public boolean hasNext() {
+                return mRun < mRuns.size();
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                Run run = mRuns.get(mRun);
+                String serial = run.prefix.format(mNext);
+                if (mNext == run.end) {
+                    mRun++;
+                    if (mRun < mRuns.size()) mNext = mRuns.get(mRun).start;
+                } else {
+                    mNext++;
+                }
+                return serial;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException(SerialNumberSet.class.getSimpleName()
+                        + " iterator does not support remove");
+            }
+        };
+    }
+
+    private Run find(Prefix prefix, long value) {
+        TreeMap<Long, Run> runs = mIndex.get(prefix);
+        if (runs == null) return null;
+        Entry<Long, Run> entry = runs.floorEntry(value);
+        if (entry == null || entry.getValue().end < value) return null;
+        return entry.getValue();
+    }
+
+    private void index(Run run) {
+        TreeMap<Long, Run> runs = mIndex.get(run.prefix);
+        if (runs == null) {
+            runs = new TreeMap<Long, Run>();
+            mIndex.put(run.prefix, runs);
+        }
+        runs.put(run.start, run);
+    }
+
+    private void unindex(Run run) {
+        TreeMap<Long, Run> runs = mIndex.get(run.prefix);
+        runs.remove(run.start);
+        if (runs.isEmpty()) mIndex.remove(run.prefix);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + " size: " + mSize + " runs: " + mRuns.size();
+    }
+
+    /**
+     * Consecutive serial numbers from start to end inclusive.
+     */
+    private static class Run {
+
+        private final Prefix prefix;
+        private long start, end;
+
+        Run(Prefix prefix, long start, long end) {
+            this.prefix = prefix;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    /**
+     * Text before the trailing number of a serial number and the number of digits
+     * of the trailing number, 0 if the whole serial number is the text.
+     */
+    private static class Prefix {
+
+        private final String text;
+        private final int width;
+
+        private Prefix(String text, int width) {
+            this.text = text;
+            this.width = width;
+        }
+
+        static Prefix of(String serial) {
+            int digits = 0;
+            while (digits < serial.length()) {
+                char c = serial.charAt(serial.length() - 1 - digits);
+                if (c < '0' || c > '9') break;
+                digits++;
+            }
+            if (digits > MAX_DIGITS) digits = 0;
+            return new Prefix(serial.substring(0, serial.length() - digits), digits);
+        }
+
+        static long valueOf(String serial, Prefix prefix) {
+            if (prefix.width == 0) return 0;
+            return Long.parseLong(serial.substring(prefix.text.length()));
+        }
+
+        String format(long value) {
+            if (width == 0) return text;
+            String digits = Long.toString(value);
+            StringBuilder serial = new StringBuilder(text.length() + width).append(text);
+            for (int i = digits.length(); i < width; ++i) {
+                serial.append('0');
+            }
+            return serial.append(digits).toString();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Prefix)) return false;
+            Prefix p = (Prefix) o;
+            return width == p.width && text.equals(p.text);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(text, width);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.hotan.ninetripleone.supply.model;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.hotan.ninetripleone.supply.model.EndItemGroupIndex.Key;
+
+/**
+ * Serial numbers and quantities of the groups of a Unit level hand receipt.
+ * <br>Kept by a PropertyBook to compute the delta to a newer hand receipt.
+ * Only strings and counts are copied, so later changes to the groups and
+ * EndItems of the hand receipt do not change the snapshot.
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+class UnitHRSnapshot {
+
+    private final Map<Key, Group> mGroups;
+
+    /**
+     * @param groups Groups of the Unit level hand receipt
+     */
+    UnitHRSnapshot(List<EndItemGroup> groups) {
+        mGroups = new LinkedHashMap<Key, Group>();
+        for (EndItemGroup group: groups) {
+            Group snapshot = new Group(group);
+            mGroups.put(new Key(snapshot.mNSN, snapshot.mLIN, snapshot.mSerialized), snapshot);
+        }
+    }
+
+    /**
+     * @param group Group to find
+     * @return Snapshot of the group with the same NSN, LIN and serialization, or null if there is none
+     */
+    Group get(EndItemGroup group) {
+        return mGroups.get(Key.of(group));
+    }
+
+    /**
+     * @return Snapshots of every group, in the order of the hand receipt
+     */
+    Collection<Group> getGroups() {
+        return Collections.unmodifiableCollection(mGroups.values());
+    }
+
+    /**
+     * Serial numbers and quantity of a single group.
+     */
+    static class Group {
+
+        private final String mNSN, mLIN;
+
+        private final boolean mSerialized;
+
+        /**
+         * Serial numbers without surrounding white space.
+         */
+        private final Set<String> mSerials;
+
+        private final int mSize;
+
+        private Group(EndItemGroup group) {
+            mNSN = group.getNSN();
+            mLIN = group.getLIN();
+            mSerialized = group.getSerialized();
+            mSerials = new HashSet<String>();
+            for (String serial: group.getSerialNumbers()) {
+                mSerials.add(serial.trim());
+            }
+            mSize = group.size();
+        }
+
+        String getNSN() {
+            return mNSN;
+        }
+
+        String getLIN() {
+            return mLIN;
+        }
+
+        boolean getSerialized() {
+            return mSerialized;
+        }
+
+        /**
+         * @return Serial numbers of the group, without surrounding white space
+         */
+        Set<String> getSerialNumbers() {
+            return Collections.unmodifiableSet(mSerials);
+        }
+
+        int size() {
+            return mSize;
+        }
+    }
+}
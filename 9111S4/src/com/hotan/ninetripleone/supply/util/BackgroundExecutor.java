@@ -0,0 +1,85 @@
+package com.hotan.ninetripleone.supply.util;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded pool of daemon threads shared by everything that parses off the
+ * calling thread without an executor of its own.
+ * <br>At most {@link #MAX_THREADS} tasks run at once, the others wait in
+ * the queue.  Idle threads end after a minute.
+ * <br>Tasks that wait on somebody else, like a publisher waiting for demand
+ * of its subscriber, run on the {@link #getPublishers() publisher pool}
+ * instead, so they can never hold up the tasks of the shared pool.
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+public final class BackgroundExecutor {
+
+    /**
+     * Number of threads of the shared pool.
+     */
+    public static final int MAX_THREADS = Math.max(4, Runtime.getRuntime().availableProcessors());
+
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    private BackgroundExecutor() {}
+
+    /**
+     * @return Shared pool, created the first time it is used
+     */
+    public static Executor getShared() {
+        return Holder.EXECUTOR;
+    }
+
+    /**
+     * Returns the pool of daemon threads the receipt publishers stream on.
+     * <br>Every task gets a thread of its own, that it may keep while it waits.
+     * Idle threads end after a minute.
+     *
+     * @return Pool of the publishers, created the first time it is used
+     */
+    public static Executor getPublishers() {
+        return PublisherHolder.EXECUTOR;
+    }
+
+    /**
+     * @param name Name of the threads, suffixed with their number
+     * @return Factory of daemon threads
+     */
+    private static ThreadFactory daemonThreads(final String name) {
+        return new ThreadFactory() {
+
+            private final AtomicInteger mCount = new AtomicInteger(1);
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, name + "-" + mCount.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    private static class Holder {
+
+        static final ThreadPoolExecutor EXECUTOR;
+
+        static {
+            EXECUTOR = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), daemonThreads(BackgroundExecutor.class.getSimpleName()));
+            EXECUTOR.allowCoreThreadTimeOut(true);
+        }
+    }
+
+    private static class PublisherHolder {
+
+        static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), daemonThreads("Publisher"));
+    }
+}
@@ -0,0 +1,88 @@
+package com.hotan.ninetripleone.supply.util;
+
+/**
+ * Interfaces of demand driven streams, with the same methods and rules as
+ * the Reactive Streams interfaces of java.util.concurrent.Flow, which is not
+ * available on the Java version this application targets.
+ * <br>A {@link Publisher} only hands a {@link Subscriber} as many items as
+ * the subscriber requested through its {@link Subscription}, so a slow
+ * subscriber slows the publisher down instead of items piling up.
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+public final class Flow {
+
+    private Flow() {}
+
+    /**
+     * Producer of items for subscribers.
+     *
+     * @param <T> Type of the items
+     */
+    public interface Publisher<T> {
+
+        /**
+         * Adds the subscriber.  {@link Subscriber#onSubscribe(Subscription)}
+         * is called before any other method of the subscriber.
+         *
+         * @param subscriber Subscriber to hand items to
+         */
+        void subscribe(Subscriber<? super T> subscriber);
+    }
+
+    /**
+     * Receiver of the items of a publisher.
+     *
+     * @param <T> Type of the items
+     */
+    public interface Subscriber<T> {
+
+        /**
+         * Called first, no items are handed over until they are requested.
+         *
+         * @param subscription Subscription to request items with
+         */
+        void onSubscribe(Subscription subscription);
+
+        /**
+         * Called for every item requested.
+         *
+         * @param item Next item
+         */
+        void onNext(T item);
+
+        /**
+         * Called when the publisher failed, no other method is called afterwards.
+         *
+         * @param throwable Cause of the failure
+         */
+        void onError(Throwable throwable);
+
+        /**
+         * Called when the publisher has no more items, no other method is
+         * called afterwards.
+         */
+        void onComplete();
+    }
+
+    /**
+     * Link between a publisher and one subscriber.
+     */
+    public interface Subscription {
+
+        /**
+         * Adds to the number of items the subscriber is ready for.
+         * <br>A number below 1 fails the subscription with an
+         * IllegalArgumentException.
+         *
+         * @param n Number of items to add to the demand
+         */
+        void request(long n);
+
+        /**
+         * Stops handing items to the subscriber, which may still receive
+         * the item being handed over.
+         */
+        void cancel();
+    }
+}
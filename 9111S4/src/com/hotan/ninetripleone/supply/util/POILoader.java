@@ -4,6 +4,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
@@ -30,13 +31,29 @@ public class POILoader {
         if (name == null)
             throw new IllegalArgumentException("Illegal name of XLS to load: " + name);
 
-        // Creates an input stream for this 
-        File f = new File("res/data/" + name); 
-        if (!f.exists()) 
-            throw new FileNotFoundException("Unable to find: " + "res/data/" + name);
-
         // Attempt to construct the workbook via the input stream     
-        return new HSSFWorkbook(new FileInputStream(f));
+        return getXLSWorkbook(getDataFile(name));
+    }
+    
+    /**
+     * Loads the XLS file and closes it once the workbook is built.
+     * 
+     * @param f XLS file to load
+     * @return Workbook of the file
+     * @throws IOException Unable to read the file
+     */
+    public static HSSFWorkbook getXLSWorkbook(File f) throws IOException {
+        if (f == null)
+            throw new IllegalArgumentException("Illegal XLS file to load: " + f);
+        if (!f.exists()) 
+            throw new FileNotFoundException("Unable to find: " + f);
+        
+        InputStream in = new FileInputStream(f);
+        try {
+            return new HSSFWorkbook(in);
+        } finally {
+            in.close();
+        }
     }
     
     /**
@@ -52,13 +69,46 @@ public class POILoader {
         if (name == null)
             throw new IllegalArgumentException("Illegal name of XLSX to load: " + name);
 
-        // Creates an input stream for this 
+        // Attempt to construct the workbook via the input stream     
+        return getXLSXWorkbook(getDataFile(name));
+    }
+    
+    /**
+     * Loads the XLSX file and closes it once the workbook is built.
+     * 
+     * @param f XLSX file to load
+     * @return Workbook of the file
+     * @throws IOException Unable to read the file
+     */
+    public static XSSFWorkbook getXLSXWorkbook(File f) throws IOException {
+        if (f == null)
+            throw new IllegalArgumentException("Illegal XLSX file to load: " + f);
+        if (!f.exists()) 
+            throw new FileNotFoundException("Unable to find: " + f);
+        
+        InputStream in = new FileInputStream(f);
+        try {
+            return new XSSFWorkbook(in);
+        } finally {
+            in.close();
+        }
+    }
+    
+    /**
+     * Returns the file with the name in the data subdirectory of res.
+     * 
+     * @param name Name of the file
+     * @return Existing file
+     * @throws FileNotFoundException The file does not exist
+     */
+    public static File getDataFile(String name) throws FileNotFoundException {
+        if (name == null)
+            throw new IllegalArgumentException("Illegal name of data file: " + name);
+        
         File f = new File("res/data/" + name); 
         if (!f.exists()) 
             throw new FileNotFoundException("Unable to find: " + "res/data/" + name);
-
-        // Attempt to construct the workbook via the input stream     
-        return new XSSFWorkbook(new FileInputStream(f));
+        return f;
     }
     
 }
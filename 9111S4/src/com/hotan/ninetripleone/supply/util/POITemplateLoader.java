@@ -58,16 +58,28 @@ public class POITemplateLoader {
 
     private static HSSFWorkbook getKnownXLSWorkbook(String name) {
         try {
-            return getXLSWorkbook(name);
+            return TemplateRegistry.getShared().newWorkbook(name);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
     
+    /**
+     * Returns a new copy of the cover page template from the shared 
+     * {@link TemplateRegistry}, the template is only read once.
+     * 
+     * @return New cover page workbook
+     */
     public static HSSFWorkbook getXLSCoverPage() {
         return getKnownXLSWorkbook("end_item_coverpage.xls");
     }
     
+    /**
+     * Returns a new copy of the DA 2404 template from the shared 
+     * {@link TemplateRegistry}, the template is only read once.
+     * 
+     * @return New DA 2404 workbook
+     */
     public static HSSFWorkbook getXLS2404() {
         return getKnownXLSWorkbook("DA_2404.xls");
     }
@@ -1,7 +1,7 @@
 package com.hotan.ninetripleone.supply.util;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.poi.hssf.usermodel.HSSFCell;
 import org.apache.poi.hssf.usermodel.HSSFRow;
@@ -29,7 +29,11 @@ public class POIUtil {
         
         public final int row, col;
         
-        private static Set<IndexPair> mCache;
+        /**
+         * Canonical index pairs, shared by the threads parsing hand receipts.
+         */
+        private static final ConcurrentMap<IndexPair, IndexPair> CACHE = 
+                new ConcurrentHashMap<IndexPair, IndexPair>();
         
         private IndexPair(int row, int col) {
             this.row = row;
@@ -44,18 +48,9 @@ public class POIUtil {
          * @return  Index pair with the same row and col.
          */
         public static IndexPair valueOf(int row, int col) {
-            if (mCache == null) 
-                mCache = new HashSet<POIUtil.IndexPair>();
-            
             IndexPair newPair = new IndexPair(row, col);
-            for (IndexPair pair : mCache) {
-                if (pair.equals(newPair)) {
-                    return pair;
-                }
-            }
-            // Add the new value to the cache.
-            mCache.add(newPair);
-            return newPair;
+            IndexPair pair = CACHE.putIfAbsent(newPair, newPair);
+            return pair == null ? newPair : pair;
         }
         
         /**
@@ -114,7 +109,7 @@ public class POIUtil {
         
         @Override
         public int hashCode() {
-            return row + 7 * col;
+            return 31 * row + col;
         }
         
         @Override
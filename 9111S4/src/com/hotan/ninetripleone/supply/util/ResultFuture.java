@@ -0,0 +1,305 @@
+package com.hotan.ninetripleone.supply.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Future that can be completed, waited on and chained, with the subset of
+ * the methods of java.util.concurrent.CompletableFuture this application
+ * needs, which is not available on the Java version it targets.
+ * <br>Callbacks run on the thread that completes the future, or right
+ * away on the calling thread if it is already complete.  Cancelling a
+ * future of {@link #supplyAsync(Callable, Executor)} interrupts its task
+ * if it is running, and keeps it from running if it has not started.
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ * @param <T> Type of the result
+ */
+public class ResultFuture<T> implements Future<T> {
+
+    /**
+     * Receives the outcome of a future.
+     *
+     * @param <T> Type of the result
+     */
+    public interface Callback<T> {
+
+        /**
+         * Called once the future is complete.
+         *
+         * @param result Result of the future, null if it failed
+         * @param error Cause of the failure, a CancellationException if the
+         *          future was cancelled, null if it succeeded
+         */
+        void onComplete(T result, Throwable error);
+    }
+
+    /**
+     * Combines the results of two futures.
+     *
+     * @param <A> Type of the first result
+     * @param <B> Type of the second result
+     * @param <R> Type of the combined result
+     */
+    public interface Combiner<A, B, R> {
+
+        R combine(A first, B second) throws Exception;
+    }
+
+    private enum State { PENDING, SUCCEEDED, FAILED, CANCELLED }
+
+    private State mState = State.PENDING;
+
+    private T mResult;
+
+    private Throwable mError;
+
+    /**
+     * Callbacks waiting for completion, null once complete.
+     */
+    private List<Callback<? super T>> mCallbacks = new ArrayList<Callback<? super T>>();
+
+    /**
+     * Thread running the task of the future, null if it is not running.
+     */
+    private Thread mRunner;
+
+    /**
+     * Runs the task on the executor.
+     *
+     * @param task Task computing the result
+     * @param executor Executor to run the task on
+     * @return Future of the result of the task
+     */
+    public static <T> ResultFuture<T> supplyAsync(final Callable<T> task, Executor executor) {
+        if (task == null)
+            throw new NullPointerException(ResultFuture.class.getSimpleName() + ".supplyAsync() Null task");
+        if (executor == null)
+            throw new NullPointerException(ResultFuture.class.getSimpleName() + ".supplyAsync() Null executor");
+        final ResultFuture<T> future = new ResultFuture<T>();
+        try {
+            executor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    future.run(task);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private void run(Callable<T> task) {
+        synchronized (this) {
+            if (mState != State.PENDING) return;
+            mRunner = Thread.currentThread();
+        }
+        try {
+            complete(task.call());
+        } catch (Throwable t) {
+            completeExceptionally(t);
+        } finally {
+            boolean cancelled;
+            synchronized (this) {
+                mRunner = null;
+                cancelled = mState == State.CANCELLED;
+            }
+            // Clear the interrupt of the cancellation before the thread is reused
+            if (cancelled) Thread.interrupted();
+        }
+    }
+
+    /**
+     * Completes the future with the result if it is not complete.
+     *
+     * @param result Result of the future
+     * @return Whether the future was completed by this call
+     */
+    public boolean complete(T result) {
+        return finish(State.SUCCEEDED, result, null);
+    }
+
+    /**
+     * Fails the future if it is not complete.
+     *
+     * @param error Cause of the failure
+     * @return Whether the future was completed by this call
+     */
+    public boolean completeExceptionally(Throwable error) {
+        if (error == null)
+            throw new NullPointerException(getClass().getSimpleName() + ".completeExceptionally() Null error");
+        return finish(State.FAILED, null, error);
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return finish(State.CANCELLED, null, new CancellationException(), mayInterruptIfRunning);
+    }
+
+    private boolean finish(State state, T result, Throwable error) {
+        return finish(state, result, error, false);
+    }
+
+    private boolean finish(State state, T result, Throwable error, boolean interrupt) {
+        List<Callback<? super T>> callbacks;
+        synchronized (this) {
+            if (mState != State.PENDING) return false;
+            mState = state;
+            mResult = result;
+            mError = error;
+            callbacks = mCallbacks;
+            mCallbacks = null;
+            if (interrupt && mRunner != null) mRunner.interrupt();
+            notifyAll();
+        }
+        for (Callback<? super T> callback: callbacks) {
+            callback.onComplete(result, error);
+        }
+        return true;
+    }
+
+    /**
+     * Calls the callback once the future is complete.
+     *
+     * @param callback Callback to call, right away if the future is complete
+     * @return This future
+     */
+    public ResultFuture<T> whenComplete(Callback<? super T> callback) {
+        if (callback == null)
+            throw new NullPointerException(getClass().getSimpleName() + ".whenComplete() Null callback");
+        synchronized (this) {
+            if (mState == State.PENDING) {
+                mCallbacks.add(callback);
+                return this;
+            }
+        }
+        callback.onComplete(mResult, mError);
+        return this;
+    }
+
+    /**
+     * Combines the results of this and the other future on the executor as
+     * soon as both succeed.
+     * <br>The combined future fails as soon as either future fails.  When
+     * the combined future fails or is cancelled, this and the other future
+     * are cancelled if they are not complete.
+     *
+     * @param other Other future
+     * @param combiner Combiner of the results
+     * @param executor Executor to combine the results on
+     * @return Future of the combined result
+     */
+    public <U, R> ResultFuture<R> thenCombine(final ResultFuture<U> other,
+            final Combiner<? super T, ? super U, R> combiner, final Executor executor) {
+        if (other == null || combiner == null || executor == null)
+            throw new NullPointerException(getClass().getSimpleName() + ".thenCombine() Null argument");
+
+        final ResultFuture<R> combined = new ResultFuture<R>();
+        final AtomicInteger remaining = new AtomicInteger(2);
+        Callback<Object> join = new Callback<Object>() {
+
+            @Override
+            public void onComplete(Object result, Throwable error) {
+                if (error != null) {
+                    combined.completeExceptionally(error);
+                } else if (remaining.decrementAndGet() == 0) {
+                    try {
+                        executor.execute(new Runnable() {
+
+                            @Override
+                            public void run() {
+                                combined.run(new Callable<R>() {
+
+                                    @Override
+                                    public R call() throws Exception {
+                                        return combiner.combine(mResult, other.mResult);
+                                    }
+                                });
+                            }
+                        });
+                    } catch (RejectedExecutionException e) {
+                        combined.completeExceptionally(e);
+                    }
+                }
+            }
+        };
+        whenComplete(join);
+        other.whenComplete(join);
+        combined.whenComplete(new Callback<R>() {
+
+            @Override
+            public void onComplete(R result, Throwable error) {
+                if (error == null) return;
+                cancel(true);
+                other.cancel(true);
+            }
+        });
+        return combined;
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return mState == State.CANCELLED;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return mState != State.PENDING;
+    }
+
+    /**
+     * @return Whether the future failed or was cancelled
+     */
+    public synchronized boolean isCompletedExceptionally() {
+        return mState == State.FAILED || mState == State.CANCELLED;
+    }
+
+    @Override
+    public synchronized T get() throws InterruptedException, ExecutionException {
+        while (mState == State.PENDING) {
+            wait();
+        }
+        return report();
+    }
+
+    @Override
+    public synchronized T get(long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (mState == State.PENDING) {
+            long left = deadline - System.nanoTime();
+            if (left <= 0)
+                throw new TimeoutException(getClass().getSimpleName() + " not complete after " + timeout + " " + unit);
+            TimeUnit.NANOSECONDS.timedWait(this, left);
+        }
+        return report();
+    }
+
+    private T report() throws ExecutionException {
+        switch (mState) {
+        case SUCCEEDED:
+            return mResult;
+        case CANCELLED:
+            throw new CancellationException();
+        default:
+            throw new ExecutionException(mError);
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return getClass().getSimpleName() + " " + mState
+                + (mState == State.FAILED ? " " + mError : "");
+    }
+}
@@ -0,0 +1,151 @@
+package com.hotan.ninetripleone.supply.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.logging.Logger;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.poifs.filesystem.NPOIFSFileSystem;
+import org.apache.poi.util.IOUtils;
+
+/**
+ * Hands out fresh copies of the XLS templates on the classpath.
+ * <br>The bytes of every template are read from the classpath once and
+ * shared by all threads.  Copies are built from a pool of prototypes of
+ * each template, the parsed file systems of its bytes.  A thread takes a
+ * prototype out of the pool, so no prototype is used by two threads at once,
+ * and returns it once its copy is built.  The pool keeps at most
+ * {@link #MAX_PROTOTYPES} prototypes of a template, more threads copying at
+ * once parse their own.
+ * <br>POI has no way to copy a workbook without decoding its records, so
+ * every copy still decodes the records of the template.
+ * <br>Every copy is an independent workbook that may be changed freely.
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+public class TemplateRegistry {
+
+    private static final Logger LOG = Logger.getLogger(TemplateRegistry.class.getSimpleName());
+
+    private static final TemplateRegistry SHARED = new TemplateRegistry("/templates/");
+
+    /**
+     * Classpath directory of the templates.
+     */
+    private final String mRoot;
+
+    /**
+     * Maximum number of prototypes kept of every template.
+     */
+    public static final int MAX_PROTOTYPES = BackgroundExecutor.MAX_THREADS;
+
+    private final ConcurrentMap<String, byte[]> mBytes = new ConcurrentHashMap<String, byte[]>();
+
+    /**
+     * Prototypes of the templates by name, that no thread is using.
+     */
+    private final ConcurrentMap<String, BlockingQueue<NPOIFSFileSystem>> mPrototypes =
+            new ConcurrentHashMap<String, BlockingQueue<NPOIFSFileSystem>>();
+
+    /**
+     * @param root Classpath directory of the templates, ending with '/'
+     */
+    public TemplateRegistry(String root) {
+        if (root == null || !root.endsWith("/"))
+            throw new IllegalArgumentException(getClass().getSimpleName() + "() Illegal root " + root);
+        mRoot = root;
+    }
+
+    /**
+     * @return Registry of the templates in res/templates
+     */
+    public static TemplateRegistry getShared() {
+        return SHARED;
+    }
+
+    /**
+     * Returns a new copy of the XLS template.
+     *
+     * @param name Name of the template, suffixed with xls
+     * @return New workbook of the template
+     * @throws IOException Unable to read the template
+     */
+    public HSSFWorkbook newWorkbook(String name) throws IOException {
+        if (name == null || !name.endsWith(".xls"))
+            throw new IllegalArgumentException("Illegal name of template to load: " + name);
+
+        BlockingQueue<NPOIFSFileSystem> pool = getPool(name);
+        NPOIFSFileSystem prototype = pool.poll();
+        if (prototype == null) 
+            prototype = new NPOIFSFileSystem(new ByteArrayInputStream(getBytes(name)));
+        HSSFWorkbook copy = new HSSFWorkbook(prototype.getRoot(), false);
+        // Dropped if the pool is already full
+        pool.offer(prototype);
+        return copy;
+    }
+
+    /**
+     * @param name Name of the template
+     * @return Pool of the unused prototypes of the template
+     */
+    private BlockingQueue<NPOIFSFileSystem> getPool(String name) {
+        BlockingQueue<NPOIFSFileSystem> pool = mPrototypes.get(name);
+        if (pool != null) return pool;
+        pool = new LinkedBlockingQueue<NPOIFSFileSystem>(MAX_PROTOTYPES);
+        BlockingQueue<NPOIFSFileSystem> existing = mPrototypes.putIfAbsent(name, pool);
+        return existing == null ? pool : existing;
+    }
+
+    /**
+     * @param name Name of the template
+     * @return Number of unused prototypes of the template
+     */
+    public int getPrototypes(String name) {
+        BlockingQueue<NPOIFSFileSystem> pool = mPrototypes.get(name);
+        return pool == null ? 0 : pool.size();
+    }
+
+    /**
+     * Returns the bytes of the template, reading them the first time.
+     *
+     * @param name Name of the template
+     * @return Bytes of the template, not to be changed
+     * @throws IOException Unable to read the template
+     */
+    private byte[] getBytes(String name) throws IOException {
+        byte[] bytes = mBytes.get(name);
+        if (bytes != null) return bytes;
+
+        InputStream in = TemplateRegistry.class.getResourceAsStream(mRoot + name);
+        if (in == null)
+            throw new FileNotFoundException("Unable to find template: " + mRoot + name);
+        try {
+            bytes = IOUtils.toByteArray(in);
+        } finally {
+            in.close();
+        }
+        byte[] existing = mBytes.putIfAbsent(name, bytes);
+        if (existing != null) return existing;
+        LOG.info("Read template " + name + ", " + bytes.length + " bytes");
+        return bytes;
+    }
+
+    /**
+     * @param name Name of the template
+     * @return Whether the bytes of the template have been read
+     */
+    public boolean isLoaded(String name) {
+        return mBytes.containsKey(name);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + " " + mRoot + " " + mBytes.keySet();
+    }
+}
@@ -0,0 +1,54 @@
+package com.hotan.ninetripleone.supply.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+
+/**
+ * Reference to the XLS file a form was parsed from.
+ * <br>The workbook is only loaded when it is asked for and is held softly,
+ * so the garbage collector can drop it again when memory runs low.
+ *
+ * @author Michael Hotan, michael.hotan@gmail.com
+ */
+public class WorkbookSource {
+
+    private final File mFile;
+
+    private SoftReference<HSSFWorkbook> mWorkbook;
+
+    /**
+     * @param file XLS file to reopen on demand
+     */
+    public WorkbookSource(File file) {
+        if (file == null)
+            throw new NullPointerException(getClass().getSimpleName() + "() Null file");
+        mFile = file;
+    }
+
+    public File getFile() {
+        return mFile;
+    }
+
+    /**
+     * Returns the workbook of the file, reopening the file if it is not loaded.
+     *
+     * @return Workbook of the file
+     * @throws IOException Unable to read the file
+     */
+    public synchronized HSSFWorkbook getWorkbook() throws IOException {
+        HSSFWorkbook wb = mWorkbook == null ? null : mWorkbook.get();
+        if (wb == null) {
+            wb = POILoader.getXLSWorkbook(mFile);
+            mWorkbook = new SoftReference<HSSFWorkbook>(wb);
+        }
+        return wb;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + " " + mFile;
+    }
+}
@@ -5,7 +5,18 @@ import org.junit.runners.Suite.SuiteClasses;
 
 @RunWith(Suite.class)
 @SuiteClasses({ ComponentHRTest.class, CoverPageTest.class, EndItemTest.class,
-        TemplateLoaderTest.class, UnitHRTest.class, PropertyBookTest.class })
+        TemplateLoaderTest.class, UnitHRTest.class, PropertyBookTest.class,
+        UnitHREventTest.class, GroupIndexTest.class,
+        DetachedReceiptTest.class, XLSXReceiptTest.class,
+        PropertyBookLoaderTest.class, PropertyBookUpdateTest.class,
+        SerialNumberSetTest.class, UnitHRLayoutTest.class,
+        FormSnifferTest.class, ComponentTableScannerTest.class,
+        ComponentHREventTest.class,
+        ComponentSheetCacheTest.class, ComponentCatalogTest.class,
+        ReceiptPublisherTest.class, LazyComponentsTest.class,
+        IngestPolicyTest.class, TemplateRegistryTest.class, POILoaderTest.class,
+        AsyncLoaderTest.class, SpreadsheetReaderTest.class, ReceiptCacheTest.class,
+        BackgroundExecutorTest.class })
 public class AllTests {
 
 }
@@ -0,0 +1,239 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.hotan.ninetripleone.supply.forms.ComponentHandReceipt;
+import com.hotan.ninetripleone.supply.forms.UnitLevelHandReceipt;
+import com.hotan.ninetripleone.supply.model.AsyncLoader;
+import com.hotan.ninetripleone.supply.model.EndItem;
+import com.hotan.ninetripleone.supply.model.PropertyBook;
+import com.hotan.ninetripleone.supply.util.BackgroundExecutor;
+import com.hotan.ninetripleone.supply.util.Flow;
+import com.hotan.ninetripleone.supply.util.POILoader;
+import com.hotan.ninetripleone.supply.util.ResultFuture;
+
+
+public class AsyncLoaderTest {
+
+    @Test
+    public void testPropertyBook() throws Exception {
+        PropertyBook expected = new PropertyBook(
+                new UnitLevelHandReceipt(POILoader.getXLSWorkbook("9111_UNIT_HR.xls")),
+                new ComponentHandReceipt(POILoader.getXLSWorkbook("ComponentHandReceipt.xls")));
+
+        final AtomicReference<PropertyBook> notified = new AtomicReference<PropertyBook>();
+        final CountDownLatch done = new CountDownLatch(1);
+        AsyncLoader loader = new AsyncLoader();
+        assertSame("Shared pool not used", BackgroundExecutor.getShared(), loader.getExecutor());
+        ResultFuture<PropertyBook> future = loader.loadPropertyBook(
+                POILoader.getDataFile("9111_UNIT_HR.xls"), POILoader.getDataFile("ComponentHandReceipt.xls"));
+        future.whenComplete(new ResultFuture.Callback<PropertyBook>() {
+
+            @Override
+            public void onComplete(PropertyBook result, Throwable error) {
+                notified.set(result);
+                done.countDown();
+            }
+        });
+        PropertyBook book = future.get(30, TimeUnit.SECONDS);
+        assertTrue("Callback not called", done.await(5, TimeUnit.SECONDS));
+        assertEquals("Callback given another PropertyBook", book, notified.get());
+        assertEquals("Incorrect number of groups", expected.size(), book.size());
+        assertEquals("Incorrect groups", expected.getGroups(), book.getGroups());
+    }
+
+    @Test
+    public void testIdleSubscribers() throws Exception {
+        // Publishers whose subscribers never request an item
+        final List<Flow.Subscription> subscriptions = new ArrayList<Flow.Subscription>();
+        for (int i = 0; i < BackgroundExecutor.MAX_THREADS; ++i) {
+            ComponentHandReceipt.publisher(POILoader.getDataFile("ComponentHandReceipt.xls")).subscribe(
+                    new Flow.Subscriber<EndItem>() {
+
+                @Override
+                public void onSubscribe(Flow.Subscription subscription) {
+                    synchronized (subscriptions) {
+                        subscriptions.add(subscription);
+                    }
+                }
+
+                @Override
+                public void onNext(EndItem item) {}
+
+                @Override
+                public void onError(Throwable throwable) {}
+
+                @Override
+                public void onComplete() {}
+            });
+        }
+        try {
+            PropertyBook book = new AsyncLoader().loadPropertyBook(
+                    POILoader.getDataFile("9111_UNIT_HR.xls"), POILoader.getDataFile("ComponentHandReceipt.xls"))
+                    .get(30, TimeUnit.SECONDS);
+            assertEquals("Incorrect number of groups", 49, book.size());
+        } finally {
+            synchronized (subscriptions) {
+                for (Flow.Subscription subscription: subscriptions) {
+                    subscription.cancel();
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testReceiptsOverlap() throws Exception {
+        // Neither parse starts until both were handed to the executor
+        final CyclicBarrier bothStarted = new CyclicBarrier(2);
+        final ExecutorService pool = Executors.newFixedThreadPool(3);
+        try {
+            Executor executor = new Executor() {
+
+                private int mTasks;
+
+                @Override
+                public synchronized void execute(final Runnable command) {
+                    final boolean parse = mTasks++ < 2;
+                    pool.execute(new Runnable() {
+
+                        @Override
+                        public void run() {
+                            try {
+                                if (parse) bothStarted.await(10, TimeUnit.SECONDS);
+                            } catch (Exception e) {
+                                throw new IllegalStateException("Receipts not read at the same time", e);
+                            }
+                            command.run();
+                        }
+                    });
+                }
+            };
+            PropertyBook book = new AsyncLoader(executor).loadPropertyBook(
+                    POILoader.getDataFile("9111_UNIT_HR.xls"), POILoader.getDataFile("ComponentHandReceipt.xls"))
+                    .get(30, TimeUnit.SECONDS);
+            assertEquals("Incorrect number of groups", 49, book.size());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCancelBeforeStart() throws Exception {
+        final List<Runnable> queued = new ArrayList<Runnable>();
+        Executor executor = new Executor() {
+
+            @Override
+            public void execute(Runnable command) {
+                queued.add(command);
+            }
+        };
+        AsyncLoader loader = new AsyncLoader(executor);
+        ResultFuture<UnitLevelHandReceipt> unit = loader.loadUnit(POILoader.getDataFile("9111_UNIT_HR.xls"));
+        ResultFuture<ComponentHandReceipt> comp = loader.loadComponent(
+                POILoader.getDataFile("ComponentHandReceipt.xls"));
+        ResultFuture<PropertyBook> book = unit.thenCombine(comp,
+                new ResultFuture.Combiner<UnitLevelHandReceipt, ComponentHandReceipt, PropertyBook>() {
+
+            @Override
+            public PropertyBook combine(UnitLevelHandReceipt unitHR, ComponentHandReceipt compHR) {
+                return new PropertyBook(unitHR, compHR);
+            }
+        }, executor);
+
+        assertTrue("Not cancelled", book.cancel(true));
+        assertTrue("Unit hand receipt not cancelled", unit.isCancelled());
+        assertTrue("Component hand receipt not cancelled", comp.isCancelled());
+        for (Runnable command: queued) {
+            command.run();
+        }
+        assertEquals("PropertyBook built after cancel", 2, queued.size());
+        assertNull("Unit hand receipt parsed after cancel", result(unit));
+        try {
+            book.get();
+            fail("Cancelled PropertyBook returned");
+        } catch (CancellationException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testCancelRunning() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            ResultFuture<String> future = ResultFuture.supplyAsync(new Callable<String>() {
+
+                @Override
+                public String call() throws Exception {
+                    started.countDown();
+                    try {
+                        Thread.sleep(30000);
+                    } catch (InterruptedException e) {
+                        interrupted.countDown();
+                        throw e;
+                    }
+                    return "Not cancelled";
+                }
+            }, pool);
+            assertTrue("Task not started", started.await(10, TimeUnit.SECONDS));
+            assertTrue("Not cancelled", future.cancel(true));
+            assertTrue("Running task not interrupted", interrupted.await(10, TimeUnit.SECONDS));
+            assertTrue("Not cancelled", future.isCancelled());
+            assertFalse("Cancelled twice", future.cancel(true));
+
+            // The interrupt does not leak into the next task of the thread
+            assertFalse("Thread left interrupted", ResultFuture.supplyAsync(new Callable<Boolean>() {
+
+                @Override
+                public Boolean call() {
+                    return Thread.currentThread().isInterrupted();
+                }
+            }, pool).get(10, TimeUnit.SECONDS));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        ResultFuture<PropertyBook> book = new AsyncLoader().loadPropertyBook(
+                new File("res/data/missing.xls"), POILoader.getDataFile("ComponentHandReceipt.xls"));
+        try {
+            book.get(30, TimeUnit.SECONDS);
+            fail("PropertyBook without a Unit hand receipt");
+        } catch (ExecutionException e) {
+            assertTrue("Incorrect cause " + e.getCause(), e.getCause() instanceof FileNotFoundException);
+        }
+        assertTrue("Not failed", book.isCompletedExceptionally());
+        assertFalse("Failure reported as cancel", book.isCancelled());
+    }
+
+    private static <T> T result(ResultFuture<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException | ExecutionException | CancellationException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.hotan.ninetripleone.supply.util.BackgroundExecutor;
+
+
+public class BackgroundExecutorTest {
+
+    @Test
+    public void testBounded() throws InterruptedException {
+        Executor executor = BackgroundExecutor.getShared();
+        assertSame("Pool not shared", executor, BackgroundExecutor.getShared());
+
+        int tasks = BackgroundExecutor.MAX_THREADS + 3;
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(tasks);
+        final AtomicInteger running = new AtomicInteger(), maxRunning = new AtomicInteger();
+        final AtomicInteger daemons = new AtomicInteger();
+        for (int i = 0; i < tasks; ++i) {
+            executor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    int now = running.incrementAndGet();
+                    synchronized (maxRunning) {
+                        if (now > maxRunning.get()) maxRunning.set(now);
+                    }
+                    if (Thread.currentThread().isDaemon()) daemons.incrementAndGet();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    running.decrementAndGet();
+                    done.countDown();
+                }
+            });
+        }
+        Thread.sleep(200);
+        assertEquals("Incorrect running tasks", BackgroundExecutor.MAX_THREADS, running.get());
+        release.countDown();
+        assertTrue("Queued tasks never ran", done.await(10, TimeUnit.SECONDS));
+        assertEquals("Pool not bounded", BackgroundExecutor.MAX_THREADS, maxRunning.get());
+        assertEquals("Non daemon threads", tasks, daemons.get());
+    }
+}
@@ -0,0 +1,116 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.hotan.ninetripleone.supply.forms.ComponentHandReceipt;
+import com.hotan.ninetripleone.supply.model.AccountableComponent;
+import com.hotan.ninetripleone.supply.model.EndItem;
+import com.hotan.ninetripleone.supply.model.EndItemComponent;
+import com.hotan.ninetripleone.supply.model.EndItemGroup;
+import com.hotan.ninetripleone.supply.util.FormatException;
+import com.hotan.ninetripleone.supply.util.POILoader;
+
+
+public class ComponentCatalogTest {
+
+    private static ComponentHandReceipt mSample, mCopies;
+
+    @BeforeClass
+    public static void setupClass() throws IOException, FormatException {
+        mSample = new ComponentHandReceipt(POILoader.getXLSWorkbook("ComponentHandReceipt.xls"));
+        mCopies = new ComponentHandReceipt(HandReceiptFixtures.copyComponentSheets(
+                POILoader.getXLSWorkbook("ComponentHandReceipt.xls"), 6));
+    }
+
+    @Test
+    public void testOneCopyPerNSN() {
+        int components = 0;
+        for (EndItemGroup group: mCopies.getGroups()) {
+            for (EndItem item: group.getItems()) {
+                components += item.getCOEI().size() + item.getBII().size();
+            }
+        }
+        System.out.println(getClass().getSimpleName() + " components of items: " + components
+                + ", stored: " + mCopies.getCatalog().getComponentCount());
+        assertEquals("Incorrect number of NSNs", mSample.getCatalog().size(), mCopies.getCatalog().size());
+        assertEquals("Components stored per copy", mSample.getCatalog().getComponentCount(),
+                mCopies.getCatalog().getComponentCount());
+        assertTrue("No components shared", components > 6 * mCopies.getCatalog().getComponentCount());
+    }
+
+    @Test
+    public void testOnHandPerItem() {
+        EndItemGroup group = findSharedGroup(mCopies);
+        assertNotNull("No group with COEI", group);
+        EndItem item = group.getItems().get(0);
+        EndItem other = group.getItems().get(1);
+
+        item.getCOEI().get(0).setOnHandQty(3);
+        assertEquals("On hand quantity lost", 3, item.getCOEI().get(0).getOnHandQty());
+        assertEquals("On hand quantity shared", 0, other.getCOEI().get(0).getOnHandQty());
+
+        other.getCOEI().get(0).onHandQtyProperty().set(5);
+        assertEquals("Property not written through", 5, other.getCOEI().get(0).getOnHandQty());
+        assertEquals("On hand quantity shared", 3, item.getCOEI().get(0).getOnHandQty());
+    }
+
+    @Test
+    public void testChangeSharedList() {
+        EndItemGroup group = findSharedGroup(mCopies);
+        EndItem item = group.getItems().get(2);
+        EndItem other = group.getItems().get(3);
+        int size = other.getCOEI().size();
+
+        EndItemComponent added = new EndItemComponent("NEW COEI", "7010000000000", 1);
+        added.setOnHandQty(1);
+        item.addCOEI(added);
+        assertEquals("COEI not added", size + 1, item.getCOEI().size());
+        assertEquals("On hand quantity of added COEI lost", 1, item.getCOEI().get(size).getOnHandQty());
+        assertEquals("Shared list changed", size, other.getCOEI().size());
+
+        AccountableComponent first = item.getCOEI().get(0);
+        item.removeCOEI(item.getCOEI().get(0));
+        assertEquals("COEI not removed", size, item.getCOEI().size());
+        assertEquals("Shared list changed", first, other.getCOEI().get(0));
+        assertEquals("On hand quantity moved", 1, item.getCOEI().get(size - 1).getOnHandQty());
+    }
+
+    @Test
+    public void testViewsOfItem() {
+        EndItem item = new EndItem("ITEM", "L00000", "1000000000000");
+        EndItemComponent first = new EndItemComponent("FIRST", "7010000000001", 1);
+        EndItemComponent second = new EndItemComponent("SECOND", "7010000000002", 2);
+        item.addCOEI(first);
+        item.addCOEI(second);
+        assertSame("Added COEI not kept", first, item.getCOEI().get(0));
+        assertSame("Views differ between calls", item.getCOEI().get(1), item.getCOEI().get(1));
+
+        first.onHandQtyProperty().set(4);
+        assertEquals("Added COEI not written through", 4, item.getCOEI().get(0).getOnHandQty());
+
+        EndItemComponent view = item.getCOEI().get(1);
+        view.onHandQtyProperty();
+        item.getCOEI().get(1).setOnHandQty(5);
+        assertEquals("Views of a COEI disagree", 5, view.getOnHandQty());
+
+        item.removeCOEI(first);
+        view.setOnHandQty(6);
+        assertEquals("View not re-indexed", 6, item.getCOEI().get(0).getOnHandQty());
+        assertEquals("Removed COEI lost its quantity", 4, first.getOnHandQty());
+        first.setOnHandQty(7);
+        assertEquals("Removed COEI still written through", 6, item.getCOEI().get(0).getOnHandQty());
+    }
+
+    private static EndItemGroup findSharedGroup(ComponentHandReceipt hr) {
+        for (EndItemGroup group: hr.getGroups()) {
+            if (group.size() >= 4 && !group.getItems().get(0).getCOEI().isEmpty()) return group;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,150 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.hotan.ninetripleone.supply.forms.ComponentHandReceipt;
+import com.hotan.ninetripleone.supply.forms.ComponentHandReceipt.EndItemCallback;
+import com.hotan.ninetripleone.supply.model.EndItem;
+import com.hotan.ninetripleone.supply.model.EndItemGroup;
+import com.hotan.ninetripleone.supply.util.FormatException;
+import com.hotan.ninetripleone.supply.util.POILoader;
+
+
+public class ComponentHREventTest {
+
+    private static final int NUM_SHEETS = 53;
+
+    private static File mScaleFile;
+
+    @BeforeClass
+    public static void setupClass() throws IOException {
+        mScaleFile = HandReceiptFixtures.write(HandReceiptFixtures.copyComponentSheets(
+                POILoader.getXLSWorkbook("ComponentHandReceipt.xls"), 6),
+                ComponentHREventTest.class, "scale_comp_hr.xls");
+    }
+
+    @Test
+    public void testStreamSample() throws IOException, FormatException {
+        HSSFWorkbook wb = POILoader.getXLSWorkbook("ComponentHandReceipt.xls");
+        ComponentHandReceipt expected = new ComponentHandReceipt(wb);
+
+        final List<EndItem> items = new ArrayList<EndItem>();
+        final List<Integer> indices = new ArrayList<Integer>();
+        int sheets = ComponentHandReceipt.stream(POILoader.getDataFile("ComponentHandReceipt.xls"),
+                new EndItemCallback() {
+
+            @Override
+            public boolean onEndItem(EndItem item, int sheetIndex) {
+                items.add(item);
+                indices.add(sheetIndex);
+                return true;
+            }
+        });
+        assertEquals("Incorrect number of sheets", NUM_SHEETS, sheets);
+        assertEquals("Incorrect number of items", NUM_SHEETS, items.size());
+        for (int i = 0; i < items.size(); ++i) {
+            EndItem item = items.get(i);
+            assertEquals("Incorrect sheet order", i, (int) indices.get(i));
+            EndItem other = findBySheet(expected, item, wb.getSheetName(i));
+            assertNotNull("No usermodel item of sheet " + i + " like " + item, other);
+            assertEquals("Incorrect COEI for " + item, other.getCOEI().size(), item.getCOEI().size());
+            assertEquals("Incorrect BII for " + item, other.getBII().size(), item.getBII().size());
+        }
+    }
+
+    @Test
+    public void testStopStream() throws IOException, FormatException {
+        final List<EndItem> items = new ArrayList<EndItem>();
+        int sheets = ComponentHandReceipt.stream(mScaleFile, new EndItemCallback() {
+
+            @Override
+            public boolean onEndItem(EndItem item, int sheetIndex) {
+                items.add(item);
+                return sheetIndex < 4;
+            }
+        });
+        assertEquals("Read past the stop", 5, sheets);
+        assertEquals("Incorrect number of items", 5, items.size());
+    }
+
+    @Test
+    public void testEventsMatchUsermodel() throws IOException, FormatException {
+        ComponentHandReceipt expected = parseUsermodel(mScaleFile);
+        ComponentHandReceipt actual = parseEvents(mScaleFile);
+        assertEquals("Incorrect UIC", expected.getUIC(), actual.getUIC());
+        assertEquals("Incorrect team", expected.getTeam(), actual.getTeam());
+        assertEquals("Incorrect to operator", expected.getWhoTo(), actual.getWhoTo());
+        assertEquals("Incorrect groups", expected.getGroups(), actual.getGroups());
+        for (int g = 0; g < expected.getGroups().size(); ++g) {
+            EndItemGroup group = expected.getGroups().get(g);
+            List<EndItem> items = group.getItems();
+            List<EndItem> otherItems = actual.getGroups().get(g).getItems();
+            assertEquals("Incorrect number of items for " + group, items.size(), otherItems.size());
+            for (int i = 0; i < items.size(); ++i) {
+                assertEquals("Incorrect item for " + group, items.get(i).getSn(), otherItems.get(i).getSn());
+                assertEquals("Incorrect COEI for " + group, items.get(i).getCOEI().size(),
+                        otherItems.get(i).getCOEI().size());
+                assertEquals("Incorrect BII for " + group, items.get(i).getBII().size(),
+                        otherItems.get(i).getBII().size());
+            }
+        }
+    }
+
+    @Test
+    public void testStreamHeap() throws Exception {
+        long workbookRetained = HandReceiptFixtures.retainedHeap(new Callable<HSSFWorkbook>() {
+            @Override
+            public HSSFWorkbook call() throws Exception {
+                return POILoader.getXLSWorkbook(mScaleFile);
+            }
+        });
+
+        // Measure what is reachable halfway through the stream
+        final long before = HandReceiptFixtures.usedHeapAfterGC();
+        final long[] streamLive = new long[1];
+        int sheets = ComponentHandReceipt.stream(mScaleFile, new EndItemCallback() {
+
+            @Override
+            public boolean onEndItem(EndItem item, int sheetIndex) {
+                if (sheetIndex == 200) streamLive[0] = HandReceiptFixtures.usedHeapAfterGC() - before;
+                return true;
+            }
+        });
+        System.out.println(getClass().getSimpleName() + " heap for " + sheets + " sheets, workbook retained: "
+                + workbookRetained + ", stream live: " + streamLive[0]);
+        assertTrue("Stream live heap " + streamLive[0] + " not below workbook " + workbookRetained,
+                streamLive[0] < workbookRetained);
+    }
+
+    private static EndItem findBySheet(ComponentHandReceipt hr, EndItem item, String sheetName) {
+        for (EndItem other: hr.getGroup(item.getNSN(), item.getLin()).getItems()) {
+            if (hr.getSheet(other).getSheetName().equals(sheetName)) return other;
+        }
+        return null;
+    }
+
+    private static ComponentHandReceipt parseUsermodel(File f) throws IOException, FormatException {
+        return new ComponentHandReceipt(POILoader.getXLSWorkbook(f));
+    }
+
+    private static ComponentHandReceipt parseEvents(File f) throws IOException, FormatException {
+        InputStream in = new FileInputStream(f);
+        try {
+            return ComponentHandReceipt.fromEventStream(in);
+        } finally {
+            in.close();
+        }
+    }
+}
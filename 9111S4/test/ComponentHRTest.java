@@ -1,19 +1,31 @@
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
+import org.apache.poi.hssf.usermodel.HSSFSheet;
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Cell;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
 import com.hotan.ninetripleone.supply.forms.ComponentHandReceipt;
 import com.hotan.ninetripleone.supply.forms.UnitLevelHandReceipt;
+import com.hotan.ninetripleone.supply.model.EndItem;
 import com.hotan.ninetripleone.supply.model.EndItemGroup;
 import com.hotan.ninetripleone.supply.util.FormatException;
 import com.hotan.ninetripleone.supply.util.POILoader;
+import com.hotan.ninetripleone.supply.util.POIUtil.IndexPair;
 
 
 public class ComponentHRTest {
@@ -63,4 +75,113 @@ public class ComponentHRTest {
         }
     }
     
+    @Test
+    public void testSheetAfterSerialChange() throws IOException, FormatException {
+        ComponentHandReceipt hr = new ComponentHandReceipt(POILoader.getXLSWorkbook("ComponentHandReceipt.xls"));
+        for (EndItemGroup group: hr.getGroups()) {
+            for (EndItem item: group.getItems()) {
+                String sheetName = hr.getSheet(item).getSheetName();
+                item.setSn(item.getSn() + "-CHANGED");
+                assertNotNull("Lost the sheet of " + item, hr.getSheet(item));
+                assertEquals("Incorrect sheet of " + item, sheetName, hr.getSheet(item).getSheetName());
+            }
+        }
+        assertNull("Found sheet of a new item", hr.getSheet(new EndItem("ITEM", "A00000", "0000000000000")));
+    }
+
+    @Test
+    public void testPaddedHeaderCells() throws IOException, FormatException {
+        HSSFWorkbook wb = POILoader.getXLSWorkbook("ComponentHandReceipt.xls");
+        ComponentHandReceipt expected = new ComponentHandReceipt(wb);
+        HSSFSheet sheet = wb.getSheetAt(0);
+        for (int row = 2; row <= 7; ++row) {
+            for (Cell cell: sheet.getRow(row)) {
+                if (cell.getCellType() == Cell.CELL_TYPE_STRING)
+                    cell.setCellValue("  " + cell.getStringCellValue() + " \t");
+            }
+        }
+        ComponentHandReceipt hr = new ComponentHandReceipt(wb);
+        assertEquals("Incorrect UIC", expected.getUIC(), hr.getUIC());
+        assertEquals("Incorrect DESC", expected.getDESC(), hr.getDESC());
+        assertEquals("Incorrect team", expected.getTeam(), hr.getTeam());
+        assertEquals("Incorrect from operator", expected.getWhoFrom().toString(), hr.getWhoFrom().toString());
+        assertEquals("Incorrect to operator", expected.getWhoTo().toString(), hr.getWhoTo().toString());
+        assertEquals("Incorrect groups", expected.getGroups(), hr.getGroups());
+    }
+
+    @Test(expected = FormatException.class)
+    public void testMissingHeaderPart() throws IOException, FormatException {
+        HSSFWorkbook wb = POILoader.getXLSWorkbook("ComponentHandReceipt.xls");
+        wb.getSheetAt(0).getRow(2).getCell(0).setCellValue("UIC/DESC: WTN6A0");
+        new ComponentHandReceipt(wb);
+    }
+
+    @Test
+    public void testParallelSameAsSequential() throws IOException, FormatException {
+        HSSFWorkbook wb = POILoader.getXLSWorkbook("ComponentHandReceipt.xls");
+        ComponentHandReceipt parallel = ComponentHandReceipt.parallel(wb, new ForkJoinPool(4));
+        assertSameReceipt(HR, parallel);
+    }
+
+    @Test
+    public void testParallelScale() throws IOException, FormatException {
+        // Copy every end item sheet until the receipt has hundreds of sheets
+        HSSFWorkbook wb = HandReceiptFixtures.copyComponentSheets(
+                POILoader.getXLSWorkbook("ComponentHandReceipt.xls"), 6);
+
+        long start = System.nanoTime();
+        ComponentHandReceipt sequential = new ComponentHandReceipt(wb);
+        long sequentialMillis = (System.nanoTime() - start) / 1000000;
+        start = System.nanoTime();
+        ComponentHandReceipt parallel = ComponentHandReceipt.parallel(wb);
+        long parallelMillis = (System.nanoTime() - start) / 1000000;
+        System.out.println(getClass().getSimpleName() + " " + wb.getNumberOfSheets() + " sheets sequential: " 
+                + sequentialMillis + "ms parallel: " + parallelMillis + "ms on " 
+                + Runtime.getRuntime().availableProcessors() + " processors");
+        assertSameReceipt(sequential, parallel);
+    }
+
+    private static void assertSameReceipt(ComponentHandReceipt expected, ComponentHandReceipt actual) {
+        assertEquals("Incorrect groups", expected.getGroups(), actual.getGroups());
+        for (int g = 0; g < expected.getGroups().size(); ++g) {
+            List<EndItem> expectedItems = expected.getGroups().get(g).getItems();
+            List<EndItem> actualItems = actual.getGroups().get(g).getItems();
+            assertEquals("Incorrect number of items", expectedItems.size(), actualItems.size());
+            for (int i = 0; i < expectedItems.size(); ++i) {
+                assertEquals("Incorrect item order", expectedItems.get(i).getSn(), actualItems.get(i).getSn());
+                assertEquals("Incorrect sheet", expected.getSheet(expectedItems.get(i)).getSheetName(),
+                        actual.getSheet(actualItems.get(i)).getSheetName());
+            }
+        }
+    }
+
+    @Test
+    public void testIndexPairConcurrent() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<IndexPair[]>> results = new ArrayList<Future<IndexPair[]>>();
+            for (int t = 0; t < 4; ++t) {
+                results.add(pool.submit(new Callable<IndexPair[]>() {
+
+                    @Override
+                    public IndexPair[] call() {
+                        IndexPair[] pairs = new IndexPair[5000];
+                        for (int i = 0; i < pairs.length; ++i) {
+                            pairs[i] = IndexPair.valueOf(1000 + i / 20, i % 20);
+                        }
+                        return pairs;
+                    }
+                }));
+            }
+            IndexPair[] first = results.get(0).get();
+            for (Future<IndexPair[]> result: results) {
+                IndexPair[] pairs = result.get();
+                for (int i = 0; i < pairs.length; ++i) {
+                    assertSame("Index pair not canonical", first[i], pairs[i]);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
 }
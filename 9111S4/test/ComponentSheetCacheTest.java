@@ -0,0 +1,93 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.hotan.ninetripleone.supply.forms.ComponentHandReceipt;
+import com.hotan.ninetripleone.supply.model.EndItem;
+import com.hotan.ninetripleone.supply.util.FormatException;
+import com.hotan.ninetripleone.supply.util.POILoader;
+
+
+public class ComponentSheetCacheTest {
+
+    private static final int NUM_SHEETS = 53;
+
+    private File mFile;
+
+    private File mCacheFile;
+
+    @Before
+    public void setup() throws IOException {
+        mFile = HandReceiptFixtures.write(POILoader.getXLSWorkbook("ComponentHandReceipt.xls"),
+                ComponentSheetCacheTest.class, "comp_hr.xls");
+        mCacheFile = new File(mFile.getPath() + ".sheets");
+        mCacheFile.delete();
+    }
+
+    @Test
+    public void testUnchanged() throws IOException, FormatException {
+        ComponentHandReceipt first = ComponentHandReceipt.incremental(mFile);
+        assertEquals("Sheets taken from an empty cache", NUM_SHEETS, first.getChangedItems().size());
+        assertTrue("No cache file written", mCacheFile.isFile());
+
+        ComponentHandReceipt second = ComponentHandReceipt.incremental(mFile);
+        assertEquals("Unchanged sheets parsed again", 0, second.getChangedItems().size());
+
+        ComponentHandReceipt expected = new ComponentHandReceipt(POILoader.getXLSWorkbook(mFile));
+        assertEquals("Incorrect UIC", expected.getUIC(), second.getUIC());
+        assertEquals("Incorrect groups", expected.getGroups(), second.getGroups());
+        for (int g = 0; g < expected.getGroups().size(); ++g) {
+            assertEquals("Incorrect items", expected.getGroups().get(g).getItems(),
+                    second.getGroups().get(g).getItems());
+        }
+    }
+
+    @Test
+    public void testChangedSheets() throws IOException, FormatException {
+        ComponentHandReceipt.incremental(mFile);
+
+        HSSFWorkbook wb = POILoader.getXLSWorkbook(mFile);
+        wb.getSheetAt(3).getRow(7).getCell(0).setCellValue("SERIAL NO: CHANGED3");
+        wb.getSheetAt(40).getRow(7).getCell(0).setCellValue("SERIAL NO: CHANGED40");
+        OutputStream out = new FileOutputStream(mFile);
+        try {
+            wb.write(out);
+        } finally {
+            out.close();
+        }
+
+        ComponentHandReceipt hr = ComponentHandReceipt.incremental(mFile);
+        Set<String> serials = new HashSet<String>();
+        for (EndItem item: hr.getChangedItems()) {
+            serials.add(item.getSn());
+        }
+        assertEquals("Incorrect changed serials", new HashSet<String>(
+                Arrays.asList("CHANGED3", "CHANGED40")), serials);
+        assertEquals("Incorrect sheet of a changed item", wb.getSheetName(40),
+                hr.getSheet(hr.getChangedItems().get(1)).getSheetName());
+    }
+
+    @Test
+    public void testCorruptCache() throws IOException, FormatException {
+        OutputStream out = new FileOutputStream(mCacheFile);
+        try {
+            out.write(new byte[] { 1, 2, 3, 4, 5 });
+        } finally {
+            out.close();
+        }
+        ComponentHandReceipt hr = ComponentHandReceipt.incremental(mFile);
+        assertEquals("Sheets taken from a corrupt cache", NUM_SHEETS, hr.getChangedItems().size());
+        assertEquals("Cache not rewritten", 0, ComponentHandReceipt.incremental(mFile).getChangedItems().size());
+    }
+}
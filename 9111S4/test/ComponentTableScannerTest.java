@@ -0,0 +1,80 @@
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+
+import org.apache.poi.hssf.usermodel.HSSFRow;
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.junit.Test;
+
+import com.hotan.ninetripleone.supply.forms.ComponentTableScanner;
+import com.hotan.ninetripleone.supply.util.POILoader;
+
+
+public class ComponentTableScannerTest {
+
+    private static final int FIRST_ROW = 13;
+
+    @Test
+    public void testSampleSheet() throws IOException {
+        HSSFSheet sheet = POILoader.getXLSWorkbook("ComponentHandReceipt.xls").getSheetAt(1);
+        ComponentTableScanner tables = ComponentTableScanner.scan(sheet);
+        assertEquals("Incorrect number of COEI", 1, tables.getCOEIs().size());
+        assertEquals("Incorrect number of BII", 2, tables.getBIIs().size());
+        assertEquals("Incorrect BII", "7021LIND", tables.getBIIs().get(1).getNSN());
+        assertEquals("Incorrect BII quantity", 1, tables.getBIIs().get(1).getAuthQty());
+        assertSingleRead(sheet, tables);
+    }
+
+    @Test
+    public void testLongTables() {
+        HSSFWorkbook wb = new HSSFWorkbook();
+        HSSFSheet sheet = wb.createSheet("O33754");
+        int row = FIRST_ROW;
+        sheet.createRow(row++).createCell(2).setCellValue("COMPONENTS OF END ITEM (COEI)");
+        for (int i = 0; i < 2000; ++i) {
+            addComponent(sheet.createRow(row++), "COEI " + i, i);
+        }
+        row++;
+        sheet.createRow(row++).createCell(2).setCellValue("BASIC ISSUE ITEMS (BII)");
+        for (int i = 0; i < 1000; ++i) {
+            addComponent(sheet.createRow(row++), "BII " + i, i);
+        }
+        sheet.createRow(row + 10).createCell(0).setCellValue("SIGNATURE");
+
+        ComponentTableScanner tables = ComponentTableScanner.scan(sheet);
+        assertEquals("Incorrect number of COEI", 2000, tables.getCOEIs().size());
+        assertEquals("Incorrect number of BII", 1000, tables.getBIIs().size());
+        assertEquals("Incorrect last COEI", "COEI 1999", tables.getCOEIs().get(1999).getName());
+        assertEquals("Incorrect last BII quantity", 999, tables.getBIIs().get(999).getAuthQty());
+        assertSingleRead(sheet, tables);
+    }
+
+    @Test
+    public void testNoTables() {
+        HSSFSheet sheet = new HSSFWorkbook().createSheet("O33754");
+        sheet.createRow(FIRST_ROW + 3).createCell(2).setCellValue("BASIC ISSUE ITEMS (BII)");
+        addComponent(sheet.createRow(FIRST_ROW + 4), "BII", 1);
+        ComponentTableScanner tables = ComponentTableScanner.scan(sheet);
+        assertEquals("Found COEI without a table", 0, tables.getCOEIs().size());
+        assertEquals("Found BII without a first table", 0, tables.getBIIs().size());
+        assertEquals("Read past the first table row", 1, tables.getCellReads());
+    }
+
+    /**
+     * Every row from the first table row is read once for its item description,
+     * and every item row once more for its NSN and quantity.
+     * <br>The reads are cells of the sheet itself, it is never copied.
+     */
+    private static void assertSingleRead(HSSFSheet sheet, ComponentTableScanner tables) {
+        int rows = sheet.getLastRowNum() - FIRST_ROW + 1;
+        int items = tables.getCOEIs().size() + tables.getBIIs().size();
+        assertEquals("Cells read more than once", rows + 2 * items, tables.getCellReads());
+    }
+
+    private static void addComponent(HSSFRow row, String name, int qty) {
+        row.createCell(0).setCellValue(String.format("%013d", 7010000000000L + qty));
+        row.createCell(2).setCellValue(name);
+        row.createCell(7).setCellValue(Integer.toString(qty));
+    }
+}
@@ -0,0 +1,87 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.hotan.ninetripleone.supply.forms.ComponentHandReceipt;
+import com.hotan.ninetripleone.supply.forms.UnitLevelHandReceipt;
+import com.hotan.ninetripleone.supply.model.EndItem;
+import com.hotan.ninetripleone.supply.model.EndItemGroup;
+import com.hotan.ninetripleone.supply.util.FormatException;
+import com.hotan.ninetripleone.supply.util.POILoader;
+
+
+public class DetachedReceiptTest {
+
+    private static File mCompFile, mUnitFile;
+
+    private static ComponentHandReceipt HR, DetachedHR;
+
+    @BeforeClass
+    public static void setupClass() throws IOException, FormatException {
+        mCompFile = POILoader.getDataFile("ComponentHandReceipt.xls");
+        mUnitFile = POILoader.getDataFile("9111_UNIT_HR.xls");
+        HR = new ComponentHandReceipt(POILoader.getXLSWorkbook(mCompFile));
+        DetachedHR = ComponentHandReceipt.detached(mCompFile);
+    }
+
+    @Test
+    public void testSameGroups() {
+        assertTrue("Not detached", DetachedHR.isDetached());
+        assertFalse("Detached", HR.isDetached());
+        assertEquals("Incorrect groups", HR.getGroups(), DetachedHR.getGroups());
+    }
+
+    @Test
+    public void testReopenSheet() {
+        for (EndItemGroup group: DetachedHR.getGroups()) {
+            EndItemGroup attached = HR.getGroup(group.getNSN(), group.getLIN());
+            List<EndItem> items = group.getItems();
+            for (int i = 0; i < items.size(); ++i) {
+                HSSFSheet sheet = DetachedHR.getSheet(items.get(i));
+                assertNotNull("No sheet for " + items.get(i), sheet);
+                assertEquals("Incorrect sheet for " + items.get(i),
+                        HR.getSheet(attached.getItems().get(i)).getSheetName(), sheet.getSheetName());
+            }
+        }
+    }
+
+    @Test
+    public void testUnitHR() throws IOException {
+        UnitLevelHandReceipt hr = UnitLevelHandReceipt.detached(mUnitFile);
+        UnitLevelHandReceipt attached = new UnitLevelHandReceipt(POILoader.getXLSWorkbook(mUnitFile));
+        assertTrue("Not detached", hr.isDetached());
+        assertEquals("Incorrect groups", attached.getGroups(), hr.getGroups());
+        assertEquals("Incorrect UIC", attached.getUIC(), hr.getUIC());
+        assertNotNull("Unable to reopen workbook", hr.getWorkbook());
+    }
+
+    @Test
+    public void testRetainedHeap() throws Exception {
+        long attached = HandReceiptFixtures.retainedHeap(new Callable<ComponentHandReceipt>() {
+            @Override
+            public ComponentHandReceipt call() throws Exception {
+                return new ComponentHandReceipt(POILoader.getXLSWorkbook(mCompFile));
+            }
+        });
+        long detached = HandReceiptFixtures.retainedHeap(new Callable<ComponentHandReceipt>() {
+            @Override
+            public ComponentHandReceipt call() throws Exception {
+                return ComponentHandReceipt.detached(mCompFile);
+            }
+        });
+        System.out.println(getClass().getSimpleName() + " retained heap, attached: " + attached
+                + " detached: " + detached);
+        assertTrue("Detached receipt retained " + detached + " not below attached " + attached,
+                detached < attached);
+    }
+}
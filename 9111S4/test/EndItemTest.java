@@ -1,10 +1,16 @@
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
 import com.hotan.ninetripleone.supply.model.EndItem;
+import com.hotan.ninetripleone.supply.model.EndItemBasicIssueComponent;
+import com.hotan.ninetripleone.supply.model.EndItemComponent;
 
 
 public class EndItemTest {
@@ -26,6 +32,32 @@ public class EndItemTest {
         assertEquals(mItem, mItem2);
     }
 
+    @Test
+    public void testAddComponents() {
+        EndItemComponent first = new EndItemComponent("COEI 0", "nsn 0", 1);
+        first.setOnHandQty(1);
+        mItem.addCOEI(first);
+        assertEquals("Incorrect views before adding", 1, mItem.getCOEI().size());
+        
+        List<EndItemComponent> coei = new ArrayList<EndItemComponent>();
+        for (int i = 0; i < 1000; ++i) {
+            EndItemComponent component = new EndItemComponent("COEI " + i, "nsn " + i, 1);
+            component.setOnHandQty(i % 2);
+            coei.add(component);
+        }
+        EndItemBasicIssueComponent bii = new EndItemBasicIssueComponent("BII", "nsn", 2);
+        mItem.addComponents(coei, Arrays.asList(bii, new EndItemBasicIssueComponent("BII", "nsn", 2)));
+        
+        assertEquals("Incorrect number of COEI", 1000, mItem.getCOEI().size());
+        assertEquals("Incorrect number of BII", 1, mItem.getBII().size());
+        assertEquals("Lost the first on hand quantity", 1, mItem.getCOEI().get(0).getOnHandQty());
+        for (int i = 1; i < 1000; ++i) {
+            assertEquals("Incorrect COEI", "COEI " + i, mItem.getCOEI().get(i).getName());
+            assertEquals("Incorrect on hand quantity", i % 2, mItem.getCOEI().get(i).getOnHandQty());
+        }
+        assertEquals("Incorrect BII on hand quantity", 0, mItem.getBII().get(0).getOnHandQty());
+    }
+    
 //    @Test
 //    public void testNotEqualAfterSerial() {
 //      
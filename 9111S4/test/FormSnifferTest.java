@@ -0,0 +1,80 @@
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.junit.Test;
+
+import com.hotan.ninetripleone.supply.forms.FormSniffer;
+import com.hotan.ninetripleone.supply.forms.FormType;
+import com.hotan.ninetripleone.supply.util.POILoader;
+import com.hotan.ninetripleone.supply.util.POITemplateLoader;
+
+
+public class FormSnifferTest {
+
+    @Test
+    public void testSamples() throws IOException {
+        assertEquals("Incorrect Unit HR type", FormType.UNIT,
+                FormSniffer.sniff(POILoader.getDataFile("9111_UNIT_HR.xls")));
+        assertEquals("Incorrect Component HR type", FormType.COMPONENT,
+                FormSniffer.sniff(POILoader.getDataFile("ComponentHandReceipt.xls")));
+        File inspection = HandReceiptFixtures.write(POITemplateLoader.getXLS2404(), getClass(), "2404.xls");
+        assertEquals("Incorrect DA 2404 type", FormType.DA_2404, FormSniffer.sniff(inspection));
+    }
+
+    @Test
+    public void testStream() throws IOException {
+        InputStream in = new FileInputStream(POILoader.getDataFile("ComponentHandReceipt.xls"));
+        try {
+            assertEquals("Incorrect Component HR type", FormType.COMPONENT, FormSniffer.sniff(in));
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testShiftedUnitHR() throws IOException {
+        HSSFWorkbook shifted = HandReceiptFixtures.shift(POILoader.getXLSWorkbook("9111_UNIT_HR.xls"), 3, 2);
+        File f = HandReceiptFixtures.write(shifted, getClass(), "shifted_unit_hr.xls");
+        assertEquals("Incorrect shifted Unit HR type", FormType.UNIT, FormSniffer.sniff(f));
+    }
+
+    @Test
+    public void testComponentHRWithoutTitle() throws IOException {
+        HSSFWorkbook wb = POILoader.getXLSWorkbook("ComponentHandReceipt.xls");
+        wb.getSheetAt(0).getRow(0).getCell(2).setCellValue("");
+        File f = HandReceiptFixtures.write(wb, getClass(), "untitled_comp_hr.xls");
+        assertEquals("Incorrect untitled Component HR type", FormType.COMPONENT, FormSniffer.sniff(f));
+    }
+
+    @Test
+    public void testUnknown() throws IOException {
+        // Titles below the searched rows are not read
+        HSSFWorkbook wb = new HSSFWorkbook();
+        wb.createSheet("Notes").createRow(0).createCell(0).setCellValue("UIC/DESC: WTN6A0");
+        wb.getSheetAt(0).createRow(100).createCell(0).setCellValue("UNIT LEVEL HAND RECEIPT");
+        wb.createSheet("Totals").createRow(0).createCell(0).setCellValue("COMPONENT SUB-HAND RECEIPT");
+        File f = HandReceiptFixtures.write(wb, getClass(), "notes.xls");
+        assertEquals("Incorrect unknown type", FormType.UNKNOWN, FormSniffer.sniff(f));
+    }
+
+    @Test
+    public void testTiming() throws IOException {
+        File f = POILoader.getDataFile("ComponentHandReceipt.xls");
+        FormSniffer.sniff(f);
+        POILoader.getXLSWorkbook(f);
+
+        long start = System.nanoTime();
+        FormSniffer.sniff(f);
+        long sniff = System.nanoTime() - start;
+        start = System.nanoTime();
+        POILoader.getXLSWorkbook(f);
+        long workbook = System.nanoTime() - start;
+        System.out.println(getClass().getSimpleName() + " sniff: " + sniff / 1000 + "us workbook: "
+                + workbook / 1000 + "us");
+    }
+}
@@ -0,0 +1,86 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.junit.Test;
+
+import com.hotan.ninetripleone.supply.forms.ComponentHandReceipt;
+import com.hotan.ninetripleone.supply.forms.UnitLevelHandReceipt;
+import com.hotan.ninetripleone.supply.model.EndItemGroup;
+import com.hotan.ninetripleone.supply.model.EndItemGroupIndex;
+import com.hotan.ninetripleone.supply.util.FormatException;
+import com.hotan.ninetripleone.supply.util.POILoader;
+
+
+public class GroupIndexTest {
+
+    private static final int BENCHMARK_GROUPS = 12000;
+
+    @Test
+    public void testSerializedIsPartOfKey() {
+        EndItemGroupIndex index = new EndItemGroupIndex();
+        EndItemGroup plain = new EndItemGroup("name", "lin", "nsn", false);
+        EndItemGroup serialized = new EndItemGroup("name", "lin", "nsn", true);
+        index.add(plain);
+        index.add(serialized);
+
+        assertSame("Incorrect group", plain, index.get(new EndItemGroup("other", "lin", "nsn", false)));
+        assertSame("Incorrect group", serialized, index.get(new EndItemGroup("other", "lin", "nsn", true)));
+        assertSame("Not the first group added", plain, index.get("nsn", "lin"));
+
+        index.remove(plain);
+        assertNull("Removed group found", index.get(new EndItemGroup("other", "lin", "nsn", false)));
+        assertSame("Incorrect group", serialized, index.get("nsn", "lin"));
+
+        index.remove(serialized);
+        assertNull("Removed group found", index.get("nsn", "lin"));
+    }
+
+    @Test
+    public void testBenchmarkUnitHR() {
+        HSSFWorkbook wb = HandReceiptFixtures.createUnitHR(BENCHMARK_GROUPS, 3);
+
+        long start = System.nanoTime();
+        UnitLevelHandReceipt hr = new UnitLevelHandReceipt(wb);
+        long built = System.nanoTime();
+        List<EndItemGroup> groups = hr.getGroups();
+        for (EndItemGroup group: groups) {
+            assertSame("Incorrect group", group, hr.getGroup(group.getNSN(), group.getLIN()));
+        }
+        long end = System.nanoTime();
+
+        assertEquals("Incorrect number of groups", BENCHMARK_GROUPS, groups.size());
+        print("UnitLevelHandReceipt", built - start, end - built);
+    }
+
+    @Test
+    public void testBenchmarkComponentHR() throws IOException, FormatException {
+        ComponentHandReceipt hr = new ComponentHandReceipt(POILoader.getXLSWorkbook("ComponentHandReceipt.xls"));
+        int initial = hr.getGroups().size();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_GROUPS; ++i) {
+            hr.add(new EndItemGroup("END ITEM " + i, String.format("B%05d", i),
+                    String.format("%013d", 7000000000000L + i), i % 2 == 0));
+        }
+        long built = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_GROUPS; ++i) {
+            assertNotNull("Missing group " + i,
+                    hr.getGroup(String.format("%013d", 7000000000000L + i), String.format("B%05d", i)));
+        }
+        long end = System.nanoTime();
+
+        assertEquals("Incorrect number of groups", initial + BENCHMARK_GROUPS, hr.getGroups().size());
+        print("ComponentHandReceipt", built - start, end - built);
+    }
+
+    private void print(String receipt, long buildNanos, long lookupNanos) {
+        System.out.println(getClass().getSimpleName() + " " + receipt + " " + BENCHMARK_GROUPS
+                + " groups, build: " + buildNanos / 1000000 + "ms lookups: " + lookupNanos / 1000000 + "ms");
+    }
+}
@@ -0,0 +1,221 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.Callable;
+
+import org.apache.poi.hssf.usermodel.HSSFRow;
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+/**
+ * Builds synthetic hand receipts that follow the layout of the samples
+ * in res/data, for tests that need more end items than the samples have.
+ */
+public class HandReceiptFixtures {
+
+    private HandReceiptFixtures() {}
+
+    /**
+     * Creates a Unit level hand receipt with the same header as 9111_UNIT_HR.xls.
+     * <br>Every other group is serialized.
+     *
+     * @param numGroups Number of end item groups
+     * @param serialsPerGroup Number of serial numbers of each serialized group
+     * @return Workbook of the hand receipt
+     */
+    public static HSSFWorkbook createUnitHR(int numGroups, int serialsPerGroup) {
+        HSSFWorkbook wb = new HSSFWorkbook();
+        HSSFSheet sheet = wb.createSheet("911");
+        setCells(sheet.createRow(0), 0, "DATE PREPARED: 09/09/13                    UNIT LEVEL HAND RECEIPT");
+        setCells(sheet.createRow(2), 5, "FROM: CDR/TSCHETTER, JONATHAN/MAJ");
+        HSSFRow uic = sheet.createRow(3);
+        setCells(uic, 0, "UIC/DESC: WTN6A0/1ST BN, 19TH SFG, CO A");
+        setCells(uic, 5, "TO: 911/MITCHELL, JAMES/CPT");
+        setCells(sheet.createRow(6), 0, "LIN", "SUBLIN", "NSN", "PBIC", "ITEM NOMEN",
+                "UI", "CIIC", "EIC", "ECS", "QTY");
+
+        int rowNum = 7;
+        for (int g = 0; g < numGroups; ++g) {
+            boolean serialized = g % 2 == 0;
+            int qty = serialized ? serialsPerGroup : 3;
+            setCells(sheet.createRow(rowNum++), 0, String.format("A%05d", g), "",
+                    String.format("%013d", 5825000000000L + g), "8", "END ITEM " + g,
+                    "EA", "U", "", "", Integer.toString(qty));
+
+            if (serialized) {
+                for (int s = 0; s < serialsPerGroup; s += 3) {
+                    HSSFRow row = sheet.createRow(rowNum++);
+                    setCells(row, 0, serial(g, s), "", "", "", serial(g, s + 1), serial(g, s + 2));
+                    if (s + 1 >= serialsPerGroup) row.getCell(4).setCellValue("");
+                    if (s + 2 >= serialsPerGroup) row.getCell(5).setCellValue("");
+                }
+            }
+            rowNum++;
+        }
+        return wb;
+    }
+
+    /**
+     * Adds copies of every end item sheet of a Component hand receipt, with
+     * serial numbers of their own, for tests that need hundreds of sheets.
+     *
+     * @param wb Workbook of a Component hand receipt
+     * @param copies Number of copies of each end item sheet
+     * @return The workbook
+     */
+    public static HSSFWorkbook copyComponentSheets(HSSFWorkbook wb, int copies) {
+        int numSheets = wb.getNumberOfSheets();
+        for (int copy = 0; copy < copies; ++copy) {
+            for (int i = 1; i < numSheets; ++i) {
+                wb.cloneSheet(i).getRow(7).getCell(0).setCellValue("SERIAL NO: COPY" + copy + "-" + i);
+            }
+        }
+        return wb;
+    }
+
+    /**
+     * Copies the String cells of the first sheet of the workbook, moved down 
+     * and to the right, like the layout of another hand receipt software version.
+     *
+     * @param wb Workbook to copy
+     * @param rows Number of rows to move the cells down
+     * @param cols Number of columns to move the cells right
+     * @return Shifted copy of the workbook
+     */
+    public static HSSFWorkbook shift(HSSFWorkbook wb, int rows, int cols) {
+        HSSFWorkbook copy = new HSSFWorkbook();
+        HSSFSheet sheet = wb.getSheetAt(0);
+        HSSFSheet target = copy.createSheet(sheet.getSheetName());
+        for (Row row: sheet) {
+            HSSFRow targetRow = target.createRow(row.getRowNum() + rows);
+            for (Cell cell: row) {
+                if (cell.getCellType() == Cell.CELL_TYPE_STRING)
+                    targetRow.createCell(cell.getColumnIndex() + cols).setCellValue(cell.getStringCellValue());
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Copies the String and blank cells of the workbook into a XLSX workbook
+     * with the same sheet names.
+     *
+     * @param wb XLS workbook to copy
+     * @return XLSX copy of the workbook
+     */
+    public static XSSFWorkbook toXLSX(HSSFWorkbook wb) {
+        XSSFWorkbook copy = new XSSFWorkbook();
+        for (int i = 0; i < wb.getNumberOfSheets(); ++i) {
+            HSSFSheet sheet = wb.getSheetAt(i);
+            Sheet target = copy.createSheet(sheet.getSheetName());
+            for (Row row: sheet) {
+                Row targetRow = target.createRow(row.getRowNum());
+                for (Cell cell: row) {
+                    int type = cell.getCellType();
+                    if (type == Cell.CELL_TYPE_STRING) {
+                        targetRow.createCell(cell.getColumnIndex()).setCellValue(cell.getStringCellValue());
+                    } else if (type == Cell.CELL_TYPE_BLANK) {
+                        targetRow.createCell(cell.getColumnIndex());
+                    }
+                }
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Returns the scratch directory of the test class, under the temp directory
+     * so nothing the tests write ends up in the source tree.
+     *
+     * @param test Test class
+     * @return Existing directory of the class
+     */
+    public static File outputDir(Class<?> test) throws IOException {
+        return Files.createDirectories(Paths.get(System.getProperty("java.io.tmpdir"),
+                "9111S4-test", test.getSimpleName())).toFile();
+    }
+
+    /**
+     * Writes the workbook to a file in the scratch directory of the class.
+     *
+     * @param wb Workbook to write
+     * @param test Test class writing the file
+     * @param name Name of the file
+     * @return File written
+     */
+    public static File write(Workbook wb, Class<?> test, String name) throws IOException {
+        File f = new File(outputDir(test), name);
+        OutputStream out = new FileOutputStream(f);
+        try {
+            wb.write(out);
+        } finally {
+            out.close();
+        }
+        return f;
+    }
+
+    /**
+     * Runs the task and returns the sum of the peak usages of the heap memory pools.
+     *
+     * @param task Task to measure
+     * @return Peak heap usage in bytes while the task ran
+     */
+    public static long peakHeap(Callable<?> task) throws Exception {
+        System.gc();
+        for (MemoryPoolMXBean pool: ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) pool.resetPeakUsage();
+        }
+        Object result = task.call();
+        long peak = 0;
+        for (MemoryPoolMXBean pool: ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) peak += pool.getPeakUsage().getUsed();
+        }
+        if (result == null) throw new IllegalStateException("Task produced nothing");
+        return peak;
+    }
+
+    /**
+     * Runs the task and returns how much heap its result keeps reachable.
+     *
+     * @param task Task to measure
+     * @return Heap retained by the result of the task in bytes
+     */
+    public static long retainedHeap(Callable<?> task) throws Exception {
+        long before = usedHeapAfterGC();
+        Object result = task.call();
+        long after = usedHeapAfterGC();
+        if (result == null) throw new IllegalStateException("Task produced nothing");
+        return after - before;
+    }
+
+    /**
+     * @return Heap in use in bytes after collecting the garbage
+     */
+    public static long usedHeapAfterGC() {
+        for (int i = 0; i < 3; ++i) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static String serial(int group, int index) {
+        return String.format("    W%04d%05d", group, index);
+    }
+
+    private static void setCells(HSSFRow row, int firstCol, String... values) {
+        for (int i = 0; i < values.length; ++i) {
+            row.createCell(firstCol + i).setCellValue(values[i]);
+        }
+    }
+}
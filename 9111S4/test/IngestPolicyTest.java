@@ -0,0 +1,108 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.concurrent.Callable;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.junit.Test;
+
+import com.hotan.ninetripleone.supply.forms.ComponentHandReceipt;
+import com.hotan.ninetripleone.supply.forms.IngestPolicy;
+import com.hotan.ninetripleone.supply.forms.IngestPolicy.Estimate;
+import com.hotan.ninetripleone.supply.forms.IngestPolicy.Mode;
+import com.hotan.ninetripleone.supply.forms.UnitLevelHandReceipt;
+import com.hotan.ninetripleone.supply.model.PropertyBookLoader;
+import com.hotan.ninetripleone.supply.util.POILoader;
+
+
+public class IngestPolicyTest {
+
+    @Test
+    public void testEstimate() throws Exception {
+        final File file = POILoader.getDataFile("ComponentHandReceipt.xls");
+        Estimate estimate = IngestPolicy.estimate(file);
+        assertEquals("Incorrect number of sheets", 53, estimate.getSheets());
+        assertEquals("Incorrect number of bytes", file.length(), estimate.getBytes());
+        assertTrue("No cells counted", estimate.getCells() > 0);
+        assertTrue("No strings counted", estimate.getStrings() > 0);
+
+        long retained = HandReceiptFixtures.retainedHeap(new Callable<HSSFWorkbook>() {
+            @Override
+            public HSSFWorkbook call() throws Exception {
+                return POILoader.getXLSWorkbook(file);
+            }
+        });
+        System.out.println(getClass().getSimpleName() + " " + estimate + ", workbook retained " + retained);
+        assertTrue("Estimate below the retained workbook", estimate.getHeapBytes() > retained);
+
+        File scaled = HandReceiptFixtures.write(HandReceiptFixtures.copyComponentSheets(
+                POILoader.getXLSWorkbook(file), 2), IngestPolicyTest.class, "scale_comp_hr.xls");
+        Estimate scaledEstimate = IngestPolicy.estimate(scaled);
+        assertEquals("Incorrect number of scaled sheets", 53 + 2 * 52, scaledEstimate.getSheets());
+        assertTrue("Estimate did not grow", scaledEstimate.getHeapBytes() > 2 * estimate.getHeapBytes());
+    }
+
+    @Test
+    public void testChoose() throws Exception {
+        Estimate estimate = IngestPolicy.estimate(POILoader.getDataFile("9111_UNIT_HR.xls"));
+        long heap = estimate.getHeapBytes();
+        assertEquals("Incorrect mode with room", Mode.USERMODEL, new IngestPolicy(2 * heap).choose(estimate));
+        assertEquals("Incorrect mode without room", Mode.DETACHED, new IngestPolicy(2 * heap - 1).choose(estimate));
+        assertEquals("Incorrect mode at the budget", Mode.DETACHED, new IngestPolicy(heap).choose(estimate));
+        assertEquals("Incorrect mode over the budget", Mode.EVENT, new IngestPolicy(heap - 1).choose(estimate));
+    }
+
+    @Test
+    public void testModesAgree() throws Exception {
+        File unitFile = POILoader.getDataFile("9111_UNIT_HR.xls");
+        File compFile = POILoader.getDataFile("ComponentHandReceipt.xls");
+        UnitLevelHandReceipt unitHR = new UnitLevelHandReceipt(POILoader.getXLSWorkbook(unitFile));
+        ComponentHandReceipt compHR = new ComponentHandReceipt(POILoader.getXLSWorkbook(compFile));
+        long unitHeap = IngestPolicy.estimate(unitFile).getHeapBytes();
+        long compHeap = IngestPolicy.estimate(compFile).getHeapBytes();
+
+        for (Mode mode: Mode.values()) {
+            UnitLevelHandReceipt unit = policy(mode, unitHeap).loadUnit(unitFile);
+            assertEquals("Incorrect " + mode + " groups", unitHR.getGroups(), unit.getGroups());
+            assertEquals("Incorrect " + mode + " team", unitHR.getTeam(), unit.getTeam());
+            assertEquals("Incorrect " + mode + " detached", mode == Mode.DETACHED, unit.isDetached());
+            assertEquals("Incorrect " + mode + " workbook", mode == Mode.EVENT, unit.getWorkbook() == null);
+
+            ComponentHandReceipt comp = policy(mode, compHeap).loadComponent(compFile);
+            assertEquals("Incorrect " + mode + " groups", compHR.getGroups(), comp.getGroups());
+            assertEquals("Incorrect " + mode + " UIC", compHR.getUIC(), comp.getUIC());
+            assertEquals("Incorrect " + mode + " detached", mode == Mode.DETACHED, comp.isDetached());
+        }
+    }
+
+    private static IngestPolicy policy(Mode mode, long heap) {
+        switch (mode) {
+        case USERMODEL:
+            return new IngestPolicy(2 * heap);
+        case DETACHED:
+            return new IngestPolicy(heap);
+        default:
+            return new IngestPolicy(heap - 1);
+        }
+    }
+
+    @Test
+    public void testPropertyBookLoader() throws Exception {
+        PropertyBookLoader loader = new PropertyBookLoader(1, new IngestPolicy(1));
+        PropertyBookLoader.Result result = loader.load(POILoader.getDataFile("9111_UNIT_HR.xls").getParentFile());
+        assertTrue("Unexpected failures " + result.getFailures(), result.getFailures().isEmpty());
+        assertEquals("Incorrect number of PropertyBooks", 1, result.getPropertyBooks().size());
+        assertEquals("Incorrect number of groups", 49,
+                result.getPropertyBooks().values().iterator().next().size());
+        assertFalse("Lazy components with a policy", loader.isLazyComponents());
+        assertNull("Policy without one", new PropertyBookLoader(1).getIngestPolicy());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIllegalBudget() {
+        new IngestPolicy(0);
+    }
+}
@@ -0,0 +1,77 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.junit.Test;
+
+import com.hotan.ninetripleone.supply.forms.ComponentHandReceipt;
+import com.hotan.ninetripleone.supply.forms.UnitLevelHandReceipt;
+import com.hotan.ninetripleone.supply.model.EndItem;
+import com.hotan.ninetripleone.supply.model.EndItemGroup;
+import com.hotan.ninetripleone.supply.model.PropertyBook;
+import com.hotan.ninetripleone.supply.util.FormatException;
+import com.hotan.ninetripleone.supply.util.POILoader;
+
+
+public class LazyComponentsTest {
+
+    private static final int NUM_SHEETS = 53;
+
+    @Test
+    public void testSameAsEager() throws IOException, FormatException {
+        HSSFWorkbook wb = POILoader.getXLSWorkbook("ComponentHandReceipt.xls");
+        ComponentHandReceipt eager = new ComponentHandReceipt(wb);
+        ComponentHandReceipt lazy = ComponentHandReceipt.lazy(wb);
+        assertEquals("Incorrect UIC", eager.getUIC(), lazy.getUIC());
+        assertEquals("Incorrect groups", eager.getGroups(), lazy.getGroups());
+        assertEquals("Components loaded up front", NUM_SHEETS, countUnloaded(lazy));
+
+        for (int g = 0; g < eager.getGroups().size(); ++g) {
+            EndItemGroup group = eager.getGroups().get(g);
+            for (EndItem item: group.getItems()) {
+                EndItem other = findBySheet(lazy, item, eager.getSheet(item).getSheetName());
+                assertFalse("Components loaded before access", other.isComponentsLoaded());
+                assertEquals("Incorrect COEI of " + item, item.getCOEI(), other.getCOEI());
+                assertTrue("Components not loaded on access", other.isComponentsLoaded());
+                assertEquals("Incorrect BII of " + item, item.getBII(), other.getBII());
+            }
+        }
+        assertEquals("Components not shared", eager.getCatalog().getComponentCount(),
+                lazy.getCatalog().getComponentCount());
+    }
+
+    @Test
+    public void testPropertyBook() throws IOException, FormatException {
+        ComponentHandReceipt compHR = ComponentHandReceipt.lazy(POILoader.getDataFile("ComponentHandReceipt.xls"));
+        assertTrue("Lazy receipt from a file not detached", compHR.isDetached());
+        PropertyBook book = new PropertyBook(
+                new UnitLevelHandReceipt(POILoader.getXLSWorkbook("9111_UNIT_HR.xls")), compHR);
+        assertEquals("Incorrect number of groups", 49, book.size());
+        assertEquals("Components loaded by the PropertyBook", NUM_SHEETS, countUnloaded(compHR));
+
+        EndItem item = compHR.getGroups().get(1).getItems().get(0);
+        int coeis = item.getCOEI().size() + item.getBII().size();
+        assertTrue("No components loaded from the file for " + item, coeis > 0);
+        assertEquals("Loaded the components of other items", NUM_SHEETS - 1, countUnloaded(compHR));
+    }
+
+    private static int countUnloaded(ComponentHandReceipt hr) {
+        int unloaded = 0;
+        for (EndItemGroup group: hr.getGroups()) {
+            for (EndItem item: group.getItems()) {
+                if (!item.isComponentsLoaded()) unloaded++;
+            }
+        }
+        return unloaded;
+    }
+
+    private static EndItem findBySheet(ComponentHandReceipt hr, EndItem item, String sheetName) {
+        for (EndItem other: hr.getGroup(item.getNSN(), item.getLin()).getItems()) {
+            if (hr.getSheet(other).getSheetName().equals(sheetName)) return other;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,86 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+
+import com.hotan.ninetripleone.supply.util.POILoader;
+
+
+public class POILoaderTest {
+
+    @Test
+    public void testXLSX() throws IOException {
+        HSSFWorkbook wb = POILoader.getXLSWorkbook("9111_UNIT_HR.xls");
+        File file = HandReceiptFixtures.write(HandReceiptFixtures.toXLSX(wb), getClass(), "unit_hr.xlsx");
+        XSSFWorkbook xlsx = POILoader.getXLSXWorkbook(file);
+        assertEquals("Incorrect cells", cells(HandReceiptFixtures.toXLSX(wb)), cells(xlsx));
+    }
+
+    @Test
+    public void testHandlesClosed() throws IOException {
+        File xls = POILoader.getDataFile("ComponentHandReceipt.xls");
+        File xlsx = HandReceiptFixtures.write(HandReceiptFixtures.toXLSX(
+                POILoader.getXLSWorkbook("9111_UNIT_HR.xls")), getClass(), "handles.xlsx");
+        File corrupt = new File(HandReceiptFixtures.outputDir(getClass()), "corrupt.xls");
+        OutputStream out = new FileOutputStream(corrupt);
+        try {
+            out.write("Not a workbook".getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+
+        long before = openFiles();
+        for (int i = 0; i < 20; ++i) {
+            POILoader.getXLSWorkbook(xls);
+            POILoader.getXLSXWorkbook(xlsx);
+            try {
+                POILoader.getXLSWorkbook(corrupt);
+                fail("Loaded a corrupt file");
+            } catch (IOException e) {
+                // Expected, the file is still closed
+            }
+        }
+        long after = openFiles();
+        if (before >= 0)
+            assertTrue("Open files grew from " + before + " to " + after, after - before < 5);
+    }
+
+    /**
+     * @return Number of files the process has open, -1 if the platform does not tell
+     */
+    private static long openFiles() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.UnixOperatingSystemMXBean)
+            return ((com.sun.management.UnixOperatingSystemMXBean) os).getOpenFileDescriptorCount();
+        return -1;
+    }
+
+    private static String cells(Workbook wb) {
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < wb.getNumberOfSheets(); ++i) {
+            Sheet sheet = wb.getSheetAt(i);
+            buf.append(sheet.getSheetName()).append('\n');
+            for (Row row: sheet) {
+                for (Cell cell: row) {
+                    buf.append(row.getRowNum()).append(',').append(cell.getColumnIndex()).append('=')
+                            .append(cell.toString()).append('\n');
+                }
+            }
+        }
+        return buf.toString();
+    }
+}
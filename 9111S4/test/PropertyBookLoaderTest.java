@@ -0,0 +1,123 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.hotan.ninetripleone.supply.forms.ComponentHandReceipt;
+import com.hotan.ninetripleone.supply.forms.FormType;
+import com.hotan.ninetripleone.supply.forms.UnitLevelHandReceipt;
+import com.hotan.ninetripleone.supply.model.PropertyBook;
+import com.hotan.ninetripleone.supply.model.PropertyBookLoader;
+import com.hotan.ninetripleone.supply.model.PropertyBookLoader.FileReport;
+import com.hotan.ninetripleone.supply.util.FormatException;
+import com.hotan.ninetripleone.supply.util.POILoader;
+import com.hotan.ninetripleone.supply.util.POITemplateLoader;
+
+
+public class PropertyBookLoaderTest {
+
+    private static final String UIC = "WTN6A0";
+
+    private static final String[] TEAMS = {"911", "912", "913", "914", "915", "916"};
+
+    private static File mDir;
+
+    private static PropertyBook mExpected;
+
+    @BeforeClass
+    public static void setupClass() throws IOException, FormatException {
+        mExpected = new PropertyBook(new UnitLevelHandReceipt(POILoader.getXLSWorkbook("9111_UNIT_HR.xls")),
+                new ComponentHandReceipt(POILoader.getXLSWorkbook("ComponentHandReceipt.xls")));
+
+        // Every team has both receipts
+        for (String team: TEAMS) {
+            HSSFWorkbook unit = POILoader.getXLSWorkbook("9111_UNIT_HR.xls");
+            unit.getSheetAt(0).getRow(3).getCell(5).setCellValue("TO: " + team + "/MITCHELL, JAMES/CPT");
+            mDir = HandReceiptFixtures.write(unit, PropertyBookLoaderTest.class, team + "_UNIT_HR.xls")
+                    .getParentFile();
+
+            HSSFWorkbook comp = POILoader.getXLSWorkbook("ComponentHandReceipt.xls");
+            comp.getSheetAt(0).getRow(4).getCell(6).setCellValue("SHR NUMBER: " + team);
+            HandReceiptFixtures.write(comp, PropertyBookLoaderTest.class, team + "_COMP_HR.xls");
+        }
+
+        // A team without a Component hand receipt, a DA 2404, a file that is
+        // not a workbook and a file that is not a XLS file.
+        HSSFWorkbook unit = POILoader.getXLSWorkbook("9111_UNIT_HR.xls");
+        unit.getSheetAt(0).getRow(3).getCell(5).setCellValue("TO: 999/MITCHELL, JAMES/CPT");
+        HandReceiptFixtures.write(unit, PropertyBookLoaderTest.class, "999_UNIT_HR.xls");
+        HandReceiptFixtures.write(POITemplateLoader.getXLS2404(), PropertyBookLoaderTest.class, "2404.xls");
+        writeText(new File(mDir, "corrupt.xls"));
+        writeText(new File(mDir, "notes.txt"));
+    }
+
+    private static void writeText(File file) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write("Not a workbook".getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+
+    @Test
+    public void testLoad() throws Exception {
+        PropertyBookLoader.Result result = new PropertyBookLoader(2).load(mDir);
+        for (FileReport report: result.getReports()) {
+            System.out.println(getClass().getSimpleName() + " " + report);
+        }
+        System.out.println(getClass().getSimpleName() + " total: " + result.getMillis() + "ms");
+
+        assertEquals("Incorrect number of PropertyBooks", TEAMS.length, result.getPropertyBooks().size());
+        for (String team: TEAMS) {
+            PropertyBook book = result.getPropertyBook(UIC, team);
+            assertNotNull("No PropertyBook for " + team, book);
+            assertEquals("Incorrect team", team, book.getTeam());
+            assertEquals("Incorrect groups of " + team, mExpected.getGroups(), book.getGroups());
+        }
+
+        assertEquals("Incorrect number of files", TEAMS.length * 2 + 3, result.getReports().size());
+        assertEquals("Incorrect failures", 1, result.getFailures().size());
+        FileReport corrupt = result.getFailures().get(0);
+        assertEquals("Incorrect failed file", "corrupt.xls", corrupt.getFile().getName());
+        assertEquals("Incorrect type", FormType.UNKNOWN, corrupt.getType());
+        assertNull("Failed file has a key", corrupt.getKey());
+
+        FileReport inspection = result.getReports().get(0);
+        assertEquals("Incorrect first file", "2404.xls", inspection.getFile().getName());
+        assertEquals("Incorrect type", FormType.DA_2404, inspection.getType());
+        assertNull("DA 2404 has a key", inspection.getKey());
+
+        assertEquals("Incorrect team failures", 1, result.getTeamFailures().size());
+        assertTrue("Missing unpaired team", 
+                result.getTeamFailures().containsKey(PropertyBookLoader.key(UIC, "999")));
+    }
+
+    @Test
+    public void testSameAsSerial() throws Exception {
+        PropertyBookLoader.Result serial = new PropertyBookLoader(1).load(mDir);
+        PropertyBookLoader.Result concurrent = new PropertyBookLoader(4).load(mDir);
+        System.out.println(getClass().getSimpleName() + " 1 thread: " + serial.getMillis() 
+                + "ms 4 threads: " + concurrent.getMillis() + "ms");
+        assertEquals("Incorrect PropertyBooks", serial.getPropertyBooks().keySet(), 
+                concurrent.getPropertyBooks().keySet());
+        for (int i = 0; i < serial.getReports().size(); ++i) {
+            assertEquals("Incorrect report order", serial.getReports().get(i).getFile(), 
+                    concurrent.getReports().get(i).getFile());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoThreads() {
+        new PropertyBookLoader(0);
+    }
+}
@@ -0,0 +1,157 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.poi.hssf.usermodel.HSSFCell;
+import org.apache.poi.hssf.usermodel.HSSFRow;
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.hotan.ninetripleone.supply.forms.ComponentHandReceipt;
+import com.hotan.ninetripleone.supply.forms.UnitLevelHandReceipt;
+import com.hotan.ninetripleone.supply.model.AccountableComponent;
+import com.hotan.ninetripleone.supply.model.EndItem;
+import com.hotan.ninetripleone.supply.model.EndItemGroup;
+import com.hotan.ninetripleone.supply.model.PropertyBook;
+import com.hotan.ninetripleone.supply.model.PropertyBookDelta;
+import com.hotan.ninetripleone.supply.util.FormatException;
+import com.hotan.ninetripleone.supply.util.POILoader;
+
+
+public class PropertyBookUpdateTest {
+
+    private static final String SERIAL_NSN = "5825015795635", SERIAL_LIN = "09065N";
+    private static final String QTY_NSN = "5820015879864", QTY_LIN = "R05007";
+    private static final String RENAMED_NSN = "1005015030141", RENAMED_LIN = "M60256";
+    private static final String COEI_NSN = "1240014306944", COEI_LIN = "B67839";
+
+    private PropertyBook mBook;
+
+    @Before
+    public void setup() throws IOException, FormatException {
+        mBook = new PropertyBook(new UnitLevelHandReceipt(POILoader.getXLSWorkbook("9111_UNIT_HR.xls")),
+                new ComponentHandReceipt(POILoader.getXLSWorkbook("ComponentHandReceipt.xls")));
+    }
+
+    @Test
+    public void testSameReceipt() throws IOException {
+        List<EndItemGroup> before = new ArrayList<EndItemGroup>(mBook.getGroups());
+        PropertyBookDelta delta = mBook.update(
+                new UnitLevelHandReceipt(POILoader.getXLSWorkbook("9111_UNIT_HR.xls")));
+        assertTrue("Unexpected delta " + delta, delta.isEmpty());
+        assertEquals("Incorrect groups", before.size(), mBook.size());
+        for (int i = 0; i < before.size(); ++i) {
+            assertSame("Group replaced", before.get(i), mBook.getGroups().get(i));
+            assertEquals("Items changed", before.get(i).size(), mBook.getGroups().get(i).size());
+        }
+    }
+
+    @Test
+    public void testDelta() throws IOException {
+        // Values entered by the user that must survive the update
+        EndItemGroup serialGroup = mBook.getGroup(SERIAL_NSN, SERIAL_LIN);
+        EndItem kept = serialGroup.getItems().get(0);
+        kept.setLocation("ARMS ROOM");
+        serialGroup.setMos("18E");
+        EndItemGroup coeiGroup = mBook.getGroup(COEI_NSN, COEI_LIN);
+        AccountableComponent component = coeiGroup.getItems().get(0).getCOEI().get(0);
+        component.setOnHandQty(3);
+        EndItemGroup qtyGroup = mBook.getGroup(QTY_NSN, QTY_LIN);
+        int qty = qtyGroup.size();
+        String droppedSerial = serialGroup.getItems().get(serialGroup.size() - 1).getSn();
+
+        HSSFWorkbook wb = POILoader.getXLSWorkbook("9111_UNIT_HR.xls");
+        HSSFSheet sheet = wb.getSheetAt(0);
+        findSerial(sheet, droppedSerial).setCellValue("    NEW0001");
+        HSSFRow qtyRow = findHeader(sheet, QTY_NSN, QTY_LIN);
+        qtyRow.getCell(9).setCellValue(Integer.toString(qty + 1));
+        findHeader(sheet, RENAMED_NSN, RENAMED_LIN).getCell(0).setCellValue("ZZ999Z");
+
+        PropertyBookDelta delta = mBook.update(new UnitLevelHandReceipt(wb));
+        assertEquals("Incorrect added groups", 1, delta.getAddedGroups().size());
+        assertEquals("Incorrect added group", "ZZ999Z", delta.getAddedGroups().get(0).getLIN());
+        assertEquals("Incorrect removed groups", 1, delta.getRemovedGroups().size());
+        assertEquals("Incorrect removed group", RENAMED_LIN, delta.getRemovedGroups().get(0).getLIN());
+        assertEquals("Incorrect changed groups", 2, delta.getChanges().size());
+
+        assertEquals("Incorrect groups", 49, mBook.size());
+        assertNull("Removed group still found", mBook.getGroup(RENAMED_NSN, RENAMED_LIN));
+        assertNotNull("Added group not found", mBook.getGroup(RENAMED_NSN, "ZZ999Z"));
+
+        assertSame("Serialized group replaced", serialGroup, mBook.getGroup(SERIAL_NSN, SERIAL_LIN));
+        assertSame("EndItem replaced", kept, serialGroup.getItems().get(0));
+        assertEquals("Location lost", "ARMS ROOM", kept.getLocation());
+        assertEquals("MOS lost", "18E", serialGroup.getMos());
+        assertFalse("Serial number not removed", hasSerial(serialGroup, droppedSerial));
+        assertTrue("Serial number not added", hasSerial(serialGroup, "NEW0001"));
+
+        assertEquals("Incorrect quantity", qty + 1, qtyGroup.size());
+        assertSame("Group replaced", coeiGroup, mBook.getGroup(COEI_NSN, COEI_LIN));
+        assertEquals("On hand quantity lost", 3, coeiGroup.getItems().get(0).getCOEI().get(0).getOnHandQty());
+    }
+
+    @Test
+    public void testBaselineNotShared() throws IOException, FormatException {
+        UnitLevelHandReceipt unitHR = new UnitLevelHandReceipt(POILoader.getXLSWorkbook("9111_UNIT_HR.xls"));
+        PropertyBook book = new PropertyBook(unitHR,
+                new ComponentHandReceipt(POILoader.getXLSWorkbook("ComponentHandReceipt.xls")));
+        EndItemGroup qtyGroup = book.getGroup(QTY_NSN, QTY_LIN);
+        int qty = qtyGroup.size();
+
+        // Changes to the book or to the hand receipt it was built from are not the baseline
+        qtyGroup.add(new EndItem(qtyGroup.getName(), QTY_LIN, QTY_NSN));
+        unitHR.getGroups().get(0).remove(unitHR.getGroups().get(0).getItems().get(0));
+
+        PropertyBookDelta delta = book.update(
+                new UnitLevelHandReceipt(POILoader.getXLSWorkbook("9111_UNIT_HR.xls")));
+        assertTrue("Unexpected delta " + delta, delta.isEmpty());
+        assertEquals("Added EndItem removed", qty + 1, qtyGroup.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOtherTeam() throws IOException {
+        HSSFWorkbook wb = POILoader.getXLSWorkbook("9111_UNIT_HR.xls");
+        wb.getSheetAt(0).getRow(3).getCell(5).setCellValue("TO: 912/MITCHELL, JAMES/CPT");
+        mBook.update(new UnitLevelHandReceipt(wb));
+    }
+
+    private static boolean hasSerial(EndItemGroup group, String serial) {
+        for (EndItem item: group.getItems()) {
+            if (item.getSn().trim().equals(serial.trim())) return true;
+        }
+        return false;
+    }
+
+    private static HSSFRow findHeader(HSSFSheet sheet, String nsn, String lin) {
+        for (int i = 7; i <= sheet.getLastRowNum(); ++i) {
+            HSSFRow row = sheet.getRow(i);
+            if (row == null || row.getCell(0) == null || row.getCell(2) == null) continue;
+            if (lin.equals(row.getCell(0).getStringCellValue()) && nsn.equals(row.getCell(2).getStringCellValue()))
+                return row;
+        }
+        throw new IllegalStateException("No header row for " + nsn + " " + lin);
+    }
+
+    private static HSSFCell findSerial(HSSFSheet sheet, String serial) {
+        for (int i = 7; i <= sheet.getLastRowNum(); ++i) {
+            HSSFRow row = sheet.getRow(i);
+            if (row == null) continue;
+            for (int col: new int[] {0, 4, 5}) {
+                HSSFCell cell = row.getCell(col);
+                if (cell != null && cell.getCellType() == HSSFCell.CELL_TYPE_STRING
+                        && cell.getStringCellValue().trim().equals(serial.trim()))
+                    return cell;
+            }
+        }
+        throw new IllegalStateException("No cell for serial " + serial);
+    }
+}
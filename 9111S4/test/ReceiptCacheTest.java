@@ -0,0 +1,248 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.hotan.ninetripleone.supply.forms.ComponentHandReceipt;
+import com.hotan.ninetripleone.supply.forms.ReceiptCache;
+import com.hotan.ninetripleone.supply.forms.UnitLevelHandReceipt;
+import com.hotan.ninetripleone.supply.model.EndItem;
+import com.hotan.ninetripleone.supply.model.EndItemGroup;
+import com.hotan.ninetripleone.supply.util.FormatException;
+import com.hotan.ninetripleone.supply.util.POILoader;
+
+
+public class ReceiptCacheTest {
+
+    private static final long MAX_BYTES = 16 * 1024 * 1024;
+
+    private static final int ROUNDS = 5;
+
+    private File mUnitFile, mCompFile, mDir;
+
+    private ReceiptCache mCache;
+
+    @Before
+    public void setup() throws IOException {
+        mUnitFile = POILoader.getDataFile("9111_UNIT_HR.xls");
+        mCompFile = HandReceiptFixtures.write(POILoader.getXLSWorkbook("ComponentHandReceipt.xls"),
+                ReceiptCacheTest.class, "comp_hr.xls");
+        mDir = new File(mCompFile.getParentFile(), "cache");
+        new ReceiptCache(mDir, MAX_BYTES).clear();
+        mCache = new ReceiptCache(mDir, MAX_BYTES);
+    }
+
+    @Test
+    public void testUnitHR() throws IOException, FormatException {
+        UnitLevelHandReceipt parsed = mCache.loadUnit(mUnitFile);
+        assertEquals("Incorrect misses", 1, mCache.getMisses());
+        assertTrue("No entry saved", mCache.contains(mUnitFile));
+
+        UnitLevelHandReceipt cached = mCache.loadUnit(mUnitFile);
+        assertEquals("Incorrect hits", 1, mCache.getHits());
+        UnitLevelHandReceipt expected = new UnitLevelHandReceipt(POILoader.getXLSWorkbook(mUnitFile));
+        for (UnitLevelHandReceipt actual: new UnitLevelHandReceipt[] {parsed, cached}) {
+            assertEquals("Incorrect date", expected.getDatePrepared(), actual.getDatePrepared());
+            assertEquals("Incorrect UIC", expected.getUIC(), actual.getUIC());
+            assertEquals("Incorrect DESC", expected.getDESC(), actual.getDESC());
+            assertEquals("Incorrect team", expected.getTeam(), actual.getTeam());
+            assertEquals("Incorrect from operator", expected.getWhoFrom(), actual.getWhoFrom());
+            assertEquals("Incorrect to operator", expected.getWhoTo(), actual.getWhoTo());
+            assertSame("Incorrect layout", expected.getLayout(), actual.getLayout());
+            assertEquals("Incorrect groups", expected.getGroups(), actual.getGroups());
+            for (int i = 0; i < expected.getGroups().size(); ++i) {
+                EndItemGroup group = expected.getGroups().get(i);
+                assertEquals("Incorrect name for " + group, group.getName(), actual.getGroups().get(i).getName());
+                assertEquals("Incorrect items for " + group, group.getItems(), actual.getGroups().get(i).getItems());
+            }
+        }
+        assertTrue("Cached hand receipt is not detached", cached.isDetached());
+        assertTrue("Workbook not reopened", cached.getWorkbook().getNumberOfSheets() > 0);
+    }
+
+    @Test
+    public void testComponentHR() throws IOException, FormatException {
+        mCache.loadComponent(mCompFile);
+        ComponentHandReceipt cached = mCache.loadComponent(mCompFile);
+        assertEquals("Incorrect misses", 1, mCache.getMisses());
+        assertEquals("Incorrect hits", 1, mCache.getHits());
+
+        HSSFWorkbook wb = POILoader.getXLSWorkbook(mCompFile);
+        ComponentHandReceipt expected = new ComponentHandReceipt(wb);
+        assertEquals("Incorrect UIC", expected.getUIC(), cached.getUIC());
+        assertEquals("Incorrect DESC", expected.getDESC(), cached.getDESC());
+        assertEquals("Incorrect team", expected.getTeam(), cached.getTeam());
+        assertEquals("Incorrect from operator", expected.getWhoFrom(), cached.getWhoFrom());
+        assertEquals("Incorrect to operator", expected.getWhoTo(), cached.getWhoTo());
+        assertEquals("Incorrect groups", expected.getGroups(), cached.getGroups());
+        for (int g = 0; g < expected.getGroups().size(); ++g) {
+            EndItemGroup group = expected.getGroups().get(g);
+            List<EndItem> items = group.getItems();
+            List<EndItem> otherItems = cached.getGroups().get(g).getItems();
+            assertEquals("Incorrect number of items for " + group, items.size(), otherItems.size());
+            for (int i = 0; i < items.size(); ++i) {
+                assertEquals("Incorrect item for " + group, items.get(i).getSn(), otherItems.get(i).getSn());
+                assertEquals("Incorrect COEI for " + group, items.get(i).getCOEI(), otherItems.get(i).getCOEI());
+                assertEquals("Incorrect BII for " + group, items.get(i).getBII(), otherItems.get(i).getBII());
+                assertEquals("Incorrect sheet for " + items.get(i), expected.getSheet(items.get(i)).getSheetName(),
+                        cached.getSheet(otherItems.get(i)).getSheetName());
+            }
+        }
+    }
+
+    @Test
+    public void testChangedFile() throws IOException, FormatException {
+        mCache.loadComponent(mCompFile);
+        writeVariant(mCompFile, "CHANGED");
+        ComponentHandReceipt hr = mCache.loadComponent(mCompFile);
+        assertEquals("Changed file read from the cache", 0, mCache.getHits());
+        assertEquals("Incorrect misses", 2, mCache.getMisses());
+        assertEquals("Incorrect number of entries", 2, mCache.size());
+        assertTrue("Changed serial number missing", findSerial(hr, "CHANGED"));
+    }
+
+    @Test
+    public void testUnchangedFileNotRead() throws IOException, FormatException {
+        File file = new File(mCompFile.getParentFile(), "stamped.xls");
+        writeVariant(file, "STAMPED");
+        mCache.loadComponent(file);
+        long length = file.length(), modified = file.lastModified();
+
+        // Same size and time, the content is not read to find the entry
+        byte[] garbage = new byte[(int) length];
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(garbage);
+        } finally {
+            out.close();
+        }
+        assertTrue("Unable to restore the time", file.setLastModified(modified));
+        assertTrue("Entry not found", findSerial(mCache.loadComponent(file), "STAMPED"));
+        assertEquals("Incorrect hits", 1, mCache.getHits());
+
+        // Once modified the file is hashed again
+        writeVariant(file, "RESTAMPED");
+        assertTrue("Unable to change the time", file.setLastModified(modified + 2000));
+        assertTrue("Changed file read from the cache", findSerial(mCache.loadComponent(file), "RESTAMPED"));
+        assertEquals("Incorrect misses", 2, mCache.getMisses());
+    }
+
+    @Test
+    public void testReopen() throws IOException, FormatException {
+        mCache.loadUnit(mUnitFile);
+        mCache.loadComponent(mCompFile);
+        ReceiptCache reopened = new ReceiptCache(mDir, MAX_BYTES);
+        assertEquals("Incorrect number of entries", 2, reopened.size());
+        assertEquals("Incorrect size", mCache.getSize(), reopened.getSize());
+        reopened.loadUnit(mUnitFile);
+        reopened.loadComponent(mCompFile);
+        assertEquals("Incorrect hits", 2, reopened.getHits());
+        assertEquals("Incorrect misses", 0, reopened.getMisses());
+    }
+
+    @Test
+    public void testEviction() throws IOException, FormatException {
+        File[] files = new File[3];
+        for (int i = 0; i < files.length; ++i) {
+            files[i] = new File(mCompFile.getParentFile(), "variant" + i + ".xls");
+            writeVariant(files[i], "VARIANT" + i);
+        }
+        mCache.loadComponent(files[0]);
+        long entryBytes = mCache.getSize();
+
+        // Room for two of the three entries
+        ReceiptCache cache = new ReceiptCache(new File(mDir, "lru"), 2 * entryBytes + entryBytes / 2);
+        cache.clear();
+        cache.loadComponent(files[0]);
+        cache.loadComponent(files[1]);
+        cache.loadComponent(files[0]);
+        cache.loadComponent(files[2]);
+        assertEquals("Incorrect number of entries", 2, cache.size());
+        assertTrue("Too many bytes " + cache.getSize(), cache.getSize() <= cache.getMaxSize());
+        assertTrue("Recently used entry evicted", cache.contains(files[0]));
+        assertFalse("Least recently used entry kept", cache.contains(files[1]));
+        assertTrue("Newest entry evicted", cache.contains(files[2]));
+        assertEquals("Incorrect entry files", 2, new File(mDir, "lru").list().length);
+    }
+
+    @Test
+    public void testCorruptEntry() throws IOException, FormatException {
+        mCache.loadComponent(mCompFile);
+        OutputStream out = new FileOutputStream(new File(mDir, ReceiptCache.hash(mCompFile) + ReceiptCache.SUFFIX));
+        try {
+            out.write(new byte[] { 1, 2, 3, 4, 5 });
+        } finally {
+            out.close();
+        }
+        ComponentHandReceipt hr = mCache.loadComponent(mCompFile);
+        assertEquals("Read a corrupt entry", 0, mCache.getHits());
+        assertEquals("Incorrect number of groups", new ComponentHandReceipt(
+                POILoader.getXLSWorkbook(mCompFile)).getGroups().size(), hr.getGroups().size());
+        mCache.loadComponent(mCompFile);
+        assertEquals("Entry not rewritten", 1, mCache.getHits());
+    }
+
+    @Test
+    public void testBenchmark() throws IOException, FormatException {
+        for (File file: new File[] {mUnitFile, mCompFile}) {
+            boolean unit = file == mUnitFile;
+            long start = System.nanoTime();
+            for (int i = 0; i < ROUNDS; ++i) {
+                if (unit) UnitLevelHandReceipt.detached(file);
+                else ComponentHandReceipt.detached(file);
+            }
+            long parseMillis = (System.nanoTime() - start) / 1000000 / ROUNDS;
+            if (unit) mCache.loadUnit(file);
+            else mCache.loadComponent(file);
+            start = System.nanoTime();
+            for (int i = 0; i < ROUNDS; ++i) {
+                if (unit) mCache.loadUnit(file);
+                else mCache.loadComponent(file);
+            }
+            long cachedMillis = (System.nanoTime() - start) / 1000000 / ROUNDS;
+
+            // A new cache hashes the file before it finds the entry
+            start = System.nanoTime();
+            for (int i = 0; i < ROUNDS; ++i) {
+                ReceiptCache reopened = new ReceiptCache(mDir, MAX_BYTES);
+                if (unit) reopened.loadUnit(file);
+                else reopened.loadComponent(file);
+            }
+            long reopenedMillis = (System.nanoTime() - start) / 1000000 / ROUNDS;
+            System.out.println(getClass().getSimpleName() + " " + file.getName() + " " + file.length()
+                    + " bytes, parse: " + parseMillis + "ms, cached: " + cachedMillis + "ms, reopened: "
+                    + reopenedMillis + "ms");
+        }
+        assertEquals("Incorrect hits", 2 * ROUNDS, mCache.getHits());
+    }
+
+    private static void writeVariant(File file, String serial) throws IOException {
+        HSSFWorkbook wb = POILoader.getXLSWorkbook("ComponentHandReceipt.xls");
+        wb.getSheetAt(3).getRow(7).getCell(0).setCellValue("SERIAL NO: " + serial);
+        OutputStream out = new FileOutputStream(file);
+        try {
+            wb.write(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static boolean findSerial(ComponentHandReceipt hr, String serial) {
+        for (EndItemGroup group: hr.getGroups()) {
+            for (EndItem item: group.getItems()) {
+                if (serial.equals(item.getSn())) return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,266 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.hotan.ninetripleone.supply.forms.ComponentHandReceipt;
+import com.hotan.ninetripleone.supply.forms.UnitLevelHandReceipt;
+import com.hotan.ninetripleone.supply.model.EndItem;
+import com.hotan.ninetripleone.supply.model.EndItemGroup;
+import com.hotan.ninetripleone.supply.util.BackgroundExecutor;
+import com.hotan.ninetripleone.supply.util.Flow;
+import com.hotan.ninetripleone.supply.util.POILoader;
+
+
+public class ReceiptPublisherTest {
+
+    private static File mScaleFile;
+
+    @BeforeClass
+    public static void setupClass() throws IOException {
+        mScaleFile = HandReceiptFixtures.write(HandReceiptFixtures.copyComponentSheets(
+                POILoader.getXLSWorkbook("ComponentHandReceipt.xls"), 6),
+                ReceiptPublisherTest.class, "scale_comp_hr.xls");
+    }
+
+    @Test
+    public void testUnitGroups() throws Exception {
+        List<EndItemGroup> expected = new UnitLevelHandReceipt(POILoader.getXLSWorkbook("9111_UNIT_HR.xls"))
+                .getGroups();
+        RecordingSubscriber<EndItemGroup> subscriber = new RecordingSubscriber<EndItemGroup>(1);
+        UnitLevelHandReceipt.publisher(POILoader.getDataFile("9111_UNIT_HR.xls")).subscribe(subscriber);
+        subscriber.await();
+        assertNull("Unexpected error", subscriber.mError);
+
+        // Parts of a group split over pages are published as they are read
+        List<EndItemGroup> groups = new ArrayList<EndItemGroup>();
+        for (EndItemGroup group: subscriber.mItems) {
+            int index = groups.indexOf(group);
+            if (index == -1) 
+                groups.add(group);
+            else
+                groups.get(index).combine(group);
+        }
+        assertEquals("Incorrect groups", expected, groups);
+        for (int i = 0; i < expected.size(); ++i) {
+            assertEquals("Incorrect items of " + expected.get(i), expected.get(i).size(), groups.get(i).size());
+        }
+    }
+
+    @Test
+    public void testComponentItems() throws Exception {
+        RecordingSubscriber<EndItem> subscriber = new RecordingSubscriber<EndItem>(Long.MAX_VALUE);
+        ComponentHandReceipt.publisher(POILoader.getDataFile("ComponentHandReceipt.xls")).subscribe(subscriber);
+        subscriber.await();
+        assertNull("Unexpected error", subscriber.mError);
+        assertEquals("Incorrect number of items", 53, subscriber.mItems.size());
+    }
+
+    @Test
+    public void testDemand() throws Exception {
+        final CountDownLatch received = new CountDownLatch(5);
+        final List<EndItem> items = new ArrayList<EndItem>();
+        final Flow.Subscription[] subscription = new Flow.Subscription[1];
+        ComponentHandReceipt.publisher(mScaleFile).subscribe(new Flow.Subscriber<EndItem>() {
+
+            @Override
+            public void onSubscribe(Flow.Subscription s) {
+                subscription[0] = s;
+                s.request(5);
+            }
+
+            @Override
+            public void onNext(EndItem item) {
+                synchronized (items) {
+                    items.add(item);
+                }
+                received.countDown();
+            }
+
+            @Override
+            public void onError(Throwable throwable) {}
+
+            @Override
+            public void onComplete() {}
+        });
+        assertTrue("Requested items not received", received.await(10, TimeUnit.SECONDS));
+        Thread.sleep(200);
+        synchronized (items) {
+            assertEquals("Received more than requested", 5, items.size());
+        }
+        subscription[0].cancel();
+    }
+
+    @Test
+    public void testIllegalRequest() throws Exception {
+        RecordingSubscriber<EndItem> subscriber = new RecordingSubscriber<EndItem>(0);
+        ComponentHandReceipt.publisher(mScaleFile).subscribe(subscriber);
+        subscriber.await();
+        assertTrue("Incorrect error " + subscriber.mError, subscriber.mError instanceof IllegalArgumentException);
+        assertFalse("Completed after an error", subscriber.mCompleted);
+        assertEquals("Received items without demand", 0, subscriber.mItems.size());
+    }
+
+    @Test
+    public void testIdleSubscribers() throws Exception {
+        // More idle subscriptions than threads of the shared pool
+        final List<Flow.Subscription> subscriptions = new ArrayList<Flow.Subscription>();
+        for (int i = 0; i < BackgroundExecutor.MAX_THREADS + 1; ++i) {
+            ComponentHandReceipt.publisher(mScaleFile).subscribe(new Flow.Subscriber<EndItem>() {
+
+                @Override
+                public void onSubscribe(Flow.Subscription subscription) {
+                    subscriptions.add(subscription);
+                }
+
+                @Override
+                public void onNext(EndItem item) {}
+
+                @Override
+                public void onError(Throwable throwable) {}
+
+                @Override
+                public void onComplete() {}
+            });
+        }
+        try {
+            final CountDownLatch ran = new CountDownLatch(1);
+            BackgroundExecutor.getShared().execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    ran.countDown();
+                }
+            });
+            assertTrue("Idle subscribers hold up the shared pool", ran.await(10, TimeUnit.SECONDS));
+        } finally {
+            for (Flow.Subscription subscription: subscriptions) {
+                subscription.cancel();
+            }
+        }
+    }
+
+    @Test
+    public void testSlowSubscriberHeap() throws Exception {
+        long workbookRetained = HandReceiptFixtures.retainedHeap(new Callable<HSSFWorkbook>() {
+            @Override
+            public HSSFWorkbook call() throws Exception {
+                return POILoader.getXLSWorkbook(mScaleFile);
+            }
+        });
+
+        final long before = HandReceiptFixtures.usedHeapAfterGC();
+        final long[] live = new long[2];
+        final int[] outstanding = new int[1];
+        final CountDownLatch done = new CountDownLatch(1);
+        ComponentHandReceipt.publisher(mScaleFile).subscribe(new Flow.Subscriber<EndItem>() {
+
+            private Flow.Subscription mSubscription;
+
+            private int mCount;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                mSubscription = subscription;
+                outstanding[0] = 1;
+                mSubscription.request(1);
+            }
+
+            @Override
+            public void onNext(EndItem item) {
+                outstanding[0]--;
+                if (outstanding[0] < 0) done.countDown();
+                // Render slowly, one item at a time
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                mCount++;
+                if (mCount == 50) live[0] = HandReceiptFixtures.usedHeapAfterGC() - before;
+                if (mCount == 300) live[1] = HandReceiptFixtures.usedHeapAfterGC() - before;
+                outstanding[0]++;
+                mSubscription.request(1);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                done.countDown();
+            }
+
+            @Override
+            public void onComplete() {
+                done.countDown();
+            }
+        });
+        assertTrue("Publisher did not finish", done.await(60, TimeUnit.SECONDS));
+        System.out.println(getClass().getSimpleName() + " workbook retained: " + workbookRetained
+                + ", live at item 50: " + live[0] + ", at item 300: " + live[1]);
+        assertTrue("Item handed over without demand", outstanding[0] >= 0);
+        assertTrue("Live heap " + live[1] + " not below workbook " + workbookRetained,
+                live[1] < workbookRetained);
+        assertTrue("Live heap grew from " + live[0] + " to " + live[1], live[1] - live[0] < workbookRetained / 4);
+    }
+
+    /**
+     * Records everything it receives, requesting a fixed number of items at a time.
+     */
+    private static class RecordingSubscriber<T> implements Flow.Subscriber<T> {
+
+        private final long mBatch;
+
+        private final CountDownLatch mDone = new CountDownLatch(1);
+
+        private final List<T> mItems = new ArrayList<T>();
+
+        private Flow.Subscription mSubscription;
+
+        private volatile Throwable mError;
+
+        private volatile boolean mCompleted;
+
+        RecordingSubscriber(long batch) {
+            mBatch = batch;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            mSubscription = subscription;
+            mSubscription.request(mBatch);
+        }
+
+        @Override
+        public void onNext(T item) {
+            mItems.add(item);
+            if (mBatch != Long.MAX_VALUE) mSubscription.request(mBatch);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            mError = throwable;
+            mDone.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            mCompleted = true;
+            mDone.countDown();
+        }
+
+        void await() throws InterruptedException {
+            assertTrue("Publisher did not finish", mDone.await(30, TimeUnit.SECONDS));
+        }
+    }
+}
@@ -0,0 +1,182 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.junit.Test;
+
+import com.hotan.ninetripleone.supply.forms.UnitLevelHandReceipt;
+import com.hotan.ninetripleone.supply.model.EndItem;
+import com.hotan.ninetripleone.supply.model.EndItemGroup;
+import com.hotan.ninetripleone.supply.model.SerialNumberSet;
+
+
+public class SerialNumberSetTest {
+
+    @Test
+    public void testSequentialRun() {
+        SerialNumberSet set = new SerialNumberSet();
+        for (int i = 123400; i <= 124399; ++i) {
+            assertTrue("Not added W" + i, set.add("W" + i));
+        }
+        assertEquals("Incorrect size", 1000, set.size());
+        assertEquals("Incorrect runs", 1, set.getRunCount());
+        assertTrue("Missing first", set.contains("W123400"));
+        assertTrue("Missing last", set.contains("W124399"));
+        assertFalse("Contains next", set.contains("W124400"));
+        assertFalse("Contains other prefix", set.contains("X123400"));
+        assertFalse("Duplicate added", set.add("W123500"));
+
+        int expected = 123400;
+        for (String serial: set) {
+            assertEquals("Incorrect iteration", "W" + expected++, serial);
+        }
+        assertEquals("Incorrect iteration count", 124400, expected);
+    }
+
+    @Test
+    public void testInsertionOrderAndPadding() {
+        List<String> serials = Arrays.asList("    W000998", "    W000999", "    W001000", "XS5366", 
+                "2CKSA04016", "    W001001", "5DKSA15367", "W1", "W01", "123456789012345678901234");
+        SerialNumberSet set = new SerialNumberSet();
+        for (String serial: serials) {
+            set.add(serial);
+        }
+        assertEquals("Incorrect size", serials.size(), set.size());
+        List<String> found = new ArrayList<String>();
+        for (String serial: set) {
+            found.add(serial);
+        }
+        assertEquals("Incorrect serial numbers", serials, found);
+        assertTrue("W1 and W01 are different", set.contains("W01") && set.contains("W1"));
+        assertFalse("Contains W001", set.contains("W001"));
+    }
+
+    @Test
+    public void testRemoveSplitsRun() {
+        SerialNumberSet set = new SerialNumberSet();
+        for (int i = 0; i < 10; ++i) {
+            set.add("SN" + i);
+        }
+        assertTrue("Not removed", set.remove("SN5"));
+        assertFalse("Removed twice", set.remove("SN5"));
+        assertTrue("Not removed", set.remove("SN0"));
+        assertTrue("Not removed", set.remove("SN9"));
+        assertEquals("Incorrect size", 7, set.size());
+        assertEquals("Incorrect runs", 2, set.getRunCount());
+        List<String> found = new ArrayList<String>();
+        for (String serial: set) {
+            found.add(serial);
+        }
+        assertEquals("Incorrect serial numbers",
+                Arrays.asList("SN1", "SN2", "SN3", "SN4", "SN6", "SN7", "SN8"), found);
+        assertTrue("Re-add failed", set.add("SN5"));
+        assertTrue("Missing re-added", set.contains("SN5"));
+    }
+
+    @Test
+    public void testLazyEndItems() {
+        SerialNumberSet set = new SerialNumberSet();
+        for (int i = 0; i < 100; ++i) {
+            set.add(String.format("W%05d", i));
+        }
+        EndItemGroup group = new EndItemGroup("RADIO", "R12345", "5820000000000", set);
+        assertEquals("Incorrect size", 100, group.size());
+
+        EndItem touched = group.getItem("W00042");
+        assertNotNull("No EndItem", touched);
+        assertSame("EndItem created twice", touched, group.getItem("W00042"));
+        assertNull("EndItem of missing serial", group.getItem("W00100"));
+        assertEquals("Incorrect size", 100, group.size());
+
+        EndItem added = new EndItem("RADIO", "R12345", "5820000000000");
+        added.setSn("W00043");
+        added.setLocation("CAGE");
+        group.add(added);
+        assertEquals("Pending serial number added twice", 100, group.size());
+        assertSame("Added EndItem not used", added, group.getItem("W00043"));
+
+        assertTrue("Serial number not removed", group.removeSerialNumber("W00099"));
+        assertEquals("Incorrect size", 99, group.size());
+        assertEquals("Incorrect items", 99, group.getItems().size());
+        assertSame("Touched EndItem replaced", touched, group.getItem("W00042"));
+    }
+
+    @Test
+    public void testSerialNumberChanged() {
+        SerialNumberSet set = new SerialNumberSet();
+        for (int i = 0; i < 10; ++i) {
+            set.add(String.format("W%05d", i));
+        }
+        EndItemGroup group = new EndItemGroup("RADIO", "R12345", "5820000000000", set);
+
+        EndItem renamed = group.getItem("W00001");
+        renamed.setSn("X00001");
+        assertSame("EndItem not found by its new serial number", renamed, group.getItem("X00001"));
+        assertNull("EndItem found by its old serial number", group.getItem("W00001"));
+        assertEquals("Incorrect size", 10, group.size());
+        assertTrue("Group does not contain the EndItem", group.contains(renamed));
+
+        assertTrue("EndItem not removed", group.remove(renamed));
+        assertNull("Removed EndItem found", group.getItem("X00001"));
+        assertEquals("Incorrect size", 9, group.size());
+        renamed.setSn("X00002");
+        assertNull("Removed EndItem still tracked", group.getItem("X00002"));
+
+        // Taking the serial number of a pending EndItem uses the existing EndItem
+        EndItem moved = group.getItem("W00002");
+        moved.setSn("W00005");
+        assertSame("EndItem not found by its new serial number", moved, group.getItem("W00005"));
+        assertEquals("Incorrect size", 8, group.size());
+        assertEquals("Incorrect items", 8, group.getItems().size());
+    }
+
+    @Test
+    public void testCombineMovesItems() {
+        EndItemGroup group = new EndItemGroup("RADIO", "R12345", "5820000000000", true);
+        EndItemGroup page = new EndItemGroup("RADIO", "R12345", "5820000000000", true);
+        EndItem item = new EndItem("RADIO", "R12345", "5820000000000");
+        item.setSn("W00001");
+        page.add(item);
+        page.addSerialNumber("W00002");
+
+        group.combine(page);
+        assertEquals("Incorrect size", 2, group.size());
+        item.setSn("X00001");
+        assertSame("EndItem not found by its new serial number", item, group.getItem("X00001"));
+        assertNull("Combined group still follows the EndItem", page.getItem("X00001"));
+        assertTrue("Group does not contain the EndItem", group.contains(item));
+    }
+
+    @Test
+    public void testRetainedHeap() throws Exception {
+        final HSSFWorkbook wb = HandReceiptFixtures.createUnitHR(400, 300);
+        long lazy = HandReceiptFixtures.retainedHeap(new Callable<UnitLevelHandReceipt>() {
+            @Override
+            public UnitLevelHandReceipt call() {
+                return new UnitLevelHandReceipt(wb);
+            }
+        });
+        long created = HandReceiptFixtures.retainedHeap(new Callable<UnitLevelHandReceipt>() {
+            @Override
+            public UnitLevelHandReceipt call() {
+                UnitLevelHandReceipt hr = new UnitLevelHandReceipt(wb);
+                for (EndItemGroup group: hr.getGroups()) {
+                    group.getItems();
+                }
+                return hr;
+            }
+        });
+        System.out.println(getClass().getSimpleName() + " retained heap of 60000 serials, lazy: " + lazy
+                + " all EndItems: " + created);
+        assertTrue("Lazy groups retained " + lazy + " not below " + created, lazy * 4 < created);
+    }
+}
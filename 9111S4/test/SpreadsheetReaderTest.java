@@ -0,0 +1,161 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.hotan.ninetripleone.supply.forms.ComponentHandReceipt;
+import com.hotan.ninetripleone.supply.forms.FormType;
+import com.hotan.ninetripleone.supply.forms.SpreadsheetBackend;
+import com.hotan.ninetripleone.supply.forms.SpreadsheetReader;
+import com.hotan.ninetripleone.supply.forms.UnitLevelHandReceipt;
+import com.hotan.ninetripleone.supply.model.EndItem;
+import com.hotan.ninetripleone.supply.model.EndItemGroup;
+import com.hotan.ninetripleone.supply.util.FormatException;
+import com.hotan.ninetripleone.supply.util.POILoader;
+
+
+public class SpreadsheetReaderTest {
+
+    private static final int ROUNDS = 5;
+
+    private static File mUnitFile, mCompFile, mScaleFile;
+
+    @BeforeClass
+    public static void setupClass() throws IOException {
+        mUnitFile = POILoader.getDataFile("9111_UNIT_HR.xls");
+        mCompFile = POILoader.getDataFile("ComponentHandReceipt.xls");
+        mScaleFile = HandReceiptFixtures.write(HandReceiptFixtures.copyComponentSheets(
+                POILoader.getXLSWorkbook(mCompFile), 6), SpreadsheetReaderTest.class, "scale_comp_hr.xls");
+    }
+
+    @Test
+    public void testSameRows() throws IOException, FormatException {
+        for (File file: new File[] {mUnitFile, mCompFile}) {
+            List<String> expected = rows(SpreadsheetBackend.USERMODEL, file);
+            assertTrue("No rows in " + file, expected.size() > 0);
+            for (SpreadsheetBackend backend: SpreadsheetBackend.values()) {
+                assertEquals("Incorrect rows from " + backend + " of " + file, expected, rows(backend, file));
+            }
+        }
+    }
+
+    @Test
+    public void testUnitHR() throws IOException, FormatException {
+        UnitLevelHandReceipt expected = new UnitLevelHandReceipt(POILoader.getXLSWorkbook(mUnitFile));
+        for (SpreadsheetBackend backend: SpreadsheetBackend.values()) {
+            UnitLevelHandReceipt actual = UnitLevelHandReceipt.read(mUnitFile, backend.getReader());
+            assertEquals("Incorrect UIC from " + backend, expected.getUIC(), actual.getUIC());
+            assertEquals("Incorrect groups from " + backend, expected.getGroups(), actual.getGroups());
+            for (int i = 0; i < expected.getGroups().size(); ++i) {
+                assertEquals("Incorrect items from " + backend, expected.getGroups().get(i).getItems(),
+                        actual.getGroups().get(i).getItems());
+            }
+        }
+    }
+
+    @Test
+    public void testComponentHR() throws IOException, FormatException {
+        ComponentHandReceipt expected = new ComponentHandReceipt(POILoader.getXLSWorkbook(mCompFile));
+        for (SpreadsheetBackend backend: SpreadsheetBackend.values()) {
+            ComponentHandReceipt actual = ComponentHandReceipt.read(mCompFile, backend.getReader());
+            assertEquals("Incorrect UIC from " + backend, expected.getUIC(), actual.getUIC());
+            assertEquals("Incorrect groups from " + backend, expected.getGroups(), actual.getGroups());
+            for (int g = 0; g < expected.getGroups().size(); ++g) {
+                EndItemGroup group = expected.getGroups().get(g);
+                List<EndItem> items = group.getItems();
+                List<EndItem> otherItems = actual.getGroups().get(g).getItems();
+                assertEquals("Incorrect number of items for " + group, items.size(), otherItems.size());
+                for (int i = 0; i < items.size(); ++i) {
+                    assertEquals("Incorrect item for " + group, items.get(i).getSn(), otherItems.get(i).getSn());
+                    assertEquals("Incorrect COEI for " + group, items.get(i).getCOEI().size(),
+                            otherItems.get(i).getCOEI().size());
+                    assertEquals("Incorrect BII for " + group, items.get(i).getBII().size(),
+                            otherItems.get(i).getBII().size());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testConfigured() {
+        String key = SpreadsheetBackend.PROPERTY + ".component";
+        try {
+            assertEquals("Incorrect default", SpreadsheetBackend.EVENT, SpreadsheetBackend.configured(FormType.COMPONENT));
+            System.setProperty(SpreadsheetBackend.PROPERTY, "usermodel");
+            assertEquals("Incorrect shared backend", SpreadsheetBackend.USERMODEL,
+                    SpreadsheetBackend.configured(FormType.COMPONENT));
+            System.setProperty(key, "JXL");
+            assertEquals("Incorrect form backend", SpreadsheetBackend.JXL,
+                    SpreadsheetBackend.configured(FormType.COMPONENT));
+            assertEquals("Incorrect other form backend", SpreadsheetBackend.USERMODEL,
+                    SpreadsheetBackend.configured(FormType.UNIT));
+            System.setProperty(key, "NOPE");
+            assertEquals("Incorrect fallback", SpreadsheetBackend.EVENT,
+                    SpreadsheetBackend.configured(FormType.COMPONENT));
+        } finally {
+            System.clearProperty(SpreadsheetBackend.PROPERTY);
+            System.clearProperty(key);
+        }
+    }
+
+    @Test
+    public void testBenchmark() throws Exception {
+        for (final File file: new File[] {mUnitFile, mCompFile, mScaleFile}) {
+            final boolean unit = file == mUnitFile;
+            StringBuilder result = new StringBuilder(getClass().getSimpleName() + " " + file.getName()
+                    + " " + file.length() + " bytes");
+            for (final SpreadsheetBackend backend: SpreadsheetBackend.values()) {
+                Callable<Object> load = new Callable<Object>() {
+                    @Override
+                    public Object call() throws Exception {
+                        return unit ? UnitLevelHandReceipt.read(file, backend.getReader())
+                                : ComponentHandReceipt.read(file, backend.getReader());
+                    }
+                };
+                // Warm up
+                load.call();
+                long start = System.nanoTime();
+                for (int i = 0; i < ROUNDS; ++i) {
+                    load.call();
+                }
+                long millis = (System.nanoTime() - start) / 1000000 / ROUNDS;
+                result.append(", ").append(backend).append(": ").append(millis).append("ms peak ")
+                        .append(HandReceiptFixtures.peakHeap(load));
+            }
+            System.out.println(result);
+        }
+    }
+
+    private static List<String> rows(SpreadsheetBackend backend, File file) throws IOException, FormatException {
+        final List<String> rows = new ArrayList<String>();
+        backend.getReader().read(file, new SpreadsheetReader.RowHandler() {
+
+            @Override
+            public void startSheet(int index, String name) {
+                rows.add(index + " " + name);
+            }
+
+            @Override
+            public void onRow(SpreadsheetReader.Row row) {
+                StringBuilder cells = new StringBuilder().append(row.getRowNum());
+                for (int col = 0; col <= row.getLastColumn(); ++col) {
+                    cells.append('|').append(row.getString(col));
+                }
+                rows.add(cells.toString());
+            }
+
+            @Override
+            public boolean endSheet(int index) {
+                return true;
+            }
+        });
+        return rows;
+    }
+}
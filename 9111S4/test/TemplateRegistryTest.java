@@ -0,0 +1,169 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.poi.hssf.usermodel.HSSFCell;
+import org.apache.poi.hssf.usermodel.HSSFRow;
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.poifs.filesystem.NPOIFSFileSystem;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.junit.Test;
+
+import com.hotan.ninetripleone.supply.forms.EndItemCoverPage;
+import com.hotan.ninetripleone.supply.model.EndItemGroup;
+import com.hotan.ninetripleone.supply.util.POITemplateLoader;
+import com.hotan.ninetripleone.supply.util.TemplateRegistry;
+
+
+public class TemplateRegistryTest {
+
+    private static final String COVER_PAGE = "end_item_coverpage.xls";
+
+    @Test
+    public void testSameAsTemplate() throws IOException {
+        TemplateRegistry registry = new TemplateRegistry("/templates/");
+        for (String name: new String[] {COVER_PAGE, "DA_2404.xls", "DA_2062.xls"}) {
+            HSSFWorkbook expected = POITemplateLoader.getXLSWorkbook(name);
+            HSSFWorkbook copy = registry.newWorkbook(name);
+            assertEquals("Incorrect number of sheets of " + name,
+                    expected.getNumberOfSheets(), copy.getNumberOfSheets());
+            for (int i = 0; i < expected.getNumberOfSheets(); ++i) {
+                assertEquals("Incorrect cells of " + name, cells(expected.getSheetAt(i)), cells(copy.getSheetAt(i)));
+            }
+        }
+    }
+
+    @Test
+    public void testCopiesIndependent() throws IOException {
+        TemplateRegistry registry = new TemplateRegistry("/templates/");
+        assertFalse("Loaded before use", registry.isLoaded(COVER_PAGE));
+        HSSFWorkbook first = registry.newWorkbook(COVER_PAGE);
+        HSSFWorkbook second = registry.newWorkbook(COVER_PAGE);
+        assertTrue("Not loaded after use", registry.isLoaded(COVER_PAGE));
+        assertEquals("Prototype not reused", 1, registry.getPrototypes(COVER_PAGE));
+        assertNotSame("Same workbook handed out twice", first, second);
+
+        String original = cells(second.getSheetAt(0));
+        cell(first.getSheetAt(0)).setCellValue("CHANGED");
+        first.createSheet("Extra");
+        assertEquals("Change leaked into another copy", original, cells(second.getSheetAt(0)));
+        assertEquals("Change leaked into a new copy", original, cells(registry.newWorkbook(COVER_PAGE).getSheetAt(0)));
+
+        // The copy is written on its own
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        first.write(out);
+        HSSFWorkbook written = new HSSFWorkbook(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals("Incorrect written value", "CHANGED", cell(written.getSheetAt(0)).getStringCellValue());
+        assertEquals("Incorrect written sheets", first.getNumberOfSheets(), written.getNumberOfSheets());
+    }
+
+    @Test
+    public void testConcurrentCoverPages() throws Exception {
+        final int pages = 100;
+        final EndItemGroup group = new EndItemGroup("test", "lin", "nsn");
+        long start = System.nanoTime();
+        for (int i = 0; i < pages; ++i) {
+            POITemplateLoader.getXLSWorkbook(COVER_PAGE);
+        }
+        long parsed = System.nanoTime() - start;
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Integer>> workers = new ArrayList<Future<Integer>>();
+            start = System.nanoTime();
+            for (int t = 0; t < 4; ++t) {
+                workers.add(pool.submit(new Callable<Integer>() {
+
+                    @Override
+                    public Integer call() throws Exception {
+                        for (int i = 0; i < pages; ++i) {
+                            new EndItemCoverPage().setGroup(group);
+                        }
+                        return pages;
+                    }
+                }));
+            }
+            int rendered = 0;
+            for (Future<Integer> worker: workers) {
+                rendered += worker.get();
+            }
+            long copied = System.nanoTime() - start;
+            System.out.println(getClass().getSimpleName() + " parsed " + pages + " templates in "
+                    + parsed / 1000000 + "ms, rendered " + rendered + " cover pages in " + copied / 1000000 + "ms");
+            assertEquals("Incorrect number of cover pages", 4 * pages, rendered);
+            int prototypes = TemplateRegistry.getShared().getPrototypes(COVER_PAGE);
+            assertTrue("Incorrect number of prototypes " + prototypes,
+                    prototypes > 0 && prototypes <= TemplateRegistry.MAX_PROTOTYPES);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCopyCost() throws IOException {
+        final int copies = 200;
+        TemplateRegistry registry = new TemplateRegistry("/templates/");
+        NPOIFSFileSystem prototype = new NPOIFSFileSystem(
+                POITemplateLoader.class.getResourceAsStream("/templates/" + COVER_PAGE));
+        for (int round = 0; round < 3; ++round) {
+            long start = System.nanoTime();
+            for (int i = 0; i < copies; ++i) {
+                POITemplateLoader.getXLSWorkbook(COVER_PAGE);
+            }
+            long parsed = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < copies; ++i) {
+                registry.newWorkbook(COVER_PAGE);
+            }
+            long copied = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < copies; ++i) {
+                new HSSFWorkbook(prototype.getRoot(), false);
+            }
+            long fromPrototype = System.nanoTime() - start;
+            System.out.println(getClass().getSimpleName() + " per cover page: parsed " + parsed / copies / 1000
+                    + "us, copied " + copied / copies / 1000 + "us, copied from a parsed file system "
+                    + fromPrototype / copies / 1000 + "us");
+        }
+    }
+
+    @Test(expected = FileNotFoundException.class)
+    public void testMissingTemplate() throws IOException {
+        new TemplateRegistry("/templates/").newWorkbook("missing.xls");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIllegalName() throws IOException {
+        TemplateRegistry.getShared().newWorkbook("DA_2404.xlsx");
+    }
+
+    private static HSSFCell cell(HSSFSheet sheet) {
+        HSSFRow row = sheet.getRow(0) == null ? sheet.createRow(0) : sheet.getRow(0);
+        return row.getCell(0) == null ? row.createCell(0) : row.getCell(0);
+    }
+
+    private static String cells(HSSFSheet sheet) {
+        StringBuilder buf = new StringBuilder();
+        for (Row row: sheet) {
+            for (Cell cell: row) {
+                buf.append(row.getRowNum()).append(',').append(cell.getColumnIndex()).append('=')
+                        .append(cell.toString()).append('\n');
+            }
+        }
+        return buf.toString();
+    }
+}
@@ -0,0 +1,123 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.hotan.ninetripleone.supply.forms.UnitLevelHandReceipt;
+import com.hotan.ninetripleone.supply.model.EndItem;
+import com.hotan.ninetripleone.supply.model.EndItemGroup;
+import com.hotan.ninetripleone.supply.util.POILoader;
+
+
+public class UnitHREventTest {
+
+    private static final int SCALE_GROUPS = 4000;
+    private static final int SCALE_SERIALS = 9;
+
+    private static File mScaleFile;
+
+    @BeforeClass
+    public static void setupClass() throws IOException {
+        mScaleFile = HandReceiptFixtures.write(
+                HandReceiptFixtures.createUnitHR(SCALE_GROUPS, SCALE_SERIALS),
+                UnitHREventTest.class, "scale_unit_hr.xls");
+    }
+
+    @Test
+    public void testSampleMatchesUsermodel() throws IOException {
+        File f = POILoader.getDataFile("9111_UNIT_HR.xls");
+        assertSameReceipt(new UnitLevelHandReceipt(POILoader.getXLSWorkbook("9111_UNIT_HR.xls")),
+                parseEvents(f));
+    }
+
+    @Test
+    public void testScaleMatchesUsermodel() throws IOException {
+        UnitLevelHandReceipt events = parseEvents(mScaleFile);
+        assertEquals("Incorrect number of groups", SCALE_GROUPS, events.getGroups().size());
+        assertSameReceipt(parseUsermodel(mScaleFile), events);
+    }
+
+    @Test
+    public void testScaleHeap() throws Exception {
+        Callable<UnitLevelHandReceipt> usermodel = new Callable<UnitLevelHandReceipt>() {
+            @Override
+            public UnitLevelHandReceipt call() throws Exception {
+                return parseUsermodel(mScaleFile);
+            }
+        };
+        Callable<UnitLevelHandReceipt> events = new Callable<UnitLevelHandReceipt>() {
+            @Override
+            public UnitLevelHandReceipt call() throws Exception {
+                return parseEvents(mScaleFile);
+            }
+        };
+        // Warm up both paths so class loading is not measured.
+        usermodel.call();
+        events.call();
+
+        long usermodelPeak = HandReceiptFixtures.peakHeap(usermodel);
+        long eventsPeak = HandReceiptFixtures.peakHeap(events);
+        long usermodelRetained = HandReceiptFixtures.retainedHeap(usermodel);
+        long eventsRetained = HandReceiptFixtures.retainedHeap(events);
+        System.out.println(getClass().getSimpleName() + " heap for " + mScaleFile.length()
+                + " bytes, usermodel peak: " + usermodelPeak + " retained: " + usermodelRetained
+                + ", events peak: " + eventsPeak + " retained: " + eventsRetained);
+        assertTrue("Event parser peak heap " + eventsPeak + " above usermodel " + usermodelPeak,
+                eventsPeak <= usermodelPeak);
+        assertTrue("Event parser retained heap " + eventsRetained + " not below usermodel " + usermodelRetained,
+                eventsRetained < usermodelRetained);
+    }
+
+    private static UnitLevelHandReceipt parseUsermodel(File f) throws IOException {
+        InputStream in = new FileInputStream(f);
+        try {
+            return new UnitLevelHandReceipt(new HSSFWorkbook(in));
+        } finally {
+            in.close();
+        }
+    }
+
+    private static UnitLevelHandReceipt parseEvents(File f) throws IOException {
+        InputStream in = new FileInputStream(f);
+        try {
+            return UnitLevelHandReceipt.fromEventStream(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void assertSameReceipt(UnitLevelHandReceipt expected, UnitLevelHandReceipt actual) {
+        assertEquals("Incorrect date", expected.getDatePrepared(), actual.getDatePrepared());
+        assertEquals("Incorrect UIC", expected.getUIC(), actual.getUIC());
+        assertEquals("Incorrect DESC", expected.getDESC(), actual.getDESC());
+        assertEquals("Incorrect team", expected.getTeam(), actual.getTeam());
+        assertEquals("Incorrect from operator", expected.getWhoFrom(), actual.getWhoFrom());
+        assertEquals("Incorrect to operator", expected.getWhoTo(), actual.getWhoTo());
+
+        List<EndItemGroup> expectedGroups = expected.getGroups();
+        List<EndItemGroup> actualGroups = actual.getGroups();
+        assertEquals("Incorrect number of groups", expectedGroups.size(), actualGroups.size());
+        for (int i = 0; i < expectedGroups.size(); ++i) {
+            EndItemGroup group = expectedGroups.get(i);
+            EndItemGroup other = actualGroups.get(i);
+            assertEquals("Incorrect group", group, other);
+            assertEquals("Incorrect name for " + group, group.getName(), other.getName());
+
+            List<EndItem> items = group.getItems();
+            List<EndItem> otherItems = other.getItems();
+            assertEquals("Incorrect number of items for " + group, items.size(), otherItems.size());
+            for (int j = 0; j < items.size(); ++j) {
+                assertEquals("Incorrect item for " + group, items.get(j), otherItems.get(j));
+            }
+        }
+    }
+}
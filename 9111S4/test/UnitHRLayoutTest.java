@@ -0,0 +1,108 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.poi.hssf.usermodel.HSSFRow;
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.hotan.ninetripleone.supply.forms.UnitHRLayout;
+import com.hotan.ninetripleone.supply.forms.UnitLevelHandReceipt;
+import com.hotan.ninetripleone.supply.model.EndItemGroup;
+import com.hotan.ninetripleone.supply.util.POILoader;
+
+
+public class UnitHRLayoutTest {
+
+    private HSSFWorkbook mSample;
+
+    @Before
+    public void setup() throws IOException {
+        UnitHRLayout.clearCache();
+        mSample = POILoader.getXLSWorkbook("9111_UNIT_HR.xls");
+    }
+
+    @Test
+    public void testSampleLayout() {
+        UnitHRLayout layout = new UnitLevelHandReceipt(mSample).getLayout();
+        assertEquals("Incorrect first row", 7, layout.getFirstRow());
+        assertEquals("Incorrect LIN column", 0, layout.getLINCol());
+        assertEquals("Incorrect NSN column", 2, layout.getNSNCol());
+        assertEquals("Incorrect name column", 4, layout.getNameCol());
+        assertEquals("Incorrect QTY column", 9, layout.getQtyCol());
+        assertEquals("Incorrect serial columns", 5, layout.getSerialCols()[2]);
+        assertSame("Incorrect date cell", UnitHRLayout.DEFAULT.getDateCell(), layout.getDateCell());
+        assertSame("Incorrect from cell", UnitHRLayout.DEFAULT.getFromCell(), layout.getFromCell());
+        assertSame("Incorrect UIC cell", UnitHRLayout.DEFAULT.getUICDESCCell(), layout.getUICDESCCell());
+        assertSame("Incorrect to cell", UnitHRLayout.DEFAULT.getToCell(), layout.getToCell());
+    }
+
+    @Test
+    public void testShiftedLayout() throws IOException {
+        UnitLevelHandReceipt expected = new UnitLevelHandReceipt(mSample);
+        HSSFWorkbook shifted = HandReceiptFixtures.shift(mSample, 2, 3);
+        UnitLevelHandReceipt hr = new UnitLevelHandReceipt(shifted);
+        assertEquals("Incorrect first row", 9, hr.getLayout().getFirstRow());
+        assertEquals("Incorrect QTY column", 12, hr.getLayout().getQtyCol());
+        assertSameReceipt(expected, hr);
+
+        File file = HandReceiptFixtures.write(shifted, getClass(), "SHIFTED_UNIT_HR.xls");
+        InputStream in = new FileInputStream(file);
+        try {
+            assertSameReceipt(expected, UnitLevelHandReceipt.fromEventStream(in));
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testCachedLayout() throws IOException {
+        HSSFWorkbook shifted = HandReceiptFixtures.shift(mSample, 1, 1);
+        UnitHRLayout first = new UnitLevelHandReceipt(shifted).getLayout();
+        assertEquals("Layout not cached", 1, UnitHRLayout.getCacheSize());
+        
+        File file = HandReceiptFixtures.write(shifted, getClass(), "REPEAT_UNIT_HR.xls");
+        for (int i = 0; i < 3; ++i) {
+            assertSame("Layout detected again", first, 
+                    new UnitLevelHandReceipt(POILoader.getXLSWorkbook(file)).getLayout());
+            InputStream in = new FileInputStream(file);
+            try {
+                assertSame("Layout detected again", first, UnitLevelHandReceipt.fromEventStream(in).getLayout());
+            } finally {
+                in.close();
+            }
+        }
+        new UnitLevelHandReceipt(mSample);
+        assertEquals("Incorrect cached layouts", 2, UnitHRLayout.getCacheSize());
+    }
+
+    @Test
+    public void testCacheBounded() {
+        HSSFSheet sheet = mSample.getSheetAt(0);
+        HSSFRow heading = sheet.getRow(UnitHRLayout.DEFAULT.getHeadingRow());
+        UnitHRLayout last = null;
+        for (int i = 0; i < 20; ++i) {
+            heading.createCell(20).setCellValue("REV " + i);
+            last = UnitHRLayout.of(sheet);
+        }
+        assertEquals("Cache not bounded", 16, UnitHRLayout.getCacheSize());
+        assertSame("Latest layout not cached", last, UnitHRLayout.of(sheet));
+    }
+
+    private static void assertSameReceipt(UnitLevelHandReceipt expected, UnitLevelHandReceipt hr) {
+        assertEquals("Incorrect UIC", expected.getUIC(), hr.getUIC());
+        assertEquals("Incorrect team", expected.getTeam(), hr.getTeam());
+        assertEquals("Incorrect date", expected.getDatePrepared(), hr.getDatePrepared());
+        assertEquals("Incorrect groups", expected.getGroups(), hr.getGroups());
+        for (EndItemGroup group: expected.getGroups()) {
+            EndItemGroup other = hr.getGroup(group.getNSN(), group.getLIN());
+            assertEquals("Incorrect items of " + group, group.getItems(), other.getItems());
+        }
+    }
+}
@@ -4,12 +4,14 @@ import static org.junit.Assert.assertTrue;
 import java.io.IOException;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import com.hotan.ninetripleone.supply.forms.HandReceiptRow;
 import com.hotan.ninetripleone.supply.forms.UnitLevelHandReceipt;
 import com.hotan.ninetripleone.supply.model.EndItem;
 import com.hotan.ninetripleone.supply.model.EndItemGroup;
@@ -22,12 +24,17 @@ public class UnitHRTest {
 
     private static final int NUM_ITEMS = 49;
     
+    // Two header lines of the sample are the same group.
+    private static final int NUM_HEADERS = 50;
+    private static final int NUM_SERIAL_ROWS = 48;
+    
+    private static HSSFWorkbook mWorkbook;
     private static UnitLevelHandReceipt mValidHR;
     
     @BeforeClass
     public static void setupClass() throws IOException {
-        HSSFWorkbook wb = POILoader.getXLSWorkbook("9111_UNIT_HR.xls");
-        mValidHR = new UnitLevelHandReceipt(wb);
+        mWorkbook = POILoader.getXLSWorkbook("9111_UNIT_HR.xls");
+        mValidHR = new UnitLevelHandReceipt(mWorkbook);
     }
     
     @Test
@@ -77,4 +84,28 @@ public class UnitHRTest {
         assertEquals("Incorrect number of GPSs", 12, items.size());
         assertTrue("Not serialized", gpss.getSerialized());
     }
+    
+    @Test
+    public void testRowScanLabels() {
+        int headers = 0, serials = 0, lastLabeled = -1;
+        Iterator<HandReceiptRow> rows = UnitLevelHandReceipt.scanRows(mWorkbook.getSheetAt(0));
+        while (rows.hasNext()) {
+            HandReceiptRow row = rows.next();
+            switch (row.getType()) {
+            case HEADER:
+                headers++;
+                lastLabeled = row.getRowNum();
+                break;
+            case SERIAL:
+                serials++;
+                assertEquals("Serial row not below a header or serial row", lastLabeled + 1, row.getRowNum());
+                lastLabeled = row.getRowNum();
+                break;
+            default:
+                break;
+            }
+        }
+        assertEquals("Incorrect number of headers", NUM_HEADERS, headers);
+        assertEquals("Incorrect number of serial rows", NUM_SERIAL_ROWS, serials);
+    }
 }
@@ -0,0 +1,74 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.hotan.ninetripleone.supply.forms.ComponentHandReceipt;
+import com.hotan.ninetripleone.supply.forms.UnitLevelHandReceipt;
+import com.hotan.ninetripleone.supply.model.EndItemGroup;
+import com.hotan.ninetripleone.supply.util.FormatException;
+import com.hotan.ninetripleone.supply.util.POILoader;
+
+
+public class XLSXReceiptTest {
+
+    private static File mCompFile, mUnitFile, mLargeFile;
+
+    private static HSSFWorkbook mCompWB, mUnitWB, mLargeWB;
+
+    @BeforeClass
+    public static void setupClass() throws IOException {
+        mCompWB = POILoader.getXLSWorkbook("ComponentHandReceipt.xls");
+        mUnitWB = POILoader.getXLSWorkbook("9111_UNIT_HR.xls");
+        mLargeWB = HandReceiptFixtures.createUnitHR(2000, 9);
+        mCompFile = HandReceiptFixtures.write(HandReceiptFixtures.toXLSX(mCompWB),
+                XLSXReceiptTest.class, "ComponentHandReceipt.xlsx");
+        mUnitFile = HandReceiptFixtures.write(HandReceiptFixtures.toXLSX(mUnitWB),
+                XLSXReceiptTest.class, "9111_UNIT_HR.xlsx");
+        mLargeFile = HandReceiptFixtures.write(HandReceiptFixtures.toXLSX(mLargeWB),
+                XLSXReceiptTest.class, "LARGE_UNIT_HR.xlsx");
+    }
+
+    @Test
+    public void testComponentHR() throws IOException, FormatException {
+        ComponentHandReceipt expected = new ComponentHandReceipt(mCompWB);
+        ComponentHandReceipt hr = ComponentHandReceipt.fromXLSX(mCompFile);
+        assertEquals("Incorrect UIC", expected.getUIC(), hr.getUIC());
+        assertEquals("Incorrect DESC", expected.getDESC(), hr.getDESC());
+        assertEquals("Incorrect groups", expected.getGroups(), hr.getGroups());
+        for (EndItemGroup group: expected.getGroups()) {
+            EndItemGroup other = hr.getGroup(group.getNSN(), group.getLIN());
+            assertEquals("Incorrect items of " + group, group.getItems(), other.getItems());
+            assertNull("XLSX receipt has no sheets", hr.getSheet(other.getItems().get(0)));
+        }
+    }
+
+    @Test
+    public void testUnitHR() throws IOException {
+        assertSameUnitHR(new UnitLevelHandReceipt(mUnitWB), UnitLevelHandReceipt.fromXLSX(mUnitFile));
+    }
+
+    @Test
+    public void testLargeUnitHR() throws IOException {
+        assertSameUnitHR(new UnitLevelHandReceipt(mLargeWB), UnitLevelHandReceipt.fromXLSX(mLargeFile));
+    }
+
+    private static void assertSameUnitHR(UnitLevelHandReceipt expected, UnitLevelHandReceipt hr)
+            throws IOException {
+        assertNull("XLSX receipt has no workbook", hr.getWorkbook());
+        assertEquals("Incorrect date", expected.getDatePrepared(), hr.getDatePrepared());
+        assertEquals("Incorrect UIC", expected.getUIC(), hr.getUIC());
+        assertEquals("Incorrect DESC", expected.getDESC(), hr.getDESC());
+        assertEquals("Incorrect team", expected.getTeam(), hr.getTeam());
+        assertEquals("Incorrect groups", expected.getGroups(), hr.getGroups());
+        for (EndItemGroup group: expected.getGroups()) {
+            EndItemGroup other = hr.getGroup(group.getNSN(), group.getLIN());
+            assertEquals("Incorrect items of " + group, group.getItems(), other.getItems());
+        }
+    }
+}